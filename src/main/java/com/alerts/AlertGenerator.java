@@ -7,6 +7,7 @@ import com.cardio_generator.outputs.OutputStrategy;
 import com.data_management.DataStorage;
 import com.data_management.Patient;
 import com.data_management.PatientRecord;
+import com.data_management.RecordType;
 
 import java.util.List;
 
@@ -62,11 +63,12 @@ public class AlertGenerator {
         for (PatientRecord record : recentRecords) {
             Alert alert = null;
 
-            if ("BloodPressure".equals(record.getRecordType())) {
+            RecordType type = record.getType();
+            if (type == RecordType.BLOOD_PRESSURE) {
                 alert = bloodPressureAlertFactory.createAlert(patient, record, currentTime);
-            } else if ("HeartRate".equals(record.getRecordType())) {
+            } else if (type == RecordType.HEART_RATE) {
                 alert = heartRateAlertFactory.createAlert(patient, record, currentTime);
-            } else if ("OxygenSaturation".equals(record.getRecordType())) {
+            } else if (type == RecordType.BLOOD_OXYGEN_SATURATION) {
                 alert = bloodOxygenAlertFactory.createAlert(patient, record, currentTime);
             }
 
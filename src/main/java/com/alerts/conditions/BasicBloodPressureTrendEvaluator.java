@@ -2,9 +2,9 @@ package com.alerts.conditions;
 
 import com.data_management.Patient;
 import com.data_management.PatientRecord;
+import com.data_management.RecordType;
 import com.alerts.Alert;
 import java.util.List;
-import java.util.stream.Collectors;
 
 /**
  * This class evaluates blood pressure trends for a given patient.
@@ -23,10 +23,7 @@ public class BasicBloodPressureTrendEvaluator implements BloodPressureTrendEvalu
      */
     @Override
     public void evaluateBloodPressureTrends(Patient patient, long now) {
-        List<PatientRecord> bloodPressureRecords = patient.getRecords(now - WINDOW_SIZE_MS, now).stream()
-                .filter(r -> "BloodPressure".equals(r.getRecordType()))
-                .sorted((r1, r2) -> Long.compare(r1.getTimestamp(), r2.getTimestamp()))
-                .collect(Collectors.toList());
+        List<PatientRecord> bloodPressureRecords = patient.getRecords(RecordType.BLOOD_PRESSURE, now - WINDOW_SIZE_MS, now);
 
         if (bloodPressureRecords.size() >= 3) {
             checkBloodPressureTrends(bloodPressureRecords, patient, now);
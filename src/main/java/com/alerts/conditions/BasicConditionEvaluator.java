@@ -2,6 +2,7 @@ package com.alerts.conditions;
 
 import com.data_management.Patient;
 import com.data_management.PatientRecord;
+import com.data_management.RecordType;
 import com.alerts.Alert;
 import com.cardio_generator.outputs.OutputStrategy;
 
@@ -49,18 +50,17 @@ public class BasicConditionEvaluator implements ConditionEvaluator {
      * @return true if the condition meets the alert criteria, false otherwise.
      */
     private boolean evaluateCondition(PatientRecord record) {
-        switch (record.getRecordType()) {
-            case "HeartRate":
-                return record.getMeasurementValue() > 100 || record.getMeasurementValue() < 50;
-            case "BloodPressure":
-                return record.getSystolicValue() > 180 || record.getDiastolicValue() < 60;
-            case "BloodOxygenSaturation":
-                return record.getMeasurementValue() < 92;
-            case "ECG":
-                return isIrregular(record.getBeatIntervals());
-            default:
-                return false;
+        RecordType type = record.getType();
+        if (type == RecordType.HEART_RATE) {
+            return record.getMeasurementValue() > 100 || record.getMeasurementValue() < 50;
+        } else if (type == RecordType.BLOOD_PRESSURE) {
+            return record.getSystolicValue() > 180 || record.getDiastolicValue() < 60;
+        } else if (type == RecordType.BLOOD_OXYGEN_SATURATION) {
+            return record.getMeasurementValue() < 92;
+        } else if (type == RecordType.ECG) {
+            return isIrregular(record.getBeatIntervals());
         }
+        return false;
     }
 
     /**
@@ -79,7 +79,8 @@ public class BasicConditionEvaluator implements ConditionEvaluator {
     }
 
     /**
-     * Checks for combined conditions over the past hour and triggers an alert if both conditions are met.
+     * Checks for combined conditions over the past hour and triggers an alert if both conditions are met:
+     * a blood pressure measurement below 90 and an oxygen saturation measurement below 92 within the hour.
      *
      * @param patient The patient whose records are being checked.
      * @param now     The current time in milliseconds.
@@ -87,12 +88,10 @@ public class BasicConditionEvaluator implements ConditionEvaluator {
      */
     @Override
     public boolean checkForCombinedConditions(Patient patient, long now) {
-        List<PatientRecord> recentRecords = patient.getRecords(now - 3600000, now);
-
-        boolean lowBloodPressure = recentRecords.stream()
-                .anyMatch(r -> "BloodPressure".equals(r.getRecordType()) && r.getSystolicValue() < 90 && r.getDiastolicValue() < 60);
-        boolean lowOxygenSaturation = recentRecords.stream()
-                .anyMatch(r -> "BloodOxygenSaturation".equals(r.getRecordType()) && r.getMeasurementValue() < 92);
+        // The minima come from the storage's rolling window if one of an hour is configured for the type,
+        // and from a scan of the last hour otherwise; an empty window has a NaN minimum, which is never low.
+        boolean lowBloodPressure = patient.getWindowStatistics(RecordType.BLOOD_PRESSURE, 3600000, now).getMin() < 90;
+        boolean lowOxygenSaturation = patient.getWindowStatistics(RecordType.BLOOD_OXYGEN_SATURATION, 3600000, now).getMin() < 92;
 
         if (lowBloodPressure && lowOxygenSaturation) {
             triggerAlert(new Alert(patient.getPatientId(), "Critical hypotensive and hypoxemia risk detected", now));
@@ -108,18 +107,17 @@ public class BasicConditionEvaluator implements ConditionEvaluator {
      * @return The alert message.
      */
     private String getAlertMessage(PatientRecord record) {
-        switch (record.getRecordType()) {
-            case "HeartRate":
-                return "Abnormal heart rate detected";
-            case "BloodPressure":
-                return "Critical blood pressure level detected";
-            case "BloodOxygenSaturation":
-                return "Low oxygen saturation detected";
-            case "ECG":
-                return "ECG irregularities detected";
-            default:
-                return "Unknown condition";
+        RecordType type = record.getType();
+        if (type == RecordType.HEART_RATE) {
+            return "Abnormal heart rate detected";
+        } else if (type == RecordType.BLOOD_PRESSURE) {
+            return "Critical blood pressure level detected";
+        } else if (type == RecordType.BLOOD_OXYGEN_SATURATION) {
+            return "Low oxygen saturation detected";
+        } else if (type == RecordType.ECG) {
+            return "ECG irregularities detected";
         }
+        return "Unknown condition";
     }
 
     /**
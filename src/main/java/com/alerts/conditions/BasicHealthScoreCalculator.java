@@ -1,6 +1,7 @@
 package com.alerts.conditions;
 
 import com.data_management.PatientRecord;
+import com.data_management.RecordType;
 import java.util.List;
 
 /**
@@ -21,19 +22,14 @@ public class BasicHealthScoreCalculator implements CompositeHealthScoreCalculato
         int count = 0;
         for (PatientRecord record : records) {
             double deviation = 0;
-            switch (record.getRecordType()) {
-                case "HeartRate":
-                    deviation = Math.abs(record.getMeasurementValue() - 75) / 75.0;
-                    break;
-                case "BloodPressure":
-                    deviation = (Math.abs(record.getSystolicValue() - 120) / 120.0
-                            + Math.abs(record.getDiastolicValue() - 80) / 80.0) / 2.0;
-                    break;
-                case "BloodOxygenSaturation":
-                    deviation = Math.abs(record.getMeasurementValue() - 95) / 95.0;
-                    break;
-                default:
-                    break;
+            RecordType type = record.getType();
+            if (type == RecordType.HEART_RATE) {
+                deviation = Math.abs(record.getMeasurementValue() - 75) / 75.0;
+            } else if (type == RecordType.BLOOD_PRESSURE) {
+                deviation = (Math.abs(record.getSystolicValue() - 120) / 120.0
+                        + Math.abs(record.getDiastolicValue() - 80) / 80.0) / 2.0;
+            } else if (type == RecordType.BLOOD_OXYGEN_SATURATION) {
+                deviation = Math.abs(record.getMeasurementValue() - 95) / 95.0;
             }
             score += deviation;
             count++;
@@ -3,6 +3,7 @@ package com.alerts.factory;
 import com.alerts.Alert;
 import com.data_management.Patient;
 import com.data_management.PatientRecord;
+import com.data_management.RecordType;
 
 /**
  * Factory class for creating blood pressure alerts. Checks for critical blood pressure levels and creates an alert if necessary.
@@ -19,7 +20,7 @@ public class BloodPressureAlertFactory extends AlertFactory {
      */
     @Override
     public Alert createAlert(Patient patient, PatientRecord record, long timestamp) {
-        if ("BloodPressure".equals(record.getRecordType())) {
+        if (record.getType() == RecordType.BLOOD_PRESSURE) {
             if (record.getSystolicValue() > 180 || record.getDiastolicValue() < 60) {
                 return new Alert(patient.getPatientId(), "Critical blood pressure level detected", timestamp);
             }
@@ -3,6 +3,7 @@ package com.alerts.factory;
 import com.alerts.Alert;
 import com.data_management.Patient;
 import com.data_management.PatientRecord;
+import com.data_management.RecordType;
 
 /**
  * Factory class for creating heart rate alerts. Checks for abnormal heart rate levels and creates an alert if necessary.
@@ -19,7 +20,7 @@ public class HeartRateAlertFactory extends AlertFactory {
      */
     @Override
     public Alert createAlert(Patient patient, PatientRecord record, long timestamp) {
-        if ("HeartRate".equals(record.getRecordType())) {
+        if (record.getType() == RecordType.HEART_RATE) {
             double heartRate = record.getHeartRate();
             if (heartRate > 120 || heartRate < 50) {
                 return new Alert(patient.getPatientId(), "Abnormal heart rate detected", timestamp);
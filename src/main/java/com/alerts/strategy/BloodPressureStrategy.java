@@ -2,15 +2,15 @@ package com.alerts.strategy;
 
 import com.data_management.Patient;
 import com.data_management.DataStorage;
-import com.data_management.PatientRecord;
-
-import java.util.List;
+import com.data_management.RecordType;
+import com.data_management.SampleVisitor;
 
 /**
  * Strategy class for checking blood pressure alert conditions. 
  * Determines if any blood pressure records within the last hour indicate a critical level.
  */
 public class BloodPressureStrategy implements AlertStrategy {
+    private static final SampleVisitor UNTIL_CRITICAL = (timestamp, value) -> value <= 180 && value >= 60;
 
     /**
      * Checks whether an alert condition is met for the specified patient based on their blood pressure records in the last hour.
@@ -21,14 +21,8 @@ public class BloodPressureStrategy implements AlertStrategy {
      */
     @Override
     public boolean checkAlert(Patient patient, DataStorage dataStorage) {
-        List<PatientRecord> records = dataStorage.getRecords(patient.getPatientId(), System.currentTimeMillis() - 3600000, System.currentTimeMillis());
-        for (PatientRecord record : records) {
-            if ("BloodPressure".equals(record.getRecordType())) {
-                if (record.getSystolicValue() > 180 || record.getDiastolicValue() < 60) {
-                    return true;
-                }
-            }
-        }
-        return false;
+        long now = System.currentTimeMillis();
+        // Stored blood pressure samples carry a single reading; the scan stops at the first critical one.
+        return !dataStorage.scan(patient.getPatientId(), RecordType.BLOOD_PRESSURE, now - 3600000, now, UNTIL_CRITICAL);
     }
 }
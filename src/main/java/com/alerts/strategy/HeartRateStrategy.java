@@ -2,15 +2,15 @@ package com.alerts.strategy;
 
 import com.data_management.Patient;
 import com.data_management.DataStorage;
-import com.data_management.PatientRecord;
-
-import java.util.List;
+import com.data_management.RecordType;
+import com.data_management.SampleVisitor;
 
 /**
  * Strategy class for checking heart rate alert conditions.
  * Determines if any heart rate records within the last hour indicate abnormal levels.
  */
 public class HeartRateStrategy implements AlertStrategy {
+    private static final SampleVisitor UNTIL_ABNORMAL = (timestamp, value) -> value <= 120 && value >= 50;
 
     /**
      * Checks whether an alert condition is met for the specified patient based on their heart rate records in the last hour.
@@ -21,14 +21,8 @@ public class HeartRateStrategy implements AlertStrategy {
      */
     @Override
     public boolean checkAlert(Patient patient, DataStorage dataStorage) {
-        List<PatientRecord> records = dataStorage.getRecords(patient.getPatientId(), System.currentTimeMillis() - 3600000, System.currentTimeMillis());
-        for (PatientRecord record : records) {
-            if ("HeartRate".equals(record.getRecordType())) {
-                if (record.getMeasurementValue() > 120 || record.getMeasurementValue() < 50) {
-                    return true;
-                }
-            }
-        }
-        return false;
+        long now = System.currentTimeMillis();
+        // The scan stops at the first abnormal reading, so a false result means one was found.
+        return !dataStorage.scan(patient.getPatientId(), RecordType.HEART_RATE, now - 3600000, now, UNTIL_ABNORMAL);
     }
 }
@@ -3,14 +3,16 @@ package com.alerts.strategy;
 import com.data_management.DataStorage;
 import com.data_management.Patient;
 import com.data_management.PatientRecord;
-
-import java.util.List;
+import com.data_management.RecordType;
+import com.data_management.SampleVisitor;
 
 /**
  * Strategy class for checking blood oxygen saturation alert conditions.
  * Determines if any blood oxygen saturation records within the last hour indicate low levels.
  */
 public class OxygenSaturationStrategy {
+    private static final SampleVisitor UNTIL_LOW = (timestamp, value) -> value >= 90;
+
     private DataStorage dataStorage;
 
     /**
@@ -30,14 +32,7 @@ public class OxygenSaturationStrategy {
      * @return true if a low blood oxygen saturation level is detected, false otherwise.
      */
     public boolean checkAlert(Patient patient, PatientRecord record) {
-        List<PatientRecord> records = dataStorage.getRecords(patient.getPatientId(), System.currentTimeMillis() - 3600000, System.currentTimeMillis());
-        for (PatientRecord r : records) {
-            if ("BloodOxygenSaturation".equals(r.getRecordType())) {
-                if (r.getMeasurementValue() < 90) {
-                    return true;
-                }
-            }
-        }
-        return false;
+        long now = System.currentTimeMillis();
+        return !dataStorage.scan(patient.getPatientId(), RecordType.BLOOD_OXYGEN_SATURATION, now - 3600000, now, UNTIL_LOW);
     }
 }
@@ -0,0 +1,385 @@
+package com.data_management;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link SampleSeries} decorator that maintains aggregates of the samples added to the wrapped series:
+ * a {@link RollingWindow} over the most recent samples and {@link Rollup} tiers of downsampled buckets,
+ * so window statistics and long-range trends can be read without scanning the raw samples.
+ * Storage, retention and reads are handled by the wrapped series.
+ */
+final class AggregatedSeries implements SampleSeries {
+    private final SampleSeries series;
+    private final RollingWindow window;
+    private final Rollup[] rollups;
+    // The rollups whose buckets were restored from an archive and must not receive the restored raw samples.
+    private boolean[] restoredRollups;
+
+    /**
+     * Constructs an AggregatedSeries around the given series.
+     *
+     * @param series       The series that stores the samples.
+     * @param windowMillis The length of the rolling window in milliseconds, or 0 for no rolling window.
+     * @param rollupTiers  The rollup tiers to maintain, possibly none.
+     */
+    AggregatedSeries(SampleSeries series, long windowMillis, List<RollupTier> rollupTiers) {
+        this.series = series;
+        this.window = windowMillis > 0 ? new RollingWindow(windowMillis, series.getRetentionPolicy()) : null;
+        this.rollups = rollupTiers.stream()
+                .sorted((a, b) -> Long.compare(a.getResolutionMillis(), b.getResolutionMillis()))
+                .map(Rollup::new)
+                .toArray(Rollup[]::new);
+    }
+
+    /**
+     * Gets the statistics of the rolling window if it has the requested length.
+     *
+     * @param windowMillis The requested window length in milliseconds.
+     * @param now          The end of the window.
+     * @return The statistics, or null if the rolling window cannot answer the request.
+     */
+    WindowStatistics getStatistics(long windowMillis, long now) {
+        return window != null && windowMillis == window.getWindowMillis() ? window.statistics(now) : null;
+    }
+
+    /**
+     * Gets the buckets of the coarsest rollup tier that is at least as fine as the requested resolution
+     * and still covers the start of the range.
+     *
+     * @param startTime        The start of the range; the bucket containing it is included.
+     * @param endTime          The end of the range, inclusive.
+     * @param resolutionMillis The coarsest acceptable bucket width in milliseconds.
+     * @return The buckets in order, or null if no tier can answer the request.
+     */
+    List<RollupBucket> getRollup(long startTime, long endTime, long resolutionMillis) {
+        for (int i = rollups.length - 1; i >= 0; i--) {
+            Rollup rollup = rollups[i];
+            if (rollup.getResolutionMillis() <= resolutionMillis && rollup.covers(startTime)) {
+                List<RollupBucket> buckets = new ArrayList<>();
+                rollup.collect(startTime, endTime, buckets);
+                return buckets;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the rollup tiers, finest first, so their buckets can be archived. The rollups must not be modified.
+     *
+     * @return The rollups.
+     */
+    Rollup[] getRollups() {
+        return rollups;
+    }
+
+    /**
+     * Replaces the buckets of the rollup tier with the given resolution by archived ones.
+     * Archived tiers that are no longer configured are ignored.
+     *
+     * @param resolutionMillis The bucket width of the archived tier.
+     * @param coveredFrom      The time from which the archived tier held every sample.
+     * @param buckets          The archived buckets in order.
+     */
+    void restoreRollup(long resolutionMillis, long coveredFrom, List<RollupBucket> buckets) {
+        for (int i = 0; i < rollups.length; i++) {
+            if (rollups[i].getResolutionMillis() == resolutionMillis) {
+                rollups[i].restore(coveredFrom, buckets);
+                if (restoredRollups == null) {
+                    restoredRollups = new boolean[rollups.length];
+                }
+                restoredRollups[i] = true;
+            }
+        }
+    }
+
+    /**
+     * Adds an archived raw sample to the wrapped series and the rolling window, and to the rollups that were
+     * not restored by {@link #restoreRollup(long, long, List)}; restored rollups already hold it.
+     *
+     * @param timestamp The timestamp of the sample.
+     * @param value     The measurement value of the sample.
+     */
+    void restore(long timestamp, double value) {
+        boolean accepted = series.accepts(timestamp);
+        series.add(timestamp, value);
+        if (!accepted) {
+            return;
+        }
+        if (window != null) {
+            window.add(timestamp, value);
+        }
+        for (int i = 0; i < rollups.length; i++) {
+            if (restoredRollups == null || !restoredRollups[i]) {
+                rollups[i].add(timestamp, value);
+            }
+        }
+    }
+
+    /**
+     * Sheds the raw samples older than the cutoff if a rollup tier still holds all of them in downsampled form,
+     * so long-range queries can still be answered from the rollups. Nothing is shed otherwise.
+     *
+     * @param cutoff The timestamp of the oldest raw sample kept.
+     * @return The number of raw samples shed.
+     */
+    long downsample(long cutoff) {
+        if (series.size() == 0) {
+            return 0;
+        }
+        long oldest = series.getTimestamp(0);
+        if (oldest >= cutoff) {
+            return 0;
+        }
+        for (Rollup rollup : rollups) {
+            if (rollup.covers(oldest)) {
+                return series.shed(cutoff);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Drops the older half of the rollup buckets that end before the cutoff in every tier.
+     *
+     * @param cutoff The time before which buckets may be dropped.
+     * @return The number of buckets dropped.
+     */
+    int shedRollups(long cutoff) {
+        int shed = 0;
+        for (Rollup rollup : rollups) {
+            shed += rollup.shed(cutoff);
+        }
+        return shed;
+    }
+
+    /**
+     * Adds a sample to the wrapped series and, unless the wrapped series drops it as too late,
+     * to the rolling window and the rollups.
+     *
+     * @param timestamp The timestamp of the sample.
+     * @param value     The measurement value of the sample.
+     */
+    @Override
+    public void add(long timestamp, double value) {
+        boolean accepted = series.accepts(timestamp);
+        series.add(timestamp, value);
+        if (!accepted) {
+            return;
+        }
+        if (window != null) {
+            window.add(timestamp, value);
+        }
+        for (Rollup rollup : rollups) {
+            rollup.add(timestamp, value);
+        }
+    }
+
+    /**
+     * Returns the index of the first sample with a timestamp greater than or equal to the given time.
+     *
+     * @param timestamp The time to search for.
+     * @return The index of the first matching sample, or {@link #size()} if there is none.
+     */
+    @Override
+    public int lowerBound(long timestamp) {
+        return series.lowerBound(timestamp);
+    }
+
+    /**
+     * Returns the index of the first sample with a timestamp strictly greater than the given time.
+     *
+     * @param timestamp The time to search for.
+     * @return The index of the first matching sample, or {@link #size()} if there is none.
+     */
+    @Override
+    public int upperBound(long timestamp) {
+        return series.upperBound(timestamp);
+    }
+
+    /**
+     * Gets the timestamp of the sample at the given index.
+     *
+     * @param index The index of the sample.
+     * @return The timestamp of the sample.
+     */
+    @Override
+    public long getTimestamp(int index) {
+        return series.getTimestamp(index);
+    }
+
+    /**
+     * Gets the measurement value of the sample at the given index.
+     *
+     * @param index The index of the sample.
+     * @return The measurement value of the sample.
+     */
+    @Override
+    public double getValue(int index) {
+        return series.getValue(index);
+    }
+
+    /**
+     * Visits the samples with a timestamp within the given range, in order, without copying them.
+     *
+     * @param startTime The start of the range, inclusive.
+     * @param endTime   The end of the range, inclusive.
+     * @param visitor   Receives the samples and may stop the scan early.
+     * @return true if the scan reached the end of the range, false if the visitor stopped it.
+     */
+    @Override
+    public boolean scan(long startTime, long endTime, SampleVisitor visitor) {
+        return series.scan(startTime, endTime, visitor);
+    }
+
+    /**
+     * Reports whether the wrapped series can be scanned without a lock; the aggregates always need one.
+     *
+     * @return true if the wrapped series supports snapshot scans.
+     */
+    @Override
+    public boolean supportsSnapshotScan() {
+        return series.supportsSnapshotScan();
+    }
+
+    /**
+     * Freezes the wrapped series; the aggregates are not part of its samples.
+     *
+     * @return The samples at this point in time.
+     */
+    @Override
+    public Frozen freeze() {
+        return series.freeze();
+    }
+
+    /**
+     * Copies the timestamps of a range of samples into a new array.
+     *
+     * @param from The index of the first sample, inclusive.
+     * @param to   The index of the last sample, exclusive.
+     * @return The timestamps of the samples in order.
+     */
+    @Override
+    public long[] copyTimestamps(int from, int to) {
+        return series.copyTimestamps(from, to);
+    }
+
+    /**
+     * Copies the measurement values of a range of samples into a new array.
+     *
+     * @param from The index of the first sample, inclusive.
+     * @param to   The index of the last sample, exclusive.
+     * @return The values of the samples in order.
+     */
+    @Override
+    public double[] copyValues(int from, int to) {
+        return series.copyValues(from, to);
+    }
+
+    /**
+     * Gets the number of samples in the series.
+     *
+     * @return The number of samples.
+     */
+    @Override
+    public int size() {
+        return series.size();
+    }
+
+    /**
+     * Gets the number of samples dropped by the retention policy since the series was created.
+     *
+     * @return The number of evicted samples.
+     */
+    @Override
+    public long getEvictedCount() {
+        return series.getEvictedCount();
+    }
+
+    /**
+     * Checks whether the wrapped series would keep a sample with the given timestamp.
+     *
+     * @param timestamp The timestamp of the sample.
+     * @return true if the sample would be kept.
+     */
+    @Override
+    public boolean accepts(long timestamp) {
+        return series.accepts(timestamp);
+    }
+
+    /**
+     * Gets the number of samples the wrapped series dropped for arriving too late.
+     *
+     * @return The number of late samples dropped.
+     */
+    @Override
+    public long getDroppedLateCount() {
+        return series.getDroppedLateCount();
+    }
+
+    /**
+     * Gets the number of duplicate samples the wrapped series dropped.
+     *
+     * @return The number of duplicates dropped.
+     */
+    @Override
+    public long getDuplicateCount() {
+        return series.getDuplicateCount();
+    }
+
+    /**
+     * Spills old history of the wrapped series; the aggregates stay on the heap.
+     *
+     * @param coldStore           The store to write the spilled samples to.
+     * @param hotWindowMillis     How much history before the newest sample stays on the heap.
+     * @param coldSamplesPerBlock The number of samples written to the cold store as one block.
+     * @return The number of samples spilled.
+     */
+    @Override
+    public long spill(ColdStore coldStore, long hotWindowMillis, int coldSamplesPerBlock) {
+        return series.spill(coldStore, hotWindowMillis, coldSamplesPerBlock);
+    }
+
+    /**
+     * Sheds old raw history of the wrapped series; the aggregates are not affected.
+     *
+     * @param cutoff The timestamp of the oldest sample kept.
+     * @return The number of samples evicted.
+     */
+    @Override
+    public long shed(long cutoff) {
+        return series.shed(cutoff);
+    }
+
+    /**
+     * Gets the retention policy of the series.
+     *
+     * @return The retention policy.
+     */
+    @Override
+    public RetentionPolicy getRetentionPolicy() {
+        return series.getRetentionPolicy();
+    }
+
+    /**
+     * Replaces the retention policy of the series and the rolling window.
+     * Rollups are bounded by their own tiers and are not affected.
+     *
+     * @param retentionPolicy The new retention policy.
+     */
+    @Override
+    public void setRetentionPolicy(RetentionPolicy retentionPolicy) {
+        series.setRetentionPolicy(retentionPolicy);
+        if (window != null) {
+            window.setRetentionPolicy(retentionPolicy);
+        }
+    }
+
+    /**
+     * Releases the wrapped series.
+     */
+    @Override
+    public void close() {
+        series.close();
+    }
+}
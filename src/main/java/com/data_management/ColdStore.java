@@ -0,0 +1,212 @@
+package com.data_management;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Append-only, memory-mapped segment files holding {@link GorillaBlock}s that have been spilled out of the heap.
+ * Blocks of all series are appended to the current segment; a full segment is sealed and never written again.
+ * Each written block is returned as an {@link Extent} that the series keeps in place of the block, so the heap
+ * only holds a small descriptor per cold block while its samples stay in the page cache.
+ * <p>
+ * Reads go through the mapping with absolute positions, so any number of threads can read while a block is
+ * being appended elsewhere in the segment. Space is reclaimed per segment: once every block in a sealed segment
+ * has been released, its file is deleted. A mapping stays valid until it is garbage collected, so a reader still
+ * holding an extent of a deleted segment can finish. The files are scratch space rather than a durable format;
+ * durability is provided by {@link WriteAheadLog}.
+ */
+public final class ColdStore {
+    private final Path directory;
+    private final int segmentBytes;
+    private final List<Segment> segments = new ArrayList<>();
+    private Segment active;
+    private long nextSegmentId;
+
+    /**
+     * Constructs an empty ColdStore.
+     *
+     * @param directory    The directory for the segment files; it is created if needed.
+     * @param segmentBytes The size of each segment file in bytes.
+     * @throws IllegalArgumentException If segmentBytes is not positive.
+     * @throws UncheckedIOException     If the directory cannot be created.
+     */
+    public ColdStore(Path directory, int segmentBytes) {
+        if (segmentBytes <= 0) {
+            throw new IllegalArgumentException("Segments must hold at least one byte");
+        }
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to create cold storage directory " + directory, e);
+        }
+    }
+
+    /**
+     * Appends a block to the current segment, sealing it and mapping a new one if the block does not fit.
+     *
+     * @param block The block to write.
+     * @return The location of the block, from which it can be read back.
+     * @throws UncheckedIOException If a new segment file cannot be mapped.
+     */
+    public synchronized Extent write(GorillaBlock block) {
+        int bytes = block.getSerializedBytes();
+        if (active == null || active.used + bytes > active.buffer.capacity()) {
+            seal();
+            active = mapSegment(Math.max(segmentBytes, bytes));
+        }
+        int offset = active.used;
+        block.writeTo(active.buffer, offset);
+        active.used += bytes;
+        active.liveBytes += bytes;
+        return new Extent(this, active, offset, bytes, block);
+    }
+
+    /**
+     * Gets the number of segment files.
+     *
+     * @return The number of segments.
+     */
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Gets the number of bytes taken by blocks that have not been released.
+     *
+     * @return The size of the live blocks in bytes.
+     */
+    public synchronized long getLiveBytes() {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            bytes += segment.liveBytes;
+        }
+        return bytes;
+    }
+
+    private synchronized void release(Extent extent) {
+        Segment segment = extent.segment;
+        segment.liveBytes -= extent.bytes;
+        if (segment.liveBytes == 0 && segment != active) {
+            delete(segment);
+        }
+    }
+
+    private void seal() {
+        if (active != null && active.liveBytes == 0) {
+            delete(active);
+        }
+        active = null;
+    }
+
+    private Segment mapSegment(int bytes) {
+        Path file = directory.resolve(String.format("cold-%010d.dat", nextSegmentId++));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            Segment segment = new Segment(file, channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes));
+            segments.add(segment);
+            return segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to map cold segment " + file, e);
+        }
+    }
+
+    private void delete(Segment segment) {
+        segments.remove(segment);
+        try {
+            Files.deleteIfExists(segment.file);
+        } catch (IOException e) {
+            System.err.println("Error deleting cold segment " + segment.file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * A segment file, the number of bytes appended to it and the number of those that are still referenced.
+     */
+    private static final class Segment {
+        private final Path file;
+        private final MappedByteBuffer buffer;
+        private int used;
+        private long liveBytes;
+
+        private Segment(Path file, MappedByteBuffer buffer) {
+            this.file = file;
+            this.buffer = buffer;
+        }
+    }
+
+    /**
+     * The location of a spilled block, together with the block's count and time range so a series can
+     * search its cold blocks without reading them.
+     */
+    public static final class Extent {
+        private final ColdStore store;
+        private final Segment segment;
+        private final int offset;
+        private final int bytes;
+        private final int count;
+        private final long firstTimestamp;
+        private final long lastTimestamp;
+
+        private Extent(ColdStore store, Segment segment, int offset, int bytes, GorillaBlock block) {
+            this.store = store;
+            this.segment = segment;
+            this.offset = offset;
+            this.bytes = bytes;
+            this.count = block.getCount();
+            this.firstTimestamp = block.getFirstTimestamp();
+            this.lastTimestamp = block.getLastTimestamp();
+        }
+
+        /**
+         * Reads the block back from the mapped segment.
+         *
+         * @return A heap copy of the block.
+         */
+        public GorillaBlock read() {
+            return GorillaBlock.readFrom(segment.buffer, offset);
+        }
+
+        /**
+         * Marks the block as no longer referenced, deleting its segment file if nothing else in it is.
+         */
+        public void release() {
+            store.release(this);
+        }
+
+        /**
+         * Gets the number of samples in the block.
+         *
+         * @return The number of samples.
+         */
+        public int getCount() {
+            return count;
+        }
+
+        /**
+         * Gets the timestamp of the first sample in the block.
+         *
+         * @return The first timestamp.
+         */
+        public long getFirstTimestamp() {
+            return firstTimestamp;
+        }
+
+        /**
+         * Gets the timestamp of the last sample in the block.
+         *
+         * @return The last timestamp.
+         */
+        public long getLastTimestamp() {
+            return lastTimestamp;
+        }
+    }
+}
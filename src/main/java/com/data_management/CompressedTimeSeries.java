@@ -0,0 +1,851 @@
+package com.data_management;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * A heap-backed {@link SampleSeries} that seals its history into immutable {@link GorillaBlock}s.
+ * New samples are collected in a small uncompressed open block; once it holds {@code samplesPerBlock}
+ * samples it is compressed and sealed. Regular vital signs compress to a few bits per sample, an order
+ * of magnitude less than uncompressed columns and far less than one {@link PatientRecord} per sample.
+ * Range scans only decode the blocks overlapping the requested window and stop decoding as soon as the
+ * window ends. Late samples that fall into a sealed block rebuild that block, which is rare.
+ * Positional access ({@link #getTimestamp(int)}, {@link #getValue(int)}) decodes part of a block per call,
+ * so readers should prefer {@link #scan(long, long, SampleVisitor)}.
+ * Old blocks can be spilled to a {@link ColdStore} with {@link #spill(ColdStore, long, int)}; they are then read
+ * back from the mapped segment whenever they are decoded, and a late sample turns its cold block hot again.
+ * <p>
+ * The state of the series is published as immutable versions: sealed blocks are never modified, the open
+ * block is only appended to, and anything that would move samples (sealing, late samples, eviction)
+ * publishes a new version instead of changing the old one. {@link #scan(long, long, SampleVisitor)} therefore
+ * needs no lock and sees the series as it was at one point in time, even while another thread adds samples.
+ * All other methods, and writes, must still be serialized by the owning {@link Patient}.
+ */
+public class CompressedTimeSeries implements SampleSeries {
+
+    private static final long[] NO_TIMESTAMPS = new long[0];
+    private static final double[] NO_VALUES = new double[0];
+    private static final Block[] NO_BLOCKS = new Block[0];
+    private static final VarHandle TAIL_COUNT;
+
+    static {
+        try {
+            TAIL_COUNT = MethodHandles.lookup().findVarHandle(Tail.class, "count", int.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * A sealed block and the position of its first sample since the series was created. A hot block holds its
+     * data on the heap; a cold block only holds the extent it was spilled to and reads it back when decoded.
+     * Blocks are never modified once published.
+     */
+    private static final class Block {
+        private final GorillaBlock data;
+        private final ColdStore.Extent extent;
+        private final long firstIndex;
+
+        private Block(GorillaBlock data, long firstIndex) {
+            this.data = data;
+            this.extent = null;
+            this.firstIndex = firstIndex;
+        }
+
+        private Block(ColdStore.Extent extent, long firstIndex) {
+            this.data = null;
+            this.extent = extent;
+            this.firstIndex = firstIndex;
+        }
+
+        private Block moved(long firstIndex) {
+            return data != null ? new Block(data, firstIndex) : new Block(extent, firstIndex);
+        }
+
+        private GorillaBlock load() {
+            return data != null ? data : extent.read();
+        }
+
+        private int count() {
+            return data != null ? data.getCount() : extent.getCount();
+        }
+
+        private long firstTimestamp() {
+            return data != null ? data.getFirstTimestamp() : extent.getFirstTimestamp();
+        }
+
+        private long lastTimestamp() {
+            return data != null ? data.getLastTimestamp() : extent.getLastTimestamp();
+        }
+
+        private long endIndex() {
+            return firstIndex + count();
+        }
+
+        private void release() {
+            if (extent != null) {
+                extent.release();
+            }
+        }
+    }
+
+    /**
+     * The open block. Samples are only ever written beyond the count and become visible to readers when
+     * the count is raised; a late sample that has to move others goes into a copy instead.
+     */
+    private static final class Tail {
+        private final long[] timestamps;
+        private final double[] values;
+        private final long firstIndex;
+        private volatile int count;
+
+        private Tail(long[] timestamps, double[] values, long firstIndex, int count) {
+            this.timestamps = timestamps;
+            this.values = values;
+            this.firstIndex = firstIndex;
+            this.count = count;
+        }
+    }
+
+    /**
+     * An immutable state of the series: the blocks {@code [blockFrom, blockTo)} of an array that is only
+     * ever written beyond {@code blockTo}, the open block, and the position of the oldest retained sample.
+     * A version together with the count of its open block read while the version was current is a
+     * point-in-time view of the series.
+     */
+    private static final class Version {
+        private final Block[] blocks;
+        private final int blockFrom;
+        private final int blockTo;
+        private final Tail tail;
+        private final long base;
+
+        private Version(Block[] blocks, int blockFrom, int blockTo, Tail tail, long base) {
+            this.blocks = blocks;
+            this.blockFrom = blockFrom;
+            this.blockTo = blockTo;
+            this.tail = tail;
+            this.base = base;
+        }
+
+        private int openStart() {
+            return (int) Math.max(0, base - tail.firstIndex);
+        }
+    }
+
+    private final int samplesPerBlock;
+    private volatile Version version;
+    // The same version for the writer and locked readers, which need no volatile read.
+    private Version state;
+    private long firstTimestamp;
+    private boolean firstTimestampKnown;
+    private RetentionPolicy retentionPolicy;
+    private long evictedCount;
+
+    /**
+     * Constructs an empty CompressedTimeSeries.
+     *
+     * @param samplesPerBlock The number of samples collected before a block is compressed.
+     * @param retentionPolicy The policy deciding how much history is kept.
+     * @throws IllegalArgumentException If samplesPerBlock is not positive.
+     */
+    public CompressedTimeSeries(int samplesPerBlock, RetentionPolicy retentionPolicy) {
+        if (samplesPerBlock <= 0) {
+            throw new IllegalArgumentException("Blocks must hold at least one sample");
+        }
+        this.samplesPerBlock = samplesPerBlock;
+        this.retentionPolicy = retentionPolicy;
+        publish(new Version(NO_BLOCKS, 0, 0, new Tail(NO_TIMESTAMPS, NO_VALUES, 0, 0), 0));
+    }
+
+    /**
+     * Adds a sample, keeping the series sorted by timestamp.
+     * In-order samples are appended to the open block, which is sealed once full; a late sample is inserted
+     * after any samples with the same timestamp. If the series is at its count limit, the oldest sample is
+     * evicted; a late sample older than everything in a full series is evicted immediately instead.
+     *
+     * @param timestamp The timestamp of the sample.
+     * @param value     The measurement value of the sample.
+     */
+    @Override
+    public void add(long timestamp, double value) {
+        int maxSamples = retentionPolicy.getMaxSamples();
+        int size = size();
+        if (maxSamples > 0 && size >= maxSamples) {
+            if (timestamp < lastTimestamp() && timestamp < firstTimestamp()) {
+                evictedCount++;
+                return;
+            }
+            evict(1);
+            size--;
+        }
+
+        Version current = state;
+        if (current.blockFrom == current.blockTo
+                || timestamp >= current.blocks[current.blockTo - 1].lastTimestamp()) {
+            insertOpen(timestamp, value);
+        } else {
+            insertSealed(timestamp, value);
+        }
+        if (size == 0 || (firstTimestampKnown && timestamp < firstTimestamp)) {
+            firstTimestamp = timestamp;
+            firstTimestampKnown = true;
+        }
+
+        if (state.tail.count == samplesPerBlock) {
+            seal();
+        }
+        evictExpired();
+    }
+
+    /**
+     * Visits the samples with a timestamp within the given range, in order, decoding only the blocks
+     * that overlap the range. The scan needs no lock: it reads the version current when it starts,
+     * so samples added or evicted concurrently are not seen.
+     *
+     * @param startTime The start of the range, inclusive.
+     * @param endTime   The end of the range, inclusive.
+     * @param visitor   Receives the samples and may stop the scan early.
+     * @return true if the scan reached the end of the range, false if the visitor stopped it.
+     */
+    @Override
+    public boolean scan(long startTime, long endTime, SampleVisitor visitor) {
+        Version current;
+        int openCount;
+        do {
+            current = version;
+            openCount = current.tail.count;
+        } while (current != version);
+        return scan(current, openCount, startTime, endTime, visitor);
+    }
+
+    /**
+     * Captures the current version of the series together with the count of its open block, in O(1).
+     * Later samples go beyond that count or into new versions, so the frozen samples never change.
+     *
+     * @return The samples at this point in time.
+     */
+    @Override
+    public Frozen freeze() {
+        Version current = state;
+        int openCount = current.tail.count;
+        int size = (int) (current.tail.firstIndex + openCount - current.base);
+        return new Frozen() {
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public boolean scan(SampleVisitor visitor) {
+                return CompressedTimeSeries.scan(current, openCount, Long.MIN_VALUE, Long.MAX_VALUE, visitor);
+            }
+        };
+    }
+
+    private static boolean scan(Version current, int openCount, long startTime, long endTime, SampleVisitor visitor) {
+        long base = current.base;
+        for (int k = firstBlockEndingAtOrAfter(current, startTime, false); k < current.blockTo; k++) {
+            Block block = current.blocks[k];
+            if (block.firstTimestamp() > endTime) {
+                return true;
+            }
+            GorillaBlock.Reader reader = new GorillaBlock.Reader(block.load());
+            for (long index = block.firstIndex; reader.next(); index++) {
+                long timestamp = reader.getTimestamp();
+                if (timestamp > endTime) {
+                    return true;
+                }
+                if (index >= base && timestamp >= startTime && !visitor.visit(timestamp, reader.getValue())) {
+                    return false;
+                }
+            }
+        }
+        Tail tail = current.tail;
+        for (int i = openLowerBound(current, openCount, startTime, false); i < openCount && tail.timestamps[i] <= endTime; i++) {
+            if (!visitor.visit(tail.timestamps[i], tail.values[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reports that {@link #scan(long, long, SampleVisitor)} may run without the owning patient's lock.
+     *
+     * @return true.
+     */
+    @Override
+    public boolean supportsSnapshotScan() {
+        return true;
+    }
+
+    /**
+     * Returns the index of the first sample with a timestamp greater than or equal to the given time.
+     *
+     * @param timestamp The time to search for.
+     * @return The index of the first matching sample, or {@link #size()} if there is none.
+     */
+    @Override
+    public int lowerBound(long timestamp) {
+        return bound(timestamp, false);
+    }
+
+    /**
+     * Returns the index of the first sample with a timestamp strictly greater than the given time.
+     *
+     * @param timestamp The time to search for.
+     * @return The index of the first matching sample, or {@link #size()} if there is none.
+     */
+    @Override
+    public int upperBound(long timestamp) {
+        return bound(timestamp, true);
+    }
+
+    /**
+     * Gets the timestamp of the sample at the given index. Samples in sealed blocks are decoded on each call.
+     *
+     * @param index The index of the sample.
+     * @return The timestamp of the sample.
+     */
+    @Override
+    public long getTimestamp(int index) {
+        Version current = state;
+        long position = current.base + index;
+        Tail tail = current.tail;
+        if (position >= tail.firstIndex) {
+            return tail.timestamps[(int) (position - tail.firstIndex)];
+        }
+        return seek(current, position).getTimestamp();
+    }
+
+    /**
+     * Gets the measurement value of the sample at the given index. Samples in sealed blocks are decoded on each call.
+     *
+     * @param index The index of the sample.
+     * @return The measurement value of the sample.
+     */
+    @Override
+    public double getValue(int index) {
+        Version current = state;
+        long position = current.base + index;
+        Tail tail = current.tail;
+        if (position >= tail.firstIndex) {
+            return tail.values[(int) (position - tail.firstIndex)];
+        }
+        return seek(current, position).getValue();
+    }
+
+    /**
+     * Copies the timestamps of a range of samples into a new array, decoding each block once.
+     *
+     * @param from The index of the first sample, inclusive.
+     * @param to   The index of the last sample, exclusive.
+     * @return The timestamps of the samples in order.
+     */
+    @Override
+    public long[] copyTimestamps(int from, int to) {
+        long[] timestamps = new long[to - from];
+        copy(from, to, timestamps, null);
+        return timestamps;
+    }
+
+    /**
+     * Copies the measurement values of a range of samples into a new array, decoding each block once.
+     *
+     * @param from The index of the first sample, inclusive.
+     * @param to   The index of the last sample, exclusive.
+     * @return The values of the samples in order.
+     */
+    @Override
+    public double[] copyValues(int from, int to) {
+        double[] values = new double[to - from];
+        copy(from, to, null, values);
+        return values;
+    }
+
+    /**
+     * Gets the number of samples in the series.
+     *
+     * @return The number of samples.
+     */
+    @Override
+    public int size() {
+        Version current = state;
+        return (int) (current.tail.firstIndex + current.tail.count - current.base);
+    }
+
+    /**
+     * Gets the number of samples dropped by the retention policy since the series was created.
+     *
+     * @return The number of evicted samples.
+     */
+    @Override
+    public long getEvictedCount() {
+        return evictedCount;
+    }
+
+    /**
+     * Evicts the samples older than the given time. The remaining blocks are published in a right-sized array,
+     * so evicted blocks are no longer reachable from the series once in-flight scans of older versions finish.
+     *
+     * @param cutoff The timestamp of the oldest sample kept.
+     * @return The number of samples evicted.
+     */
+    @Override
+    public long shed(long cutoff) {
+        long evictedBefore = evictedCount;
+        evictBefore(cutoff);
+        Version current = state;
+        int live = current.blockTo - current.blockFrom;
+        if (current.blockFrom > 0 || current.blocks.length > Math.max(8, 2 * live)) {
+            Block[] blocks = newBlockArray(live);
+            System.arraycopy(current.blocks, current.blockFrom, blocks, 0, live);
+            publish(new Version(blocks, 0, live, current.tail, current.base));
+        }
+        return evictedCount - evictedBefore;
+    }
+
+    /**
+     * Gets the retention policy of the series.
+     *
+     * @return The retention policy.
+     */
+    @Override
+    public RetentionPolicy getRetentionPolicy() {
+        return retentionPolicy;
+    }
+
+    /**
+     * Replaces the retention policy and immediately evicts samples the new policy does not keep.
+     *
+     * @param retentionPolicy The new retention policy.
+     */
+    @Override
+    public void setRetentionPolicy(RetentionPolicy retentionPolicy) {
+        this.retentionPolicy = retentionPolicy;
+        int maxSamples = retentionPolicy.getMaxSamples();
+        int size = size();
+        if (maxSamples > 0 && size > maxSamples) {
+            evict(size - maxSamples);
+        }
+        evictExpired();
+    }
+
+    /**
+     * Gets the number of sealed blocks.
+     *
+     * @return The number of blocks.
+     */
+    public int getBlockCount() {
+        Version current = state;
+        return current.blockTo - current.blockFrom;
+    }
+
+    /**
+     * Gets the number of sealed blocks that have been spilled to a {@link ColdStore}.
+     *
+     * @return The number of cold blocks.
+     */
+    public int getColdBlockCount() {
+        Version current = state;
+        int cold = 0;
+        for (int k = current.blockFrom; k < current.blockTo; k++) {
+            if (current.blocks[k].extent != null) {
+                cold++;
+            }
+        }
+        return cold;
+    }
+
+    /**
+     * Moves sealed blocks whose samples are all more than the hot window older than the newest sample
+     * to the cold store. Consecutive blocks are merged into cold blocks of {@code coldSamplesPerBlock} samples,
+     * so the heap keeps one small descriptor per cold block however long the history grows; a run that is
+     * still shorter than that waits for later spills, unless a cold block follows it and it cannot grow.
+     * The merged blocks are published as a new version, so concurrent scans keep reading the old blocks.
+     *
+     * @param coldStore           The store to write the cold blocks to.
+     * @param hotWindowMillis     How much history before the newest sample stays on the heap.
+     * @param coldSamplesPerBlock The number of samples merged into one cold block.
+     * @return The number of samples spilled.
+     * @throws java.io.UncheckedIOException If a cold segment cannot be mapped.
+     */
+    @Override
+    public long spill(ColdStore coldStore, long hotWindowMillis, int coldSamplesPerBlock) {
+        if (size() == 0) {
+            return 0;
+        }
+        long cutoff = lastTimestamp() - hotWindowMillis;
+        Version current = state;
+        Block[] blocks = null;
+        int to = 0;
+        long spilled = 0;
+        int k = current.blockFrom;
+        while (k < current.blockTo) {
+            int end = k;
+            long samples = 0;
+            while (end < current.blockTo && samples < coldSamplesPerBlock && isSpillable(current.blocks[end], cutoff)) {
+                samples += current.blocks[end].endIndex() - Math.max(current.blocks[end].firstIndex, current.base);
+                end++;
+            }
+            boolean beforeCold = end < current.blockTo && current.blocks[end].extent != null;
+            if (end > k && (samples >= coldSamplesPerBlock || beforeCold)) {
+                if (blocks == null) {
+                    blocks = newBlockArray(current.blockTo - current.blockFrom);
+                    for (int i = current.blockFrom; i < k; i++) {
+                        blocks[to++] = current.blocks[i];
+                    }
+                }
+                blocks[to++] = spillRun(coldStore, current, k, end, (int) samples);
+                spilled += samples;
+                k = end;
+            } else {
+                end = Math.max(end, k + 1);
+                if (blocks != null) {
+                    for (int i = k; i < end; i++) {
+                        blocks[to++] = current.blocks[i];
+                    }
+                }
+                k = end;
+            }
+        }
+        if (blocks != null) {
+            publish(new Version(blocks, 0, to, current.tail, current.base));
+        }
+        return spilled;
+    }
+
+    /**
+     * Gets the approximate number of bytes holding the samples on the heap: the compressed blocks that have not
+     * been spilled plus the open block.
+     *
+     * @return The size of the sample data in bytes.
+     */
+    public long getEncodedBytes() {
+        Version current = state;
+        long bytes = (long) current.tail.timestamps.length * (Long.BYTES + Double.BYTES);
+        for (int k = current.blockFrom; k < current.blockTo; k++) {
+            GorillaBlock data = current.blocks[k].data;
+            if (data != null) {
+                bytes += data.getEncodedBytes();
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Drops all samples and releases the cold blocks. The empty state is not published to lock-free scans:
+     * a scan that found this series just before it was closed still sees the samples it had, rather than an
+     * empty series, and released cold blocks stay readable until their mapping is garbage collected.
+     */
+    @Override
+    public void close() {
+        Version current = state;
+        for (int k = current.blockFrom; k < current.blockTo; k++) {
+            current.blocks[k].release();
+        }
+        long nextIndex = current.tail.firstIndex + current.tail.count;
+        state = new Version(NO_BLOCKS, 0, 0, new Tail(NO_TIMESTAMPS, NO_VALUES, nextIndex, 0), nextIndex);
+        firstTimestampKnown = false;
+    }
+
+    private void publish(Version next) {
+        state = next;
+        version = next;
+    }
+
+    private long lastTimestamp() {
+        Version current = state;
+        Tail tail = current.tail;
+        int openCount = tail.count;
+        return openCount > current.openStart()
+                ? tail.timestamps[openCount - 1]
+                : current.blocks[current.blockTo - 1].lastTimestamp();
+    }
+
+    private long firstTimestamp() {
+        if (!firstTimestampKnown) {
+            firstTimestamp = getTimestamp(0);
+            firstTimestampKnown = true;
+        }
+        return firstTimestamp;
+    }
+
+    private void insertOpen(long timestamp, double value) {
+        Version current = state;
+        Tail tail = current.tail;
+        if (tail.timestamps.length == 0) {
+            tail = new Tail(new long[samplesPerBlock], new double[samplesPerBlock], tail.firstIndex, 0);
+            current = new Version(current.blocks, current.blockFrom, current.blockTo, tail, current.base);
+            publish(current);
+        }
+        int openCount = tail.count;
+        if (openCount > current.openStart() && tail.timestamps[openCount - 1] > timestamp) {
+            // Readers may be scanning the open block, so the samples are moved in a copy.
+            int index = openLowerBound(current, openCount, timestamp, true);
+            long[] timestamps = new long[samplesPerBlock];
+            double[] values = new double[samplesPerBlock];
+            System.arraycopy(tail.timestamps, 0, timestamps, 0, index);
+            System.arraycopy(tail.values, 0, values, 0, index);
+            System.arraycopy(tail.timestamps, index, timestamps, index + 1, openCount - index);
+            System.arraycopy(tail.values, index, values, index + 1, openCount - index);
+            timestamps[index] = timestamp;
+            values[index] = value;
+            Tail copy = new Tail(timestamps, values, tail.firstIndex, openCount + 1);
+            publish(new Version(current.blocks, current.blockFrom, current.blockTo, copy, current.base));
+            return;
+        }
+        tail.timestamps[openCount] = timestamp;
+        tail.values[openCount] = value;
+        TAIL_COUNT.setRelease(tail, openCount + 1);
+    }
+
+    private void insertSealed(long timestamp, double value) {
+        Version current = state;
+        int low = current.blockFrom;
+        int high = current.blockTo;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (current.blocks[mid].firstTimestamp() <= timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        int k = Math.max(current.blockFrom, low - 1);
+        Block block = current.blocks[k];
+        int skip = (int) Math.max(0, current.base - block.firstIndex);
+        int count = block.count();
+        long[] timestamps = new long[count + 1];
+        double[] values = new double[count + 1];
+        block.load().decode(timestamps, values);
+
+        int index = count;
+        while (index > skip && timestamps[index - 1] > timestamp) {
+            timestamps[index] = timestamps[index - 1];
+            values[index] = values[index - 1];
+            index--;
+        }
+        timestamps[index] = timestamp;
+        values[index] = value;
+
+        // The block and everything after it shift, so the new state goes into a fresh block array.
+        long firstIndex = block.firstIndex + skip;
+        int total = count + 1 - skip;
+        Block[] blocks = newBlockArray(current.blockTo - current.blockFrom + 1);
+        int to = 0;
+        for (int i = current.blockFrom; i < k; i++) {
+            blocks[to++] = current.blocks[i];
+        }
+        if (total > 2 * samplesPerBlock) {
+            int half = skip + total / 2;
+            blocks[to++] = new Block(GorillaBlock.encode(timestamps, values, skip, half), firstIndex);
+            blocks[to++] = new Block(GorillaBlock.encode(timestamps, values, half, count + 1), firstIndex + total / 2);
+        } else {
+            blocks[to++] = new Block(GorillaBlock.encode(timestamps, values, skip, count + 1), firstIndex);
+        }
+        for (int i = k + 1; i < current.blockTo; i++) {
+            Block later = current.blocks[i];
+            blocks[to++] = later.moved(later.firstIndex + 1);
+        }
+        Tail tail = current.tail;
+        Tail shifted = new Tail(tail.timestamps, tail.values, tail.firstIndex + 1, tail.count);
+        publish(new Version(blocks, 0, to, shifted, current.base));
+        // A cold block is rebuilt on the heap, and the next spill writes it out again.
+        block.release();
+    }
+
+    private void seal() {
+        Version current = state;
+        Tail tail = current.tail;
+        int openCount = tail.count;
+        int start = current.openStart();
+        Block block = new Block(GorillaBlock.encode(tail.timestamps, tail.values, start, openCount), tail.firstIndex + start);
+
+        Block[] blocks = current.blocks;
+        int from = current.blockFrom;
+        int to = current.blockTo;
+        if (to == blocks.length) {
+            int live = to - from;
+            blocks = newBlockArray(live + 1);
+            System.arraycopy(current.blocks, from, blocks, 0, live);
+            from = 0;
+            to = live;
+        }
+        // No published version reads beyond its own blockTo, so the slot can be written in place.
+        blocks[to] = block;
+        Tail next = new Tail(new long[samplesPerBlock], new double[samplesPerBlock], tail.firstIndex + openCount, 0);
+        publish(new Version(blocks, from, to + 1, next, current.base));
+    }
+
+    private void evict(int count) {
+        evictedCount += count;
+        firstTimestampKnown = false;
+        Version current = state;
+        long base = current.base + count;
+        int from = current.blockFrom;
+        while (from < current.blockTo && current.blocks[from].endIndex() <= base) {
+            current.blocks[from].release();
+            from++;
+        }
+        publish(new Version(current.blocks, from, current.blockTo, current.tail, base));
+    }
+
+    private void evictExpired() {
+        long maxAgeMillis = retentionPolicy.getMaxAgeMillis();
+        if (maxAgeMillis == 0 || size() == 0) {
+            return;
+        }
+        evictBefore(lastTimestamp() - maxAgeMillis);
+    }
+
+    private void evictBefore(long cutoff) {
+        while (size() > 0) {
+            Version current = state;
+            if (current.blockFrom == current.blockTo) {
+                break;
+            }
+            Block oldest = current.blocks[current.blockFrom];
+            if (oldest.lastTimestamp() >= cutoff) {
+                break;
+            }
+            evict((int) (oldest.endIndex() - current.base));
+        }
+        if (size() > 0 && firstTimestamp() < cutoff) {
+            evict(lowerBound(cutoff));
+        }
+    }
+
+    private static boolean isSpillable(Block block, long cutoff) {
+        return block.data != null && block.lastTimestamp() < cutoff;
+    }
+
+    private static Block spillRun(ColdStore coldStore, Version current, int from, int to, int samples) {
+        long[] timestamps = new long[samples];
+        double[] values = new double[samples];
+        long firstIndex = Math.max(current.blocks[from].firstIndex, current.base);
+        int count = 0;
+        for (int k = from; k < to; k++) {
+            Block block = current.blocks[k];
+            GorillaBlock.Reader reader = new GorillaBlock.Reader(block.data);
+            for (long index = block.firstIndex; reader.next(); index++) {
+                if (index >= current.base) {
+                    timestamps[count] = reader.getTimestamp();
+                    values[count] = reader.getValue();
+                    count++;
+                }
+            }
+        }
+        return new Block(coldStore.write(GorillaBlock.encode(timestamps, values, 0, count)), firstIndex);
+    }
+
+    private Block[] newBlockArray(int blocks) {
+        // Room to seal more blocks before the array has to be copied again.
+        return new Block[Math.max(8, 2 * blocks)];
+    }
+
+    private int bound(long timestamp, boolean upper) {
+        Version current = state;
+        long base = current.base;
+        int k = firstBlockEndingAtOrAfter(current, timestamp, upper);
+        if (k < current.blockTo) {
+            Block block = current.blocks[k];
+            GorillaBlock.Reader reader = new GorillaBlock.Reader(block.load());
+            long index = block.firstIndex;
+            while (reader.next()) {
+                long time = reader.getTimestamp();
+                if (index >= base && (upper ? time > timestamp : time >= timestamp)) {
+                    break;
+                }
+                index++;
+            }
+            return (int) (index - base);
+        }
+        return (int) (current.tail.firstIndex + openLowerBound(current, current.tail.count, timestamp, upper) - base);
+    }
+
+    private static int firstBlockEndingAtOrAfter(Version current, long timestamp, boolean strictlyAfter) {
+        int low = current.blockFrom;
+        int high = current.blockTo;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            long last = current.blocks[mid].lastTimestamp();
+            if (strictlyAfter ? last <= timestamp : last < timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static int openLowerBound(Version current, int openCount, long timestamp, boolean upper) {
+        long[] timestamps = current.tail.timestamps;
+        int low = current.openStart();
+        int high = openCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (upper ? timestamps[mid] <= timestamp : timestamps[mid] < timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static GorillaBlock.Reader seek(Version current, long position) {
+        int low = current.blockFrom;
+        int high = current.blockTo - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (current.blocks[mid].firstIndex <= position) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        Block block = current.blocks[low];
+        GorillaBlock.Reader reader = new GorillaBlock.Reader(block.load());
+        for (long index = block.firstIndex; index <= position; index++) {
+            reader.next();
+        }
+        return reader;
+    }
+
+    private void copy(int from, int to, long[] timestamps, double[] values) {
+        Version current = state;
+        long first = current.base + from;
+        long last = current.base + to;
+        for (int k = current.blockFrom; k < current.blockTo; k++) {
+            Block block = current.blocks[k];
+            if (block.endIndex() <= first) {
+                continue;
+            }
+            if (block.firstIndex >= last) {
+                return;
+            }
+            GorillaBlock.Reader reader = new GorillaBlock.Reader(block.load());
+            for (long index = block.firstIndex; index < last && reader.next(); index++) {
+                if (index >= first) {
+                    if (timestamps != null) {
+                        timestamps[(int) (index - first)] = reader.getTimestamp();
+                    }
+                    if (values != null) {
+                        values[(int) (index - first)] = reader.getValue();
+                    }
+                }
+            }
+        }
+        Tail tail = current.tail;
+        for (long index = Math.max(first, tail.firstIndex); index < last; index++) {
+            if (timestamps != null) {
+                timestamps[(int) (index - first)] = tail.timestamps[(int) (index - tail.firstIndex)];
+            }
+            if (values != null) {
+                values[(int) (index - first)] = tail.values[(int) (index - tail.firstIndex)];
+            }
+        }
+    }
+}
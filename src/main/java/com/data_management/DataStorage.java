@@ -1,21 +1,92 @@
 package com.data_management;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+import java.util.stream.Collector;
+import java.util.stream.Collectors;
 
 /**
  * Singleton class for managing patient data storage. Provides methods to add, clear, and retrieve patient data.
+ * The storage is safe for concurrent use: patients live in a {@link PatientIndex} keyed by primitive IDs,
+ * and each {@link Patient} guards its own records, so reads and writes for different patients never
+ * contend on a shared lock.
+ * Record types are resolved to interned {@link RecordType}s once per sample, so the storage itself only works
+ * with compact type codes; the String overloads are conveniences for callers that still hold labels.
+ * History is bounded per record type by a {@link RetentionPolicy}; by default everything is kept.
+ * Optionally the storage can be made durable with {@link #enableDurability(Path, long, long)}: every sample is
+ * appended to a {@link WriteAheadLog} before it is stored, and periodic {@link StorageSnapshot}s bound how much
+ * of the log has to be replayed after a restart.
+ * Samples live on the heap by default, sealed into compressed blocks ({@link CompressedTimeSeries});
+ * {@link #useOffHeapStorage(Path, int)} moves new series into memory-mapped segment files
+ * ({@link MappedTimeSeries}) instead, so long histories do not grow the heap at all.
+ * Alternatively {@link #enableTiering(Path, long, long)} keeps compressed series on the heap only for a recent
+ * hot window and spills older blocks to memory-mapped {@link ColdStore} segments in the background.
+ * With {@link #enablePatientUnloading(Path, long, int, long)} inactive patients are unloaded to compact archive
+ * files and loaded back on their next access, keeping a bounded number of patients in memory.
+ * {@link #enableMemoryPressureShedding(double, long)} makes the storage shed old history, first only its
+ * resolution and then the history itself, when the heap runs short, rather than running out of memory.
  */
 public class DataStorage {
-    private Map<Integer, Patient> patientMap;
-    private static final List<String> VALID_RECORD_TYPES = Arrays.asList("HeartRate", "BloodPressure", "BloodOxygenSaturation");
+    /**
+     * The default number of samples per compressed block of heap series.
+     */
+    public static final int DEFAULT_SAMPLES_PER_BLOCK = 128;
+
+    private final PatientIndex patientIndex = new PatientIndex();
+    private final ConcurrentMap<RecordType, RetentionPolicy> retentionPolicies = new ConcurrentHashMap<>();
+    private final ConcurrentMap<RecordType, Long> aggregationWindows = new ConcurrentHashMap<>();
+    private final ConcurrentMap<RecordType, List<RollupTier>> rollupTiers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<RecordType, Long> latenessBounds = new ConcurrentHashMap<>();
+    private final Set<RecordType> deduplicatedTypes = ConcurrentHashMap.newKeySet();
     private static DataStorage instance;
 
+    private final ReadWriteLock durabilityLock = new ReentrantReadWriteLock();
+    private final Object snapshotMonitor = new Object();
+    private volatile WriteAheadLog writeAheadLog;
+    private Path durabilityDirectory;
+    private boolean syncOnWrite;
+    private ScheduledExecutorService durabilityScheduler;
+
+    private volatile Path offHeapDirectory;
+    private volatile int samplesPerSegment;
+    private volatile int samplesPerBlock = DEFAULT_SAMPLES_PER_BLOCK;
+
+    private final Object cohortMonitor = new Object();
+    private volatile CohortPool cohortPool = new CohortPool(ForkJoinPool.commonPool());
+
+    private static final int COLD_SEGMENT_BYTES = 64 << 20;
+    private static final int COLD_SAMPLES_PER_BLOCK = 8192;
+    private final Object tieringMonitor = new Object();
+    private ColdStore coldStore;
+    private long hotWindowMillis;
+    private ScheduledExecutorService tieringScheduler;
+
+    private final Object unloadingMonitor = new Object();
+    private volatile PatientCache patientCache;
+    private ScheduledExecutorService unloadingScheduler;
+
+    private final Object sheddingMonitor = new Object();
+    private volatile MemoryPressureMonitor memoryPressureMonitor;
+
     private DataStorage() {
-        this.patientMap = new HashMap<>();
     }
 
     /**
@@ -32,9 +103,27 @@ public class DataStorage {
 
     /**
      * Clears all patient data from the storage.
+     * If durability is enabled the log and snapshots are reset as well, so the data does not come back on restart.
      */
-    public synchronized void clear() {
-        patientMap.clear();
+    public void clear() {
+        if (writeAheadLog == null) {
+            removeAllPatients();
+            return;
+        }
+        synchronized (snapshotMonitor) {
+            StorageSnapshot empty;
+            durabilityLock.writeLock().lock();
+            try {
+                removeAllPatients();
+                empty = new StorageSnapshot(writeAheadLog.roll(), new ArrayList<>());
+                empty.write(durabilityDirectory);
+                writeAheadLog.deleteSegmentsBefore(empty.getLsn());
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to reset the write-ahead log", e);
+            } finally {
+                durabilityLock.writeLock().unlock();
+            }
+        }
     }
 
     /**
@@ -44,22 +133,208 @@ public class DataStorage {
      * @param measurementValue  The measurement value to be added.
      * @param recordType        The type of the record (e.g., HeartRate, BloodPressure).
      * @param timestamp         The timestamp of the record.
+     * @throws IllegalArgumentException If the record type is not registered.
+     * @throws NumberFormatException If the measurement value is NaN or infinite.
      */
-    public synchronized void addPatientData(int patientId, double measurementValue, String recordType, long timestamp) {
+    public void addPatientData(int patientId, double measurementValue, String recordType, long timestamp) {
+        addPatientData(patientId, measurementValue, RecordType.of(recordType), timestamp);
+    }
+
+    /**
+     * Adds patient data of an already resolved record type to the storage.
+     *
+     * @param patientId         The ID of the patient.
+     * @param measurementValue  The measurement value to be added.
+     * @param recordType        The type of the record.
+     * @param timestamp         The timestamp of the record.
+     * @throws NumberFormatException If the measurement value is NaN or infinite.
+     */
+    public void addPatientData(int patientId, double measurementValue, RecordType recordType, long timestamp) {
         if (Double.isNaN(measurementValue) || Double.isInfinite(measurementValue)) {
             throw new NumberFormatException("Measurement value is not a valid number: " + measurementValue);
         }
 
-        if (!VALID_RECORD_TYPES.contains(recordType)) {
-            throw new IllegalArgumentException("Invalid record type: " + recordType);
+        WriteAheadLog log = writeAheadLog;
+        if (log == null) {
+            store(patientId, measurementValue, recordType, timestamp);
+            return;
+        }
+
+        long lsn;
+        durabilityLock.readLock().lock();
+        try {
+            log = writeAheadLog;
+            if (log == null) {
+                store(patientId, measurementValue, recordType, timestamp);
+                return;
+            }
+            lsn = log.append(patientId, measurementValue, recordType, timestamp);
+            store(patientId, measurementValue, recordType, timestamp);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to append to the write-ahead log", e);
+        } finally {
+            durabilityLock.readLock().unlock();
+        }
+        if (syncOnWrite) {
+            try {
+                log.sync(lsn);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to sync the write-ahead log", e);
+            }
+        }
+    }
+
+    /**
+     * Adds a batch of samples to the storage.
+     * The batch is validated as a whole before anything is stored, then grouped by patient so that every
+     * patient's lock is taken once per batch; with durability enabled the batch is logged under one lock
+     * acquisition and waits for at most one fsync. Samples of one patient are added in batch order.
+     *
+     * @param batch The samples to add.
+     * @throws IllegalArgumentException If a sample has an unknown record type code.
+     * @throws NumberFormatException If a measurement value is NaN or infinite.
+     */
+    public void addPatientDataBatch(SampleBatch batch) {
+        int count = batch.size();
+        if (count == 0) {
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            double measurementValue = batch.getValue(i);
+            if (Double.isNaN(measurementValue) || Double.isInfinite(measurementValue)) {
+                throw new NumberFormatException("Measurement value is not a valid number: " + measurementValue);
+            }
+            RecordType.forCode(batch.getTypeCode(i));
+        }
+
+        WriteAheadLog log = writeAheadLog;
+        if (log == null) {
+            storeBatch(batch);
+            return;
+        }
+
+        long lsn;
+        durabilityLock.readLock().lock();
+        try {
+            log = writeAheadLog;
+            if (log == null) {
+                storeBatch(batch);
+                return;
+            }
+            lsn = log.append(batch);
+            storeBatch(batch);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to append to the write-ahead log", e);
+        } finally {
+            durabilityLock.readLock().unlock();
+        }
+        if (syncOnWrite) {
+            try {
+                log.sync(lsn);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to sync the write-ahead log", e);
+            }
+        }
+    }
+
+    private void store(int patientId, double measurementValue, RecordType recordType, long timestamp) {
+        patient(patientId).addRecord(measurementValue, recordType, timestamp);
+    }
+
+    private void storeBatch(SampleBatch batch) {
+        int count = batch.size();
+        // Group the batch by patient in linear time with a small open-addressing table,
+        // keeping the batch order within each patient.
+        int mask = Integer.highestOneBit(Math.max(1, count - 1)) * 4 - 1;
+        int[] slotPatient = new int[mask + 1];
+        int[] slotGroup = new int[mask + 1];
+        Arrays.fill(slotGroup, -1);
+        int[] groupOf = new int[count];
+        int[] groupStart = new int[count + 1];
+        int groups = 0;
+        for (int i = 0; i < count; i++) {
+            int patientId = batch.getPatientId(i);
+            int slot = (patientId * 0x9E3779B9) & mask;
+            while (slotGroup[slot] >= 0 && slotPatient[slot] != patientId) {
+                slot = (slot + 1) & mask;
+            }
+            if (slotGroup[slot] < 0) {
+                slotPatient[slot] = patientId;
+                slotGroup[slot] = groups++;
+            }
+            groupOf[i] = slotGroup[slot];
+            groupStart[groupOf[i] + 1]++;
+        }
+        for (int g = 0; g < groups; g++) {
+            groupStart[g + 1] += groupStart[g];
+        }
+        int[] indices = new int[count];
+        int[] fill = Arrays.copyOf(groupStart, groups);
+        for (int i = 0; i < count; i++) {
+            indices[fill[groupOf[i]]++] = i;
+        }
+
+        for (int g = 0; g < groups; g++) {
+            int from = groupStart[g];
+            patient(batch.getPatientId(indices[from])).addRecords(batch, indices, from, groupStart[g + 1]);
         }
+    }
 
-        Patient patient = patientMap.get(patientId);
+    private Patient patient(int patientId) {
+        Patient patient = patientIndex.get(patientId);
         if (patient == null) {
-            patient = new Patient(patientId);
-            patientMap.put(patientId, patient);
+            patient = patientIndex.computeIfAbsent(patientId, id -> new Patient(id, this::createSeries));
+        }
+        PatientCache cache = patientCache;
+        if (cache != null) {
+            cache.access(patient, true);
+        }
+        return patient;
+    }
+
+    private Patient existingPatient(int patientId) {
+        Patient patient = patientIndex.get(patientId);
+        PatientCache cache = patientCache;
+        if (patient != null && cache != null) {
+            cache.access(patient, false);
+        }
+        return patient;
+    }
+
+    private SampleSeries createSeries(int patientId, RecordType recordType) {
+        SampleSeries series = createStorageSeries(patientId, recordType);
+        long latenessMillis = getLatenessBound(recordType);
+        if (latenessMillis > 0) {
+            series = new ReorderingSeries(series, latenessMillis);
+        }
+        if (isDeduplicated(recordType)) {
+            series = new DeduplicatingSeries(series);
+        }
+        long windowMillis = getAggregationWindow(recordType);
+        List<RollupTier> tiers = getRollupTiers(recordType);
+        if (windowMillis == 0 && tiers.isEmpty()) {
+            return series;
+        }
+        return new AggregatedSeries(series, windowMillis, tiers);
+    }
+
+    private SampleSeries createStorageSeries(int patientId, RecordType recordType) {
+        Path directory = offHeapDirectory;
+        if (directory == null) {
+            int blockSize = samplesPerBlock;
+            if (blockSize == 0) {
+                return new TimeSeries(getRetentionPolicy(recordType));
+            }
+            return new CompressedTimeSeries(blockSize, getRetentionPolicy(recordType));
+        }
+        return new MappedTimeSeries(directory.resolve(patientId + "-" + recordType.getLabel()), samplesPerSegment,
+                getRetentionPolicy(recordType));
+    }
+
+    private void removeAllPatients() {
+        for (Patient patient : patientIndex.removeAll()) {
+            patient.close();
         }
-        patient.addRecord(measurementValue, recordType, timestamp);
     }
 
     /**
@@ -70,21 +345,925 @@ public class DataStorage {
      * @param endTime   The end time of the range.
      * @return A list of patient records within the specified time range.
      */
-    public synchronized List<PatientRecord> getRecords(int patientId, long startTime, long endTime) {
-        Patient patient = patientMap.get(patientId);
+    public List<PatientRecord> getRecords(int patientId, long startTime, long endTime) {
+        Patient patient = existingPatient(patientId);
         if (patient != null) {
             return patient.getRecords(startTime, endTime);
         }
         return new ArrayList<>();
     }
 
+    /**
+     * Retrieves a list of patient records of one type for the specified patient and time range.
+     * Only the series of the requested type is read, so callers interested in a single vital sign
+     * do not pay for the other record types.
+     *
+     * @param patientId  The ID of the patient.
+     * @param recordType The type of the records to retrieve (e.g., HeartRate, BloodPressure).
+     * @param startTime  The start time of the range.
+     * @param endTime    The end time of the range.
+     * @return A list of patient records of the given type within the specified time range.
+     */
+    public List<PatientRecord> getRecords(int patientId, String recordType, long startTime, long endTime) {
+        RecordType type = RecordType.forLabel(recordType);
+        if (type == null) {
+            return new ArrayList<>();
+        }
+        return getRecords(patientId, type, startTime, endTime);
+    }
+
+    /**
+     * Retrieves a list of patient records of one type for the specified patient and time range.
+     *
+     * @param patientId  The ID of the patient.
+     * @param recordType The type of the records to retrieve.
+     * @param startTime  The start time of the range.
+     * @param endTime    The end time of the range.
+     * @return A list of patient records of the given type within the specified time range.
+     */
+    public List<PatientRecord> getRecords(int patientId, RecordType recordType, long startTime, long endTime) {
+        Patient patient = existingPatient(patientId);
+        if (patient != null) {
+            return patient.getRecords(recordType, startTime, endTime);
+        }
+        return new ArrayList<>();
+    }
+
+    /**
+     * Scans the samples of one type for the specified patient and time range without allocating records.
+     * This is the allocation-free alternative to {@link #getRecords(int, RecordType, long, long)} for callers
+     * that only look at each sample once, such as the alert strategies: the visitor receives primitive
+     * timestamp/value pairs in timestamp order and can stop the scan early by returning false.
+     * The visitor runs under the patient's read lock and must not add data for the same patient.
+     *
+     * @param patientId  The ID of the patient.
+     * @param recordType The type of the samples to scan.
+     * @param startTime  The start time of the range.
+     * @param endTime    The end time of the range.
+     * @param visitor    Receives the timestamp and value of each sample.
+     * @return true if the whole range was visited (or the patient has no data), false if the visitor stopped the scan.
+     */
+    public boolean scan(int patientId, RecordType recordType, long startTime, long endTime, SampleVisitor visitor) {
+        Patient patient = existingPatient(patientId);
+        return patient == null || patient.scan(recordType, startTime, endTime, visitor);
+    }
+
     /**
      * Retrieves a list of all patients in the storage.
      *
      * @return A list of all patients.
      */
-    public synchronized List<Patient> getAllPatients() {
-        return new ArrayList<>(patientMap.values());
+    public List<Patient> getAllPatients() {
+        return new ArrayList<>(Arrays.asList(patientIndex.toArray()));
+    }
+
+    /**
+     * Runs a cohort query: folds every patient into a result with the given collector, in parallel.
+     * The patients are split into ranges that are accumulated on the cohort {@link ForkJoinPool}
+     * and the partial results are merged with the collector's combiner, so per-patient work such as
+     * window scans or statistics scales with the available cores.
+     * Patients added while the query runs may or may not be included.
+     *
+     * @param collector Accumulates patients into a result; must not depend on encounter order unless that
+     *                  order does not matter to the caller.
+     * @param <A>       The mutable accumulation type of the collector.
+     * @param <R>       The result type.
+     * @return The result of the collector over all patients.
+     */
+    public <A, R> R queryCohort(Collector<? super Patient, A, R> collector) {
+        Patient[] patients = patientIndex.toArray();
+        CohortPool pool;
+        do {
+            pool = cohortPool;
+        } while (!pool.acquire());
+        A result;
+        try {
+            result = pool.getPool().invoke(new CohortTask<>(patients, 0, patients.length, collector));
+        } finally {
+            pool.release();
+        }
+        return collector.finisher().apply(result);
+    }
+
+    /**
+     * Finds the patients matching a predicate, e.g. those whose blood oxygen saturation dropped below 92
+     * in the last ten minutes. The predicate is evaluated in parallel, see {@link #queryCohort(Collector)}.
+     *
+     * @param predicate The condition a patient must meet.
+     * @return The matching patients, sorted by patient ID.
+     */
+    public List<Patient> findPatients(Predicate<? super Patient> predicate) {
+        List<Patient> patients = queryCohort(Collectors.filtering(predicate, Collectors.toList()));
+        patients.sort(Comparator.comparingInt(Patient::getPatientId));
+        return patients;
+    }
+
+    /**
+     * Gets the statistics of one record type over all patients within {@code [now - windowMillis, now]},
+     * e.g. the ward-wide mean heart rate of the last hour. The per-patient statistics are computed in parallel
+     * and merged, see {@link #getWindowStatistics(int, RecordType, long, long)} and {@link WindowStatistics#merge}.
+     *
+     * @param recordType   The type of the samples.
+     * @param windowMillis The length of the window in milliseconds.
+     * @param now          The end of the window.
+     * @return The statistics of the samples of all patients in the window.
+     */
+    public WindowStatistics getCohortStatistics(RecordType recordType, long windowMillis, long now) {
+        return queryCohort(Collectors.reducing(WindowStatistics.EMPTY,
+                patient -> patient.getWindowStatistics(recordType, windowMillis, now), WindowStatistics::merge));
+    }
+
+    /**
+     * Sets the number of threads cohort queries run on.
+     * By default they run on the common {@link ForkJoinPool}. Queries already running finish on the previous pool,
+     * which is shut down once the last of them is done.
+     *
+     * @param parallelism The number of threads, or 0 to use the common pool.
+     * @throws IllegalArgumentException If the parallelism is negative.
+     */
+    public void setCohortParallelism(int parallelism) {
+        if (parallelism < 0) {
+            throw new IllegalArgumentException("Parallelism must not be negative");
+        }
+        synchronized (cohortMonitor) {
+            CohortPool previous = cohortPool;
+            cohortPool = new CohortPool(parallelism == 0 ? ForkJoinPool.commonPool() : new ForkJoinPool(parallelism));
+            previous.retire();
+        }
+    }
+
+    /**
+     * Sets the retention policy for a record type.
+     * The policy applies to series created from now on and is also applied to existing series right away.
+     *
+     * @param recordType      The type of the records the policy applies to.
+     * @param retentionPolicy The retention policy.
+     * @throws IllegalArgumentException If the record type is not valid.
+     */
+    public void setRetentionPolicy(String recordType, RetentionPolicy retentionPolicy) {
+        setRetentionPolicy(RecordType.of(recordType), retentionPolicy);
+    }
+
+    /**
+     * Sets the retention policy for a record type.
+     * The policy applies to series created from now on and is also applied to existing series right away;
+     * unloaded patients stay unloaded and apply it when they are next loaded.
+     *
+     * @param recordType      The type of the records the policy applies to.
+     * @param retentionPolicy The retention policy.
+     */
+    public void setRetentionPolicy(RecordType recordType, RetentionPolicy retentionPolicy) {
+        retentionPolicies.put(recordType, retentionPolicy);
+        for (Patient patient : patientIndex.toArray()) {
+            patient.setRetentionPolicy(recordType, retentionPolicy);
+        }
+    }
+
+    /**
+     * Gets the retention policy for a record type.
+     *
+     * @param recordType The type of the records.
+     * @return The retention policy, {@link RetentionPolicy#UNBOUNDED} if none was set.
+     */
+    public RetentionPolicy getRetentionPolicy(String recordType) {
+        RecordType type = RecordType.forLabel(recordType);
+        return type == null ? RetentionPolicy.UNBOUNDED : getRetentionPolicy(type);
+    }
+
+    /**
+     * Gets the retention policy for a record type.
+     *
+     * @param recordType The type of the records.
+     * @return The retention policy, {@link RetentionPolicy#UNBOUNDED} if none was set.
+     */
+    public RetentionPolicy getRetentionPolicy(RecordType recordType) {
+        return retentionPolicies.getOrDefault(recordType, RetentionPolicy.UNBOUNDED);
+    }
+
+    /**
+     * Sets the length of the rolling window whose statistics are maintained on every insert for a record type.
+     * The window keeps an uncompressed copy of its samples, so it is only maintained for the types it is enabled
+     * for; by default none are, and window statistics are computed by scanning the stored history.
+     * The window applies to series created from now on; existing series keep the window they were created with.
+     *
+     * @param recordType   The type of the records.
+     * @param windowMillis The window length in milliseconds, or 0 to maintain no rolling statistics.
+     * @throws IllegalArgumentException If the window length is negative.
+     */
+    public void setAggregationWindow(RecordType recordType, long windowMillis) {
+        if (windowMillis < 0) {
+            throw new IllegalArgumentException("Aggregation window must not be negative");
+        }
+        aggregationWindows.put(recordType, windowMillis);
+    }
+
+    /**
+     * Gets the length of the rolling window maintained for a record type.
+     *
+     * @param recordType The type of the records.
+     * @return The window length in milliseconds, 0 if no rolling window is maintained.
+     */
+    public long getAggregationWindow(RecordType recordType) {
+        return aggregationWindows.getOrDefault(recordType, 0L);
+    }
+
+    /**
+     * Sets how late samples of a record type may arrive. Samples up to this much older than the newest sample
+     * of their series are held in a small sorted buffer and merged into place, so the stored history only ever
+     * receives samples in order; older samples are dropped and counted, see
+     * {@link #getDroppedLateSampleCount(RecordType)}. Without a bound (the default) late samples of any age are
+     * inserted into the history directly, which is correct but costs a rebuild of a compressed block.
+     * The bound applies to series created from now on; existing series keep the bound they were created with.
+     *
+     * @param recordType     The type of the records.
+     * @param latenessMillis The lateness bound in milliseconds, or 0 to accept late samples of any age.
+     * @throws IllegalArgumentException If the bound is negative.
+     */
+    public void setLatenessBound(RecordType recordType, long latenessMillis) {
+        if (latenessMillis < 0) {
+            throw new IllegalArgumentException("Lateness bound must not be negative");
+        }
+        latenessBounds.put(recordType, latenessMillis);
+    }
+
+    /**
+     * Gets how late samples of a record type may arrive.
+     *
+     * @param recordType The type of the records.
+     * @return The lateness bound in milliseconds, 0 if late samples of any age are accepted.
+     */
+    public long getLatenessBound(RecordType recordType) {
+        return latenessBounds.getOrDefault(recordType, 0L);
+    }
+
+    /**
+     * Sets whether samples of a record type whose timestamp is already stored for the same patient are dropped,
+     * such as samples re-delivered after a reconnect or by a repeated import. Dropped samples are counted, see
+     * {@link #getDuplicateSampleCount(RecordType)}. Without deduplication (the default) every sample is stored.
+     * In-order samples are checked with a single comparison and reordered ones against a small filter of recent
+     * timestamps, so only possible duplicates search the stored history.
+     * The setting applies to series created from now on; existing series keep the setting they were created with.
+     *
+     * @param recordType The type of the records.
+     * @param enabled    true to drop duplicate samples, false to store every sample.
+     */
+    public void setDeduplication(RecordType recordType, boolean enabled) {
+        if (enabled) {
+            deduplicatedTypes.add(recordType);
+        } else {
+            deduplicatedTypes.remove(recordType);
+        }
+    }
+
+    /**
+     * Checks whether duplicate samples of a record type are dropped.
+     *
+     * @param recordType The type of the records.
+     * @return true if duplicates are dropped, false if every sample is stored.
+     */
+    public boolean isDeduplicated(RecordType recordType) {
+        return deduplicatedTypes.contains(recordType);
+    }
+
+    /**
+     * Gets the statistics (count, sum, min, max, mean, variance, last value) of the samples of one type for the
+     * specified patient within {@code [now - windowMillis, now]}. When the window length matches the record type's
+     * {@link #getAggregationWindow(RecordType) aggregation window}, the statistics are maintained incrementally and
+     * the call is O(1); otherwise they are computed by scanning the window.
+     *
+     * @param patientId    The ID of the patient.
+     * @param recordType   The type of the samples.
+     * @param windowMillis The length of the window in milliseconds.
+     * @param now          The end of the window.
+     * @return The statistics of the window, {@link WindowStatistics#EMPTY} if the patient has no such samples.
+     */
+    public WindowStatistics getWindowStatistics(int patientId, RecordType recordType, long windowMillis, long now) {
+        Patient patient = existingPatient(patientId);
+        return patient == null ? WindowStatistics.EMPTY : patient.getWindowStatistics(recordType, windowMillis, now);
+    }
+
+    /**
+     * Sets the rollup tiers maintained on every insert for a record type, e.g. {@link RollupTier#STANDARD_TIERS}.
+     * By default no tiers are maintained and rollup queries are computed from the raw samples.
+     * The tiers apply to series created from now on; existing series keep the tiers they were created with.
+     *
+     * @param recordType The type of the records.
+     * @param tiers      The tiers to maintain, or an empty list to maintain no rollups.
+     */
+    public void setRollupTiers(RecordType recordType, List<RollupTier> tiers) {
+        rollupTiers.put(recordType, new ArrayList<>(tiers));
+    }
+
+    /**
+     * Gets the rollup tiers maintained for a record type.
+     *
+     * @param recordType The type of the records.
+     * @return The tiers, an empty list if none were set.
+     */
+    public List<RollupTier> getRollupTiers(RecordType recordType) {
+        return rollupTiers.getOrDefault(recordType, Collections.emptyList());
+    }
+
+    /**
+     * Gets downsampled buckets (count, min, max, sum) of the samples of one type for the specified patient.
+     * The coarsest maintained rollup tier no wider than the requested resolution answers the query, so trend
+     * views and long-window scoring read hundreds of buckets instead of every raw sample.
+     *
+     * @param patientId        The ID of the patient.
+     * @param recordType       The type of the samples.
+     * @param startTime        The start of the range; the bucket containing it is included.
+     * @param endTime          The end of the range, inclusive; the bucket containing it is included.
+     * @param resolutionMillis The coarsest acceptable bucket width in milliseconds.
+     * @return The non-empty buckets in time order.
+     * @throws IllegalArgumentException If the resolution is not positive.
+     * @see Patient#getRollup(RecordType, long, long, long)
+     */
+    public List<RollupBucket> getRollup(int patientId, RecordType recordType, long startTime, long endTime,
+                                        long resolutionMillis) {
+        if (resolutionMillis <= 0) {
+            throw new IllegalArgumentException("Rollup resolution must be positive");
+        }
+        Patient patient = existingPatient(patientId);
+        if (patient != null) {
+            return patient.getRollup(recordType, startTime, endTime, resolutionMillis);
+        }
+        return new ArrayList<>();
+    }
+
+    /**
+     * Gets the number of samples of all patients dropped by retention policies.
+     *
+     * @return The number of evicted samples.
+     */
+    public long getEvictedSampleCount() {
+        long evicted = 0;
+        for (Patient patient : patientIndex.toArray()) {
+            evicted += patient.getEvictedSampleCount();
+        }
+        return evicted;
+    }
+
+    /**
+     * Gets the number of samples of one record type dropped by its retention policy across all patients.
+     *
+     * @param recordType The type of the records.
+     * @return The number of evicted samples.
+     */
+    public long getEvictedSampleCount(String recordType) {
+        RecordType type = RecordType.forLabel(recordType);
+        return type == null ? 0 : getEvictedSampleCount(type);
+    }
+
+    /**
+     * Gets the number of samples of one record type dropped by its retention policy across all patients.
+     *
+     * @param recordType The type of the records.
+     * @return The number of evicted samples.
+     */
+    public long getEvictedSampleCount(RecordType recordType) {
+        long evicted = 0;
+        for (Patient patient : patientIndex.toArray()) {
+            evicted += patient.getEvictedSampleCount(recordType);
+        }
+        return evicted;
+    }
+
+    /**
+     * Gets the number of samples of one record type dropped for arriving beyond its lateness bound across all patients.
+     *
+     * @param recordType The type of the records.
+     * @return The number of late samples dropped.
+     */
+    public long getDroppedLateSampleCount(RecordType recordType) {
+        long dropped = 0;
+        for (Patient patient : patientIndex.toArray()) {
+            dropped += patient.getDroppedLateSampleCount(recordType);
+        }
+        return dropped;
+    }
+
+    /**
+     * Gets the number of samples of one record type dropped as duplicates across all patients.
+     *
+     * @param recordType The type of the records.
+     * @return The number of duplicates dropped.
+     */
+    public long getDuplicateSampleCount(RecordType recordType) {
+        long duplicates = 0;
+        for (Patient patient : patientIndex.toArray()) {
+            duplicates += patient.getDuplicateSampleCount(recordType);
+        }
+        return duplicates;
+    }
+
+    /**
+     * Stores series created from now on off-heap, in memory-mapped segment files below the given directory.
+     * Existing series stay where they are. The files are scratch space and are deleted when the series is
+     * released; use {@link #enableDurability(Path, long, long)} to survive restarts.
+     *
+     * @param directory         The directory for the segment files.
+     * @param samplesPerSegment The number of samples in each segment file (16 bytes per sample).
+     * @throws IOException If the directory cannot be created.
+     * @throws IllegalArgumentException If samplesPerSegment is not positive.
+     */
+    public void useOffHeapStorage(Path directory, int samplesPerSegment) throws IOException {
+        if (samplesPerSegment <= 0) {
+            throw new IllegalArgumentException("Segments must hold at least one sample");
+        }
+        Files.createDirectories(directory);
+        this.samplesPerSegment = samplesPerSegment;
+        this.offHeapDirectory = directory;
+    }
+
+    /**
+     * Stores series created from now on on the heap again, in compressed blocks of
+     * {@link #DEFAULT_SAMPLES_PER_BLOCK} samples. Existing series stay where they are.
+     */
+    public void useHeapStorage() {
+        useHeapStorage(DEFAULT_SAMPLES_PER_BLOCK);
+    }
+
+    /**
+     * Stores series created from now on on the heap. Existing series stay where they are.
+     *
+     * @param samplesPerBlock The number of samples collected before a block is compressed,
+     *                        or 0 to keep samples uncompressed in a {@link TimeSeries}.
+     * @throws IllegalArgumentException If samplesPerBlock is negative.
+     */
+    public void useHeapStorage(int samplesPerBlock) {
+        if (samplesPerBlock < 0) {
+            throw new IllegalArgumentException("Block size must not be negative");
+        }
+        this.samplesPerBlock = samplesPerBlock;
+        this.offHeapDirectory = null;
+    }
+
+    /**
+     * Keeps only the recent history of compressed heap series on the heap and spills older blocks to
+     * memory-mapped segment files in the given directory. A background thread spills every series at the given
+     * interval, merging the blocks it spills into large cold blocks, so the heap holds the hot window plus a small
+     * descriptor per cold block. Cold history stays readable through {@link #getRecords} and the other queries.
+     * Series stored uncompressed or off-heap are not affected. The files are scratch space; use
+     * {@link #enableDurability(Path, long, long)} to survive restarts.
+     *
+     * @param directory           The directory for the cold segment files.
+     * @param hotWindowMillis     How much history before the newest sample of a series stays on the heap.
+     * @param spillIntervalMillis The interval of background spills, or 0 to only spill on {@link #spillColdHistory()}.
+     * @throws IOException If the directory cannot be created.
+     * @throws IllegalArgumentException If the hot window or the interval is negative.
+     * @throws IllegalStateException If tiering is already enabled.
+     */
+    public void enableTiering(Path directory, long hotWindowMillis, long spillIntervalMillis) throws IOException {
+        if (hotWindowMillis < 0 || spillIntervalMillis < 0) {
+            throw new IllegalArgumentException("Hot window and spill interval must not be negative");
+        }
+        synchronized (tieringMonitor) {
+            if (coldStore != null) {
+                throw new IllegalStateException("Tiering is already enabled");
+            }
+            Files.createDirectories(directory);
+            coldStore = new ColdStore(directory, COLD_SEGMENT_BYTES);
+            this.hotWindowMillis = hotWindowMillis;
+            if (spillIntervalMillis > 0) {
+                tieringScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "data-storage-tiering");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                tieringScheduler.scheduleWithFixedDelay(() -> {
+                    try {
+                        spillColdHistory();
+                    } catch (UncheckedIOException e) {
+                        System.err.println("Error spilling cold history: " + e.getMessage());
+                    }
+                }, spillIntervalMillis, spillIntervalMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Spills the history older than the hot window of every patient to the cold segment files.
+     * Each patient is locked only while its own series are spilled.
+     *
+     * @return The number of samples spilled.
+     * @throws IllegalStateException If tiering is not enabled.
+     * @throws UncheckedIOException If a cold segment file cannot be mapped.
+     */
+    public long spillColdHistory() {
+        synchronized (tieringMonitor) {
+            if (coldStore == null) {
+                throw new IllegalStateException("Tiering is not enabled");
+            }
+            long spilled = 0;
+            for (Patient patient : patientIndex.toArray()) {
+                spilled += patient.spill(coldStore, hotWindowMillis, COLD_SAMPLES_PER_BLOCK);
+            }
+            return spilled;
+        }
+    }
+
+    /**
+     * Stops spilling. History that has already been spilled stays readable from its segment files,
+     * which are deleted once retention or {@link #clear()} has released everything in them.
+     */
+    public void disableTiering() {
+        synchronized (tieringMonitor) {
+            if (tieringScheduler != null) {
+                tieringScheduler.shutdownNow();
+                tieringScheduler = null;
+            }
+            coldStore = null;
+        }
+    }
+
+    /**
+     * Unloads inactive patients to compact archive files in the given directory and loads them back lazily the
+     * next time they are read or receive a sample. A background pass at the given interval unloads patients that
+     * received no samples and were not read for the idle period, and then the least recently used patients until
+     * at most {@code maxLoadedPatients} remain loaded. Cohort queries and snapshots still see unloaded patients;
+     * queries load them, snapshots read their archives, and the counters of dropped samples are read without loading
+     * them. Rollup buckets and counters survive unloading. Hits, misses, including loads by queries, and load latency
+     * are reported by {@link #getPatientCache()}. The archives are scratch space; use {@link #enableDurability(Path, long, long)}
+     * to survive restarts.
+     *
+     * @param directory           The directory for the patient archives.
+     * @param idleMillis          How long a patient may go without samples or reads before it is unloaded.
+     * @param maxLoadedPatients   The number of patients kept loaded at most after each pass.
+     * @param checkIntervalMillis The interval of background passes, or 0 to only unload on
+     *                            {@link #unloadInactivePatients()}.
+     * @throws IOException If the directory cannot be created.
+     * @throws IllegalArgumentException If a duration or the bound is negative.
+     * @throws IllegalStateException If unloading is already enabled.
+     */
+    public void enablePatientUnloading(Path directory, long idleMillis, int maxLoadedPatients, long checkIntervalMillis)
+            throws IOException {
+        if (idleMillis < 0 || maxLoadedPatients < 0 || checkIntervalMillis < 0) {
+            throw new IllegalArgumentException("Idle period, patient bound and check interval must not be negative");
+        }
+        synchronized (unloadingMonitor) {
+            if (patientCache != null) {
+                throw new IllegalStateException("Patient unloading is already enabled");
+            }
+            Files.createDirectories(directory);
+            patientCache = new PatientCache(directory, idleMillis, maxLoadedPatients);
+            if (checkIntervalMillis > 0) {
+                unloadingScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "data-storage-unloading");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                unloadingScheduler.scheduleWithFixedDelay(() -> {
+                    try {
+                        unloadInactivePatients();
+                    } catch (IOException e) {
+                        System.err.println("Error unloading patients: " + e.getMessage());
+                    }
+                }, checkIntervalMillis, checkIntervalMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Runs one unloading pass over all patients.
+     *
+     * @return The number of patients unloaded.
+     * @throws IOException If a patient archive cannot be written; that patient stays loaded.
+     * @throws IllegalStateException If unloading is not enabled.
+     */
+    public int unloadInactivePatients() throws IOException {
+        synchronized (unloadingMonitor) {
+            PatientCache cache = patientCache;
+            if (cache == null) {
+                throw new IllegalStateException("Patient unloading is not enabled");
+            }
+            return cache.unloadInactive(patientIndex.toArray());
+        }
+    }
+
+    /**
+     * Gets the residency statistics of the patients.
+     *
+     * @return The patient cache, or null if unloading is not enabled.
+     */
+    public PatientCache getPatientCache() {
+        return patientCache;
+    }
+
+    /**
+     * Stops unloading patients. Patients that are unloaded stay so until their next access loads them.
+     */
+    public void disablePatientUnloading() {
+        synchronized (unloadingMonitor) {
+            if (unloadingScheduler != null) {
+                unloadingScheduler.shutdownNow();
+                unloadingScheduler = null;
+            }
+            patientCache = null;
+        }
+    }
+
+    /**
+     * Sheds old history when the heap runs short. Once the memory in use after a garbage collection exceeds the
+     * given fraction of a heap pool, a background pass first drops raw samples that rollup tiers still hold in
+     * downsampled form; if pressure persists, later passes drop raw history and progressively trim the rollups.
+     * Only record types with rollup tiers (see {@link #setRollupTiers(RecordType, List)}) can be downsampled; with
+     * no tiers configured, which is the default, the first pass finds nothing to downsample and trims right away.
+     * The only history guaranteed to survive is the protected window before the newest sample of every series,
+     * so it should cover the longest window that alert evaluation reads. What each pass shed is logged and
+     * reported by {@link #getMemoryPressureMonitor()}.
+     *
+     * @param usageThreshold        The fraction of a heap pool's maximum size that counts as pressure.
+     * @param protectedWindowMillis How much history before the newest sample of each series is always kept.
+     * @throws IllegalArgumentException If the fraction is not between 0 and 1 or the window is negative.
+     * @throws IllegalStateException If shedding is already enabled or the JVM offers no heap usage thresholds.
+     */
+    public void enableMemoryPressureShedding(double usageThreshold, long protectedWindowMillis) {
+        if (!(usageThreshold > 0 && usageThreshold < 1) || protectedWindowMillis < 0) {
+            throw new IllegalArgumentException("Usage threshold must be between 0 and 1 and the window must not be negative");
+        }
+        synchronized (sheddingMonitor) {
+            if (memoryPressureMonitor != null) {
+                throw new IllegalStateException("Memory pressure shedding is already enabled");
+            }
+            MemoryPressureMonitor monitor = new MemoryPressureMonitor(usageThreshold,
+                    stage -> shedMemory(stage, protectedWindowMillis));
+            monitor.start();
+            memoryPressureMonitor = monitor;
+        }
+    }
+
+    /**
+     * Runs one shedding pass over all loaded patients, each locked only while its own series are shed.
+     *
+     * @param stage                 How much the pass may shed.
+     * @param protectedWindowMillis How much history before the newest sample of each series is kept.
+     * @return What the pass shed.
+     * @throws IllegalArgumentException If the window is negative.
+     */
+    public SheddingReport shedMemory(SheddingReport.Stage stage, long protectedWindowMillis) {
+        if (protectedWindowMillis < 0) {
+            throw new IllegalArgumentException("Protected window must not be negative");
+        }
+        SheddingReport report = new SheddingReport(stage, protectedWindowMillis);
+        for (Patient patient : patientIndex.toArray()) {
+            patient.shed(protectedWindowMillis, report);
+        }
+        return report;
+    }
+
+    /**
+     * Gets the statistics of memory pressure shedding.
+     *
+     * @return The monitor, or null if shedding is not enabled.
+     */
+    public MemoryPressureMonitor getMemoryPressureMonitor() {
+        return memoryPressureMonitor;
+    }
+
+    /**
+     * Stops shedding and restores the heap pool thresholds. History that was shed does not come back.
+     */
+    public void disableMemoryPressureShedding() {
+        synchronized (sheddingMonitor) {
+            if (memoryPressureMonitor != null) {
+                memoryPressureMonitor.stop();
+                memoryPressureMonitor = null;
+            }
+        }
+    }
+
+    /**
+     * Makes the storage durable, recovering any state persisted in the given directory first.
+     * Recovery loads the newest snapshot and replays only the log records written after it.
+     * Record types found in the persisted state are registered if they are not known yet.
+     * From then on every sample is appended to the write-ahead log before it is stored.
+     * This is meant to be called once at startup, before ingest begins.
+     *
+     * @param directory              The directory holding the log segments and snapshots.
+     * @param flushIntervalMillis    0 to make every {@link #addPatientData} wait until its sample is fsynced
+     *                               (concurrent writers share fsyncs), or the interval of a background fsync,
+     *                               trading up to that much data on a crash for ingest throughput.
+     * @param snapshotIntervalMillis The interval of background snapshots, or 0 to only snapshot on {@link #snapshot()}.
+     * @throws IOException If the persisted state cannot be read or the log cannot be opened.
+     * @throws IllegalStateException If durability is already enabled.
+     */
+    public void enableDurability(Path directory, long flushIntervalMillis, long snapshotIntervalMillis) throws IOException {
+        durabilityLock.writeLock().lock();
+        try {
+            if (writeAheadLog != null) {
+                throw new IllegalStateException("Durability is already enabled");
+            }
+            Files.createDirectories(directory);
+            long fromLsn = 0;
+            StorageSnapshot snapshot = StorageSnapshot.loadLatest(directory);
+            if (snapshot != null) {
+                for (StorageSnapshot.SeriesData series : snapshot.getSeries()) {
+                    RecordType recordType = RecordType.register(series.getRecordType());
+                    for (int i = 0; i < series.getTimestamps().length; i++) {
+                        store(series.getPatientId(), series.getValues()[i], recordType, series.getTimestamps()[i]);
+                    }
+                }
+                fromLsn = snapshot.getLsn();
+            }
+            WriteAheadLog log = new WriteAheadLog(directory);
+            log.replay(fromLsn, (patientId, measurementValue, recordType, timestamp) ->
+                    store(patientId, measurementValue, RecordType.register(recordType), timestamp));
+
+            durabilityDirectory = directory;
+            syncOnWrite = flushIntervalMillis == 0;
+            durabilityScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "data-storage-durability");
+                thread.setDaemon(true);
+                return thread;
+            });
+            if (flushIntervalMillis > 0) {
+                durabilityScheduler.scheduleWithFixedDelay(() -> {
+                    try {
+                        log.syncAll();
+                    } catch (IOException e) {
+                        System.err.println("Error syncing write-ahead log: " + e.getMessage());
+                    }
+                }, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+            }
+            if (snapshotIntervalMillis > 0) {
+                durabilityScheduler.scheduleWithFixedDelay(() -> {
+                    try {
+                        snapshot();
+                    } catch (IOException e) {
+                        System.err.println("Error writing snapshot: " + e.getMessage());
+                    }
+                }, snapshotIntervalMillis, snapshotIntervalMillis, TimeUnit.MILLISECONDS);
+            }
+            writeAheadLog = log;
+        } finally {
+            durabilityLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Writes a snapshot of all patient data and deletes the log segments it covers.
+     * Ingest is paused only while the log is rolled and every series is frozen, see {@link SampleSeries#freeze()};
+     * the samples are copied and written afterwards, while ingest continues.
+     *
+     * @throws IOException If the snapshot cannot be written.
+     * @throws IllegalStateException If durability is not enabled.
+     */
+    public void snapshot() throws IOException {
+        synchronized (snapshotMonitor) {
+            WriteAheadLog log;
+            StorageSnapshot.Capture capture;
+            durabilityLock.writeLock().lock();
+            try {
+                log = writeAheadLog;
+                if (log == null) {
+                    throw new IllegalStateException("Durability is not enabled");
+                }
+                capture = StorageSnapshot.capture(log.roll(), Arrays.asList(patientIndex.toArray()));
+            } finally {
+                durabilityLock.writeLock().unlock();
+            }
+            StorageSnapshot snapshot = capture.copy();
+            snapshot.write(durabilityDirectory);
+            log.deleteSegmentsBefore(snapshot.getLsn());
+        }
+    }
+
+    /**
+     * Blocks until every sample added so far is fsynced to the write-ahead log, for callers that record their own
+     * progress, such as a checkpointed import, and must not record more than survives a crash.
+     * Does nothing if durability is not enabled.
+     *
+     * @throws IOException If the log cannot be synced.
+     */
+    public void sync() throws IOException {
+        durabilityLock.readLock().lock();
+        try {
+            WriteAheadLog log = writeAheadLog;
+            if (log != null) {
+                log.syncAll();
+            }
+        } finally {
+            durabilityLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Flushes and closes the write-ahead log and stops background flushes and snapshots.
+     * The data stays in memory; later samples are no longer logged.
+     *
+     * @throws IOException If the log cannot be flushed or closed.
+     */
+    public void disableDurability() throws IOException {
+        synchronized (snapshotMonitor) {
+            durabilityLock.writeLock().lock();
+            try {
+                if (writeAheadLog == null) {
+                    return;
+                }
+                durabilityScheduler.shutdownNow();
+                writeAheadLog.close();
+                writeAheadLog = null;
+            } finally {
+                durabilityLock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * A pool cohort queries run on, counting the queries using it so that a replaced pool is only shut down
+     * after the last of them has finished.
+     */
+    private static final class CohortPool {
+        private final ForkJoinPool pool;
+        private int users;
+        private boolean retired;
+
+        CohortPool(ForkJoinPool pool) {
+            this.pool = pool;
+        }
+
+        ForkJoinPool getPool() {
+            return pool;
+        }
+
+        /**
+         * Registers a query that is about to use the pool.
+         *
+         * @return true if the query may use the pool, false if it has been replaced in the meantime.
+         */
+        synchronized boolean acquire() {
+            if (retired) {
+                return false;
+            }
+            users++;
+            return true;
+        }
+
+        /**
+         * Unregisters a query, shutting the pool down if it has been replaced and was the last user.
+         */
+        synchronized void release() {
+            if (--users == 0 && retired) {
+                shutdown();
+            }
+        }
+
+        /**
+         * Marks the pool as replaced and shuts it down once no query uses it any more.
+         */
+        synchronized void retire() {
+            retired = true;
+            if (users == 0) {
+                shutdown();
+            }
+        }
+
+        private void shutdown() {
+            if (pool != ForkJoinPool.commonPool()) {
+                pool.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Accumulates a range of patients with a collector, splitting the range until it is small enough.
+     */
+    private static final class CohortTask<A> extends RecursiveTask<A> {
+        private static final long serialVersionUID = 1L;
+        private static final int PATIENTS_PER_TASK = 64;
+
+        private final Patient[] patients;
+        private final int from;
+        private final int to;
+        private final Collector<? super Patient, A, ?> collector;
+
+        CohortTask(Patient[] patients, int from, int to, Collector<? super Patient, A, ?> collector) {
+            this.patients = patients;
+            this.from = from;
+            this.to = to;
+            this.collector = collector;
+        }
+
+        /**
+         * Accumulates the range directly, or splits it in two and combines the results of both halves.
+         *
+         * @return The accumulated result of the range.
+         */
+        @Override
+        protected A compute() {
+            if (to - from <= PATIENTS_PER_TASK) {
+                A container = collector.supplier().get();
+                for (int i = from; i < to; i++) {
+                    collector.accumulator().accept(container, patients[i]);
+                }
+                return container;
+            }
+            int middle = (from + to) >>> 1;
+            CohortTask<A> left = new CohortTask<>(patients, from, middle, collector);
+            left.fork();
+            A right = new CohortTask<>(patients, middle, to, collector).compute();
+            return collector.combiner().apply(left.join(), right);
+        }
     }
 
     /**
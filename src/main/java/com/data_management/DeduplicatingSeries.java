@@ -0,0 +1,317 @@
+package com.data_management;
+
+import java.util.Arrays;
+
+/**
+ * A {@link SampleSeries} decorator that drops samples whose timestamp is already stored, such as samples
+ * re-delivered after a source reconnects or a file is imported again. Samples are identified by timestamp,
+ * since a series already belongs to one patient and one record type.
+ * <p>
+ * A sample at the newest timestamp is a duplicate and a sample after it is new, so in-order ingest needs a
+ * single comparison. Reordered samples are first checked against a Bloom filter of recent timestamps; only if the
+ * filter reports a possible match, or the sample is older than what the filter covers, is the wrapped series
+ * searched. The filter therefore never causes a sample to be dropped, a false positive only costs a search.
+ * The filter keeps two generations of {@value #GENERATION_CAPACITY} timestamps each and drops the older one when
+ * the current one is full, so it stays at a fixed size of one kilobyte per series.
+ */
+final class DeduplicatingSeries implements SampleSeries {
+    private static final int GENERATION_CAPACITY = 400;
+    private static final int GENERATION_BITS = 4096;
+    private static final int GENERATION_WORDS = GENERATION_BITS / Long.SIZE;
+    private static final SampleVisitor FIND_ANY = (timestamp, value) -> false;
+
+    private final SampleSeries series;
+    private long[] current = new long[GENERATION_WORDS];
+    private long[] previous = new long[GENERATION_WORDS];
+    private int currentCount;
+    // Every stored timestamp after this bound is in one of the generations: it was stored after the older
+    // generation started, when nothing after the newest timestamp at that time had been stored yet.
+    private long coveredAfter = Long.MIN_VALUE;
+    private long currentCoveredAfter = Long.MIN_VALUE;
+    private long newestTimestamp = Long.MIN_VALUE;
+    private long duplicateCount;
+
+    /**
+     * Constructs a DeduplicatingSeries around the given series.
+     *
+     * @param series The series that stores the samples.
+     */
+    DeduplicatingSeries(SampleSeries series) {
+        this.series = series;
+    }
+
+    /**
+     * Checks whether a sample is new and accepted by the wrapped series.
+     *
+     * @param timestamp The timestamp of the sample.
+     * @return true if the sample would be kept, false if it is a duplicate or the wrapped series drops it.
+     */
+    @Override
+    public boolean accepts(long timestamp) {
+        return !isDuplicate(timestamp) && series.accepts(timestamp);
+    }
+
+    /**
+     * Adds a sample unless a sample with the same timestamp is already stored, in which case it is counted
+     * and dropped.
+     *
+     * @param timestamp The timestamp of the sample.
+     * @param value     The measurement value of the sample.
+     */
+    @Override
+    public void add(long timestamp, double value) {
+        if (isDuplicate(timestamp)) {
+            duplicateCount++;
+            return;
+        }
+        series.add(timestamp, value);
+        remember(timestamp);
+    }
+
+    /**
+     * Returns the index of the first sample with a timestamp greater than or equal to the given time.
+     *
+     * @param timestamp The time to search for.
+     * @return The index of the first matching sample, or {@link #size()} if there is none.
+     */
+    @Override
+    public int lowerBound(long timestamp) {
+        return series.lowerBound(timestamp);
+    }
+
+    /**
+     * Returns the index of the first sample with a timestamp strictly greater than the given time.
+     *
+     * @param timestamp The time to search for.
+     * @return The index of the first matching sample, or {@link #size()} if there is none.
+     */
+    @Override
+    public int upperBound(long timestamp) {
+        return series.upperBound(timestamp);
+    }
+
+    /**
+     * Gets the timestamp of the sample at the given index.
+     *
+     * @param index The index of the sample.
+     * @return The timestamp of the sample.
+     */
+    @Override
+    public long getTimestamp(int index) {
+        return series.getTimestamp(index);
+    }
+
+    /**
+     * Gets the measurement value of the sample at the given index.
+     *
+     * @param index The index of the sample.
+     * @return The measurement value of the sample.
+     */
+    @Override
+    public double getValue(int index) {
+        return series.getValue(index);
+    }
+
+    /**
+     * Visits the samples of the wrapped series within the given range.
+     *
+     * @param startTime The start of the range, inclusive.
+     * @param endTime   The end of the range, inclusive.
+     * @param visitor   Receives the samples and may stop the scan early.
+     * @return true if the scan reached the end of the range, false if the visitor stopped it.
+     */
+    @Override
+    public boolean scan(long startTime, long endTime, SampleVisitor visitor) {
+        return series.scan(startTime, endTime, visitor);
+    }
+
+    /**
+     * Reports whether the wrapped series can be scanned without a lock.
+     *
+     * @return true if the wrapped series supports snapshot scans.
+     */
+    @Override
+    public boolean supportsSnapshotScan() {
+        return series.supportsSnapshotScan();
+    }
+
+    /**
+     * Freezes the wrapped series.
+     *
+     * @return The samples at this point in time.
+     */
+    @Override
+    public Frozen freeze() {
+        return series.freeze();
+    }
+
+    /**
+     * Copies the timestamps of a range of samples into a new array.
+     *
+     * @param from The index of the first sample, inclusive.
+     * @param to   The index of the last sample, exclusive.
+     * @return The timestamps of the samples in order.
+     */
+    @Override
+    public long[] copyTimestamps(int from, int to) {
+        return series.copyTimestamps(from, to);
+    }
+
+    /**
+     * Copies the measurement values of a range of samples into a new array.
+     *
+     * @param from The index of the first sample, inclusive.
+     * @param to   The index of the last sample, exclusive.
+     * @return The values of the samples in order.
+     */
+    @Override
+    public double[] copyValues(int from, int to) {
+        return series.copyValues(from, to);
+    }
+
+    /**
+     * Gets the number of samples in the wrapped series.
+     *
+     * @return The number of samples.
+     */
+    @Override
+    public int size() {
+        return series.size();
+    }
+
+    /**
+     * Gets the number of samples dropped by the retention policy of the wrapped series.
+     *
+     * @return The number of evicted samples.
+     */
+    @Override
+    public long getEvictedCount() {
+        return series.getEvictedCount();
+    }
+
+    /**
+     * Gets the number of samples the wrapped series dropped for arriving too late.
+     *
+     * @return The number of late samples dropped.
+     */
+    @Override
+    public long getDroppedLateCount() {
+        return series.getDroppedLateCount();
+    }
+
+    /**
+     * Gets the number of samples dropped because a sample with the same timestamp was already stored.
+     *
+     * @return The number of duplicates dropped.
+     */
+    @Override
+    public long getDuplicateCount() {
+        return duplicateCount;
+    }
+
+    /**
+     * Spills old history of the wrapped series.
+     *
+     * @param coldStore           The store to write the spilled samples to.
+     * @param hotWindowMillis     How much history before the newest sample stays on the heap.
+     * @param coldSamplesPerBlock The number of samples written to the cold store as one block.
+     * @return The number of samples spilled.
+     */
+    @Override
+    public long spill(ColdStore coldStore, long hotWindowMillis, int coldSamplesPerBlock) {
+        return series.spill(coldStore, hotWindowMillis, coldSamplesPerBlock);
+    }
+
+    /**
+     * Sheds old history of the wrapped series. A shed sample that is delivered again is stored again.
+     *
+     * @param cutoff The timestamp of the oldest sample kept.
+     * @return The number of samples evicted.
+     */
+    @Override
+    public long shed(long cutoff) {
+        return series.shed(cutoff);
+    }
+
+    /**
+     * Gets the retention policy of the wrapped series.
+     *
+     * @return The retention policy.
+     */
+    @Override
+    public RetentionPolicy getRetentionPolicy() {
+        return series.getRetentionPolicy();
+    }
+
+    /**
+     * Replaces the retention policy of the wrapped series.
+     *
+     * @param retentionPolicy The new retention policy.
+     */
+    @Override
+    public void setRetentionPolicy(RetentionPolicy retentionPolicy) {
+        series.setRetentionPolicy(retentionPolicy);
+    }
+
+    /**
+     * Releases the wrapped series.
+     */
+    @Override
+    public void close() {
+        series.close();
+    }
+
+    private boolean isDuplicate(long timestamp) {
+        if (timestamp > newestTimestamp) {
+            return false;
+        }
+        if (timestamp == newestTimestamp) {
+            return true;
+        }
+        if (timestamp > coveredAfter && !mightContain(current, timestamp) && !mightContain(previous, timestamp)) {
+            return false;
+        }
+        return !series.scan(timestamp, timestamp, FIND_ANY);
+    }
+
+    private void remember(long timestamp) {
+        if (currentCount == GENERATION_CAPACITY) {
+            long[] cleared = previous;
+            Arrays.fill(cleared, 0);
+            previous = current;
+            current = cleared;
+            currentCount = 0;
+            coveredAfter = currentCoveredAfter;
+            currentCoveredAfter = newestTimestamp;
+        }
+        long hash = hash(timestamp);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < 3; i++) {
+            int bit = (h1 + i * h2) & (GENERATION_BITS - 1);
+            current[bit >>> 6] |= 1L << bit;
+        }
+        currentCount++;
+        if (timestamp > newestTimestamp) {
+            newestTimestamp = timestamp;
+        }
+    }
+
+    private static boolean mightContain(long[] generation, long timestamp) {
+        long hash = hash(timestamp);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < 3; i++) {
+            int bit = (h1 + i * h2) & (GENERATION_BITS - 1);
+            if ((generation[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long hash(long timestamp) {
+        long hash = timestamp * 0x9E3779B97F4A7C15L;
+        return hash ^ (hash >>> 29);
+    }
+}
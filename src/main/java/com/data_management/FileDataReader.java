@@ -1,64 +1,554 @@
 package com.data_management;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Class for reading patient data from a file and storing it in DataStorage.
+ * By default the file is read line by line on the calling thread. With a parallelism above one the file is
+ * memory-mapped in chunks of {@value #CHUNK_BYTES} bytes aligned on line boundaries and the chunks are parsed on a
+ * pool of worker threads. The parsed samples are stored by as many storing lanes, each a single thread that owns
+ * the patients whose ID falls into it and receives their samples chunk by chunk in file order. Every patient
+ * therefore receives its samples in the same order as with a sequential read, while both parsing and storing
+ * scale with the cores.
+ * The path can also be a directory, such as the output of the simulator's {@code FileOutputStrategy}, whose label
+ * files are then read concurrently, one per thread.
+ * Imports of large files can be made resumable with {@link #enableCheckpoints(Path, long)}.
+ * {@link #connectAndReadData(DataStorage)} follows a growing file instead, storing the lines appended to it.
  */
 public class FileDataReader implements DataReader {
+    private static final int BATCH_SIZE = 4096;
+    private static final int CHUNK_BYTES = 1 << 20;
+    private static final int READ_BUFFER_BYTES = 64 * 1024;
+
     private String filePath;
+    private final int parallelism;
+    private final RecordParser lineParser = new RecordParser();
+    private final SampleBatch lineBatch = new SampleBatch(1);
+    private FileFollower follower;
+    private Path checkpointFile;
+    private long checkpointIntervalBytes;
 
     /**
-     * Constructs a FileDataReader with the specified file path.
+     * Constructs a FileDataReader with the specified file path that reads the file sequentially.
      *
-     * @param filePath The path of the file to read data from.
+     * @param filePath The path of the file, or directory of files, to read data from.
      */
     public FileDataReader(String filePath) {
+        this(filePath, 1);
+    }
+
+    /**
+     * Constructs a FileDataReader with the specified file path that parses the file on several threads.
+     *
+     * @param filePath    The path of the file to read data from.
+     * @param parallelism The number of parser threads, or 1 to read the file sequentially.
+     * @throws IllegalArgumentException If parallelism is not positive.
+     */
+    public FileDataReader(String filePath, int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("Parallelism must be positive");
+        }
         this.filePath = filePath;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Makes imports of a single file resumable. While the file is read, sequentially or in parallel, an
+     * {@link ImportCheckpoint} of the offset up to which every line has been stored is written to the checkpoint
+     * file whenever the import has advanced by the interval, when the import fails and when it completes. A durable
+     * storage is synced before every checkpoint, so a checkpoint never covers records a crash could lose.
+     * A later {@link #readData(DataStorage)} of the same file resumes from the checkpoint: the bytes before it are
+     * not read again, and in the parallel mode the chunks are cut from the checkpoint on, so the chunks completed
+     * before are skipped. After a complete import, reading the file again only stores lines appended since,
+     * until the checkpoint file is deleted.
+     * <p>
+     * Lines stored after the last checkpoint before a crash are stored again when the import resumes, unless
+     * deduplication is enabled for their record types. Directory reads are not checkpointed.
+     *
+     * @param checkpointFile The file holding the checkpoint.
+     * @param intervalBytes  How many bytes of the file to import between checkpoints.
+     * @throws IllegalArgumentException If the interval is not positive.
+     */
+    public void enableCheckpoints(Path checkpointFile, long intervalBytes) {
+        if (intervalBytes <= 0) {
+            throw new IllegalArgumentException("Checkpoint interval must be positive");
+        }
+        this.checkpointFile = checkpointFile;
+        this.checkpointIntervalBytes = intervalBytes;
     }
 
     /**
      * Reads data from the file and stores it in the specified data storage.
+     * Lines are stored in batches through {@link DataStorage#addPatientDataBatch(SampleBatch)}.
+     * The format of the lines, see {@link RecordParser.Format}, is told from the beginning of the file.
+     * If a line cannot be parsed, the lines before it are stored and the exception is rethrown.
+     * If the storage rejects a batch, the exception is rethrown as well; in the parallel mode the other lanes
+     * may by then have stored samples from later lines.
+     * <p>
+     * If the path is a directory, such as the output directory of the simulator's {@code FileOutputStrategy}, every
+     * {@code .txt} file in it is read, each sequentially, several files at a time on up to the larger of the
+     * parallelism and the number of processors threads. A file of labelled lines whose name, like
+     * {@code Alert.txt}, is not a registered record type is skipped. A failing file does not stop the others;
+     * the first failure is rethrown once all files have been read.
      *
      * @param dataStorage The data storage where the data will be stored.
      * @throws IOException If an I/O error occurs.
      */
     @Override
     public void readData(DataStorage dataStorage) throws IOException {
-        try (BufferedReader br = new BufferedReader(new FileReader(filePath))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                parseAndStore(line, dataStorage);
-            }
+        Path path = Paths.get(filePath);
+        if (Files.isDirectory(path)) {
+            readDirectory(path, dataStorage);
+        } else if (parallelism > 1) {
+            readParallel(path, dataStorage);
+        } else {
+            readFile(path, checkpointFile, dataStorage);
         }
     }
 
     /**
-     * Unsupported operation for FileDataReader. Throws UnsupportedOperationException.
+     * Follows the file, or every file in the directory, and stores the lines appended to it until
+     * {@link #stop()} is called. The existing lines are read first; afterwards only appended bytes are read,
+     * on a background thread, as described for {@link FileFollower}. Returns immediately.
      *
-     * @param dataStorage The data storage where the data would be stored.
-     * @throws IOException                  If an I/O error occurs.
-     * @throws UnsupportedOperationException Always thrown for this implementation.
+     * @param dataStorage The data storage where the data will be stored.
+     * @throws IOException If the directory of the file cannot be watched.
+     * @throws IllegalStateException If the reader is following already.
      */
     @Override
-    public void connectAndReadData(DataStorage dataStorage) throws IOException {
-        throw new UnsupportedOperationException("FileDataReader does not support connectAndReadData");
+    public synchronized void connectAndReadData(DataStorage dataStorage) throws IOException {
+        if (follower != null) {
+            throw new IllegalStateException("FileDataReader is following already");
+        }
+        FileFollower started = new FileFollower(Paths.get(filePath), dataStorage);
+        started.start();
+        follower = started;
+    }
+
+    /**
+     * Gets the follower started by {@link #connectAndReadData(DataStorage)}.
+     *
+     * @return The follower, or null if the reader is not following.
+     */
+    public synchronized FileFollower getFollower() {
+        return follower;
+    }
+
+    /**
+     * Stops following the file, if the reader is following.
+     *
+     * @throws IOException If the follower cannot be closed.
+     */
+    public synchronized void stop() throws IOException {
+        if (follower != null) {
+            follower.close();
+            follower = null;
+        }
     }
 
     /**
      * Parses a line of data and stores it in the specified data storage.
+     * The line is parsed by the same {@link RecordParser} as files, so the record type label is resolved
+     * to its {@link RecordType} without creating Strings. A blank line stores nothing.
      *
      * @param line        The line of data to be parsed.
      * @param dataStorage The data storage where the parsed data will be stored.
+     * @throws NumberFormatException If the line is malformed.
+     * @throws IllegalArgumentException If the record type is not registered.
+     */
+    public synchronized void parseAndStore(String line, DataStorage dataStorage) {
+        lineBatch.clear();
+        lineParser.parse(line, lineBatch);
+        for (int i = 0; i < lineBatch.size(); i++) {
+            dataStorage.addPatientData(lineBatch.getPatientId(i), lineBatch.getValue(i),
+                    RecordType.forCode(lineBatch.getTypeCode(i)), lineBatch.getTimestamp(i));
+        }
+    }
+
+    private void readFile(Path file, Path checkpoint, DataStorage dataStorage) throws IOException {
+        SampleBatch batch = new SampleBatch(BATCH_SIZE);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            RecordParser parser = new RecordParser(detectFormat(channel));
+            Progress progress = new Progress(file, channel, checkpoint, checkpointIntervalBytes);
+            // The position in the file of the first byte in the buffer.
+            long bufferStart = progress.offset;
+            channel.position(bufferStart);
+            ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_BYTES);
+            try {
+                while (channel.read(buffer) >= 0) {
+                    int filled = buffer.position();
+                    int rest;
+                    try {
+                        rest = parser.parseLines(buffer, 0, filled, batch);
+                    } catch (RuntimeException e) {
+                        store(batch, bufferStart + parser.getLineStart(), progress, dataStorage);
+                        throw e;
+                    }
+                    if (batch.size() >= BATCH_SIZE) {
+                        store(batch, bufferStart + rest, progress, dataStorage);
+                    }
+                    // Keep the incomplete last line for the next read, growing the buffer for very long lines.
+                    buffer.limit(filled).position(rest);
+                    buffer.compact();
+                    bufferStart += rest;
+                    if (!buffer.hasRemaining()) {
+                        ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+                        buffer.flip();
+                        larger.put(buffer);
+                        buffer = larger;
+                    }
+                }
+                try {
+                    parser.parseLine(buffer, 0, buffer.position(), batch);
+                } catch (RuntimeException e) {
+                    store(batch, bufferStart, progress, dataStorage);
+                    throw e;
+                }
+                store(batch, bufferStart + buffer.position(), progress, dataStorage);
+                progress.checkpoint(dataStorage);
+            } catch (IOException | RuntimeException e) {
+                progress.checkpoint(dataStorage, e);
+                throw e;
+            }
+        }
+    }
+
+    private static void store(SampleBatch batch, long end, Progress progress, DataStorage dataStorage)
+            throws IOException {
+        dataStorage.addPatientDataBatch(batch);
+        progress.commit(end, batch.size(), dataStorage);
+        batch.clear();
+    }
+
+    private void readDirectory(Path directory, DataStorage dataStorage) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory, "*.txt")) {
+            for (Path entry : entries) {
+                if (Files.isRegularFile(entry)) {
+                    files.add(entry);
+                }
+            }
+        }
+        if (files.isEmpty()) {
+            return;
+        }
+        Collections.sort(files);
+        int threads = Math.min(files.size(), Math.max(parallelism, Runtime.getRuntime().availableProcessors()));
+        ExecutorService readers = newPool(threads, "file-data-reader-file");
+        try {
+            List<Future<?>> reads = new ArrayList<>(files.size());
+            for (Path file : files) {
+                reads.add(readers.submit(() -> {
+                    readLabelFile(file, dataStorage);
+                    return null;
+                }));
+            }
+            Exception failure = null;
+            for (Future<?> read : reads) {
+                try {
+                    await(read);
+                } catch (IOException | RuntimeException e) {
+                    if (failure == null) {
+                        failure = e;
+                    } else {
+                        failure.addSuppressed(e);
+                    }
+                }
+            }
+            if (failure instanceof IOException) {
+                throw (IOException) failure;
+            }
+            if (failure != null) {
+                throw (RuntimeException) failure;
+            }
+        } finally {
+            readers.shutdownNow();
+        }
+    }
+
+    private void readLabelFile(Path file, DataStorage dataStorage) throws IOException {
+        RecordParser.Format format;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            format = detectFormat(channel);
+        }
+        if (hasUnknownLabel(file, format)) {
+            System.err.println("Skipping " + file + ": no record type for its label");
+            return;
+        }
+        readFile(file, null, dataStorage);
+    }
+
+    /**
+     * Tells whether a file is a {@code FileOutputStrategy} file, named after the label of its lines, whose label
+     * is not a registered record type, such as {@code Alert.txt}.
+     *
+     * @param file   The file.
+     * @param format The format of its lines.
+     * @return true if the lines are labelled and the file name without its extension is not a registered label.
+     */
+    static boolean hasUnknownLabel(Path file, RecordParser.Format format) {
+        if (format != RecordParser.Format.LABELLED) {
+            return false;
+        }
+        String name = file.getFileName().toString();
+        int extension = name.lastIndexOf('.');
+        return RecordType.forLabel(extension > 0 ? name.substring(0, extension) : name) == null;
+    }
+
+    // The format told from the beginning of the file, comma-separated if it cannot be told.
+    private static RecordParser.Format detectFormat(FileChannel channel) throws IOException {
+        ByteBuffer head = ByteBuffer.allocate(256);
+        channel.read(head, 0);
+        RecordParser.Format format = RecordParser.detect(head, 0, head.position());
+        return format == null ? RecordParser.Format.COMMA_SEPARATED : format;
+    }
+
+    private void readParallel(Path file, DataStorage dataStorage) throws IOException {
+        ExecutorService parsers = newPool(parallelism, "file-data-reader-parser");
+        ExecutorService[] lanes = new ExecutorService[parallelism];
+        for (int lane = 0; lane < lanes.length; lane++) {
+            lanes[lane] = newPool(1, "file-data-reader-storer");
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            RecordParser.Format format = detectFormat(channel);
+            Progress progress = new Progress(file, channel, checkpointFile, checkpointIntervalBytes);
+            long size = channel.size();
+            // A few chunks per thread are parsed and stored ahead, bounding the memory held by parsed batches.
+            Deque<Future<Chunk>> parsing = new ArrayDeque<>();
+            Deque<Chunk> storing = new ArrayDeque<>();
+            long start = progress.offset;
+            try {
+                while (start < size || !parsing.isEmpty()) {
+                    while (start < size && parsing.size() < 2 * parallelism) {
+                        long from = start;
+                        long to = lineBoundary(channel, start + CHUNK_BYTES, size);
+                        parsing.add(parsers.submit(() -> parseChunk(channel, format, from, to, lanes.length)));
+                        start = to;
+                    }
+                    Chunk chunk = await(parsing.poll());
+                    for (int lane = 0; lane < lanes.length; lane++) {
+                        List<SampleBatch> batches = chunk.lanes.get(lane);
+                        chunk.stores.add(lanes[lane].submit(() -> {
+                            for (SampleBatch batch : batches) {
+                                dataStorage.addPatientDataBatch(batch);
+                            }
+                        }));
+                    }
+                    storing.add(chunk);
+                    if (chunk.failure != null) {
+                        while (!storing.isEmpty()) {
+                            commit(storing.poll(), progress, dataStorage);
+                        }
+                        throw chunk.failure;
+                    }
+                    while (storing.size() > 2 * parallelism) {
+                        commit(storing.poll(), progress, dataStorage);
+                    }
+                }
+                while (!storing.isEmpty()) {
+                    commit(storing.poll(), progress, dataStorage);
+                }
+                progress.checkpoint(dataStorage);
+            } catch (IOException | RuntimeException e) {
+                progress.checkpoint(dataStorage, e);
+                throw e;
+            }
+        } finally {
+            parsers.shutdownNow();
+            for (ExecutorService lane : lanes) {
+                lane.shutdownNow();
+            }
+        }
+    }
+
+    // Every lane stores the chunks in order, so once a chunk is stored by all lanes, so are the chunks before it.
+    private static void commit(Chunk chunk, Progress progress, DataStorage dataStorage) throws IOException {
+        awaitAll(chunk.stores);
+        progress.commit(chunk.end, chunk.samples, dataStorage);
+    }
+
+    private static Chunk parseChunk(FileChannel channel, RecordParser.Format format, long from, long to,
+                                    int laneCount) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+        Chunk chunk = new Chunk(laneCount);
+        SampleBatch parsed = new SampleBatch(BATCH_SIZE);
+        RecordParser parser = new RecordParser(format);
+        chunk.end = to;
+        try {
+            int rest = parser.parseLines(buffer, 0, buffer.limit(), parsed);
+            parser.parseLine(buffer, rest, buffer.limit(), parsed);
+        } catch (RuntimeException e) {
+            chunk.failure = e;
+            chunk.end = from + parser.getLineStart();
+        }
+        chunk.samples = parsed.size();
+        chunk.distribute(parsed);
+        return chunk;
+    }
+
+    // The start of the first line beginning at or after the position, or the size of the file.
+    private static long lineBoundary(FileChannel channel, long position, long size) throws IOException {
+        if (position >= size) {
+            return size;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        long offset = position - 1;
+        while (offset < size) {
+            buffer.clear();
+            int read = channel.read(buffer, offset);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return offset + i + 1;
+                }
+            }
+            offset += read;
+        }
+        return size;
+    }
+
+    private static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading a file in parallel");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private static void awaitAll(List<Future<?>> futures) throws IOException {
+        for (Future<?> future : futures) {
+            await(future);
+        }
+    }
+
+    private static ExecutorService newPool(int threads, String name) {
+        return Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * The samples parsed from one chunk of the file, split into one list of batches per storing lane, the exception
+     * that stopped parsing, if any, the end of the lines parsed, the number of samples and the stores of the lanes.
      */
-    public void parseAndStore(String line, DataStorage dataStorage) {
-        String[] parts = line.split(",");
-        int patientId = Integer.parseInt(parts[0].trim());
-        double measurementValue = Double.parseDouble(parts[1].trim());
-        String recordType = parts[2].trim();
-        long timestamp = Long.parseLong(parts[3].trim());
-        dataStorage.addPatientData(patientId, measurementValue, recordType, timestamp);
+    private static final class Chunk {
+        private final List<List<SampleBatch>> lanes;
+        private final List<Future<?>> stores = new ArrayList<>();
+        private RuntimeException failure;
+        private long end;
+        private int samples;
+
+        private Chunk(int laneCount) {
+            lanes = new ArrayList<>(laneCount);
+            for (int lane = 0; lane < laneCount; lane++) {
+                lanes.add(new ArrayList<>());
+            }
+        }
+
+        private void distribute(SampleBatch parsed) {
+            SampleBatch[] open = new SampleBatch[lanes.size()];
+            for (int i = 0; i < parsed.size(); i++) {
+                int patientId = parsed.getPatientId(i);
+                int lane = Math.floorMod(patientId, open.length);
+                if (open[lane] == null || open[lane].size() == BATCH_SIZE) {
+                    open[lane] = new SampleBatch(BATCH_SIZE);
+                    lanes.get(lane).add(open[lane]);
+                }
+                open[lane].add(patientId, parsed.getValue(i), RecordType.forCode(parsed.getTypeCode(i)),
+                        parsed.getTimestamp(i));
+            }
+        }
+    }
+
+    /**
+     * The progress of an import of one file: the offset up to which every line has been stored and the number of
+     * records stored up to there, checkpointed to a file if checkpoints are enabled. Starts from a matching
+     * checkpoint, if there is one.
+     */
+    private static final class Progress {
+        private final Path file;
+        private final FileChannel channel;
+        private final Path checkpointFile;
+        private final long intervalBytes;
+        private long offset;
+        private long records;
+        private long checkpointedOffset;
+
+        private Progress(Path file, FileChannel channel, Path checkpointFile, long intervalBytes) throws IOException {
+            this.file = file;
+            this.channel = channel;
+            this.checkpointFile = checkpointFile;
+            this.intervalBytes = intervalBytes;
+            if (checkpointFile != null) {
+                ImportCheckpoint checkpoint = ImportCheckpoint.load(checkpointFile);
+                if (checkpoint != null && checkpoint.matches(file, channel)) {
+                    offset = checkpoint.getOffset();
+                    records = checkpoint.getRecordsCommitted();
+                }
+            }
+            checkpointedOffset = offset;
+        }
+
+        private void commit(long end, int samples, DataStorage dataStorage) throws IOException {
+            offset = end;
+            records += samples;
+            if (offset - checkpointedOffset >= intervalBytes) {
+                checkpoint(dataStorage);
+            }
+        }
+
+        private void checkpoint(DataStorage dataStorage) throws IOException {
+            if (checkpointFile == null) {
+                return;
+            }
+            // Records are only checkpointed once they are durable.
+            dataStorage.sync();
+            ImportCheckpoint.take(file, channel, offset, records).write(checkpointFile);
+            checkpointedOffset = offset;
+        }
+
+        // Checkpoints the progress made before a failure, without hiding the failure.
+        private void checkpoint(DataStorage dataStorage, Exception failure) {
+            try {
+                checkpoint(dataStorage);
+            } catch (IOException | RuntimeException e) {
+                failure.addSuppressed(e);
+            }
+        }
     }
 }
@@ -0,0 +1,392 @@
+package com.data_management;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Follows growing data files, like {@code tail -F}, and stores the lines appended to them in a
+ * {@link DataStorage}. The path is either one file or a directory, in which case every regular file in it is
+ * followed, including files created later.
+ * <p>
+ * Every followed file keeps an open channel and the committed byte offset, the position after the last complete
+ * line that has been stored. A poll reads only the bytes between the committed offset and the current size, so
+ * its cost depends on the data appended since the last poll, not on the size of the file. An incomplete last
+ * line is left uncommitted and read again once it is complete.
+ * <ul>
+ *     <li>Rotation: when the path names a different file than the one open, the rest of the old file is read
+ *     through its still open channel, then the new file is followed from its start. Files are told apart by
+ *     their file key, or by their creation time where the file system has no file keys.</li>
+ *     <li>Truncation: when a file is shorter than its committed offset, it is read again from its start.
+ *     A file truncated and refilled past the committed offset between two polls cannot be told from one that
+ *     grew, like with {@code tail}.</li>
+ *     <li>The format of every file, see {@link RecordParser.Format}, is told from its first line, so the output
+ *     directory of the simulator's {@code FileOutputStrategy} can be followed. Its files of labels that are no
+ *     record type, such as {@code Alert.txt}, are skipped.</li>
+ *     <li>Malformed lines are logged to {@code System.err}, counted and skipped, so one bad line does not stop
+ *     the follower.</li>
+ * </ul>
+ * {@link #poll()} can be called directly. {@link #start()} polls on a background thread whenever a
+ * {@link WatchService} reports a change in the directory, and at least every {@value #FALLBACK_POLL_MILLIS} ms
+ * for file systems whose watch service is slow or misses appends to a rotated file.
+ */
+public final class FileFollower implements Closeable {
+    private static final long FALLBACK_POLL_MILLIS = 1_000L;
+    private static final int READ_BUFFER_BYTES = 64 * 1024;
+
+    private final Path path;
+    private final boolean directory;
+    private final DataStorage dataStorage;
+    private final Map<Path, FollowedFile> files = new TreeMap<>();
+    private final SampleBatch batch = new SampleBatch(1024);
+    private ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_BYTES);
+    private long ingestedSamples;
+    private long skippedLines;
+    private long rotations;
+    private long truncations;
+    private WatchService watchService;
+    private Thread thread;
+    private boolean closed;
+
+    /**
+     * Constructs a FileFollower. It reads nothing until {@link #poll()} or {@link #start()} is called,
+     * and the first poll reads the files from their start.
+     *
+     * @param path        The file to follow, or a directory whose files to follow.
+     * @param dataStorage The data storage where the appended lines will be stored.
+     */
+    public FileFollower(Path path, DataStorage dataStorage) {
+        this.path = path.toAbsolutePath();
+        this.directory = Files.isDirectory(this.path);
+        this.dataStorage = dataStorage;
+        if (!directory) {
+            files.put(this.path, new FollowedFile(this.path));
+        }
+    }
+
+    /**
+     * Starts polling on a background thread on every change in the watched directory.
+     *
+     * @throws IOException If the directory cannot be watched.
+     * @throws IllegalStateException If the follower has been started or closed already.
+     */
+    public synchronized void start() throws IOException {
+        if (thread != null || closed) {
+            throw new IllegalStateException("File follower already started");
+        }
+        watchService = path.getFileSystem().newWatchService();
+        Path watched = directory ? path : path.getParent();
+        watched.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+        thread = new Thread(this::follow, "file-data-reader-follower");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Reads and stores the lines appended to every followed file since the last poll,
+     * following rotated and truncated files as described above.
+     *
+     * @return The number of samples stored, or 0 once the follower is closed.
+     * @throws IOException If a file cannot be read.
+     */
+    public synchronized long poll() throws IOException {
+        if (closed) {
+            return 0;
+        }
+        if (directory) {
+            discoverFiles();
+        }
+        long before = ingestedSamples;
+        Iterator<FollowedFile> iterator = files.values().iterator();
+        while (iterator.hasNext()) {
+            FollowedFile file = iterator.next();
+            if (!poll(file) && directory) {
+                // Gone from the directory; followed from its start again if it reappears.
+                iterator.remove();
+            }
+        }
+        return ingestedSamples - before;
+    }
+
+    /**
+     * Gets the committed byte offset of a followed file.
+     *
+     * @param file The file.
+     * @return The position after the last line stored, or -1 if the file is not followed or not open.
+     */
+    public synchronized long getOffset(Path file) {
+        FollowedFile followed = files.get(file.toAbsolutePath());
+        return followed == null || followed.channel == null ? -1 : followed.offset;
+    }
+
+    /**
+     * Gets the number of samples stored so far.
+     *
+     * @return The number of samples.
+     */
+    public synchronized long getIngestedSampleCount() {
+        return ingestedSamples;
+    }
+
+    /**
+     * Gets the number of lines skipped because they could not be parsed or stored.
+     *
+     * @return The number of lines.
+     */
+    public synchronized long getSkippedLineCount() {
+        return skippedLines;
+    }
+
+    /**
+     * Gets the number of times a followed path was found to name a new file.
+     *
+     * @return The number of rotations.
+     */
+    public synchronized long getRotationCount() {
+        return rotations;
+    }
+
+    /**
+     * Gets the number of times a followed file was found to be shorter than its committed offset.
+     *
+     * @return The number of truncations.
+     */
+    public synchronized long getTruncationCount() {
+        return truncations;
+    }
+
+    /**
+     * Stops the background thread, if any, and closes the followed files.
+     *
+     * @throws IOException If the watch service cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        Thread following;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            following = thread;
+            if (watchService != null) {
+                watchService.close();
+            }
+        }
+        if (following != null) {
+            following.interrupt();
+            try {
+                following.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            for (FollowedFile file : files.values()) {
+                file.close();
+            }
+        }
+    }
+
+    private void follow() {
+        while (true) {
+            try {
+                poll();
+                WatchKey key = watchService.poll(FALLBACK_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                // Every change leads to one poll of all files, so the events themselves do not matter.
+                while (key != null) {
+                    key.pollEvents();
+                    key.reset();
+                    key = watchService.poll();
+                }
+            } catch (ClosedWatchServiceException | InterruptedException e) {
+                return;
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Error following " + path + ": " + e.getMessage());
+                try {
+                    Thread.sleep(FALLBACK_POLL_MILLIS);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void discoverFiles() throws IOException {
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(path, Files::isRegularFile)) {
+            for (Path entry : entries) {
+                files.computeIfAbsent(entry, FollowedFile::new);
+            }
+        }
+    }
+
+    // Returns false if the path names no file any more.
+    private boolean poll(FollowedFile file) throws IOException {
+        if (file.channel != null) {
+            if (file.channel.size() < file.offset) {
+                truncations++;
+                file.reset();
+            }
+            drain(file);
+        }
+        Object identity = identity(file.path);
+        if (identity == null) {
+            file.close();
+            return false;
+        }
+        if (!identity.equals(file.identity)) {
+            if (file.channel != null) {
+                rotations++;
+                file.close();
+            }
+            try {
+                file.channel = FileChannel.open(file.path, StandardOpenOption.READ);
+            } catch (NoSuchFileException e) {
+                return false;
+            }
+            // Rotated again between the two calls at worst, which the next poll notices.
+            file.identity = identity;
+            file.reset();
+            drain(file);
+        }
+        return true;
+    }
+
+    private void drain(FollowedFile file) throws IOException {
+        long size = file.channel.size();
+        while (file.offset < size) {
+            buffer.clear();
+            if (size - file.offset < buffer.capacity()) {
+                buffer.limit((int) (size - file.offset));
+            }
+            int read = file.channel.read(buffer, file.offset);
+            if (read <= 0) {
+                return;
+            }
+            if (file.parser == null) {
+                RecordParser.Format format = RecordParser.detect(buffer, 0, read);
+                if (format == null) {
+                    // Nothing to tell the format from yet.
+                    return;
+                }
+                file.parser = new RecordParser(format);
+                file.skipped = FileDataReader.hasUnknownLabel(file.path, format);
+                if (file.skipped) {
+                    System.err.println("Skipping " + file.path + ": no record type for its label");
+                }
+            }
+            if (file.skipped) {
+                file.offset = size;
+                return;
+            }
+            int complete = parseLines(file, read);
+            store(file);
+            if (complete == 0) {
+                if (read < buffer.capacity()) {
+                    // An incomplete last line.
+                    return;
+                }
+                buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+            }
+            file.offset += complete;
+        }
+    }
+
+    private int parseLines(FollowedFile file, int length) {
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            byte b = buffer.get(i);
+            if (b == '\n' || b == '\r') {
+                try {
+                    file.parser.parseLine(buffer, start, i, batch);
+                } catch (RuntimeException e) {
+                    skippedLines++;
+                    System.err.println("Error parsing line in " + file.path + ": " + e.getMessage());
+                }
+                start = i + 1;
+            }
+        }
+        return start;
+    }
+
+    private void store(FollowedFile file) {
+        try {
+            dataStorage.addPatientDataBatch(batch);
+            ingestedSamples += batch.size();
+        } catch (RuntimeException e) {
+            // The batch is rejected as a whole, so store its samples one by one to skip only the bad ones.
+            for (int i = 0; i < batch.size(); i++) {
+                try {
+                    dataStorage.addPatientData(batch.getPatientId(i), batch.getValue(i),
+                            RecordType.forCode(batch.getTypeCode(i)), batch.getTimestamp(i));
+                    ingestedSamples++;
+                } catch (RuntimeException rejected) {
+                    skippedLines++;
+                    System.err.println("Error storing sample from " + file.path + ": " + rejected.getMessage());
+                }
+            }
+        }
+        batch.clear();
+    }
+
+    private static Object identity(Path file) throws IOException {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        if (!attributes.isRegularFile()) {
+            return null;
+        }
+        Object key = attributes.fileKey();
+        return key != null ? key : attributes.creationTime();
+    }
+
+    /**
+     * A followed file: its open channel, the identity of the file the channel reads, the committed offset and the
+     * parser for the format of its lines, once told.
+     */
+    private static final class FollowedFile {
+        private final Path path;
+        private FileChannel channel;
+        private Object identity;
+        private long offset;
+        private RecordParser parser;
+        private boolean skipped;
+
+        private FollowedFile(Path path) {
+            this.path = path;
+        }
+
+        private void reset() {
+            offset = 0;
+            parser = null;
+            skipped = false;
+        }
+
+        private void close() throws IOException {
+            if (channel != null) {
+                channel.close();
+                channel = null;
+                identity = null;
+            }
+        }
+    }
+}
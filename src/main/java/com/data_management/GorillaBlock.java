@@ -0,0 +1,324 @@
+package com.data_management;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * An immutable, compressed block of samples using the encoding of Facebook's Gorilla time-series store.
+ * Timestamps are stored as delta-of-deltas, so samples arriving at a regular interval cost a single bit each,
+ * and values are stored as the XOR with the previous value, so unchanged or slowly changing readings
+ * cost one bit or a handful of meaningful bits. Blocks are decoded sequentially with a {@link Reader}.
+ */
+public final class GorillaBlock {
+    private static final int HEADER_BYTES = 2 * Integer.BYTES + 2 * Long.BYTES;
+
+    private final long[] words;
+    private final int count;
+    private final long firstTimestamp;
+    private final long lastTimestamp;
+
+    private GorillaBlock(long[] words, int count, long firstTimestamp, long lastTimestamp) {
+        this.words = words;
+        this.count = count;
+        this.firstTimestamp = firstTimestamp;
+        this.lastTimestamp = lastTimestamp;
+    }
+
+    /**
+     * Encodes a range of samples that is sorted by timestamp.
+     *
+     * @param timestamps The timestamps of the samples.
+     * @param values     The measurement values of the samples.
+     * @param from       The index of the first sample, inclusive.
+     * @param to         The index of the last sample, exclusive.
+     * @return The encoded block.
+     * @throws IllegalArgumentException If the range is empty.
+     */
+    public static GorillaBlock encode(long[] timestamps, double[] values, int from, int to) {
+        if (to <= from) {
+            throw new IllegalArgumentException("A block must contain at least one sample");
+        }
+        BitWriter out = new BitWriter(Math.max(4, (to - from) / 4));
+        out.write(timestamps[from], 64);
+        long previousBits = Double.doubleToRawLongBits(values[from]);
+        out.write(previousBits, 64);
+
+        long previousTimestamp = timestamps[from];
+        long previousDelta = 0;
+        int previousLeading = -1;
+        int previousTrailing = 0;
+        for (int i = from + 1; i < to; i++) {
+            long delta = timestamps[i] - previousTimestamp;
+            long deltaOfDelta = delta - previousDelta;
+            if (deltaOfDelta == 0) {
+                out.write(0, 1);
+            } else if (deltaOfDelta >= -64 && deltaOfDelta < 64) {
+                out.write(0b10, 2);
+                out.write(deltaOfDelta, 7);
+            } else if (deltaOfDelta >= -256 && deltaOfDelta < 256) {
+                out.write(0b110, 3);
+                out.write(deltaOfDelta, 9);
+            } else if (deltaOfDelta >= -2048 && deltaOfDelta < 2048) {
+                out.write(0b1110, 4);
+                out.write(deltaOfDelta, 12);
+            } else {
+                out.write(0b1111, 4);
+                out.write(deltaOfDelta, 64);
+            }
+            previousTimestamp = timestamps[i];
+            previousDelta = delta;
+
+            long bits = Double.doubleToRawLongBits(values[i]);
+            long xor = bits ^ previousBits;
+            if (xor == 0) {
+                out.write(0, 1);
+            } else {
+                int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+                int trailing = Long.numberOfTrailingZeros(xor);
+                if (previousLeading >= 0 && leading >= previousLeading && trailing >= previousTrailing) {
+                    out.write(0b10, 2);
+                    out.write(xor >>> previousTrailing, 64 - previousLeading - previousTrailing);
+                } else {
+                    int meaningful = 64 - leading - trailing;
+                    out.write(0b11, 2);
+                    out.write(leading, 5);
+                    out.write(meaningful & 63, 6);
+                    out.write(xor >>> trailing, meaningful);
+                    previousLeading = leading;
+                    previousTrailing = trailing;
+                }
+            }
+            previousBits = bits;
+        }
+        return new GorillaBlock(out.toArray(), to - from, timestamps[from], timestamps[to - 1]);
+    }
+
+    /**
+     * Decodes all samples of the block.
+     *
+     * @param timestamps Receives the timestamps; must hold at least {@link #getCount()} elements.
+     * @param values     Receives the measurement values; must hold at least {@link #getCount()} elements.
+     */
+    public void decode(long[] timestamps, double[] values) {
+        Reader reader = new Reader(this);
+        for (int i = 0; reader.next(); i++) {
+            timestamps[i] = reader.getTimestamp();
+            values[i] = reader.getValue();
+        }
+    }
+
+    /**
+     * Gets the number of samples in the block.
+     *
+     * @return The number of samples.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Gets the timestamp of the first sample.
+     *
+     * @return The first timestamp.
+     */
+    public long getFirstTimestamp() {
+        return firstTimestamp;
+    }
+
+    /**
+     * Gets the timestamp of the last sample.
+     *
+     * @return The last timestamp.
+     */
+    public long getLastTimestamp() {
+        return lastTimestamp;
+    }
+
+    /**
+     * Gets the size of the encoded samples in bytes.
+     *
+     * @return The encoded size.
+     */
+    public int getEncodedBytes() {
+        return words.length * Long.BYTES;
+    }
+
+    /**
+     * Gets the number of bytes {@link #writeTo(ByteBuffer, int)} writes for this block.
+     *
+     * @return The serialized size.
+     */
+    public int getSerializedBytes() {
+        return HEADER_BYTES + words.length * Long.BYTES;
+    }
+
+    /**
+     * Writes the block at the given position of a buffer, leaving the buffer's own position unchanged.
+     *
+     * @param buffer The buffer to write to.
+     * @param offset The position of the first byte.
+     */
+    public void writeTo(ByteBuffer buffer, int offset) {
+        buffer.putInt(offset, count);
+        buffer.putInt(offset + Integer.BYTES, words.length);
+        buffer.putLong(offset + 2 * Integer.BYTES, firstTimestamp);
+        buffer.putLong(offset + 2 * Integer.BYTES + Long.BYTES, lastTimestamp);
+        buffer.slice(offset + HEADER_BYTES, words.length * Long.BYTES).asLongBuffer().put(words);
+    }
+
+    /**
+     * Reads a block written by {@link #writeTo(ByteBuffer, int)}, leaving the buffer's own position unchanged,
+     * so several threads can read from the same buffer.
+     *
+     * @param buffer The buffer to read from.
+     * @param offset The position of the first byte.
+     * @return The block.
+     */
+    public static GorillaBlock readFrom(ByteBuffer buffer, int offset) {
+        int count = buffer.getInt(offset);
+        long[] words = new long[buffer.getInt(offset + Integer.BYTES)];
+        long firstTimestamp = buffer.getLong(offset + 2 * Integer.BYTES);
+        long lastTimestamp = buffer.getLong(offset + 2 * Integer.BYTES + Long.BYTES);
+        buffer.slice(offset + HEADER_BYTES, words.length * Long.BYTES).asLongBuffer().get(words);
+        return new GorillaBlock(words, count, firstTimestamp, lastTimestamp);
+    }
+
+    /**
+     * Decodes the samples of a block one at a time, so a scan can stop as soon as it has seen enough.
+     */
+    public static final class Reader {
+        private final GorillaBlock block;
+        private int position;
+        private int index;
+        private long timestamp;
+        private long delta;
+        private long bits;
+        private int leading;
+        private int trailing;
+
+        /**
+         * Constructs a Reader positioned before the first sample of the given block.
+         *
+         * @param block The block to read.
+         */
+        public Reader(GorillaBlock block) {
+            this.block = block;
+        }
+
+        /**
+         * Advances to the next sample.
+         *
+         * @return true if there was another sample, false if the block is exhausted.
+         */
+        public boolean next() {
+            if (index == block.count) {
+                return false;
+            }
+            if (index++ == 0) {
+                timestamp = read(64);
+                bits = read(64);
+                return true;
+            }
+
+            long deltaOfDelta;
+            if (read(1) == 0) {
+                deltaOfDelta = 0;
+            } else if (read(1) == 0) {
+                deltaOfDelta = signExtend(read(7), 7);
+            } else if (read(1) == 0) {
+                deltaOfDelta = signExtend(read(9), 9);
+            } else if (read(1) == 0) {
+                deltaOfDelta = signExtend(read(12), 12);
+            } else {
+                deltaOfDelta = read(64);
+            }
+            delta += deltaOfDelta;
+            timestamp += delta;
+
+            if (read(1) == 1) {
+                if (read(1) == 1) {
+                    leading = (int) read(5);
+                    int meaningful = (int) read(6);
+                    if (meaningful == 0) {
+                        meaningful = 64;
+                    }
+                    trailing = 64 - leading - meaningful;
+                }
+                bits ^= read(64 - leading - trailing) << trailing;
+            }
+            return true;
+        }
+
+        /**
+         * Gets the timestamp of the current sample.
+         *
+         * @return The timestamp.
+         */
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        /**
+         * Gets the measurement value of the current sample.
+         *
+         * @return The value.
+         */
+        public double getValue() {
+            return Double.longBitsToDouble(bits);
+        }
+
+        private long read(int length) {
+            long[] words = block.words;
+            int word = position >>> 6;
+            int free = 64 - (position & 63);
+            long result;
+            if (length <= free) {
+                result = words[word] >>> (free - length);
+            } else {
+                int rest = length - free;
+                result = (words[word] << rest) | (words[word + 1] >>> (64 - rest));
+            }
+            position += length;
+            return length == 64 ? result : result & ((1L << length) - 1);
+        }
+
+        private static long signExtend(long value, int length) {
+            return (value << (64 - length)) >> (64 - length);
+        }
+    }
+
+    private static final class BitWriter {
+        private long[] words;
+        private int length;
+
+        BitWriter(int initialWords) {
+            this.words = new long[initialWords];
+        }
+
+        void write(long value, int bitCount) {
+            if (bitCount == 0) {
+                return;
+            }
+            if (length + bitCount > words.length * 64L) {
+                words = Arrays.copyOf(words, words.length * 2 + 1);
+            }
+            if (bitCount < 64) {
+                value &= (1L << bitCount) - 1;
+            }
+            int word = length >>> 6;
+            int free = 64 - (length & 63);
+            if (bitCount <= free) {
+                words[word] |= value << (free - bitCount);
+            } else {
+                int rest = bitCount - free;
+                words[word] |= value >>> rest;
+                words[word + 1] |= value << (64 - rest);
+            }
+            length += bitCount;
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(words, (length + 63) >>> 6);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.data_management;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.CRC32;
+
+/**
+ * The progress of a file import by {@link FileDataReader}: the file, the byte offset up to which every line has
+ * been stored, always the start of a line, and the number of records stored up to there.
+ * To tell whether a file is still the one the checkpoint was taken of, the checkpoint also holds a CRC-32 of the
+ * {@value #FINGERPRINT_BYTES} bytes before the offset. Appending to the file or editing it after the offset keeps
+ * the checkpoint valid; replacing the file or editing it right before the offset does not.
+ * Checkpoint files are written to a temporary file, fsynced and then atomically renamed, and the directory is
+ * fsynced after the rename, so a crash never leaves a partial checkpoint behind or loses a completed one.
+ */
+public final class ImportCheckpoint {
+    private static final int MAGIC = 0x494D5054;
+    private static final int VERSION = 1;
+    private static final int FINGERPRINT_BYTES = 4096;
+
+    private final String file;
+    private final long offset;
+    private final long recordsCommitted;
+    private final long fingerprint;
+
+    private ImportCheckpoint(String file, long offset, long recordsCommitted, long fingerprint) {
+        this.file = file;
+        this.offset = offset;
+        this.recordsCommitted = recordsCommitted;
+        this.fingerprint = fingerprint;
+    }
+
+    /**
+     * Takes a checkpoint of an import.
+     *
+     * @param file             The imported file.
+     * @param channel          An open channel of the file, to read the fingerprint from.
+     * @param offset           The offset up to which every line has been stored.
+     * @param recordsCommitted The number of records stored up to the offset.
+     * @return The checkpoint.
+     * @throws IOException If the fingerprint cannot be read.
+     */
+    static ImportCheckpoint take(Path file, FileChannel channel, long offset, long recordsCommitted)
+            throws IOException {
+        return new ImportCheckpoint(file.toAbsolutePath().toString(), offset, recordsCommitted,
+                fingerprint(channel, offset));
+    }
+
+    /**
+     * Tells whether this checkpoint was taken of an import of the given file in its current state.
+     *
+     * @param file    The file about to be imported.
+     * @param channel An open channel of the file.
+     * @return true if the import can resume from this checkpoint.
+     * @throws IOException If the fingerprint cannot be read.
+     */
+    boolean matches(Path file, FileChannel channel) throws IOException {
+        return this.file.equals(file.toAbsolutePath().toString()) && offset <= channel.size()
+                && fingerprint == fingerprint(channel, offset);
+    }
+
+    /**
+     * Writes the checkpoint, replacing the previous one.
+     *
+     * @param target The checkpoint file.
+     * @throws IOException If the checkpoint cannot be written.
+     */
+    public void write(Path target) throws IOException {
+        Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileOutputStream stream = new FileOutputStream(temporary.toFile());
+             DataOutputStream out = new DataOutputStream(stream)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(file);
+            out.writeLong(offset);
+            out.writeLong(recordsCommitted);
+            out.writeLong(fingerprint);
+            out.flush();
+            stream.getFD().sync();
+        }
+        Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        StorageSnapshot.syncDirectory(target.toAbsolutePath().getParent());
+    }
+
+    /**
+     * Loads a checkpoint.
+     *
+     * @param source The checkpoint file.
+     * @return The checkpoint, or null if the file does not exist.
+     * @throws IOException If the checkpoint cannot be read or is not a checkpoint file.
+     */
+    public static ImportCheckpoint load(Path source) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(source)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not an import checkpoint file: " + source);
+            }
+            return new ImportCheckpoint(in.readUTF(), in.readLong(), in.readLong(), in.readLong());
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Gets the absolute path of the imported file.
+     *
+     * @return The path.
+     */
+    public String getFile() {
+        return file;
+    }
+
+    /**
+     * Gets the offset up to which every line has been stored.
+     *
+     * @return The offset in bytes.
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Gets the number of records stored up to the offset.
+     *
+     * @return The number of records.
+     */
+    public long getRecordsCommitted() {
+        return recordsCommitted;
+    }
+
+    private static long fingerprint(FileChannel channel, long offset) throws IOException {
+        int length = (int) Math.min(FINGERPRINT_BYTES, offset);
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset - length + buffer.position()) < 0) {
+                break;
+            }
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.position());
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,347 @@
+package com.data_management;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An off-heap {@link SampleSeries} that keeps fixed-width samples in memory-mapped segment files.
+ * Every sample takes 16 bytes (timestamp and value) and every segment file holds a fixed number of samples,
+ * so the heap only holds a few object references per series no matter how long the history is.
+ * Reads go straight to the mapped pages without copying, and retention releases whole segments
+ * (deleting their files) once all of their samples have been evicted.
+ * The files are scratch space rather than a durable format; durability is provided by {@link WriteAheadLog}.
+ * This class is not thread-safe; the owning {@link Patient} is responsible for locking.
+ */
+public class MappedTimeSeries implements SampleSeries {
+    private static final int SAMPLE_BYTES = 16;
+
+    private final Path directory;
+    private final int samplesPerSegment;
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    private final List<Path> segmentFiles = new ArrayList<>();
+    private long nextSegmentId;
+    private int head;
+    private int size;
+    private RetentionPolicy retentionPolicy;
+    private long evictedCount;
+
+    /**
+     * Constructs an empty MappedTimeSeries.
+     *
+     * @param directory         The directory for the segment files of this series; it is created if needed.
+     * @param samplesPerSegment The number of samples each segment file holds.
+     * @param retentionPolicy   The policy deciding how much history is kept.
+     * @throws UncheckedIOException If the directory cannot be created.
+     */
+    public MappedTimeSeries(Path directory, int samplesPerSegment, RetentionPolicy retentionPolicy) {
+        if (samplesPerSegment <= 0) {
+            throw new IllegalArgumentException("Segments must hold at least one sample");
+        }
+        this.directory = directory;
+        this.samplesPerSegment = samplesPerSegment;
+        this.retentionPolicy = retentionPolicy;
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to create series directory " + directory, e);
+        }
+    }
+
+    /**
+     * Adds a sample, keeping the series sorted by timestamp.
+     * In-order samples are appended; a late sample is inserted after any samples with the same timestamp.
+     * If the series is at its count limit, the oldest sample is evicted; a late sample older than everything
+     * in a full series is evicted immediately instead.
+     *
+     * @param timestamp The timestamp of the sample.
+     * @param value     The measurement value of the sample.
+     * @throws UncheckedIOException If a new segment file cannot be mapped.
+     */
+    @Override
+    public void add(long timestamp, double value) {
+        int maxSamples = retentionPolicy.getMaxSamples();
+        if (maxSamples > 0 && size >= maxSamples) {
+            if (timestamp < getTimestamp(0)) {
+                evictedCount++;
+                return;
+            }
+            evictOldest();
+        }
+        if (head + size == segments.size() * samplesPerSegment) {
+            mapSegment();
+        }
+
+        int index = size;
+        if (size > 0 && getTimestamp(size - 1) > timestamp) {
+            index = upperBound(timestamp);
+            for (int i = size; i > index; i--) {
+                put(i, getTimestamp(i - 1), getValue(i - 1));
+            }
+        }
+        put(index, timestamp, value);
+        size++;
+        evictExpired();
+    }
+
+    /**
+     * Returns the index of the first sample with a timestamp greater than or equal to the given time.
+     *
+     * @param timestamp The time to search for.
+     * @return The index of the first matching sample, or {@link #size()} if there is none.
+     */
+    @Override
+    public int lowerBound(long timestamp) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (getTimestamp(mid) < timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the index of the first sample with a timestamp strictly greater than the given time.
+     *
+     * @param timestamp The time to search for.
+     * @return The index of the first matching sample, or {@link #size()} if there is none.
+     */
+    @Override
+    public int upperBound(long timestamp) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (getTimestamp(mid) <= timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Gets the timestamp of the sample at the given index, read directly from the mapped segment.
+     *
+     * @param index The index of the sample.
+     * @return The timestamp of the sample.
+     */
+    @Override
+    public long getTimestamp(int index) {
+        int position = head + index;
+        return segments.get(position / samplesPerSegment).getLong((position % samplesPerSegment) * SAMPLE_BYTES);
+    }
+
+    /**
+     * Gets the measurement value of the sample at the given index, read directly from the mapped segment.
+     *
+     * @param index The index of the sample.
+     * @return The measurement value of the sample.
+     */
+    @Override
+    public double getValue(int index) {
+        int position = head + index;
+        return segments.get(position / samplesPerSegment).getDouble((position % samplesPerSegment) * SAMPLE_BYTES + 8);
+    }
+
+    /**
+     * Visits the samples with a timestamp within the given range, in order, without copying them.
+     *
+     * @param startTime The start of the range, inclusive.
+     * @param endTime   The end of the range, inclusive.
+     * @param visitor   Receives the samples and may stop the scan early.
+     * @return true if the scan reached the end of the range, false if the visitor stopped it.
+     */
+    @Override
+    public boolean scan(long startTime, long endTime, SampleVisitor visitor) {
+        int to = upperBound(endTime);
+        for (int i = lowerBound(startTime); i < to; i++) {
+            if (!visitor.visit(getTimestamp(i), getValue(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Copies the timestamps of a range of samples into a new array.
+     *
+     * @param from The index of the first sample, inclusive.
+     * @param to   The index of the last sample, exclusive.
+     * @return The timestamps of the samples in order.
+     */
+    @Override
+    public long[] copyTimestamps(int from, int to) {
+        long[] copy = new long[to - from];
+        for (int i = from; i < to; i++) {
+            copy[i - from] = getTimestamp(i);
+        }
+        return copy;
+    }
+
+    /**
+     * Copies the measurement values of a range of samples into a new array.
+     *
+     * @param from The index of the first sample, inclusive.
+     * @param to   The index of the last sample, exclusive.
+     * @return The values of the samples in order.
+     */
+    @Override
+    public double[] copyValues(int from, int to) {
+        double[] copy = new double[to - from];
+        for (int i = from; i < to; i++) {
+            copy[i - from] = getValue(i);
+        }
+        return copy;
+    }
+
+    /**
+     * Gets the number of samples in the series.
+     *
+     * @return The number of samples.
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets the number of samples dropped by the retention policy since the series was created.
+     *
+     * @return The number of evicted samples.
+     */
+    @Override
+    public long getEvictedCount() {
+        return evictedCount;
+    }
+
+    /**
+     * Evicts the samples older than the given time, deleting segment files that become empty.
+     * The samples live off the heap, so this mostly frees disk and page cache rather than heap.
+     *
+     * @param cutoff The timestamp of the oldest sample kept.
+     * @return The number of samples evicted.
+     */
+    @Override
+    public long shed(long cutoff) {
+        int count = 0;
+        while (size > 0 && getTimestamp(0) < cutoff) {
+            evictOldest();
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Gets the retention policy of the series.
+     *
+     * @return The retention policy.
+     */
+    @Override
+    public RetentionPolicy getRetentionPolicy() {
+        return retentionPolicy;
+    }
+
+    /**
+     * Replaces the retention policy and immediately evicts samples the new policy does not keep.
+     *
+     * @param retentionPolicy The new retention policy.
+     */
+    @Override
+    public void setRetentionPolicy(RetentionPolicy retentionPolicy) {
+        this.retentionPolicy = retentionPolicy;
+        int maxSamples = retentionPolicy.getMaxSamples();
+        while (maxSamples > 0 && size > maxSamples) {
+            evictOldest();
+        }
+        evictExpired();
+    }
+
+    /**
+     * Gets the number of segment files currently mapped.
+     *
+     * @return The number of segments.
+     */
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Drops all segments and deletes their files and the series directory.
+     */
+    @Override
+    public void close() {
+        while (!segments.isEmpty()) {
+            releaseFirstSegment();
+        }
+        size = 0;
+        head = 0;
+        try {
+            Files.deleteIfExists(directory);
+        } catch (IOException e) {
+            System.err.println("Error deleting series directory " + directory + ": " + e.getMessage());
+        }
+    }
+
+    private void put(int index, long timestamp, double value) {
+        int position = head + index;
+        MappedByteBuffer segment = segments.get(position / samplesPerSegment);
+        int offset = (position % samplesPerSegment) * SAMPLE_BYTES;
+        segment.putLong(offset, timestamp);
+        segment.putDouble(offset + 8, value);
+    }
+
+    private void evictOldest() {
+        head++;
+        size--;
+        evictedCount++;
+        if (head == samplesPerSegment) {
+            releaseFirstSegment();
+            head = 0;
+        }
+    }
+
+    private void evictExpired() {
+        long maxAgeMillis = retentionPolicy.getMaxAgeMillis();
+        if (maxAgeMillis == 0 || size == 0) {
+            return;
+        }
+        long cutoff = getTimestamp(size - 1) - maxAgeMillis;
+        while (size > 0 && getTimestamp(0) < cutoff) {
+            evictOldest();
+        }
+    }
+
+    private void mapSegment() {
+        Path file = directory.resolve(String.format("segment-%010d.dat", nextSegmentId++));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            segments.add(channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) samplesPerSegment * SAMPLE_BYTES));
+            segmentFiles.add(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to map series segment " + file, e);
+        }
+    }
+
+    private void releaseFirstSegment() {
+        segments.remove(0);
+        Path file = segmentFiles.remove(0);
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            System.err.println("Error deleting series segment " + file + ": " + e.getMessage());
+        }
+    }
+}
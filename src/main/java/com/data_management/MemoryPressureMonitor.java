@@ -0,0 +1,210 @@
+package com.data_management;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Watches the heap and sheds history from a {@link DataStorage} when it runs short.
+ * A collection usage threshold is set on every heap {@link MemoryPoolMXBean} that supports one, so the JVM
+ * notifies the monitor when the memory still in use after a garbage collection crosses the threshold; garbage
+ * that a collection would free does not count. Each notification schedules one shedding pass on a background
+ * thread, coalescing notifications that arrive while a pass is pending.
+ * Shedding escalates: the first pass only downsamples ({@link SheddingReport.Stage#DOWNSAMPLE}), and a pass
+ * within {@value #ESCALATION_MILLIS} ms of the previous one, or a downsampling pass that found nothing to shed,
+ * trims the oldest history ({@link SheddingReport.Stage#TRIM}). Downsampling only finds raw samples to drop in
+ * series with rollup tiers, so without tiers every pass trims.
+ * Every pass that shed anything is logged.
+ */
+public final class MemoryPressureMonitor implements NotificationListener {
+    private static final long ESCALATION_MILLIS = 60_000L;
+
+    private final double usageThreshold;
+    private final Function<SheddingReport.Stage, SheddingReport> shedder;
+    private final List<MemoryPoolMXBean> pools = new ArrayList<>();
+    private final List<Long> previousThresholds = new ArrayList<>();
+    private final AtomicBoolean pending = new AtomicBoolean();
+    private final AtomicLong notifications = new AtomicLong();
+    private final AtomicLong passes = new AtomicLong();
+    private final AtomicLong shedSamples = new AtomicLong();
+    private final AtomicLong shedBuckets = new AtomicLong();
+    private final ExecutorService executor;
+    private volatile SheddingReport lastReport;
+    // Only used by the executor thread.
+    private long lastPassNanos;
+    private boolean passed;
+
+    /**
+     * Constructs a MemoryPressureMonitor. It does nothing until {@link #start()} is called.
+     *
+     * @param usageThreshold The fraction of a pool's maximum size that counts as pressure.
+     * @param shedder        Runs one shedding pass of the given stage and reports what it shed.
+     */
+    MemoryPressureMonitor(double usageThreshold, Function<SheddingReport.Stage, SheddingReport> shedder) {
+        this.usageThreshold = usageThreshold;
+        this.shedder = shedder;
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "data-storage-shedding");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Sets the thresholds and registers for their notifications.
+     *
+     * @throws IllegalStateException If no heap pool supports a collection usage threshold.
+     */
+    void start() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            long max = pool.getUsage() == null ? -1 : pool.getUsage().getMax();
+            if (pool.getType() == MemoryType.HEAP && pool.isCollectionUsageThresholdSupported() && max > 0) {
+                pools.add(pool);
+                previousThresholds.add(pool.getCollectionUsageThreshold());
+                pool.setCollectionUsageThreshold((long) (max * usageThreshold));
+            }
+        }
+        if (pools.isEmpty()) {
+            executor.shutdown();
+            throw new IllegalStateException("No heap memory pool supports a collection usage threshold");
+        }
+        ((NotificationEmitter) ManagementFactory.getMemoryMXBean()).addNotificationListener(this, null, null);
+    }
+
+    /**
+     * Unregisters, restores the thresholds that were set before and stops the background thread.
+     */
+    void stop() {
+        try {
+            ((NotificationEmitter) ManagementFactory.getMemoryMXBean()).removeNotificationListener(this);
+        } catch (ListenerNotFoundException e) {
+            // Never started.
+        }
+        for (int i = 0; i < pools.size(); i++) {
+            pools.get(i).setCollectionUsageThreshold(previousThresholds.get(i));
+        }
+        executor.shutdownNow();
+    }
+
+    /**
+     * Schedules a shedding pass when a pool's usage after a collection has crossed its threshold.
+     *
+     * @param notification The notification from the memory system.
+     * @param handback     Unused.
+     */
+    @Override
+    public void handleNotification(Notification notification, Object handback) {
+        if (!MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(notification.getType())) {
+            return;
+        }
+        notifications.incrementAndGet();
+        if (pending.compareAndSet(false, true)) {
+            executor.execute(this::relieve);
+        }
+    }
+
+    /**
+     * Waits until the pass scheduled so far has finished, for tests and orderly shutdown.
+     *
+     * @param timeoutMillis How long to wait at most.
+     * @return true if no pass is pending any more.
+     * @throws InterruptedException If the thread is interrupted while waiting.
+     */
+    public boolean awaitIdle(long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (pending.get()) {
+            if (System.nanoTime() >= deadline) {
+                return false;
+            }
+            Thread.sleep(1);
+        }
+        return true;
+    }
+
+    /**
+     * Gets the number of threshold notifications received.
+     *
+     * @return The number of notifications.
+     */
+    public long getNotificationCount() {
+        return notifications.get();
+    }
+
+    /**
+     * Gets the number of shedding passes run.
+     *
+     * @return The number of passes.
+     */
+    public long getPassCount() {
+        return passes.get();
+    }
+
+    /**
+     * Gets the total number of raw samples shed.
+     *
+     * @return The number of samples.
+     */
+    public long getShedSampleCount() {
+        return shedSamples.get();
+    }
+
+    /**
+     * Gets the total number of rollup buckets shed.
+     *
+     * @return The number of buckets.
+     */
+    public long getShedBucketCount() {
+        return shedBuckets.get();
+    }
+
+    /**
+     * Gets the report of the most recent pass.
+     *
+     * @return The report, or null if no pass has run.
+     */
+    public SheddingReport getLastReport() {
+        return lastReport;
+    }
+
+    private void relieve() {
+        try {
+            long now = System.nanoTime();
+            boolean escalate = passed && now - lastPassNanos < TimeUnit.MILLISECONDS.toNanos(ESCALATION_MILLIS);
+            SheddingReport report = run(escalate ? SheddingReport.Stage.TRIM : SheddingReport.Stage.DOWNSAMPLE);
+            if (report.getStage() == SheddingReport.Stage.DOWNSAMPLE && report.getAffectedSeriesCount() == 0) {
+                run(SheddingReport.Stage.TRIM);
+            }
+            lastPassNanos = System.nanoTime();
+            passed = true;
+        } catch (RuntimeException e) {
+            System.err.println("Error shedding memory: " + e.getMessage());
+        } finally {
+            pending.set(false);
+        }
+    }
+
+    private SheddingReport run(SheddingReport.Stage stage) {
+        SheddingReport report = shedder.apply(stage);
+        passes.incrementAndGet();
+        shedSamples.addAndGet(report.getShedSampleCount());
+        shedBuckets.addAndGet(report.getShedBucketCount());
+        lastReport = report;
+        if (report.getAffectedSeriesCount() > 0) {
+            System.err.println("Memory pressure: " + report);
+        }
+        return report;
+    }
+}
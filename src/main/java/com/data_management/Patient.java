@@ -1,25 +1,75 @@
 package com.data_management;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.function.ToLongFunction;
 
 /**
  * The Patient class represents a patient and their associated medical records.
  * It allows adding new records and retrieving records within a specific time range.
+ * Records are partitioned into one columnar {@link SampleSeries} per record type, each sorted by timestamp,
+ * so a range query for one type costs a binary search plus the size of the window and never
+ * touches samples of other types. The series are indexed by {@link RecordType#getCode()}, so finding
+ * the series of a record needs no hashing. How much history each series keeps is decided by the
+ * {@link RetentionPolicy} of its record type, and where the samples live (plain or compressed on the heap,
+ * or in memory-mapped files) is decided by the {@link SeriesFactory} that creates the series.
+ * Each patient has its own read/write lock, so concurrent readers of one patient do not
+ * block each other and writers only block access to this patient's records. Series that support
+ * snapshot scans (see {@link SampleSeries#supportsSnapshotScan()}) are read without the lock at all,
+ * so alert sweeps and queries over them never wait for, or hold up, ingest.
+ * An inactive patient can be unloaded to a compact {@link PatientArchive} file with {@link #unload(Path)};
+ * its series are then rebuilt from the file the next time any of them is used. The counters of dropped samples
+ * are kept on the patient across unloads, so reading them never loads it.
  */
 public class Patient {
+    // Marks an unloaded patient, so whether a patient is loaded and its series are always read together.
+    private static final SampleSeries[] UNLOADED = new SampleSeries[0];
+
     private int patientId;
-    private List<PatientRecord> patientRecords;
+    private volatile SampleSeries[] seriesByType;
+    private final SeriesFactory seriesFactory;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // Guards loading and unloading; taken after the read/write lock, or on its own by lock-free readers.
+    private final Object residency = new Object();
+    private Path archive;
+    // Retention policies set while the patient was unloaded, indexed by record type code; applied by load().
+    private RetentionPolicy[] pendingRetentionPolicies;
+    // The counters of series released by unload(), indexed by record type code; guarded by residency.
+    private PatientArchive.Counts[] releasedCounts = new PatientArchive.Counts[0];
+    // The cache that unloaded the patient and accounts for loading it back; guarded by residency.
+    private PatientCache unloadedBy;
+    // Written by ingest and read threads, read by the thread unloading idle patients.
+    private volatile long lastAccessTime;
+    private volatile long lastSampleTime;
 
     /**
-     * Constructs a Patient with the specified patient ID.
+     * Constructs a Patient with the specified patient ID that keeps its whole history.
      *
      * @param patientId The ID of the patient.
      */
     public Patient(int patientId) {
+        this(patientId, (id, recordType) -> new TimeSeries());
+    }
+
+    /**
+     * Constructs a Patient with the specified patient ID whose series are created by the given factory.
+     *
+     * @param patientId     The ID of the patient.
+     * @param seriesFactory Creates the series for a record type when its first record arrives.
+     */
+    public Patient(int patientId, SeriesFactory seriesFactory) {
         this.patientId = patientId;
-        this.patientRecords = new ArrayList<>();
+        this.seriesByType = new SampleSeries[RecordType.count()];
+        this.seriesFactory = seriesFactory;
     }
 
     /**
@@ -28,23 +78,534 @@ public class Patient {
      * @param measurementValue The measurement value of the record.
      * @param recordType       The type of the record (e.g., HeartRate, BloodPressure).
      * @param timestamp        The timestamp of the record.
+     * @throws IllegalArgumentException If the record type is not registered.
      */
     public void addRecord(double measurementValue, String recordType, long timestamp) {
-        PatientRecord record = new PatientRecord(this.patientId, measurementValue, recordType, timestamp);
-        this.patientRecords.add(record);
+        addRecord(measurementValue, RecordType.of(recordType), timestamp);
+    }
+
+    /**
+     * Adds a new medical record for the patient.
+     *
+     * @param measurementValue The measurement value of the record.
+     * @param recordType       The type of the record.
+     * @param timestamp        The timestamp of the record.
+     */
+    public void addRecord(double measurementValue, RecordType recordType, long timestamp) {
+        lock.writeLock().lock();
+        try {
+            seriesFor(recordType.getCode()).add(timestamp, measurementValue);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds several records of this patient from a batch while taking the patient's lock only once.
+     *
+     * @param batch   The batch holding the records.
+     * @param indices The indices of the batch samples to add, in the order they should be added.
+     * @param from    The first position in {@code indices} to add, inclusive.
+     * @param to      The last position in {@code indices} to add, exclusive.
+     */
+    void addRecords(SampleBatch batch, int[] indices, int from, int to) {
+        lock.writeLock().lock();
+        try {
+            for (int i = from; i < to; i++) {
+                int index = indices[i];
+                seriesFor(batch.getTypeCode(index)).add(batch.getTimestamp(index), batch.getValue(index));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Retrieves the medical records of one type for the patient within the specified time range.
+     *
+     * @param recordType The type of the records to retrieve (e.g., HeartRate, BloodPressure).
+     * @param startTime  The start time of the time range.
+     * @param endTime    The end time of the time range.
+     * @return A list of patient records of the given type within the specified time range, sorted by timestamp.
+     */
+    public List<PatientRecord> getRecords(String recordType, long startTime, long endTime) {
+        RecordType type = RecordType.forLabel(recordType);
+        if (type == null) {
+            return new ArrayList<>();
+        }
+        return getRecords(type, startTime, endTime);
+    }
+
+    /**
+     * Retrieves the medical records of one type for the patient within the specified time range.
+     *
+     * @param recordType The type of the records to retrieve.
+     * @param startTime  The start time of the time range.
+     * @param endTime    The end time of the time range.
+     * @return A list of patient records of the given type within the specified time range, sorted by timestamp.
+     */
+    public List<PatientRecord> getRecords(RecordType recordType, long startTime, long endTime) {
+        List<PatientRecord> records = new ArrayList<>();
+        scan(recordType, startTime, endTime,
+                (timestamp, value) -> records.add(new PatientRecord(patientId, value, recordType, timestamp)));
+        return records;
+    }
+
+    /**
+     * Scans the samples of one type within the specified time range without materializing records.
+     * The visitor is called in timestamp order and sees the series as it was at one point in time.
+     * Series without snapshot scans are scanned under the patient's read lock, so the visitor must not
+     * add records to this patient; returning false from the visitor stops the scan.
+     *
+     * @param recordType The type of the samples to scan.
+     * @param startTime  The start time of the time range.
+     * @param endTime    The end time of the time range.
+     * @param visitor    Receives the timestamp and value of each sample.
+     * @return true if the whole range was visited, false if the visitor stopped the scan.
+     */
+    public boolean scan(RecordType recordType, long startTime, long endTime, SampleVisitor visitor) {
+        SampleSeries series = series(recordType);
+        if (series == null) {
+            return true;
+        }
+        if (series.supportsSnapshotScan()) {
+            return series.scan(startTime, endTime, visitor);
+        }
+        lock.readLock().lock();
+        try {
+            // Look the series up again, it may have been closed in the meantime.
+            series = series(recordType);
+            return series == null || series.scan(startTime, endTime, visitor);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the statistics of the samples of one type within {@code [now - windowMillis, now]}.
+     * If the series maintains a rolling window of that length, the answer is read from it in O(1);
+     * otherwise, or if a writer holds the lock of a series that supports snapshot scans, the window is
+     * scanned and the statistics are computed from scratch.
+     *
+     * @param recordType   The type of the samples.
+     * @param windowMillis The length of the window in milliseconds.
+     * @param now          The end of the window.
+     * @return The statistics of the window.
+     */
+    public WindowStatistics getWindowStatistics(RecordType recordType, long windowMillis, long now) {
+        SampleSeries series = series(recordType);
+        if (series == null) {
+            return WindowStatistics.EMPTY;
+        }
+        if (series instanceof AggregatedSeries && acquire(lock.readLock(), series)) {
+            try {
+                series = series(recordType);
+                if (series instanceof AggregatedSeries) {
+                    WindowStatistics statistics = ((AggregatedSeries) series).getStatistics(windowMillis, now);
+                    if (statistics != null) {
+                        return statistics;
+                    }
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+        StatisticsVisitor visitor = new StatisticsVisitor();
+        scan(recordType, now - windowMillis, now, visitor);
+        return visitor.toStatistics();
     }
 
     /**
-     * Retrieves the medical records for the patient within the specified time range.
+     * Gets downsampled buckets (count, min, max, sum) of the samples of one type within the specified time range.
+     * The coarsest rollup tier whose buckets are no wider than the requested resolution is used, so a
+     * week-long trend costs a few hundred buckets; if no tier qualifies or the tier no longer reaches back
+     * to the start of the range, buckets of the requested width are computed from the raw samples.
+     * The raw samples are also used if a writer holds the lock of a series that supports snapshot scans.
+     *
+     * @param recordType       The type of the samples.
+     * @param startTime        The start of the range; the bucket containing it is included.
+     * @param endTime          The end of the range, inclusive; the bucket containing it is included.
+     * @param resolutionMillis The coarsest acceptable bucket width in milliseconds.
+     * @return The non-empty buckets in time order.
+     * @throws IllegalArgumentException If the resolution is not positive.
+     */
+    public List<RollupBucket> getRollup(RecordType recordType, long startTime, long endTime, long resolutionMillis) {
+        Rollup rollup = new Rollup(new RollupTier(resolutionMillis, Integer.MAX_VALUE));
+        SampleSeries series = series(recordType);
+        if (series == null) {
+            return new ArrayList<>();
+        }
+        if (series instanceof AggregatedSeries && acquire(lock.readLock(), series)) {
+            try {
+                series = series(recordType);
+                if (series instanceof AggregatedSeries) {
+                    List<RollupBucket> buckets = ((AggregatedSeries) series).getRollup(startTime, endTime, resolutionMillis);
+                    if (buckets != null) {
+                        return buckets;
+                    }
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+        long first = Math.floorDiv(startTime, resolutionMillis) * resolutionMillis;
+        long last = Math.floorDiv(endTime, resolutionMillis) * resolutionMillis + resolutionMillis - 1;
+        scan(recordType, first, last, (timestamp, value) -> {
+            rollup.add(timestamp, value);
+            return true;
+        });
+        List<RollupBucket> buckets = new ArrayList<>();
+        rollup.collect(startTime, endTime, buckets);
+        return buckets;
+    }
+
+    /**
+     * Retrieves the medical records of all types for the patient within the specified time range.
+     * The per-type windows are merged so that the result is sorted by timestamp.
+     * Each type is read as of its own point in time; records of different types added during the call
+     * may or may not be included.
      *
      * @param startTime The start time of the time range.
      * @param endTime   The end time of the time range.
      * @return A list of patient records within the specified time range.
      */
     public List<PatientRecord> getRecords(long startTime, long endTime) {
-        return patientRecords.stream()
-                            .filter(record -> record.getTimestamp() >= startTime && record.getTimestamp() <= endTime)
-                            .collect(Collectors.toList());
+        List<List<PatientRecord>> windows = new ArrayList<>();
+        int total = 0;
+        SampleSeries[] series = loaded();
+        for (int code = 0; code < series.length; code++) {
+            if (series[code] == null) {
+                continue;
+            }
+            List<PatientRecord> window = getRecords(RecordType.forCode(code), startTime, endTime);
+            if (!window.isEmpty()) {
+                windows.add(window);
+                total += window.size();
+            }
+        }
+        if (windows.size() == 1) {
+            return windows.get(0);
+        }
+
+        List<PatientRecord> records = new ArrayList<>(total);
+        int[] positions = new int[windows.size()];
+        while (records.size() < total) {
+            int next = -1;
+            for (int i = 0; i < windows.size(); i++) {
+                if (positions[i] < windows.get(i).size() && (next < 0
+                        || windows.get(i).get(positions[i]).getTimestamp() < windows.get(next).get(positions[next]).getTimestamp())) {
+                    next = i;
+                }
+            }
+            records.add(windows.get(next).get(positions[next]++));
+        }
+        return records;
+    }
+
+    /**
+     * Freezes every series of the patient while holding the patient's read lock, see {@link SampleSeries#freeze()}.
+     * The frozen samples can be read after the lock is released.
+     *
+     * @param action Receives the record type and the frozen samples of that type.
+     */
+    void freezeSeries(BiConsumer<RecordType, SampleSeries.Frozen> action) {
+        lock.readLock().lock();
+        try {
+            SampleSeries.Frozen[] frozen;
+            synchronized (residency) {
+                // An unloaded patient is read straight from its archive instead of being loaded.
+                frozen = seriesByType == UNLOADED ? freezeArchive() : freeze(seriesByType);
+            }
+            for (int code = 0; code < frozen.length; code++) {
+                if (frozen[code] != null) {
+                    action.accept(RecordType.forCode(code), frozen[code]);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Applies a new retention policy to the existing series of a record type.
+     * An unloaded patient is not loaded for this; the policy is applied when the patient is next loaded.
+     *
+     * @param recordType      The type of the records the policy applies to.
+     * @param retentionPolicy The new retention policy.
+     */
+    public void setRetentionPolicy(RecordType recordType, RetentionPolicy retentionPolicy) {
+        lock.writeLock().lock();
+        try {
+            SampleSeries series;
+            synchronized (residency) {
+                SampleSeries[] current = seriesByType;
+                int code = recordType.getCode();
+                if (current == UNLOADED) {
+                    if (pendingRetentionPolicies == null || pendingRetentionPolicies.length <= code) {
+                        pendingRetentionPolicies = Arrays.copyOf(
+                                pendingRetentionPolicies == null ? new RetentionPolicy[0] : pendingRetentionPolicies,
+                                Math.max(code + 1, RecordType.count()));
+                    }
+                    pendingRetentionPolicies[code] = retentionPolicy;
+                    return;
+                }
+                // Holding the write lock, the patient cannot be unloaded before the policy is applied.
+                series = code < current.length ? current[code] : null;
+            }
+            if (series != null) {
+                series.setRetentionPolicy(retentionPolicy);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the number of samples of one record type dropped by its retention policy.
+     * An unloaded patient is not loaded for this.
+     *
+     * @param recordType The type of the records.
+     * @return The number of evicted samples.
+     */
+    public long getEvictedSampleCount(RecordType recordType) {
+        return count(recordType.getCode(), recordType.getCode() + 1, SampleSeries::getEvictedCount,
+                PatientArchive.Counts::getEvicted);
+    }
+
+    /**
+     * Gets the number of samples of one record type dropped for arriving beyond its lateness bound.
+     * An unloaded patient is not loaded for this.
+     *
+     * @param recordType The type of the records.
+     * @return The number of late samples dropped.
+     */
+    public long getDroppedLateSampleCount(RecordType recordType) {
+        return count(recordType.getCode(), recordType.getCode() + 1, SampleSeries::getDroppedLateCount,
+                PatientArchive.Counts::getDroppedLate);
+    }
+
+    /**
+     * Gets the number of samples of one record type dropped as duplicates of stored samples.
+     * An unloaded patient is not loaded for this.
+     *
+     * @param recordType The type of the records.
+     * @return The number of duplicates dropped.
+     */
+    public long getDuplicateSampleCount(RecordType recordType) {
+        return count(recordType.getCode(), recordType.getCode() + 1, SampleSeries::getDuplicateCount,
+                PatientArchive.Counts::getDuplicates);
+    }
+
+    /**
+     * Gets the number of samples of all record types dropped by their retention policies.
+     * An unloaded patient is not loaded for this.
+     *
+     * @return The number of evicted samples.
+     */
+    public long getEvictedSampleCount() {
+        return count(0, Integer.MAX_VALUE, SampleSeries::getEvictedCount, PatientArchive.Counts::getEvicted);
+    }
+
+    /**
+     * Moves history older than the hot window of every series out of the heap into a cold store.
+     * Series that do not support tiering are left as they are.
+     *
+     * @param coldStore           The store to write the spilled samples to.
+     * @param hotWindowMillis     How much history before the newest sample stays on the heap.
+     * @param coldSamplesPerBlock The number of samples written to the cold store as one block.
+     * @return The number of samples spilled.
+     */
+    public long spill(ColdStore coldStore, long hotWindowMillis, int coldSamplesPerBlock) {
+        lock.writeLock().lock();
+        try {
+            long spilled = 0;
+            // An unloaded patient holds nothing on the heap and is not loaded just to be spilled.
+            for (SampleSeries series : seriesByType) {
+                if (series != null) {
+                    spilled += series.spill(coldStore, hotWindowMillis, coldSamplesPerBlock);
+                }
+            }
+            return spilled;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Sheds old history of every series to relieve memory pressure, as far as the stage of the report allows.
+     * The protected window before the newest sample of each series is never touched. Downsampling only sheds
+     * series with rollup tiers; other series are only shed by trimming.
+     *
+     * @param protectedWindowMillis How much history before the newest sample of each series is kept.
+     * @param report                Receives what was shed and decides the stage.
+     */
+    public void shed(long protectedWindowMillis, SheddingReport report) {
+        lock.writeLock().lock();
+        try {
+            // An unloaded patient holds nothing on the heap and is not loaded just to be shed.
+            for (SampleSeries series : seriesByType) {
+                if (series == null || series.size() == 0) {
+                    continue;
+                }
+                long cutoff = series.getTimestamp(series.size() - 1) - protectedWindowMillis;
+                AggregatedSeries aggregated = series instanceof AggregatedSeries ? (AggregatedSeries) series : null;
+                if (report.getStage() == SheddingReport.Stage.DOWNSAMPLE) {
+                    report.record(aggregated != null ? aggregated.downsample(cutoff) : 0, 0);
+                } else {
+                    report.record(series.shed(cutoff), aggregated != null ? aggregated.shedRollups(cutoff) : 0);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Releases the series of the patient, including any memory-mapped files.
+     * The patient must not be used afterwards.
+     */
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            synchronized (residency) {
+                for (SampleSeries series : seriesByType) {
+                    if (series != null) {
+                        series.close();
+                    }
+                }
+                if (archive != null) {
+                    deleteArchive();
+                }
+                pendingRetentionPolicies = null;
+                releasedCounts = new PatientArchive.Counts[0];
+                unloadedBy = null;
+                seriesByType = new SampleSeries[RecordType.count()];
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Writes the series of the patient to an archive file and releases them, keeping only this object.
+     * The series are rebuilt from the file, which is then deleted, the next time any of them is used.
+     * Scans that are running without the lock keep reading the released series to the end.
+     *
+     * @param file The file to write the archive to.
+     * @return true if the patient was unloaded, false if it already was.
+     * @throws IOException If the archive cannot be written; the patient then stays loaded.
+     */
+    public boolean unload(Path file) throws IOException {
+        return unload(file, null);
+    }
+
+    /**
+     * Unloads the patient like {@link #unload(Path)}; when reading the patient later needs its series,
+     * it is loaded through the given cache, which accounts for the load.
+     *
+     * @param file  The file to write the archive to.
+     * @param cache The cache unloading the patient, or null.
+     * @return true if the patient was unloaded, false if it already was.
+     * @throws IOException If the archive cannot be written; the patient then stays loaded.
+     */
+    boolean unload(Path file, PatientCache cache) throws IOException {
+        lock.writeLock().lock();
+        try {
+            synchronized (residency) {
+                SampleSeries[] series = seriesByType;
+                if (series == UNLOADED) {
+                    return false;
+                }
+                PatientArchive.Counts[] counts = Arrays.copyOf(releasedCounts, Math.max(releasedCounts.length, series.length));
+                for (int code = 0; code < series.length; code++) {
+                    if (series[code] != null) {
+                        counts[code] = (counts[code] == null ? PatientArchive.Counts.NONE : counts[code]).plus(series[code]);
+                    }
+                }
+                PatientArchive.write(file, series, counts);
+                archive = file;
+                releasedCounts = counts;
+                unloadedBy = cache;
+                seriesByType = UNLOADED;
+                for (SampleSeries unloaded : series) {
+                    if (unloaded != null) {
+                        unloaded.close();
+                    }
+                }
+                return true;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Rebuilds the series of an unloaded patient from its archive, restores their rollups and counters,
+     * and applies the retention policies set while it was unloaded.
+     *
+     * @return true if the patient was unloaded and has been loaded, false if it was already loaded.
+     * @throws UncheckedIOException If the archive cannot be read.
+     */
+    public boolean load() {
+        synchronized (residency) {
+            if (seriesByType != UNLOADED) {
+                return false;
+            }
+            SampleSeries[] series = readArchive();
+            if (pendingRetentionPolicies != null) {
+                for (int code = 0; code < pendingRetentionPolicies.length && code < series.length; code++) {
+                    if (pendingRetentionPolicies[code] != null && series[code] != null) {
+                        series[code].setRetentionPolicy(pendingRetentionPolicies[code]);
+                    }
+                }
+                pendingRetentionPolicies = null;
+            }
+            deleteArchive();
+            unloadedBy = null;
+            seriesByType = series;
+            return true;
+        }
+    }
+
+    /**
+     * Checks whether the series of the patient are in memory.
+     *
+     * @return true if the patient is loaded, false if it has been unloaded to its archive.
+     */
+    public boolean isLoaded() {
+        return seriesByType != UNLOADED;
+    }
+
+    /**
+     * Records that the patient was used at the given time of the {@link PatientCache}'s coarse clock.
+     * Concurrent accesses may overwrite each other, which only costs the precision the clock does not have.
+     *
+     * @param time   The current time in milliseconds.
+     * @param sample true if a sample is being added, false if the patient is only read.
+     */
+    void touch(long time, boolean sample) {
+        lastAccessTime = time;
+        if (sample) {
+            lastSampleTime = time;
+        }
+    }
+
+    /**
+     * Gets the last time the patient was used.
+     *
+     * @return The time in milliseconds.
+     */
+    long getLastAccessTime() {
+        return lastAccessTime;
+    }
+
+    /**
+     * Gets the last time a sample was added to the patient.
+     *
+     * @return The time in milliseconds.
+     */
+    long getLastSampleTime() {
+        return lastSampleTime;
     }
 
     /**
@@ -55,4 +616,228 @@ public class Patient {
     public int getPatientId() {
         return patientId;
     }
+
+    /**
+     * The samples of one series read from an archive, collected in growing columns.
+     */
+    private static final class ArchivedSeries {
+        private long[] timestamps = new long[16];
+        private double[] values = new double[16];
+        private int size;
+
+        void add(long timestamp, double value) {
+            if (size == timestamps.length) {
+                timestamps = Arrays.copyOf(timestamps, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            timestamps[size] = timestamp;
+            values[size++] = value;
+        }
+    }
+
+    /**
+     * Computes window statistics from scratch while a window is scanned, using Welford's algorithm.
+     */
+    private static final class StatisticsVisitor implements SampleVisitor {
+        private int count;
+        private double sum;
+        private double mean;
+        private double m2;
+        private double min = Double.POSITIVE_INFINITY;
+        private double max = Double.NEGATIVE_INFINITY;
+        private long lastTimestamp;
+        private double lastValue;
+
+        /**
+         * Adds one sample to the statistics.
+         *
+         * @param timestamp The timestamp of the sample.
+         * @param value     The measurement value of the sample.
+         * @return Always true, to visit the whole window.
+         */
+        @Override
+        public boolean visit(long timestamp, double value) {
+            count++;
+            sum += value;
+            double delta = value - mean;
+            mean += delta / count;
+            m2 += delta * (value - mean);
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+            lastTimestamp = timestamp;
+            lastValue = value;
+            return true;
+        }
+
+        WindowStatistics toStatistics() {
+            if (count == 0) {
+                return WindowStatistics.EMPTY;
+            }
+            return new WindowStatistics(count, sum, min, max, mean, m2 / count, lastTimestamp, lastValue);
+        }
+    }
+
+    private SampleSeries[] loaded() {
+        SampleSeries[] series = seriesByType;
+        if (series == UNLOADED) {
+            PatientCache cache;
+            synchronized (residency) {
+                cache = unloadedBy;
+            }
+            if (cache != null) {
+                cache.load(this);
+            } else {
+                load();
+            }
+            series = seriesByType;
+        }
+        return series;
+    }
+
+    private long count(int fromCode, int toCode, ToLongFunction<SampleSeries> counter,
+            ToLongFunction<PatientArchive.Counts> released) {
+        lock.readLock().lock();
+        try {
+            synchronized (residency) {
+                long count = 0;
+                for (int code = fromCode; code < toCode && code < releasedCounts.length; code++) {
+                    if (releasedCounts[code] != null) {
+                        count += released.applyAsLong(releasedCounts[code]);
+                    }
+                }
+                // The series of an unloaded patient have been released and are counted above.
+                SampleSeries[] series = seriesByType;
+                for (int code = fromCode; code < toCode && code < series.length; code++) {
+                    if (series[code] != null) {
+                        count += counter.applyAsLong(series[code]);
+                    }
+                }
+                return count;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private SampleSeries[] readArchive() {
+        List<SampleSeries> series = new ArrayList<>();
+        List<PatientArchive.Counts> counts = new ArrayList<>();
+        try {
+            PatientArchive.read(archive, new PatientArchive.SampleConsumer() {
+                @Override
+                public void acceptCounts(RecordType recordType, PatientArchive.Counts seriesCounts) {
+                    int code = recordType.getCode();
+                    while (series.size() <= code) {
+                        series.add(null);
+                        counts.add(null);
+                    }
+                    series.set(code, seriesFactory.create(patientId, recordType));
+                    counts.set(code, seriesCounts);
+                }
+
+                @Override
+                public void acceptRollup(RecordType recordType, long resolutionMillis, long coveredFrom,
+                        List<RollupBucket> buckets) {
+                    SampleSeries restored = series.get(recordType.getCode());
+                    if (restored instanceof AggregatedSeries) {
+                        ((AggregatedSeries) restored).restoreRollup(resolutionMillis, coveredFrom, buckets);
+                    }
+                }
+
+                @Override
+                public void accept(RecordType recordType, long timestamp, double value) {
+                    SampleSeries restored = series.get(recordType.getCode());
+                    if (restored instanceof AggregatedSeries) {
+                        ((AggregatedSeries) restored).restore(timestamp, value);
+                    } else {
+                        restored.add(timestamp, value);
+                    }
+                }
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to load patient archive " + archive, e);
+        }
+        releasedCounts = counts.toArray(new PatientArchive.Counts[0]);
+        return series.toArray(new SampleSeries[Math.max(series.size(), RecordType.count())]);
+    }
+
+    private SampleSeries.Frozen[] freezeArchive() {
+        List<ArchivedSeries> series = new ArrayList<>();
+        try {
+            PatientArchive.read(archive, (recordType, timestamp, value) -> {
+                int code = recordType.getCode();
+                while (series.size() <= code) {
+                    series.add(null);
+                }
+                if (series.get(code) == null) {
+                    series.set(code, new ArchivedSeries());
+                }
+                series.get(code).add(timestamp, value);
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read patient archive " + archive, e);
+        }
+        SampleSeries.Frozen[] frozen = new SampleSeries.Frozen[series.size()];
+        for (int code = 0; code < frozen.length; code++) {
+            ArchivedSeries archived = series.get(code);
+            if (archived != null) {
+                frozen[code] = SampleSeries.Frozen.of(Arrays.copyOf(archived.timestamps, archived.size),
+                        Arrays.copyOf(archived.values, archived.size));
+            }
+        }
+        return frozen;
+    }
+
+    private static SampleSeries.Frozen[] freeze(SampleSeries[] series) {
+        SampleSeries.Frozen[] frozen = new SampleSeries.Frozen[series.length];
+        for (int code = 0; code < series.length; code++) {
+            if (series[code] != null) {
+                frozen[code] = series[code].freeze();
+            }
+        }
+        return frozen;
+    }
+
+    private void deleteArchive() {
+        try {
+            Files.deleteIfExists(archive);
+        } catch (IOException e) {
+            System.err.println("Error deleting patient archive " + archive + ": " + e.getMessage());
+        }
+        archive = null;
+    }
+
+    private SampleSeries series(RecordType recordType) {
+        SampleSeries[] series = loaded();
+        int code = recordType.getCode();
+        return code < series.length ? series[code] : null;
+    }
+
+    private SampleSeries seriesFor(int code) {
+        SampleSeries[] current = loaded();
+        SampleSeries series = code < current.length ? current[code] : null;
+        if (series == null) {
+            series = seriesFactory.create(patientId, RecordType.forCode(code));
+            // Readers look series up without the lock, so the array is replaced rather than modified.
+            SampleSeries[] updated = Arrays.copyOf(current, Math.max(current.length, RecordType.count()));
+            updated[code] = series;
+            seriesByType = updated;
+        }
+        return series;
+    }
+
+    /**
+     * Takes a lock, or only tries to if the series can be answered from a snapshot scan instead of waiting.
+     *
+     * @param lock   The lock to take.
+     * @param series The series that is about to be read.
+     * @return true if the lock is held.
+     */
+    private static boolean acquire(Lock lock, SampleSeries series) {
+        if (series.supportsSnapshotScan()) {
+            return lock.tryLock();
+        }
+        lock.lock();
+        return true;
+    }
 }
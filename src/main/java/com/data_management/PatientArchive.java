@@ -0,0 +1,234 @@
+package com.data_management;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The on-disk form of an unloaded {@link Patient}: every series of the patient as a sequence of
+ * {@link GorillaBlock}s, so regular vital signs take a few bits per sample on disk just as they do in
+ * {@link CompressedTimeSeries}. Next to the samples, each series keeps its sample counters and the buckets of
+ * its rollup tiers, which may reach back further than the raw samples; the series are rebuilt from the samples
+ * on load, with the configuration their record types have at that time, and the rollups and counters are
+ * restored as they were.
+ */
+final class PatientArchive {
+    private static final int MAGIC = 0x50415243;
+    private static final int VERSION = 2;
+    private static final int SAMPLES_PER_BLOCK = 4096;
+
+    private PatientArchive() {
+    }
+
+    /**
+     * Writes the series of a patient to a file, replacing any previous archive of the patient.
+     *
+     * @param file   The file to write.
+     * @param series The series of the patient, indexed by record type code; null entries are skipped.
+     * @param counts The sample counters of each series, indexed by record type code; null entries count as none.
+     * @throws IOException If the file cannot be written.
+     */
+    static void write(Path file, SampleSeries[] series, Counts[] counts) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 64 * 1024))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            int count = 0;
+            for (SampleSeries data : series) {
+                if (data != null) {
+                    count++;
+                }
+            }
+            out.writeInt(count);
+            for (int code = 0; code < series.length; code++) {
+                SampleSeries data = series[code];
+                if (data == null) {
+                    continue;
+                }
+                out.writeUTF(RecordType.forCode(code).getLabel());
+                Counts seriesCounts = code < counts.length && counts[code] != null ? counts[code] : Counts.NONE;
+                out.writeLong(seriesCounts.getEvicted());
+                out.writeLong(seriesCounts.getDroppedLate());
+                out.writeLong(seriesCounts.getDuplicates());
+                writeRollups(out, data instanceof AggregatedSeries ? ((AggregatedSeries) data).getRollups() : new Rollup[0]);
+                int size = data.size();
+                long[] timestamps = data.copyTimestamps(0, size);
+                double[] values = data.copyValues(0, size);
+                out.writeInt((size + SAMPLES_PER_BLOCK - 1) / SAMPLES_PER_BLOCK);
+                for (int from = 0; from < size; from += SAMPLES_PER_BLOCK) {
+                    GorillaBlock block = GorillaBlock.encode(timestamps, values, from, Math.min(size, from + SAMPLES_PER_BLOCK));
+                    ByteBuffer buffer = ByteBuffer.allocate(block.getSerializedBytes());
+                    block.writeTo(buffer, 0);
+                    out.writeInt(buffer.capacity());
+                    out.write(buffer.array());
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the series written by {@link #write(Path, SampleSeries[], Counts[])} and passes them to a consumer,
+     * series by series: first the counters, then the rollup tiers, then the samples in timestamp order.
+     * Record types not known yet are registered.
+     *
+     * @param file     The file to read.
+     * @param consumer Receives the series.
+     * @throws IOException If the file cannot be read or is not a patient archive.
+     */
+    static void read(Path file, SampleConsumer consumer) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 64 * 1024))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a patient archive: " + file);
+            }
+            int count = in.readInt();
+            for (int s = 0; s < count; s++) {
+                RecordType recordType = RecordType.register(in.readUTF());
+                consumer.acceptCounts(recordType, new Counts(in.readLong(), in.readLong(), in.readLong()));
+                int rollupCount = in.readInt();
+                for (int r = 0; r < rollupCount; r++) {
+                    long resolutionMillis = in.readLong();
+                    long coveredFrom = in.readLong();
+                    List<RollupBucket> buckets = new ArrayList<>();
+                    int bucketCount = in.readInt();
+                    for (int b = 0; b < bucketCount; b++) {
+                        buckets.add(new RollupBucket(in.readLong(), resolutionMillis, in.readInt(),
+                                in.readDouble(), in.readDouble(), in.readDouble()));
+                    }
+                    consumer.acceptRollup(recordType, resolutionMillis, coveredFrom, buckets);
+                }
+                int blockCount = in.readInt();
+                for (int b = 0; b < blockCount; b++) {
+                    byte[] bytes = new byte[in.readInt()];
+                    in.readFully(bytes);
+                    GorillaBlock.Reader reader = new GorillaBlock.Reader(GorillaBlock.readFrom(ByteBuffer.wrap(bytes), 0));
+                    while (reader.next()) {
+                        consumer.accept(recordType, reader.getTimestamp(), reader.getValue());
+                    }
+                }
+            }
+        }
+    }
+
+    private static void writeRollups(DataOutputStream out, Rollup[] rollups) throws IOException {
+        out.writeInt(rollups.length);
+        for (Rollup rollup : rollups) {
+            List<RollupBucket> buckets = rollup.buckets();
+            out.writeLong(rollup.getResolutionMillis());
+            out.writeLong(rollup.getCoveredFrom());
+            out.writeInt(buckets.size());
+            for (RollupBucket bucket : buckets) {
+                out.writeLong(bucket.getStartTime());
+                out.writeInt(bucket.getCount());
+                out.writeDouble(bucket.getMin());
+                out.writeDouble(bucket.getMax());
+                out.writeDouble(bucket.getSum());
+            }
+        }
+    }
+
+    /**
+     * The samples a series has dropped since it was first created, across unloads.
+     */
+    static final class Counts {
+        /**
+         * No dropped samples.
+         */
+        static final Counts NONE = new Counts(0, 0, 0);
+
+        private final long evicted;
+        private final long droppedLate;
+        private final long duplicates;
+
+        /**
+         * Constructs Counts with the specified values.
+         *
+         * @param evicted     The number of samples dropped by the retention policy.
+         * @param droppedLate The number of samples dropped for arriving beyond the lateness bound.
+         * @param duplicates  The number of samples dropped as duplicates.
+         */
+        Counts(long evicted, long droppedLate, long duplicates) {
+            this.evicted = evicted;
+            this.droppedLate = droppedLate;
+            this.duplicates = duplicates;
+        }
+
+        /**
+         * Adds the counters of a series to these.
+         *
+         * @param series The series.
+         * @return The sums.
+         */
+        Counts plus(SampleSeries series) {
+            return new Counts(evicted + series.getEvictedCount(), droppedLate + series.getDroppedLateCount(),
+                    duplicates + series.getDuplicateCount());
+        }
+
+        /**
+         * Gets the number of samples dropped by the retention policy.
+         *
+         * @return The number of evicted samples.
+         */
+        long getEvicted() {
+            return evicted;
+        }
+
+        /**
+         * Gets the number of samples dropped for arriving beyond the lateness bound.
+         *
+         * @return The number of late samples dropped.
+         */
+        long getDroppedLate() {
+            return droppedLate;
+        }
+
+        /**
+         * Gets the number of samples dropped as duplicates.
+         *
+         * @return The number of duplicates dropped.
+         */
+        long getDuplicates() {
+            return duplicates;
+        }
+    }
+
+    /**
+     * Receives the series read from an archive.
+     */
+    @FunctionalInterface
+    interface SampleConsumer {
+        /**
+         * Accepts one sample.
+         *
+         * @param recordType The type of the sample.
+         * @param timestamp  The timestamp of the sample.
+         * @param value      The measurement value of the sample.
+         */
+        void accept(RecordType recordType, long timestamp, double value);
+
+        /**
+         * Accepts the counters of a series, before any of its rollups and samples. Ignored by default.
+         *
+         * @param recordType The type of the series.
+         * @param counts     The counters.
+         */
+        default void acceptCounts(RecordType recordType, Counts counts) {
+        }
+
+        /**
+         * Accepts the buckets of one rollup tier of a series, before its samples. Ignored by default.
+         *
+         * @param recordType       The type of the series.
+         * @param resolutionMillis The bucket width of the tier.
+         * @param coveredFrom      The time from which the tier held every sample.
+         * @param buckets          The buckets in order.
+         */
+        default void acceptRollup(RecordType recordType, long resolutionMillis, long coveredFrom, List<RollupBucket> buckets) {
+        }
+    }
+}
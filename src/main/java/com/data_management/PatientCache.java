@@ -0,0 +1,185 @@
+package com.data_management;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides which patients of a {@link DataStorage} stay in memory and keeps statistics about it.
+ * Every access through the storage records the time on the patient and loads it back if it was unloaded.
+ * Patients read through other paths, such as cohort queries, are loaded through the cache as well, so every
+ * load counts as a miss.
+ * A periodic pass ({@link #unloadInactive(Patient[])}) first unloads patients that received no samples and
+ * were not read for the idle period, then, if more patients than the bound are still loaded, the least recently
+ * used ones. Access times come from a clock that only advances on each pass, so recording an access is a single
+ * volatile write and both the idle period and the LRU order are as precise as the interval between passes.
+ * Patients not accessed since the cache was created count as accessed at its creation, so enabling the cache
+ * does not unload every existing patient on the first pass.
+ * Counters use {@link LongAdder}s, so concurrent ingest threads do not contend on them.
+ */
+public final class PatientCache {
+    private final Path directory;
+    private final long idleMillis;
+    private final int maxLoadedPatients;
+    private volatile long clock = System.currentTimeMillis();
+    private final long createdTime = clock;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder unloads = new LongAdder();
+    private final LongAdder loadNanos = new LongAdder();
+    private final AtomicLong maxLoadNanos = new AtomicLong();
+    private volatile int loadedPatients;
+
+    /**
+     * Constructs a PatientCache.
+     *
+     * @param directory         The directory for the archives of unloaded patients.
+     * @param idleMillis        How long a patient may go without samples or reads before it is unloaded.
+     * @param maxLoadedPatients The number of patients kept loaded at most after each pass.
+     */
+    PatientCache(Path directory, long idleMillis, int maxLoadedPatients) {
+        this.directory = directory;
+        this.idleMillis = idleMillis;
+        this.maxLoadedPatients = maxLoadedPatients;
+    }
+
+    /**
+     * Records an access to a patient, loading it first if it was unloaded.
+     *
+     * @param patient The patient.
+     * @param sample  true if a sample is being added, false if the patient is only read.
+     */
+    void access(Patient patient, boolean sample) {
+        patient.touch(clock, sample);
+        if (patient.isLoaded() || !load(patient)) {
+            hits.increment();
+        }
+    }
+
+    /**
+     * Loads a patient if it is unloaded and records the miss and its latency.
+     *
+     * @param patient The patient.
+     * @return true if the patient was loaded, false if it already was.
+     */
+    boolean load(Patient patient) {
+        long start = System.nanoTime();
+        if (!patient.load()) {
+            return false;
+        }
+        long nanos = System.nanoTime() - start;
+        misses.increment();
+        loadNanos.add(nanos);
+        maxLoadNanos.accumulateAndGet(nanos, Math::max);
+        return true;
+    }
+
+    /**
+     * Advances the clock and unloads idle patients, then the least recently used patients beyond the bound.
+     *
+     * @param patients All patients of the storage.
+     * @return The number of patients unloaded.
+     * @throws IOException If an archive cannot be written; patients unloaded before the failure stay unloaded.
+     */
+    int unloadInactive(Patient[] patients) throws IOException {
+        long now = Math.max(clock + 1, System.currentTimeMillis());
+        clock = now;
+        int unloaded = 0;
+        List<Patient> loaded = new ArrayList<>();
+        for (Patient patient : patients) {
+            if (!patient.isLoaded()) {
+                continue;
+            }
+            if (now - lastSampleTime(patient) >= idleMillis && now - lastAccessTime(patient) >= idleMillis) {
+                unloaded += unload(patient);
+            } else {
+                loaded.add(patient);
+            }
+        }
+        if (loaded.size() > maxLoadedPatients) {
+            loaded.sort(Comparator.comparingLong(this::lastAccessTime));
+            int excess = loaded.size() - maxLoadedPatients;
+            for (int i = 0; i < excess; i++) {
+                unloaded += unload(loaded.get(i));
+            }
+            loaded.subList(0, excess).clear();
+        }
+        loadedPatients = loaded.size();
+        return unloaded;
+    }
+
+    /**
+     * Gets the number of accesses that found the patient loaded.
+     *
+     * @return The number of hits.
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Gets the number of accesses that had to load the patient from its archive.
+     *
+     * @return The number of misses.
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Gets the number of times a patient was unloaded.
+     *
+     * @return The number of unloads.
+     */
+    public long getUnloadCount() {
+        return unloads.sum();
+    }
+
+    /**
+     * Gets the average time it took to load a patient on a miss.
+     *
+     * @return The average load latency in nanoseconds, 0 if there was no miss.
+     */
+    public long getAverageLoadNanos() {
+        long count = misses.sum();
+        return count == 0 ? 0 : loadNanos.sum() / count;
+    }
+
+    /**
+     * Gets the longest time it took to load a patient on a miss.
+     *
+     * @return The maximum load latency in nanoseconds.
+     */
+    public long getMaxLoadNanos() {
+        return maxLoadNanos.get();
+    }
+
+    /**
+     * Gets the number of patients left loaded by the last pass.
+     *
+     * @return The number of loaded patients.
+     */
+    public int getLoadedPatientCount() {
+        return loadedPatients;
+    }
+
+    private long lastAccessTime(Patient patient) {
+        return Math.max(createdTime, patient.getLastAccessTime());
+    }
+
+    private long lastSampleTime(Patient patient) {
+        return Math.max(createdTime, patient.getLastSampleTime());
+    }
+
+    private int unload(Patient patient) throws IOException {
+        if (!patient.unload(directory.resolve("patient-" + patient.getPatientId() + ".bin"), this)) {
+            return 0;
+        }
+        unloads.increment();
+        return 1;
+    }
+}
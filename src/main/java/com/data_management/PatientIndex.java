@@ -0,0 +1,197 @@
+package com.data_management;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.function.IntFunction;
+
+/**
+ * A concurrent map from patient ID to {@link Patient} that works on primitive ints, so a lookup neither boxes
+ * the ID nor hashes an {@link Integer}. Small non-negative IDs, such as the simulator's contiguous 1..N,
+ * index a dense array directly; other IDs go to an open-addressing table with linear probing whose slots hold
+ * the patients themselves, so a probe compares {@link Patient#getPatientId()} and needs no separate key array.
+ * The dense array only grows while it is at least half full, so a few large IDs do not allocate huge arrays.
+ * <p>
+ * Lookups take no lock. Inserts are serialized on the index and publish each patient with a release store;
+ * when an array has to grow, a filled copy is published instead of modifying the array readers may be using.
+ * Patients are only removed all at once by {@link #removeAll()}.
+ */
+public final class PatientIndex {
+    private static final int INITIAL_DENSE_CAPACITY = 1024;
+    private static final int MAX_DENSE_CAPACITY = 1 << 24;
+    private static final int INITIAL_TABLE_CAPACITY = 16;
+    private static final VarHandle SLOT = MethodHandles.arrayElementVarHandle(Patient[].class);
+
+    private volatile Patient[] dense = new Patient[INITIAL_DENSE_CAPACITY];
+    private volatile Patient[] table = new Patient[INITIAL_TABLE_CAPACITY];
+    private int denseCount;
+    private int tableCount;
+    private int size;
+
+    /**
+     * Gets the patient with the given ID.
+     *
+     * @param patientId The ID of the patient.
+     * @return The patient, or null if there is none.
+     */
+    public Patient get(int patientId) {
+        // The table is read first: a table that no longer holds a patient copied to the dense array
+        // is only published after that dense array, so the dense array read next covers the patient.
+        Patient[] table = this.table;
+        Patient[] dense = this.dense;
+        if (patientId >= 0 && patientId < dense.length) {
+            Patient patient = (Patient) SLOT.getAcquire(dense, patientId);
+            if (patient != null) {
+                return patient;
+            }
+        }
+        int mask = table.length - 1;
+        for (int slot = hash(patientId) & mask; ; slot = (slot + 1) & mask) {
+            Patient patient = (Patient) SLOT.getAcquire(table, slot);
+            if (patient == null || patient.getPatientId() == patientId) {
+                return patient;
+            }
+        }
+    }
+
+    /**
+     * Gets the patient with the given ID, creating and adding it if there is none.
+     * The factory is called at most once per ID.
+     *
+     * @param patientId The ID of the patient.
+     * @param factory   Creates the patient from its ID.
+     * @return The existing or the new patient.
+     */
+    public Patient computeIfAbsent(int patientId, IntFunction<Patient> factory) {
+        Patient patient = get(patientId);
+        if (patient != null) {
+            return patient;
+        }
+        synchronized (this) {
+            patient = get(patientId);
+            if (patient == null) {
+                patient = factory.apply(patientId);
+                if (fitsDense(patientId)) {
+                    SLOT.setRelease(dense, patientId, patient);
+                    denseCount++;
+                } else {
+                    insertIntoTable(patient);
+                }
+                size++;
+            }
+            return patient;
+        }
+    }
+
+    /**
+     * Gets the number of patients.
+     *
+     * @return The number of patients.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Copies the patients into a new array, ordered by ID for the dense IDs and in table order for the rest.
+     *
+     * @return The patients at the time of the call.
+     */
+    public synchronized Patient[] toArray() {
+        Patient[] patients = new Patient[size];
+        int count = 0;
+        for (Patient patient : dense) {
+            if (patient != null) {
+                patients[count++] = patient;
+            }
+        }
+        for (Patient patient : table) {
+            if (patient != null && !inDense(patient.getPatientId())) {
+                patients[count++] = patient;
+            }
+        }
+        return patients;
+    }
+
+    /**
+     * Removes all patients.
+     *
+     * @return The patients that were removed, so the caller can release them.
+     */
+    public synchronized Patient[] removeAll() {
+        Patient[] patients = toArray();
+        dense = new Patient[INITIAL_DENSE_CAPACITY];
+        table = new Patient[INITIAL_TABLE_CAPACITY];
+        denseCount = 0;
+        tableCount = 0;
+        size = 0;
+        return patients;
+    }
+
+    private boolean fitsDense(int patientId) {
+        if (patientId < 0) {
+            return false;
+        }
+        if (patientId < dense.length) {
+            return true;
+        }
+        if (patientId >= MAX_DENSE_CAPACITY || denseCount < dense.length / 2
+                || patientId >= 2 * dense.length) {
+            return false;
+        }
+        growDense();
+        return true;
+    }
+
+    private void growDense() {
+        Patient[] grown = Arrays.copyOf(dense, Math.min(MAX_DENSE_CAPACITY, dense.length * 2));
+        // Table entries now covered by the dense array are copied over, so their lookups take the fast path.
+        for (Patient patient : table) {
+            if (patient != null) {
+                int patientId = patient.getPatientId();
+                if (patientId >= dense.length && patientId < grown.length) {
+                    grown[patientId] = patient;
+                    denseCount++;
+                }
+            }
+        }
+        dense = grown;
+    }
+
+    private void insertIntoTable(Patient patient) {
+        if (2 * (tableCount + 1) > table.length) {
+            // Entries copied to the dense array are left out of the new table.
+            Patient[] grown = new Patient[table.length * 2];
+            tableCount = 0;
+            for (Patient existing : table) {
+                if (existing != null && !inDense(existing.getPatientId())) {
+                    place(grown, existing);
+                    tableCount++;
+                }
+            }
+            place(grown, patient);
+            table = grown;
+        } else {
+            place(table, patient);
+        }
+        tableCount++;
+    }
+
+    private static void place(Patient[] table, Patient patient) {
+        int mask = table.length - 1;
+        int slot = hash(patient.getPatientId()) & mask;
+        while (table[slot] != null) {
+            slot = (slot + 1) & mask;
+        }
+        SLOT.setRelease(table, slot, patient);
+    }
+
+    private boolean inDense(int patientId) {
+        return patientId >= 0 && patientId < dense.length;
+    }
+
+    private static int hash(int patientId) {
+        int hash = patientId * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -8,7 +8,7 @@ import java.util.List;
  */
 public class PatientRecord {
     private int patientId;
-    private String recordType;
+    private RecordType recordType;
     private double measurementValue;
     private double systolicValue;
     private double diastolicValue;
@@ -22,8 +22,21 @@ public class PatientRecord {
      * @param measurementValue The measurement value of the record.
      * @param recordType       The type of the record (e.g., HeartRate, BloodPressure).
      * @param timestamp        The timestamp of the record.
+     * @throws IllegalArgumentException If the record type is not registered.
      */
     public PatientRecord(int patientId, double measurementValue, String recordType, long timestamp) {
+        this(patientId, measurementValue, RecordType.of(recordType), timestamp);
+    }
+
+    /**
+     * Constructs a PatientRecord with the specified patient ID, measurement value, record type, and timestamp.
+     *
+     * @param patientId        The ID of the patient.
+     * @param measurementValue The measurement value of the record.
+     * @param recordType       The type of the record.
+     * @param timestamp        The timestamp of the record.
+     */
+    public PatientRecord(int patientId, double measurementValue, RecordType recordType, long timestamp) {
         this.patientId = patientId;
         this.measurementValue = measurementValue;
         this.recordType = recordType;
@@ -38,12 +51,13 @@ public class PatientRecord {
      * @param diastolicValue The diastolic blood pressure value.
      * @param recordType   The type of the record (e.g., HeartRate, BloodPressure).
      * @param timestamp    The timestamp of the record.
+     * @throws IllegalArgumentException If the record type is not registered.
      */
     public PatientRecord(int patientId, double systolicValue, double diastolicValue, String recordType, long timestamp) {
         this.patientId = patientId;
         this.systolicValue = systolicValue;
         this.diastolicValue = diastolicValue;
-        this.recordType = recordType;
+        this.recordType = RecordType.of(recordType);
         this.timestamp = timestamp;
     }
 
@@ -56,12 +70,21 @@ public class PatientRecord {
         return patientId;
     }
 
+    /**
+     * Gets the label of the record type.
+     *
+     * @return The record type label.
+     */
+    public String getRecordType() {
+        return recordType.getLabel();
+    }
+
     /**
      * Gets the record type.
      *
      * @return The record type.
      */
-    public String getRecordType() {
+    public RecordType getType() {
         return recordType;
     }
 
@@ -116,7 +139,7 @@ public class PatientRecord {
      * @return The heart rate value.
      */
     public double getHeartRate() {
-        if ("HeartRate".equals(recordType)) {
+        if (recordType == RecordType.HEART_RATE) {
             return measurementValue;
         } else {
             throw new IllegalStateException("Record type is not HeartRate");
@@ -0,0 +1,391 @@
+package com.data_management;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Parses sample lines straight from bytes into a {@link SampleBatch}, without creating Strings or other objects
+ * per line. Lines are of one of the {@link Format}s. Fields may be surrounded by whitespace and fields after
+ * the fourth are ignored. Lines end at {@code \n} or {@code \r}, so {@code \r\n} endings work, and blank lines
+ * are skipped.
+ * <p>
+ * Integers are accumulated digit by digit with overflow checks. A value with at most 15 significant digits,
+ * an optional fraction and no exponent is computed as an exact integer divided by an exact power of ten, which
+ * the division rounds correctly; anything else (exponents, NaN, long mantissas) falls back to
+ * {@link Double#parseDouble(String)}, so results always equal that method's. Record type labels are matched
+ * against a small table of the labels already seen by this parser, so a label costs a hash and a byte compare;
+ * only the first occurrence of a label creates its String to resolve it through {@link RecordType#of(String)}.
+ * <p>
+ * A parser keeps reusable state and is not thread-safe; each reader thread uses its own.
+ */
+public final class RecordParser {
+
+    /**
+     * The line formats a parser reads.
+     */
+    public enum Format {
+        /**
+         * {@code patientId,measurementValue,recordType,timestamp}, as read by {@link FileDataReader} and
+         * {@link WebSocketDataReader}.
+         */
+        COMMA_SEPARATED,
+        /**
+         * {@code Patient ID: %d, Timestamp: %d, Label: %s, Data: %s}, as written by the simulator's
+         * {@code FileOutputStrategy}. The field names are not checked, only skipped up to their colon,
+         * and a {@code %} after the value, as in saturation lines, is ignored.
+         */
+        LABELLED
+    }
+
+    private static final byte[] LABELLED_PREFIX = "Patient ID:".getBytes(StandardCharsets.US_ASCII);
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+    private static final int LABEL_SLOTS = 64;
+
+    private final Format format;
+    private final byte[][] labelKeys = new byte[LABEL_SLOTS][];
+    private final RecordType[] labelTypes = new RecordType[LABEL_SLOTS];
+    private byte[] encoded = new byte[1024];
+    private ByteBuffer encodedBuffer = ByteBuffer.wrap(encoded);
+    // The start of the line being parsed, and the end of its field parsed last, i.e. the position of the
+    // separator after it or the end of the line.
+    private int lineStart;
+    private int fieldEnd;
+
+    /**
+     * Constructs a RecordParser for the comma-separated format.
+     */
+    public RecordParser() {
+        this(Format.COMMA_SEPARATED);
+    }
+
+    /**
+     * Constructs a RecordParser for a format.
+     *
+     * @param format The format of the lines.
+     */
+    public RecordParser(Format format) {
+        this.format = format;
+    }
+
+    /**
+     * Tells the format of the lines in a range of a buffer from the first text in it.
+     *
+     * @param buffer The input, such as the beginning of a file.
+     * @param from   The position of the first byte, inclusive.
+     * @param to     The position of the last byte, exclusive.
+     * @return The format, or null if the range holds only whitespace or too little text to tell.
+     */
+    public static Format detect(ByteBuffer buffer, int from, int to) {
+        int start = skipWhitespace(buffer, from, to);
+        if (start == to) {
+            return null;
+        }
+        for (int i = 0; i < LABELLED_PREFIX.length; i++) {
+            if (start + i == to) {
+                return null;
+            }
+            if (buffer.get(start + i) != LABELLED_PREFIX[i]) {
+                return Format.COMMA_SEPARATED;
+            }
+        }
+        return Format.LABELLED;
+    }
+
+    /**
+     * Gets the format this parser reads.
+     *
+     * @return The format.
+     */
+    public Format getFormat() {
+        return format;
+    }
+
+    /**
+     * Gets the position where the last non-blank line parsed begins. After a parse method has thrown,
+     * this is the start of the malformed line.
+     *
+     * @return The position.
+     */
+    public int getLineStart() {
+        return lineStart;
+    }
+
+    /**
+     * Parses every complete line in a range of a buffer. A line without a terminator at the end of the range is
+     * left for the caller, who can pass it again with more input or parse it with
+     * {@link #parseLine(ByteBuffer, int, int, SampleBatch)} at the end of the input.
+     * The buffer is read with absolute gets, so its position and limit are not changed.
+     *
+     * @param buffer The input.
+     * @param from   The position of the first byte, inclusive.
+     * @param to     The position of the last byte, exclusive.
+     * @param batch  Receives the samples, one per line.
+     * @return The position after the last line terminator in the range, or {@code from} if there is none.
+     * @throws NumberFormatException If a line is malformed; the lines before it have been added to the batch.
+     * @throws IllegalArgumentException If a line has an unknown record type.
+     */
+    public int parseLines(ByteBuffer buffer, int from, int to, SampleBatch batch) {
+        int start = from;
+        for (int i = from; i < to; i++) {
+            byte b = buffer.get(i);
+            if (b == '\n' || b == '\r') {
+                parseLine(buffer, start, i, batch);
+                start = i + 1;
+            }
+        }
+        return start;
+    }
+
+    /**
+     * Parses every line of a byte array, including a last line without a terminator.
+     *
+     * @param bytes The input.
+     * @param from  The index of the first byte, inclusive.
+     * @param to    The index of the last byte, exclusive.
+     * @param batch Receives the samples, one per line.
+     * @throws NumberFormatException If a line is malformed; the lines before it have been added to the batch.
+     * @throws IllegalArgumentException If a line has an unknown record type.
+     */
+    public void parse(byte[] bytes, int from, int to, SampleBatch batch) {
+        ByteBuffer buffer = bytes == encoded ? encodedBuffer : ByteBuffer.wrap(bytes);
+        int rest = parseLines(buffer, from, to, batch);
+        parseLine(buffer, rest, to, batch);
+    }
+
+    /**
+     * Parses every line of a text, such as a WebSocket message. ASCII text is copied into a reusable byte array,
+     * so this allocates nothing per message either; other text is encoded as UTF-8 first.
+     *
+     * @param text  The input.
+     * @param batch Receives the samples, one per line.
+     * @throws NumberFormatException If a line is malformed; the lines before it have been added to the batch.
+     * @throws IllegalArgumentException If a line has an unknown record type.
+     */
+    public void parse(CharSequence text, SampleBatch batch) {
+        int length = text.length();
+        if (encoded.length < length) {
+            encoded = new byte[Math.max(length, encoded.length * 2)];
+            encodedBuffer = ByteBuffer.wrap(encoded);
+        }
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c >= 0x80) {
+                byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+                parse(bytes, 0, bytes.length, batch);
+                return;
+            }
+            encoded[i] = (byte) c;
+        }
+        parse(encoded, 0, length, batch);
+    }
+
+    /**
+     * Parses one line without its terminator. A blank line adds nothing.
+     *
+     * @param buffer The input.
+     * @param from   The position of the first byte of the line, inclusive.
+     * @param to     The position of the end of the line, exclusive.
+     * @param batch  Receives the sample.
+     * @return true if a sample was added, false if the line is blank.
+     * @throws NumberFormatException If the line is malformed.
+     * @throws IllegalArgumentException If the line has an unknown record type.
+     */
+    public boolean parseLine(ByteBuffer buffer, int from, int to, SampleBatch batch) {
+        int start = skipWhitespace(buffer, from, to);
+        if (start == to) {
+            return false;
+        }
+        lineStart = from;
+        if (format == Format.LABELLED) {
+            int patientId = (int) parseLong(buffer, value(buffer, start, to), to, Integer.MIN_VALUE, Integer.MAX_VALUE);
+            long timestamp = parseLong(buffer, value(buffer, next(buffer, to), to), to, Long.MIN_VALUE, Long.MAX_VALUE);
+            RecordType recordType = parseRecordType(buffer, value(buffer, next(buffer, to), to), to);
+            double value = parseDouble(buffer, value(buffer, next(buffer, to), to), to);
+            batch.add(patientId, value, recordType, timestamp);
+            return true;
+        }
+        int patientId = (int) parseLong(buffer, start, to, Integer.MIN_VALUE, Integer.MAX_VALUE);
+        double value = parseDouble(buffer, next(buffer, to), to);
+        RecordType recordType = parseRecordType(buffer, next(buffer, to), to);
+        long timestamp = parseLong(buffer, next(buffer, to), to, Long.MIN_VALUE, Long.MAX_VALUE);
+        batch.add(patientId, value, recordType, timestamp);
+        return true;
+    }
+
+    // The position after the colon that ends the name of a labelled field.
+    private int value(ByteBuffer buffer, int from, int to) {
+        int end = fieldEnd(buffer, from, to);
+        for (int i = from; i < end; i++) {
+            if (buffer.get(i) == ':') {
+                return i + 1;
+            }
+        }
+        throw new NumberFormatException("Missing field name in line: " + text(buffer, lineStart, to));
+    }
+
+    private int next(ByteBuffer buffer, int to) {
+        if (fieldEnd >= to) {
+            throw new NumberFormatException("Missing field in line: " + text(buffer, lineStart, to));
+        }
+        return fieldEnd + 1;
+    }
+
+    private long parseLong(ByteBuffer buffer, int from, int to, long min, long max) {
+        int end = fieldEnd(buffer, from, to);
+        int start = skipWhitespace(buffer, from, end);
+        int stop = trimEnd(buffer, start, end);
+        int i = start;
+        boolean negative = false;
+        if (i < stop && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+            negative = buffer.get(i) == '-';
+            i++;
+        }
+        if (i == stop) {
+            throw invalid(buffer, start, stop);
+        }
+        // Accumulated as a negative number, whose range includes the magnitude of the minimum.
+        long limit = negative ? min : -max;
+        long result = 0;
+        for (; i < stop; i++) {
+            int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9 || result < (limit + digit) / 10) {
+                throw invalid(buffer, start, stop);
+            }
+            result = result * 10 - digit;
+        }
+        fieldEnd = end;
+        return negative ? result : -result;
+    }
+
+    private double parseDouble(ByteBuffer buffer, int from, int to) {
+        int end = fieldEnd(buffer, from, to);
+        int start = skipWhitespace(buffer, from, end);
+        int stop = trimEnd(buffer, start, end);
+        if (format == Format.LABELLED && stop > start && buffer.get(stop - 1) == '%') {
+            stop = trimEnd(buffer, start, stop - 1);
+        }
+        fieldEnd = end;
+        int i = start;
+        boolean negative = false;
+        if (i < stop && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+            negative = buffer.get(i) == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int significantDigits = 0;
+        int fractionDigits = 0;
+        boolean digits = false;
+        boolean fraction = false;
+        for (; i < stop; i++) {
+            byte b = buffer.get(i);
+            if (b == '.' && !fraction) {
+                fraction = true;
+                continue;
+            }
+            int digit = b - '0';
+            if (digit < 0 || digit > 9) {
+                return parseDoubleSlowly(buffer, start, stop);
+            }
+            digits = true;
+            mantissa = mantissa * 10 + digit;
+            if (mantissa != 0) {
+                significantDigits++;
+            }
+            if (fraction) {
+                fractionDigits++;
+            }
+            if (significantDigits > 15 || fractionDigits == POWERS_OF_TEN.length) {
+                return parseDoubleSlowly(buffer, start, stop);
+            }
+        }
+        if (!digits) {
+            return parseDoubleSlowly(buffer, start, stop);
+        }
+        // Both operands are exact, so the division rounds like Double.parseDouble.
+        double value = mantissa / POWERS_OF_TEN[fractionDigits];
+        return negative ? -value : value;
+    }
+
+    private double parseDoubleSlowly(ByteBuffer buffer, int start, int stop) {
+        return Double.parseDouble(text(buffer, start, stop));
+    }
+
+    private RecordType parseRecordType(ByteBuffer buffer, int from, int to) {
+        int end = fieldEnd(buffer, from, to);
+        int start = skipWhitespace(buffer, from, end);
+        int stop = trimEnd(buffer, start, end);
+        fieldEnd = end;
+        int hash = 1;
+        for (int i = start; i < stop; i++) {
+            hash = 31 * hash + buffer.get(i);
+        }
+        int slot = (hash * 0x9E3779B9) >>> (Integer.SIZE - Integer.numberOfTrailingZeros(LABEL_SLOTS));
+        for (int probe = 0; probe < LABEL_SLOTS; probe++) {
+            byte[] key = labelKeys[slot];
+            if (key == null) {
+                break;
+            }
+            if (matches(key, buffer, start, stop)) {
+                return labelTypes[slot];
+            }
+            slot = (slot + 1) & (LABEL_SLOTS - 1);
+        }
+        String label = text(buffer, start, stop);
+        RecordType type = RecordType.of(label);
+        if (labelKeys[slot] == null) {
+            labelKeys[slot] = label.getBytes(StandardCharsets.UTF_8);
+            labelTypes[slot] = type;
+        }
+        return type;
+    }
+
+    private static boolean matches(byte[] key, ByteBuffer buffer, int start, int stop) {
+        if (key.length != stop - start) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (key[i] != buffer.get(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int fieldEnd(ByteBuffer buffer, int from, int to) {
+        int i = from;
+        while (i < to && buffer.get(i) != ',') {
+            i++;
+        }
+        return i;
+    }
+
+    private static int skipWhitespace(ByteBuffer buffer, int from, int to) {
+        int i = from;
+        while (i < to && (buffer.get(i) & 0xFF) <= ' ') {
+            i++;
+        }
+        return i;
+    }
+
+    private static int trimEnd(ByteBuffer buffer, int from, int to) {
+        int i = to;
+        while (i > from && (buffer.get(i - 1) & 0xFF) <= ' ') {
+            i--;
+        }
+        return i;
+    }
+
+    private static NumberFormatException invalid(ByteBuffer buffer, int start, int stop) {
+        return new NumberFormatException("For input string: \"" + text(buffer, start, stop) + "\"");
+    }
+
+    private static String text(ByteBuffer buffer, int start, int stop) {
+        byte[] bytes = new byte[Math.max(0, stop - start)];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(start + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
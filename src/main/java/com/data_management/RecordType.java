@@ -0,0 +1,170 @@
+package com.data_management;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * An interned record type such as HeartRate or BloodPressure.
+ * Labels are resolved to a RecordType once at the ingest boundary; from there on storage, evaluators and
+ * factories compare types by identity and index per-type data by the compact {@link #getCode() code}
+ * instead of hashing or comparing strings for every record.
+ * There is exactly one instance per type, so {@code ==} is a valid comparison.
+ * The types emitted by the generators are registered up front, and further types can be registered at runtime.
+ */
+public final class RecordType {
+    private static final ConcurrentMap<String, RecordType> BY_LABEL = new ConcurrentHashMap<>();
+    private static volatile RecordType[] byCode = new RecordType[0];
+
+    public static final RecordType HEART_RATE = register("HeartRate");
+    public static final RecordType BLOOD_PRESSURE = register("BloodPressure");
+    public static final RecordType BLOOD_OXYGEN_SATURATION = register("BloodOxygenSaturation");
+    public static final RecordType ECG = register("ECG");
+    public static final RecordType SYSTOLIC_PRESSURE = register("SystolicPressure");
+    public static final RecordType DIASTOLIC_PRESSURE = register("DiastolicPressure");
+    public static final RecordType CHOLESTEROL = register("Cholesterol");
+    public static final RecordType WHITE_BLOOD_CELLS = register("WhiteBloodCells");
+    public static final RecordType RED_BLOOD_CELLS = register("RedBloodCells");
+
+    static {
+        registerAlias("Saturation", BLOOD_OXYGEN_SATURATION);
+        registerAlias("OxygenSaturation", BLOOD_OXYGEN_SATURATION);
+    }
+
+    private final int code;
+    private final String label;
+    private final byte[] labelBytes;
+
+    private RecordType(int code, String label) {
+        this.code = code;
+        this.label = label;
+        this.labelBytes = label.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Registers a record type, or returns the existing type if the label is already known.
+     *
+     * @param label The label of the type, as used by data sources.
+     * @return The record type for the label.
+     * @throws IllegalArgumentException If the label is null or blank.
+     */
+    public static synchronized RecordType register(String label) {
+        if (label == null || label.trim().isEmpty()) {
+            throw new IllegalArgumentException("Invalid record type: " + label);
+        }
+        RecordType existing = BY_LABEL.get(label);
+        if (existing != null) {
+            return existing;
+        }
+        RecordType[] types = Arrays.copyOf(byCode, byCode.length + 1);
+        RecordType type = new RecordType(types.length - 1, label);
+        types[type.code] = type;
+        byCode = types;
+        BY_LABEL.put(label, type);
+        return type;
+    }
+
+    /**
+     * Registers an additional label for an existing record type, e.g. "Saturation" for BloodOxygenSaturation.
+     *
+     * @param alias The additional label.
+     * @param type  The record type the label stands for.
+     * @throws IllegalArgumentException If the alias is blank or already stands for a different type.
+     */
+    public static synchronized void registerAlias(String alias, RecordType type) {
+        if (alias == null || alias.trim().isEmpty()) {
+            throw new IllegalArgumentException("Invalid record type: " + alias);
+        }
+        RecordType existing = BY_LABEL.putIfAbsent(alias, type);
+        if (existing != null && existing != type) {
+            throw new IllegalArgumentException("Record type " + alias + " is already registered as " + existing);
+        }
+    }
+
+    /**
+     * Looks up the record type for a label or alias.
+     *
+     * @param label The label to look up.
+     * @return The record type, or null if the label is not registered.
+     */
+    public static RecordType forLabel(String label) {
+        return label == null ? null : BY_LABEL.get(label);
+    }
+
+    /**
+     * Looks up the record type for a label or alias that must be registered.
+     *
+     * @param label The label to look up.
+     * @return The record type.
+     * @throws IllegalArgumentException If the label is not registered.
+     */
+    public static RecordType of(String label) {
+        RecordType type = forLabel(label);
+        if (type == null) {
+            throw new IllegalArgumentException("Invalid record type: " + label);
+        }
+        return type;
+    }
+
+    /**
+     * Looks up the record type with the given code.
+     *
+     * @param code The code of the type.
+     * @return The record type.
+     * @throws IllegalArgumentException If no type has the code.
+     */
+    public static RecordType forCode(int code) {
+        RecordType[] types = byCode;
+        if (code < 0 || code >= types.length) {
+            throw new IllegalArgumentException("Invalid record type code: " + code);
+        }
+        return types[code];
+    }
+
+    /**
+     * Gets the number of registered record types. Codes range from 0 to this number, exclusive.
+     *
+     * @return The number of registered types.
+     */
+    public static int count() {
+        return byCode.length;
+    }
+
+    /**
+     * Gets the compact code of the type, usable as an array index.
+     *
+     * @return The code.
+     */
+    public int getCode() {
+        return code;
+    }
+
+    /**
+     * Gets the canonical label of the type.
+     *
+     * @return The label.
+     */
+    public String getLabel() {
+        return label;
+    }
+
+    /**
+     * Gets the UTF-8 encoding of the label, shared by all callers and therefore not to be modified.
+     *
+     * @return The encoded label.
+     */
+    byte[] getLabelBytes() {
+        return labelBytes;
+    }
+
+    /**
+     * Returns the canonical label of the type.
+     *
+     * @return The label.
+     */
+    @Override
+    public String toString() {
+        return label;
+    }
+}
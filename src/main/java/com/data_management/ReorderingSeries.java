@@ -0,0 +1,348 @@
+package com.data_management;
+
+import java.util.Arrays;
+
+/**
+ * A {@link SampleSeries} decorator that absorbs out-of-order arrivals in a small sorted buffer, so the wrapped
+ * series only ever receives samples in timestamp order and never has to insert into its history.
+ * A sample is accepted if it is at most {@code latenessMillis} older than the newest sample seen so far;
+ * older samples are counted and dropped. Buffered samples are passed on once they fall behind that bound,
+ * at which point nothing that could still be accepted can sort before them.
+ * <p>
+ * Everything passed on is older than everything still buffered, so reads simply continue from the wrapped
+ * series into the buffer and indices count the buffer after the wrapped series. Retention applies to the
+ * wrapped series only, so a count-limited series can briefly hold its limit plus the buffered samples.
+ * The buffer is not published for lock-free reads, so scans need the owning {@link Patient}'s lock.
+ */
+final class ReorderingSeries implements SampleSeries {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final SampleSeries series;
+    private final long latenessMillis;
+    private long[] timestamps = new long[INITIAL_CAPACITY];
+    private double[] values = new double[INITIAL_CAPACITY];
+    private int start;
+    private int end;
+    private long newestTimestamp = Long.MIN_VALUE;
+    private long droppedLateCount;
+
+    /**
+     * Constructs a ReorderingSeries around the given series.
+     *
+     * @param series         The series that stores the samples in order.
+     * @param latenessMillis How much older than the newest sample a sample may be and still be accepted.
+     * @throws IllegalArgumentException If the lateness bound is not positive.
+     */
+    ReorderingSeries(SampleSeries series, long latenessMillis) {
+        if (latenessMillis <= 0) {
+            throw new IllegalArgumentException("Lateness bound must be positive");
+        }
+        this.series = series;
+        this.latenessMillis = latenessMillis;
+    }
+
+    /**
+     * Checks whether a sample is within the lateness bound.
+     *
+     * @param timestamp The timestamp of the sample.
+     * @return true if the sample would be kept, false if it would be dropped as too late.
+     */
+    @Override
+    public boolean accepts(long timestamp) {
+        return newestTimestamp == Long.MIN_VALUE || timestamp >= newestTimestamp - latenessMillis;
+    }
+
+    /**
+     * Adds a sample to the buffer, after any buffered samples with the same timestamp, and passes on the
+     * samples that fell behind the lateness bound. A sample beyond the bound is dropped and counted.
+     *
+     * @param timestamp The timestamp of the sample.
+     * @param value     The measurement value of the sample.
+     */
+    @Override
+    public void add(long timestamp, double value) {
+        if (!accepts(timestamp)) {
+            droppedLateCount++;
+            return;
+        }
+        if (end == timestamps.length) {
+            makeRoom();
+        }
+        int index = end;
+        if (end > start && timestamps[end - 1] > timestamp) {
+            index = bufferBound(timestamp, true);
+            System.arraycopy(timestamps, index, timestamps, index + 1, end - index);
+            System.arraycopy(values, index, values, index + 1, end - index);
+        }
+        timestamps[index] = timestamp;
+        values[index] = value;
+        end++;
+
+        if (timestamp > newestTimestamp) {
+            newestTimestamp = timestamp;
+            long watermark = timestamp - latenessMillis;
+            while (start < end && timestamps[start] < watermark) {
+                series.add(timestamps[start], values[start]);
+                start++;
+            }
+            if (start == end) {
+                start = 0;
+                end = 0;
+            }
+        }
+    }
+
+    /**
+     * Returns the index of the first sample with a timestamp greater than or equal to the given time.
+     *
+     * @param timestamp The time to search for.
+     * @return The index of the first matching sample, or {@link #size()} if there is none.
+     */
+    @Override
+    public int lowerBound(long timestamp) {
+        int index = series.lowerBound(timestamp);
+        return index < series.size() ? index : index + bufferBound(timestamp, false) - start;
+    }
+
+    /**
+     * Returns the index of the first sample with a timestamp strictly greater than the given time.
+     *
+     * @param timestamp The time to search for.
+     * @return The index of the first matching sample, or {@link #size()} if there is none.
+     */
+    @Override
+    public int upperBound(long timestamp) {
+        int index = series.upperBound(timestamp);
+        return index < series.size() ? index : index + bufferBound(timestamp, true) - start;
+    }
+
+    /**
+     * Gets the timestamp of the sample at the given index.
+     *
+     * @param index The index of the sample.
+     * @return The timestamp of the sample.
+     */
+    @Override
+    public long getTimestamp(int index) {
+        int stored = series.size();
+        return index < stored ? series.getTimestamp(index) : timestamps[start + index - stored];
+    }
+
+    /**
+     * Gets the measurement value of the sample at the given index.
+     *
+     * @param index The index of the sample.
+     * @return The measurement value of the sample.
+     */
+    @Override
+    public double getValue(int index) {
+        int stored = series.size();
+        return index < stored ? series.getValue(index) : values[start + index - stored];
+    }
+
+    /**
+     * Visits the samples of the wrapped series and then the buffered samples within the given range.
+     *
+     * @param startTime The start of the range, inclusive.
+     * @param endTime   The end of the range, inclusive.
+     * @param visitor   Receives the samples and may stop the scan early.
+     * @return true if the scan reached the end of the range, false if the visitor stopped it.
+     */
+    @Override
+    public boolean scan(long startTime, long endTime, SampleVisitor visitor) {
+        if (!series.scan(startTime, endTime, visitor)) {
+            return false;
+        }
+        for (int i = bufferBound(startTime, false); i < end && timestamps[i] <= endTime; i++) {
+            if (!visitor.visit(timestamps[i], values[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Freezes the wrapped series and copies the small buffer, which is read after the wrapped series.
+     *
+     * @return The samples at this point in time.
+     */
+    @Override
+    public Frozen freeze() {
+        Frozen stored = series.freeze();
+        if (start == end) {
+            return stored;
+        }
+        Frozen buffered = Frozen.of(Arrays.copyOfRange(timestamps, start, end),
+                Arrays.copyOfRange(values, start, end));
+        return new Frozen() {
+            @Override
+            public int size() {
+                return stored.size() + buffered.size();
+            }
+
+            @Override
+            public boolean scan(SampleVisitor visitor) {
+                return stored.scan(visitor) && buffered.scan(visitor);
+            }
+        };
+    }
+
+    /**
+     * Copies the timestamps of a range of samples into a new array.
+     *
+     * @param from The index of the first sample, inclusive.
+     * @param to   The index of the last sample, exclusive.
+     * @return The timestamps of the samples in order.
+     */
+    @Override
+    public long[] copyTimestamps(int from, int to) {
+        int stored = series.size();
+        if (to <= stored) {
+            return series.copyTimestamps(from, to);
+        }
+        long[] copy = new long[to - from];
+        int fromBuffer = Math.max(from, stored);
+        if (from < stored) {
+            System.arraycopy(series.copyTimestamps(from, stored), 0, copy, 0, stored - from);
+        }
+        System.arraycopy(timestamps, start + fromBuffer - stored, copy, fromBuffer - from, to - fromBuffer);
+        return copy;
+    }
+
+    /**
+     * Copies the measurement values of a range of samples into a new array.
+     *
+     * @param from The index of the first sample, inclusive.
+     * @param to   The index of the last sample, exclusive.
+     * @return The values of the samples in order.
+     */
+    @Override
+    public double[] copyValues(int from, int to) {
+        int stored = series.size();
+        if (to <= stored) {
+            return series.copyValues(from, to);
+        }
+        double[] copy = new double[to - from];
+        int fromBuffer = Math.max(from, stored);
+        if (from < stored) {
+            System.arraycopy(series.copyValues(from, stored), 0, copy, 0, stored - from);
+        }
+        System.arraycopy(values, start + fromBuffer - stored, copy, fromBuffer - from, to - fromBuffer);
+        return copy;
+    }
+
+    /**
+     * Gets the number of samples in the wrapped series and the buffer.
+     *
+     * @return The number of samples.
+     */
+    @Override
+    public int size() {
+        return series.size() + end - start;
+    }
+
+    /**
+     * Gets the number of samples dropped by the retention policy of the wrapped series.
+     *
+     * @return The number of evicted samples.
+     */
+    @Override
+    public long getEvictedCount() {
+        return series.getEvictedCount();
+    }
+
+    /**
+     * Gets the number of samples dropped for arriving beyond the lateness bound.
+     *
+     * @return The number of late samples dropped.
+     */
+    @Override
+    public long getDroppedLateCount() {
+        return droppedLateCount;
+    }
+
+    /**
+     * Spills old history of the wrapped series; the buffer is always recent and stays on the heap.
+     *
+     * @param coldStore           The store to write the spilled samples to.
+     * @param hotWindowMillis     How much history before the newest sample stays on the heap.
+     * @param coldSamplesPerBlock The number of samples written to the cold store as one block.
+     * @return The number of samples spilled.
+     */
+    @Override
+    public long spill(ColdStore coldStore, long hotWindowMillis, int coldSamplesPerBlock) {
+        return series.spill(coldStore, hotWindowMillis, coldSamplesPerBlock);
+    }
+
+    /**
+     * Sheds old history of the wrapped series; the buffer is always recent and is kept.
+     *
+     * @param cutoff The timestamp of the oldest sample kept.
+     * @return The number of samples evicted.
+     */
+    @Override
+    public long shed(long cutoff) {
+        return series.shed(cutoff);
+    }
+
+    /**
+     * Gets the retention policy of the wrapped series.
+     *
+     * @return The retention policy.
+     */
+    @Override
+    public RetentionPolicy getRetentionPolicy() {
+        return series.getRetentionPolicy();
+    }
+
+    /**
+     * Replaces the retention policy of the wrapped series.
+     *
+     * @param retentionPolicy The new retention policy.
+     */
+    @Override
+    public void setRetentionPolicy(RetentionPolicy retentionPolicy) {
+        series.setRetentionPolicy(retentionPolicy);
+    }
+
+    /**
+     * Drops the buffer and releases the wrapped series.
+     */
+    @Override
+    public void close() {
+        start = 0;
+        end = 0;
+        series.close();
+    }
+
+    private void makeRoom() {
+        int buffered = end - start;
+        if (buffered > timestamps.length / 2) {
+            long[] grownTimestamps = new long[timestamps.length * 2];
+            double[] grownValues = new double[values.length * 2];
+            System.arraycopy(timestamps, start, grownTimestamps, 0, buffered);
+            System.arraycopy(values, start, grownValues, 0, buffered);
+            timestamps = grownTimestamps;
+            values = grownValues;
+        } else {
+            System.arraycopy(timestamps, start, timestamps, 0, buffered);
+            System.arraycopy(values, start, values, 0, buffered);
+        }
+        start = 0;
+        end = buffered;
+    }
+
+    private int bufferBound(long timestamp, boolean upper) {
+        int low = start;
+        int high = end;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (upper ? timestamps[mid] <= timestamp : timestamps[mid] < timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
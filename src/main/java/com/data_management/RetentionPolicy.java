@@ -0,0 +1,52 @@
+package com.data_management;
+
+/**
+ * Describes how much history a {@link TimeSeries} keeps.
+ * History can be bounded by sample count, by age relative to the newest sample, or both;
+ * a limit of zero means that dimension is unbounded.
+ * A count limit also fixes the capacity of the series' ring buffer, which makes the heap
+ * footprint of a patient predictable.
+ */
+public class RetentionPolicy {
+
+    /**
+     * A policy that keeps every sample forever.
+     */
+    public static final RetentionPolicy UNBOUNDED = new RetentionPolicy(0, 0);
+
+    private final int maxSamples;
+    private final long maxAgeMillis;
+
+    /**
+     * Constructs a RetentionPolicy with the specified limits.
+     *
+     * @param maxSamples   The maximum number of samples kept per series, or 0 for no count limit.
+     * @param maxAgeMillis The maximum age of a sample relative to the newest sample of its series, or 0 for no age limit.
+     * @throws IllegalArgumentException If a limit is negative.
+     */
+    public RetentionPolicy(int maxSamples, long maxAgeMillis) {
+        if (maxSamples < 0 || maxAgeMillis < 0) {
+            throw new IllegalArgumentException("Retention limits must not be negative");
+        }
+        this.maxSamples = maxSamples;
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    /**
+     * Gets the maximum number of samples kept per series.
+     *
+     * @return The sample limit, or 0 if unbounded.
+     */
+    public int getMaxSamples() {
+        return maxSamples;
+    }
+
+    /**
+     * Gets the maximum age of a sample relative to the newest sample of its series.
+     *
+     * @return The age limit in milliseconds, or 0 if unbounded.
+     */
+    public long getMaxAgeMillis() {
+        return maxAgeMillis;
+    }
+}
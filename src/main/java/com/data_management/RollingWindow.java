@@ -0,0 +1,330 @@
+package com.data_management;
+
+/**
+ * Incrementally maintained statistics over the samples of one series that fall within a sliding time window.
+ * The in-window samples are kept in a ring buffer sorted by timestamp. Count, sum, mean and variance are updated
+ * with Welford's algorithm as samples enter and leave the window, and minimum and maximum come from
+ * monotonic queues of ring slots, so both updates and queries are amortized O(1).
+ * The window ends at the newest sample and is also bounded by the series' {@link RetentionPolicy},
+ * so samples leave the window no later than they are evicted from the series.
+ * Removing samples from Welford's running moments accumulates rounding error, so the moments are
+ * recomputed from the buffered samples after a number of removals proportional to the window size.
+ * Samples only expire on the write path; a query for a window ending after the newest sample skips the buffered
+ * samples before its start without removing them, so queries do not modify the window. A window is not thread-safe:
+ * the owning {@link Patient} holds its write lock for updates and its read lock for queries.
+ */
+final class RollingWindow {
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int MIN_RECOMPUTE_INTERVAL = 1024;
+
+    private final long windowMillis;
+    private RetentionPolicy retentionPolicy;
+
+    private long[] timestamps = new long[INITIAL_CAPACITY];
+    private double[] values = new double[INITIAL_CAPACITY];
+    private int head;
+    private int size;
+    private long newestTimestamp = Long.MIN_VALUE;
+
+    private double sum;
+    private double mean;
+    private double m2;
+    private int removalsSinceRecompute;
+
+    private int[] minSlots = new int[INITIAL_CAPACITY];
+    private int[] maxSlots = new int[INITIAL_CAPACITY];
+    private int minHead;
+    private int minSize;
+    private int maxHead;
+    private int maxSize;
+    private boolean extremaValid = true;
+
+    /**
+     * Constructs an empty RollingWindow.
+     *
+     * @param windowMillis    The length of the window in milliseconds.
+     * @param retentionPolicy The retention policy of the series the window belongs to.
+     */
+    RollingWindow(long windowMillis, RetentionPolicy retentionPolicy) {
+        this.windowMillis = windowMillis;
+        this.retentionPolicy = retentionPolicy;
+    }
+
+    /**
+     * Gets the length of the window.
+     *
+     * @return The window length in milliseconds.
+     */
+    long getWindowMillis() {
+        return windowMillis;
+    }
+
+    /**
+     * Adds a sample and expires the samples that fall out of the window.
+     * A sample older than the newest one is inserted at its place, unless it is already outside the window.
+     *
+     * @param timestamp The timestamp of the sample.
+     * @param value     The measurement value of the sample.
+     */
+    void add(long timestamp, double value) {
+        if (timestamp < newestTimestamp) {
+            if (timestamp < cutoff()) {
+                return;
+            }
+            insertSorted(timestamp, value);
+        } else {
+            if (size == timestamps.length) {
+                grow();
+            }
+            int slot = slot(size);
+            timestamps[slot] = timestamp;
+            values[slot] = value;
+            size++;
+            newestTimestamp = timestamp;
+            if (extremaValid) {
+                pushExtrema(slot);
+            } else {
+                // Rebuilt on the write path, so queries never have to.
+                rebuildExtrema();
+            }
+        }
+        double delta = value - mean;
+        mean += delta / size;
+        m2 += delta * (value - mean);
+        sum += value;
+        expire(cutoff());
+    }
+
+    /**
+     * Applies a new retention policy, expiring the samples it no longer keeps.
+     *
+     * @param retentionPolicy The new retention policy.
+     */
+    void setRetentionPolicy(RetentionPolicy retentionPolicy) {
+        this.retentionPolicy = retentionPolicy;
+        expire(cutoff());
+    }
+
+    /**
+     * Gets the statistics of the window ending at the given time without modifying the window.
+     * Buffered samples before the start of that window are left out of the moments, either by removing them
+     * from a copy of the running moments or, if they are the majority, by summing the remaining samples,
+     * so a query costs at most half of the buffered samples and O(1) when {@code now} is the newest sample.
+     *
+     * @param now The end of the window.
+     * @return The statistics, or null if they cannot be answered from the window because {@code now} is before
+     *         the newest sample.
+     */
+    WindowStatistics statistics(long now) {
+        if (now < newestTimestamp) {
+            return null;
+        }
+        int first = lowerBound(now - windowMillis);
+        int count = size - first;
+        if (count == 0) {
+            return WindowStatistics.EMPTY;
+        }
+
+        double windowSum = sum;
+        double windowMean = mean;
+        double windowM2 = m2;
+        if (first <= count) {
+            for (int i = 0, remaining = size; i < first; i++) {
+                double value = values[slot(i)];
+                remaining--;
+                double delta = value - windowMean;
+                windowMean -= delta / remaining;
+                windowM2 -= delta * (value - windowMean);
+                windowSum -= value;
+            }
+        } else {
+            windowSum = 0;
+            for (int i = first; i < size; i++) {
+                windowSum += values[slot(i)];
+            }
+            windowMean = windowSum / count;
+            windowM2 = 0;
+            for (int i = first; i < size; i++) {
+                double deviation = values[slot(i)] - windowMean;
+                windowM2 += deviation * deviation;
+            }
+        }
+
+        double min;
+        double max;
+        if (extremaValid) {
+            // Both queues hold slots in timestamp order, so the expired ones are at their fronts.
+            int mask = minSlots.length - 1;
+            int minIndex = 0;
+            while (position(minSlots[(minHead + minIndex) & mask]) < first) {
+                minIndex++;
+            }
+            int maxIndex = 0;
+            while (position(maxSlots[(maxHead + maxIndex) & mask]) < first) {
+                maxIndex++;
+            }
+            min = values[minSlots[(minHead + minIndex) & mask]];
+            max = values[maxSlots[(maxHead + maxIndex) & mask]];
+        } else {
+            min = Double.POSITIVE_INFINITY;
+            max = Double.NEGATIVE_INFINITY;
+            for (int i = first; i < size; i++) {
+                min = Math.min(min, values[slot(i)]);
+                max = Math.max(max, values[slot(i)]);
+            }
+        }
+        int last = slot(size - 1);
+        return new WindowStatistics(count, windowSum, min, max, windowMean, Math.max(0, windowM2 / count),
+                timestamps[last], values[last]);
+    }
+
+    private int lowerBound(long timestamp) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (timestamps[slot(middle)] < timestamp) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private int position(int slot) {
+        return (slot - head) & (timestamps.length - 1);
+    }
+
+    private long cutoff() {
+        long horizon = windowMillis;
+        long maxAgeMillis = retentionPolicy.getMaxAgeMillis();
+        if (maxAgeMillis > 0 && maxAgeMillis < horizon) {
+            horizon = maxAgeMillis;
+        }
+        return newestTimestamp - horizon;
+    }
+
+    private void expire(long cutoff) {
+        while (size > 0 && timestamps[head] < cutoff) {
+            removeOldest();
+        }
+        int maxSamples = retentionPolicy.getMaxSamples();
+        while (maxSamples > 0 && size > maxSamples) {
+            removeOldest();
+        }
+    }
+
+    private void removeOldest() {
+        double value = values[head];
+        if (extremaValid) {
+            if (minSize > 0 && minSlots[minHead] == head) {
+                minHead = (minHead + 1) & (minSlots.length - 1);
+                minSize--;
+            }
+            if (maxSize > 0 && maxSlots[maxHead] == head) {
+                maxHead = (maxHead + 1) & (maxSlots.length - 1);
+                maxSize--;
+            }
+        }
+        head = slot(1);
+        size--;
+
+        if (size == 0) {
+            sum = 0;
+            mean = 0;
+            m2 = 0;
+            removalsSinceRecompute = 0;
+            return;
+        }
+        double delta = value - mean;
+        mean -= delta / size;
+        m2 -= delta * (value - mean);
+        sum -= value;
+        if (++removalsSinceRecompute >= Math.max(MIN_RECOMPUTE_INTERVAL, size)) {
+            recompute();
+        }
+    }
+
+    private void recompute() {
+        double total = 0;
+        for (int i = 0; i < size; i++) {
+            total += values[slot(i)];
+        }
+        double average = total / size;
+        double squares = 0;
+        for (int i = 0; i < size; i++) {
+            double deviation = values[slot(i)] - average;
+            squares += deviation * deviation;
+        }
+        sum = total;
+        mean = average;
+        m2 = squares;
+        removalsSinceRecompute = 0;
+    }
+
+    private void insertSorted(long timestamp, double value) {
+        if (size == timestamps.length) {
+            grow();
+        }
+        // Late samples usually belong near the end, so search backwards; equal timestamps keep arrival order.
+        int position = size;
+        while (position > 0 && timestamps[slot(position - 1)] > timestamp) {
+            int from = slot(position - 1);
+            int to = slot(position);
+            timestamps[to] = timestamps[from];
+            values[to] = values[from];
+            position--;
+        }
+        int slot = slot(position);
+        timestamps[slot] = timestamp;
+        values[slot] = value;
+        size++;
+        extremaValid = false;
+    }
+
+    private void pushExtrema(int slot) {
+        double value = values[slot];
+        int mask = minSlots.length - 1;
+        while (minSize > 0 && values[minSlots[(minHead + minSize - 1) & mask]] >= value) {
+            minSize--;
+        }
+        minSlots[(minHead + minSize++) & mask] = slot;
+        while (maxSize > 0 && values[maxSlots[(maxHead + maxSize - 1) & mask]] <= value) {
+            maxSize--;
+        }
+        maxSlots[(maxHead + maxSize++) & mask] = slot;
+    }
+
+    private void rebuildExtrema() {
+        minHead = 0;
+        minSize = 0;
+        maxHead = 0;
+        maxSize = 0;
+        for (int i = 0; i < size; i++) {
+            pushExtrema(slot(i));
+        }
+        extremaValid = true;
+    }
+
+    private void grow() {
+        int capacity = timestamps.length * 2;
+        long[] newTimestamps = new long[capacity];
+        double[] newValues = new double[capacity];
+        for (int i = 0; i < size; i++) {
+            newTimestamps[i] = timestamps[slot(i)];
+            newValues[i] = values[slot(i)];
+        }
+        timestamps = newTimestamps;
+        values = newValues;
+        head = 0;
+        minSlots = new int[capacity];
+        maxSlots = new int[capacity];
+        // The queues hold ring slots, which moved.
+        extremaValid = false;
+    }
+
+    private int slot(int index) {
+        return (head + index) & (timestamps.length - 1);
+    }
+}
@@ -0,0 +1,285 @@
+package com.data_management;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The buckets of one {@link RollupTier} of a series, kept sorted by start time in columnar ring arrays.
+ * In-order samples update the newest bucket or append a new one in O(1); late samples find their bucket
+ * by binary search. When the tier is full the oldest bucket is dropped, and from then on the rollup
+ * only covers the time from its oldest remaining bucket onwards.
+ * A rollup is not thread-safe; the owning {@link Patient} is responsible for locking.
+ */
+final class Rollup {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final long resolutionMillis;
+    private final int maxBuckets;
+
+    private long[] starts = new long[INITIAL_CAPACITY];
+    private int[] counts = new int[INITIAL_CAPACITY];
+    private double[] mins = new double[INITIAL_CAPACITY];
+    private double[] maxs = new double[INITIAL_CAPACITY];
+    private double[] sums = new double[INITIAL_CAPACITY];
+    private int head;
+    private int size;
+    private long coveredFrom = Long.MIN_VALUE;
+
+    /**
+     * Constructs an empty Rollup.
+     *
+     * @param tier The bucket width and limit of the rollup.
+     */
+    Rollup(RollupTier tier) {
+        this.resolutionMillis = tier.getResolutionMillis();
+        this.maxBuckets = tier.getMaxBuckets();
+    }
+
+    /**
+     * Gets the width of the buckets.
+     *
+     * @return The bucket width in milliseconds.
+     */
+    long getResolutionMillis() {
+        return resolutionMillis;
+    }
+
+    /**
+     * Gets the start of the time the rollup holds every sample of.
+     *
+     * @return The start of the oldest bucket that has not been dropped, or {@link Long#MIN_VALUE} if none was.
+     */
+    long getCoveredFrom() {
+        return coveredFrom;
+    }
+
+    /**
+     * Checks whether the rollup holds every sample added at or after the given time.
+     *
+     * @param startTime The time from which buckets are needed.
+     * @return true if no bucket at or after the start of the given time's bucket has been dropped.
+     */
+    boolean covers(long startTime) {
+        return alignedStart(startTime) >= coveredFrom;
+    }
+
+    /**
+     * Adds a sample to its bucket.
+     *
+     * @param timestamp The timestamp of the sample.
+     * @param value     The measurement value of the sample.
+     */
+    void add(long timestamp, double value) {
+        if (size > 0) {
+            int last = slot(size - 1);
+            long offset = timestamp - starts[last];
+            if (offset >= 0 && offset < resolutionMillis) {
+                update(last, value);
+                return;
+            }
+        }
+        long start = alignedStart(timestamp);
+        if (size > 0) {
+            int last = slot(size - 1);
+            if (start < starts[last]) {
+                addLate(start, value);
+                return;
+            }
+        }
+        if (size == starts.length) {
+            grow();
+        }
+        int slot = slot(size++);
+        initialize(slot, start, value);
+        trim();
+    }
+
+    /**
+     * Appends the buckets overlapping a time range to a list, in order.
+     *
+     * @param startTime The start of the range; the bucket containing it is included.
+     * @param endTime   The end of the range, inclusive.
+     * @param buckets   Receives the buckets.
+     */
+    void collect(long startTime, long endTime, List<RollupBucket> buckets) {
+        for (int i = lowerBound(alignedStart(startTime)); i < size; i++) {
+            int slot = slot(i);
+            if (starts[slot] > endTime) {
+                break;
+            }
+            buckets.add(new RollupBucket(starts[slot], resolutionMillis, counts[slot], mins[slot], maxs[slot], sums[slot]));
+        }
+    }
+
+    /**
+     * Copies all buckets, in order.
+     *
+     * @return The buckets.
+     */
+    List<RollupBucket> buckets() {
+        List<RollupBucket> buckets = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            int slot = slot(i);
+            buckets.add(new RollupBucket(starts[slot], resolutionMillis, counts[slot], mins[slot], maxs[slot], sums[slot]));
+        }
+        return buckets;
+    }
+
+    /**
+     * Replaces the buckets by ones copied with {@link #buckets()}, for instance from an archive.
+     * If there are more buckets than the tier allows, the oldest are dropped.
+     *
+     * @param coveredFrom The {@link #getCoveredFrom()} of the rollup the buckets were copied from.
+     * @param buckets     The buckets in order; they must have the resolution of this rollup.
+     */
+    void restore(long coveredFrom, List<RollupBucket> buckets) {
+        head = 0;
+        size = 0;
+        this.coveredFrom = coveredFrom;
+        for (RollupBucket bucket : buckets) {
+            if (size == starts.length) {
+                grow();
+            }
+            int slot = slot(size++);
+            starts[slot] = bucket.getStartTime();
+            counts[slot] = bucket.getCount();
+            mins[slot] = bucket.getMin();
+            maxs[slot] = bucket.getMax();
+            sums[slot] = bucket.getSum();
+            trim();
+        }
+    }
+
+    /**
+     * Drops the older half of the buckets that end before the given time, so repeated calls under memory
+     * pressure trim the history progressively and a bucket overlapping the time itself is always kept. From then on the rollup only covers the time after the
+     * dropped buckets. The arrays are shrunk if most of their capacity is unused.
+     *
+     * @param cutoff The time before which buckets may be dropped.
+     * @return The number of buckets dropped.
+     */
+    int shed(long cutoff) {
+        int count = (lowerBound(cutoff - resolutionMillis + 1) + 1) / 2;
+        if (count == 0) {
+            return 0;
+        }
+        coveredFrom = starts[slot(count - 1)] + resolutionMillis;
+        head = slot(count);
+        size -= count;
+        if (starts.length > INITIAL_CAPACITY && size < starts.length / 4) {
+            resize(Math.max(INITIAL_CAPACITY, size * 2));
+        }
+        return count;
+    }
+
+    private void addLate(long start, double value) {
+        if (start < coveredFrom) {
+            // The bucket has been dropped already.
+            return;
+        }
+        int position = lowerBound(start);
+        if (starts[slot(position)] == start) {
+            update(slot(position), value);
+            return;
+        }
+        if (size == starts.length) {
+            grow();
+        }
+        for (int i = size; i > position; i--) {
+            int from = slot(i - 1);
+            int to = slot(i);
+            starts[to] = starts[from];
+            counts[to] = counts[from];
+            mins[to] = mins[from];
+            maxs[to] = maxs[from];
+            sums[to] = sums[from];
+        }
+        size++;
+        initialize(slot(position), start, value);
+        trim();
+    }
+
+    private void initialize(int slot, long start, double value) {
+        starts[slot] = start;
+        counts[slot] = 1;
+        mins[slot] = value;
+        maxs[slot] = value;
+        sums[slot] = value;
+    }
+
+    private void update(int slot, double value) {
+        counts[slot]++;
+        mins[slot] = Math.min(mins[slot], value);
+        maxs[slot] = Math.max(maxs[slot], value);
+        sums[slot] += value;
+    }
+
+    private void trim() {
+        while (size > maxBuckets) {
+            head = slot(1);
+            size--;
+            coveredFrom = starts[head];
+        }
+    }
+
+    private int lowerBound(long start) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (starts[slot(middle)] < start) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private long alignedStart(long timestamp) {
+        return Math.floorDiv(timestamp, resolutionMillis) * resolutionMillis;
+    }
+
+    private void grow() {
+        // One slot beyond the limit is needed while a bucket is added to a full rollup.
+        resize((int) Math.min((long) maxBuckets + 1, starts.length * 2L));
+    }
+
+    private void resize(int capacity) {
+        starts = unroll(starts, capacity);
+        counts = unroll(counts, capacity);
+        mins = unroll(mins, capacity);
+        maxs = unroll(maxs, capacity);
+        sums = unroll(sums, capacity);
+        head = 0;
+    }
+
+    private long[] unroll(long[] array, int capacity) {
+        long[] copy = new long[capacity];
+        int firstPart = Math.min(size, array.length - head);
+        System.arraycopy(array, head, copy, 0, firstPart);
+        System.arraycopy(array, 0, copy, firstPart, size - firstPart);
+        return copy;
+    }
+
+    private int[] unroll(int[] array, int capacity) {
+        int[] copy = new int[capacity];
+        int firstPart = Math.min(size, array.length - head);
+        System.arraycopy(array, head, copy, 0, firstPart);
+        System.arraycopy(array, 0, copy, firstPart, size - firstPart);
+        return copy;
+    }
+
+    private double[] unroll(double[] array, int capacity) {
+        double[] copy = new double[capacity];
+        int firstPart = Math.min(size, array.length - head);
+        System.arraycopy(array, head, copy, 0, firstPart);
+        System.arraycopy(array, 0, copy, firstPart, size - firstPart);
+        return copy;
+    }
+
+    private int slot(int index) {
+        int slot = head + index;
+        return slot >= starts.length ? slot - starts.length : slot;
+    }
+}
@@ -0,0 +1,96 @@
+package com.data_management;
+
+/**
+ * The summary of the samples of one record type within one time bucket: count, minimum, maximum and sum.
+ * Buckets are aligned to multiples of their duration since the epoch.
+ */
+public final class RollupBucket {
+    private final long startTime;
+    private final long durationMillis;
+    private final int count;
+    private final double min;
+    private final double max;
+    private final double sum;
+
+    /**
+     * Constructs a RollupBucket with the specified values.
+     *
+     * @param startTime      The start of the bucket, inclusive.
+     * @param durationMillis The width of the bucket in milliseconds.
+     * @param count          The number of samples in the bucket.
+     * @param min            The smallest sample value.
+     * @param max            The largest sample value.
+     * @param sum            The sum of the sample values.
+     */
+    public RollupBucket(long startTime, long durationMillis, int count, double min, double max, double sum) {
+        this.startTime = startTime;
+        this.durationMillis = durationMillis;
+        this.count = count;
+        this.min = min;
+        this.max = max;
+        this.sum = sum;
+    }
+
+    /**
+     * Gets the start of the bucket.
+     *
+     * @return The start time, inclusive.
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * Gets the width of the bucket.
+     *
+     * @return The width in milliseconds; the bucket ends at {@code getStartTime() + getDurationMillis()}, exclusive.
+     */
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    /**
+     * Gets the number of samples in the bucket.
+     *
+     * @return The number of samples.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Gets the smallest sample value in the bucket.
+     *
+     * @return The minimum.
+     */
+    public double getMin() {
+        return min;
+    }
+
+    /**
+     * Gets the largest sample value in the bucket.
+     *
+     * @return The maximum.
+     */
+    public double getMax() {
+        return max;
+    }
+
+    /**
+     * Gets the sum of the sample values in the bucket.
+     *
+     * @return The sum.
+     */
+    public double getSum() {
+        return sum;
+    }
+
+    /**
+     * Gets the mean of the sample values in the bucket.
+     *
+     * @return The average.
+     */
+    public double getAverage() {
+        return sum / count;
+    }
+}
@@ -0,0 +1,59 @@
+package com.data_management;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Describes one downsampled tier of a series: the width of its buckets and how many buckets it keeps.
+ * Tiers are maintained at ingest time for the record types they are configured for, so a long-range query can read a few hundred buckets
+ * instead of every raw sample. Rollups are bounded by their own bucket limit, not by the
+ * {@link RetentionPolicy} of the raw series, so coarse tiers can outlive the raw history.
+ */
+public class RollupTier {
+    /**
+     * A common set of tiers for trend views: one hour of 1-second buckets, one week of 1-minute buckets
+     * and one year of 1-hour buckets. No tiers are maintained unless configured, see
+     * {@link DataStorage#setRollupTiers(RecordType, List)}.
+     */
+    public static final List<RollupTier> STANDARD_TIERS = Collections.unmodifiableList(Arrays.asList(
+            new RollupTier(1_000L, 3_600),
+            new RollupTier(60_000L, 7 * 24 * 60),
+            new RollupTier(3_600_000L, 365 * 24)));
+
+    private final long resolutionMillis;
+    private final int maxBuckets;
+
+    /**
+     * Constructs a RollupTier with the specified bucket width and limit.
+     *
+     * @param resolutionMillis The width of a bucket in milliseconds.
+     * @param maxBuckets       The maximum number of buckets kept; older buckets are dropped.
+     * @throws IllegalArgumentException If the width or the limit is not positive.
+     */
+    public RollupTier(long resolutionMillis, int maxBuckets) {
+        if (resolutionMillis <= 0 || maxBuckets <= 0) {
+            throw new IllegalArgumentException("Rollup resolution and bucket limit must be positive");
+        }
+        this.resolutionMillis = resolutionMillis;
+        this.maxBuckets = maxBuckets;
+    }
+
+    /**
+     * Gets the width of a bucket.
+     *
+     * @return The bucket width in milliseconds.
+     */
+    public long getResolutionMillis() {
+        return resolutionMillis;
+    }
+
+    /**
+     * Gets the maximum number of buckets kept.
+     *
+     * @return The bucket limit.
+     */
+    public int getMaxBuckets() {
+        return maxBuckets;
+    }
+}
@@ -0,0 +1,109 @@
+package com.data_management;
+
+import java.util.Arrays;
+
+/**
+ * A reusable, columnar batch of samples for {@link DataStorage#addPatientDataBatch(SampleBatch)}.
+ * Samples are kept in parallel primitive arrays (patient IDs, values, record type codes, timestamps),
+ * so filling a batch allocates nothing once the arrays have grown to the batch size.
+ * A batch is not thread-safe; each reader fills its own and clears it after handing it to the storage.
+ */
+public class SampleBatch {
+    private int[] patientIds;
+    private double[] values;
+    private int[] typeCodes;
+    private long[] timestamps;
+    private int size;
+
+    /**
+     * Constructs an empty SampleBatch.
+     *
+     * @param initialCapacity The number of samples the batch can hold before it grows.
+     */
+    public SampleBatch(int initialCapacity) {
+        int capacity = Math.max(1, initialCapacity);
+        this.patientIds = new int[capacity];
+        this.values = new double[capacity];
+        this.typeCodes = new int[capacity];
+        this.timestamps = new long[capacity];
+    }
+
+    /**
+     * Appends a sample to the batch.
+     *
+     * @param patientId        The ID of the patient.
+     * @param measurementValue The measurement value of the sample.
+     * @param recordType       The type of the sample.
+     * @param timestamp        The timestamp of the sample.
+     */
+    public void add(int patientId, double measurementValue, RecordType recordType, long timestamp) {
+        if (size == patientIds.length) {
+            int capacity = size * 2;
+            patientIds = Arrays.copyOf(patientIds, capacity);
+            values = Arrays.copyOf(values, capacity);
+            typeCodes = Arrays.copyOf(typeCodes, capacity);
+            timestamps = Arrays.copyOf(timestamps, capacity);
+        }
+        patientIds[size] = patientId;
+        values[size] = measurementValue;
+        typeCodes[size] = recordType.getCode();
+        timestamps[size] = timestamp;
+        size++;
+    }
+
+    /**
+     * Removes all samples, keeping the allocated capacity.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Gets the number of samples in the batch.
+     *
+     * @return The number of samples.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets the patient ID of a sample.
+     *
+     * @param index The index of the sample.
+     * @return The patient ID.
+     */
+    public int getPatientId(int index) {
+        return patientIds[index];
+    }
+
+    /**
+     * Gets the measurement value of a sample.
+     *
+     * @param index The index of the sample.
+     * @return The measurement value.
+     */
+    public double getValue(int index) {
+        return values[index];
+    }
+
+    /**
+     * Gets the record type code of a sample.
+     *
+     * @param index The index of the sample.
+     * @return The record type code, see {@link RecordType#getCode()}.
+     */
+    public int getTypeCode(int index) {
+        return typeCodes[index];
+    }
+
+    /**
+     * Gets the timestamp of a sample.
+     *
+     * @param index The index of the sample.
+     * @return The timestamp.
+     */
+    public long getTimestamp(int index) {
+        return timestamps[index];
+    }
+}
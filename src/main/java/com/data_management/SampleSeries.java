@@ -0,0 +1,235 @@
+package com.data_management;
+
+/**
+ * A time-ordered series of (timestamp, value) samples of one record type for one patient.
+ * Implementations decide where the samples live, e.g. on the heap in {@link TimeSeries}
+ * or off-heap in memory-mapped files in {@link MappedTimeSeries}.
+ * Indices are logical, with 0 being the oldest retained sample.
+ * Implementations are not thread-safe; the owning {@link Patient} is responsible for locking,
+ * except that implementations reporting {@link #supportsSnapshotScan()} may be scanned without a lock.
+ */
+public interface SampleSeries {
+
+    /**
+     * The samples of a series at one point in time, see {@link SampleSeries#freeze()}.
+     */
+    interface Frozen {
+
+        /**
+         * Gets the number of frozen samples.
+         *
+         * @return The number of samples.
+         */
+        int size();
+
+        /**
+         * Visits all frozen samples in order. Needs no lock, however the series changed since it was frozen.
+         *
+         * @param visitor Receives the samples and may stop the scan early.
+         * @return true if every sample was visited, false if the visitor stopped the scan.
+         */
+        boolean scan(SampleVisitor visitor);
+
+        /**
+         * Wraps samples that have already been copied.
+         *
+         * @param timestamps The timestamps of the samples, in order.
+         * @param values     The measurement values of the samples.
+         * @return The frozen samples.
+         */
+        static Frozen of(long[] timestamps, double[] values) {
+            return new Frozen() {
+                @Override
+                public int size() {
+                    return timestamps.length;
+                }
+
+                @Override
+                public boolean scan(SampleVisitor visitor) {
+                    for (int i = 0; i < timestamps.length; i++) {
+                        if (!visitor.visit(timestamps[i], values[i])) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }
+            };
+        }
+    }
+
+    /**
+     * Adds a sample, keeping the series sorted by timestamp.
+     *
+     * @param timestamp The timestamp of the sample.
+     * @param value     The measurement value of the sample.
+     */
+    void add(long timestamp, double value);
+
+    /**
+     * Returns the index of the first sample with a timestamp greater than or equal to the given time.
+     *
+     * @param timestamp The time to search for.
+     * @return The index of the first matching sample, or {@link #size()} if there is none.
+     */
+    int lowerBound(long timestamp);
+
+    /**
+     * Returns the index of the first sample with a timestamp strictly greater than the given time.
+     *
+     * @param timestamp The time to search for.
+     * @return The index of the first matching sample, or {@link #size()} if there is none.
+     */
+    int upperBound(long timestamp);
+
+    /**
+     * Gets the timestamp of the sample at the given index.
+     *
+     * @param index The index of the sample.
+     * @return The timestamp of the sample.
+     */
+    long getTimestamp(int index);
+
+    /**
+     * Gets the measurement value of the sample at the given index.
+     *
+     * @param index The index of the sample.
+     * @return The measurement value of the sample.
+     */
+    double getValue(int index);
+
+    /**
+     * Visits the samples with a timestamp within the given range, in order, without copying them.
+     * This is the preferred way to read a window, since compressed implementations decode sequentially.
+     *
+     * @param startTime The start of the range, inclusive.
+     * @param endTime   The end of the range, inclusive.
+     * @param visitor   Receives the samples and may stop the scan early.
+     * @return true if the scan reached the end of the range, false if the visitor stopped it.
+     */
+    boolean scan(long startTime, long endTime, SampleVisitor visitor);
+
+    /**
+     * Checks whether {@link #scan(long, long, SampleVisitor)} may run without the owning patient's lock
+     * while another thread adds samples. Such a scan sees the series as it was at one point in time.
+     *
+     * @return true if scans need no lock; false by default.
+     */
+    default boolean supportsSnapshotScan() {
+        return false;
+    }
+
+    /**
+     * Copies the timestamps of a range of samples into a new array.
+     *
+     * @param from The index of the first sample, inclusive.
+     * @param to   The index of the last sample, exclusive.
+     * @return The timestamps of the samples in order.
+     */
+    long[] copyTimestamps(int from, int to);
+
+    /**
+     * Copies the measurement values of a range of samples into a new array.
+     *
+     * @param from The index of the first sample, inclusive.
+     * @param to   The index of the last sample, exclusive.
+     * @return The values of the samples in order.
+     */
+    double[] copyValues(int from, int to);
+
+    /**
+     * Gets the number of samples in the series.
+     *
+     * @return The number of samples.
+     */
+    int size();
+
+    /**
+     * Gets the number of samples dropped by the retention policy since the series was created.
+     *
+     * @return The number of evicted samples.
+     */
+    long getEvictedCount();
+
+    /**
+     * Checks whether a sample with the given timestamp would be kept, rather than dropped for arriving too late.
+     *
+     * @param timestamp The timestamp of the sample.
+     * @return true if the sample would be kept; true by default.
+     */
+    default boolean accepts(long timestamp) {
+        return true;
+    }
+
+    /**
+     * Gets the number of samples dropped for arriving too late since the series was created.
+     *
+     * @return The number of late samples dropped; 0 by default.
+     */
+    default long getDroppedLateCount() {
+        return 0;
+    }
+
+    /**
+     * Gets the number of samples dropped because a sample with the same timestamp was already stored.
+     *
+     * @return The number of duplicates dropped; 0 by default.
+     */
+    default long getDuplicateCount() {
+        return 0;
+    }
+
+    /**
+     * Captures the samples of the series as they are now, so that they can be read after the owning patient's
+     * lock is released, e.g. to write a {@link StorageSnapshot}. By default the samples are copied right away;
+     * series that publish immutable versions return the current version instead, which costs O(1).
+     *
+     * @return The samples at this point in time.
+     */
+    default Frozen freeze() {
+        int size = size();
+        return Frozen.of(copyTimestamps(0, size), copyValues(0, size));
+    }
+
+    /**
+     * Moves history older than the hot window out of the heap into a cold store, if the series supports tiering.
+     * Spilled samples stay readable through the same methods.
+     *
+     * @param coldStore           The store to write the spilled samples to.
+     * @param hotWindowMillis     How much history before the newest sample stays on the heap.
+     * @param coldSamplesPerBlock The number of samples written to the cold store as one block.
+     * @return The number of samples spilled; 0 by default.
+     */
+    default long spill(ColdStore coldStore, long hotWindowMillis, int coldSamplesPerBlock) {
+        return 0;
+    }
+
+    /**
+     * Evicts the samples older than the given time to relieve memory pressure, and compacts the storage so the
+     * memory they held can be reclaimed. Shed samples are counted in {@link #getEvictedCount()}.
+     *
+     * @param cutoff The timestamp of the oldest sample kept.
+     * @return The number of samples evicted; 0 by default.
+     */
+    default long shed(long cutoff) {
+        return 0;
+    }
+
+    /**
+     * Gets the retention policy of the series.
+     *
+     * @return The retention policy.
+     */
+    RetentionPolicy getRetentionPolicy();
+
+    /**
+     * Replaces the retention policy and immediately evicts samples the new policy does not keep.
+     *
+     * @param retentionPolicy The new retention policy.
+     */
+    void setRetentionPolicy(RetentionPolicy retentionPolicy);
+
+    /**
+     * Releases any resources held outside the heap. The series must not be used afterwards.
+     */
+    void close();
+}
@@ -0,0 +1,17 @@
+package com.data_management;
+
+/**
+ * Receives the samples of a range scan one at a time, in timestamp order.
+ */
+@FunctionalInterface
+public interface SampleVisitor {
+
+    /**
+     * Visits one sample.
+     *
+     * @param timestamp The timestamp of the sample.
+     * @param value     The measurement value of the sample.
+     * @return true to continue the scan, false to stop it.
+     */
+    boolean visit(long timestamp, double value);
+}
@@ -0,0 +1,18 @@
+package com.data_management;
+
+/**
+ * Creates the series that hold a patient's samples of one record type.
+ * {@link DataStorage} uses it to decide the storage tier and retention of every new series.
+ */
+@FunctionalInterface
+public interface SeriesFactory {
+
+    /**
+     * Creates an empty series.
+     *
+     * @param patientId  The ID of the patient owning the series.
+     * @param recordType The type of the records the series will hold.
+     * @return The new series.
+     */
+    SampleSeries create(int patientId, RecordType recordType);
+}
@@ -0,0 +1,112 @@
+package com.data_management;
+
+/**
+ * Describes what one pass of {@link DataStorage#shedMemory(SheddingReport.Stage, long)} removed to relieve
+ * memory pressure. The report is filled in while the pass runs and must only be read once it has returned.
+ */
+public final class SheddingReport {
+
+    /**
+     * How much a shedding pass may remove. Every stage keeps the protected window of recent history.
+     */
+    public enum Stage {
+        /**
+         * Removes old raw samples only where a rollup tier still holds them in downsampled form,
+         * so no history is lost, only its resolution.
+         */
+        DOWNSAMPLE,
+        /**
+         * Removes all raw samples before the protected window and the older half of the rollup buckets
+         * that end before it, so every further pass trims the oldest history again.
+         */
+        TRIM
+    }
+
+    private final Stage stage;
+    private final long protectedWindowMillis;
+    private long shedSamples;
+    private long shedBuckets;
+    private int affectedSeries;
+
+    /**
+     * Constructs an empty SheddingReport for a pass.
+     *
+     * @param stage                 The stage of the pass.
+     * @param protectedWindowMillis How much history before the newest sample of each series the pass keeps.
+     */
+    SheddingReport(Stage stage, long protectedWindowMillis) {
+        this.stage = stage;
+        this.protectedWindowMillis = protectedWindowMillis;
+    }
+
+    /**
+     * Records what was shed from one series.
+     *
+     * @param samples The number of raw samples shed.
+     * @param buckets The number of rollup buckets shed.
+     */
+    void record(long samples, int buckets) {
+        if (samples == 0 && buckets == 0) {
+            return;
+        }
+        shedSamples += samples;
+        shedBuckets += buckets;
+        affectedSeries++;
+    }
+
+    /**
+     * Gets the stage of the pass.
+     *
+     * @return The stage.
+     */
+    public Stage getStage() {
+        return stage;
+    }
+
+    /**
+     * Gets how much recent history the pass kept in every series.
+     *
+     * @return The protected window in milliseconds.
+     */
+    public long getProtectedWindowMillis() {
+        return protectedWindowMillis;
+    }
+
+    /**
+     * Gets the number of raw samples shed.
+     *
+     * @return The number of samples.
+     */
+    public long getShedSampleCount() {
+        return shedSamples;
+    }
+
+    /**
+     * Gets the number of rollup buckets shed.
+     *
+     * @return The number of buckets.
+     */
+    public long getShedBucketCount() {
+        return shedBuckets;
+    }
+
+    /**
+     * Gets the number of series anything was shed from.
+     *
+     * @return The number of series.
+     */
+    public int getAffectedSeriesCount() {
+        return affectedSeries;
+    }
+
+    /**
+     * Returns a one-line summary of the pass.
+     *
+     * @return The summary.
+     */
+    @Override
+    public String toString() {
+        return String.format("%s shed %,d samples and %,d rollup buckets from %,d series",
+                stage, shedSamples, shedBuckets, affectedSeries);
+    }
+}
@@ -0,0 +1,299 @@
+package com.data_management;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A compact point-in-time copy of all patient series, tied to a write-ahead log position.
+ * A snapshot taken at LSN {@code n} contains exactly the records with an LSN below {@code n},
+ * so recovery loads the newest snapshot and replays only the log from that LSN on.
+ * Snapshot files are written to a temporary file, fsynced and then atomically renamed, and the directory is fsynced
+ * after the rename, so a crash while writing never leaves a partial snapshot behind nor loses a finished one.
+ * Taking a snapshot is split in two: {@link #capture(long, Iterable)} freezes the series while ingest is paused,
+ * and {@link Capture#copy()} copies the frozen samples after ingest has resumed.
+ */
+public class StorageSnapshot {
+
+    /**
+     * The samples of one series of one patient.
+     */
+    public static class SeriesData {
+        private final int patientId;
+        private final String recordType;
+        private final long[] timestamps;
+        private final double[] values;
+
+        /**
+         * Constructs SeriesData with the specified columns.
+         *
+         * @param patientId  The ID of the patient.
+         * @param recordType The type of the records.
+         * @param timestamps The timestamps of the samples, in order.
+         * @param values     The measurement values of the samples.
+         */
+        public SeriesData(int patientId, String recordType, long[] timestamps, double[] values) {
+            this.patientId = patientId;
+            this.recordType = recordType;
+            this.timestamps = timestamps;
+            this.values = values;
+        }
+
+        /**
+         * Gets the patient ID.
+         *
+         * @return The patient ID.
+         */
+        public int getPatientId() {
+            return patientId;
+        }
+
+        /**
+         * Gets the record type.
+         *
+         * @return The record type.
+         */
+        public String getRecordType() {
+            return recordType;
+        }
+
+        /**
+         * Gets the timestamps of the samples.
+         *
+         * @return The timestamps.
+         */
+        public long[] getTimestamps() {
+            return timestamps;
+        }
+
+        /**
+         * Gets the measurement values of the samples.
+         *
+         * @return The values.
+         */
+        public double[] getValues() {
+            return values;
+        }
+    }
+
+    /**
+     * The frozen series of a snapshot that has been captured but not yet copied.
+     */
+    public static class Capture {
+        private final long lsn;
+        private final List<Integer> patientIds = new ArrayList<>();
+        private final List<String> recordTypes = new ArrayList<>();
+        private final List<SampleSeries.Frozen> series = new ArrayList<>();
+
+        private Capture(long lsn) {
+            this.lsn = lsn;
+        }
+
+        /**
+         * Copies the frozen series into a snapshot. Needs no lock, samples added since the capture are not seen.
+         *
+         * @return The snapshot.
+         */
+        public StorageSnapshot copy() {
+            List<SeriesData> copies = new ArrayList<>(series.size());
+            for (int s = 0; s < series.size(); s++) {
+                SampleSeries.Frozen frozen = series.get(s);
+                long[] timestamps = new long[frozen.size()];
+                double[] values = new double[frozen.size()];
+                int[] count = {0};
+                frozen.scan((timestamp, value) -> {
+                    timestamps[count[0]] = timestamp;
+                    values[count[0]++] = value;
+                    return true;
+                });
+                copies.add(new SeriesData(patientIds.get(s), recordTypes.get(s), timestamps, values));
+            }
+            return new StorageSnapshot(lsn, copies);
+        }
+    }
+
+    private static final int MAGIC = 0x534E4150;
+    private static final int VERSION = 1;
+    private static final String PREFIX = "snapshot-";
+    private static final String SUFFIX = ".bin";
+
+    private final long lsn;
+    private final List<SeriesData> series;
+
+    /**
+     * Constructs a StorageSnapshot.
+     *
+     * @param lsn    The LSN of the first log record not contained in the snapshot.
+     * @param series The series contained in the snapshot.
+     */
+    public StorageSnapshot(long lsn, List<SeriesData> series) {
+        this.lsn = lsn;
+        this.series = series;
+    }
+
+    /**
+     * Freezes the series of the given patients, see {@link SampleSeries#freeze()}. The caller must make sure no
+     * samples are added meanwhile; for compressed series this costs O(1) per series, so the pause is short.
+     *
+     * @param lsn      The LSN of the first log record not contained in the snapshot.
+     * @param patients The patients to capture.
+     * @return The capture, to be copied with {@link Capture#copy()}.
+     */
+    public static Capture capture(long lsn, Iterable<Patient> patients) {
+        Capture capture = new Capture(lsn);
+        for (Patient patient : patients) {
+            patient.freezeSeries((recordType, frozen) -> {
+                capture.patientIds.add(patient.getPatientId());
+                capture.recordTypes.add(recordType.getLabel());
+                capture.series.add(frozen);
+            });
+        }
+        return capture;
+    }
+
+    /**
+     * Writes the snapshot into the given directory and deletes older snapshots.
+     *
+     * @param directory The directory holding the snapshot files.
+     * @throws IOException If the snapshot cannot be written.
+     */
+    public void write(Path directory) throws IOException {
+        Path target = directory.resolve(String.format("%s%020d%s", PREFIX, lsn, SUFFIX));
+        Path temporary = directory.resolve(target.getFileName() + ".tmp");
+        try (FileOutputStream file = new FileOutputStream(temporary.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 64 * 1024))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(lsn);
+            out.writeInt(series.size());
+            for (SeriesData data : series) {
+                out.writeInt(data.patientId);
+                out.writeUTF(data.recordType);
+                out.writeInt(data.timestamps.length);
+                for (long timestamp : data.timestamps) {
+                    out.writeLong(timestamp);
+                }
+                for (double value : data.values) {
+                    out.writeDouble(value);
+                }
+            }
+            out.flush();
+            file.getFD().sync();
+        }
+        Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        syncDirectory(directory);
+        for (Path path : list(directory)) {
+            if (!path.equals(target)) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    /**
+     * Loads the newest snapshot in the given directory.
+     *
+     * @param directory The directory holding the snapshot files.
+     * @return The newest snapshot, or null if there is none.
+     * @throws IOException If the snapshot cannot be read or is not a snapshot file.
+     */
+    public static StorageSnapshot loadLatest(Path directory) throws IOException {
+        Path latest = null;
+        for (Path path : list(directory)) {
+            if (latest == null || path.getFileName().toString().compareTo(latest.getFileName().toString()) > 0) {
+                latest = path;
+            }
+        }
+        if (latest == null) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(latest), 64 * 1024))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a snapshot file: " + latest);
+            }
+            long lsn = in.readLong();
+            int count = in.readInt();
+            List<SeriesData> series = new ArrayList<>(count);
+            for (int s = 0; s < count; s++) {
+                int patientId = in.readInt();
+                String recordType = in.readUTF();
+                int size = in.readInt();
+                long[] timestamps = new long[size];
+                double[] values = new double[size];
+                for (int i = 0; i < size; i++) {
+                    timestamps[i] = in.readLong();
+                }
+                for (int i = 0; i < size; i++) {
+                    values[i] = in.readDouble();
+                }
+                series.add(new SeriesData(patientId, recordType, timestamps, values));
+            }
+            return new StorageSnapshot(lsn, series);
+        }
+    }
+
+    /**
+     * Deletes every snapshot file in the given directory.
+     *
+     * @param directory The directory holding the snapshot files.
+     * @throws IOException If a snapshot cannot be deleted.
+     */
+    public static void deleteAll(Path directory) throws IOException {
+        for (Path path : list(directory)) {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    /**
+     * Gets the LSN of the first log record not contained in the snapshot.
+     *
+     * @return The LSN.
+     */
+    public long getLsn() {
+        return lsn;
+    }
+
+    /**
+     * Gets the series contained in the snapshot.
+     *
+     * @return The series.
+     */
+    public List<SeriesData> getSeries() {
+        return series;
+    }
+
+    /**
+     * Fsyncs a directory, so that files renamed into it survive a crash.
+     *
+     * @param directory The directory.
+     * @throws IOException If the directory cannot be synced.
+     */
+    static void syncDirectory(Path directory) throws IOException {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (AccessDeniedException e) {
+            // Some platforms, such as Windows, cannot open a directory; the rename is as durable as they make it.
+        }
+    }
+
+    private static List<Path> list(Path directory) throws IOException {
+        List<Path> paths = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            for (Path path : stream) {
+                paths.add(path);
+            }
+        }
+        return paths;
+    }
+}
@@ -0,0 +1,312 @@
+package com.data_management;
+
+/**
+ * A heap-backed {@link SampleSeries} of samples of one record type, stored in primitive columns.
+ * Timestamps and values are kept in parallel arrays sorted by timestamp,
+ * so a time range can be located with two binary searches and read as one contiguous slice.
+ * The arrays form a ring buffer bounded by a {@link RetentionPolicy}: once the count limit is reached
+ * the oldest sample is overwritten in place, and samples older than the age limit are dropped,
+ * so a bounded series never allocates after it has reached its capacity.
+ * Indices passed to the accessors are logical, with 0 being the oldest retained sample.
+ * This class is not thread-safe; the owning {@link Patient} is responsible for locking.
+ */
+public class TimeSeries implements SampleSeries {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private long[] timestamps;
+    private double[] values;
+    private int head;
+    private int size;
+    private RetentionPolicy retentionPolicy;
+    private long evictedCount;
+
+    /**
+     * Constructs an empty TimeSeries that keeps every sample.
+     */
+    public TimeSeries() {
+        this(RetentionPolicy.UNBOUNDED);
+    }
+
+    /**
+     * Constructs an empty TimeSeries bounded by the given retention policy.
+     *
+     * @param retentionPolicy The policy deciding how much history is kept.
+     */
+    public TimeSeries(RetentionPolicy retentionPolicy) {
+        this.retentionPolicy = retentionPolicy;
+        int capacity = retentionPolicy.getMaxSamples() > 0
+                ? Math.min(INITIAL_CAPACITY, retentionPolicy.getMaxSamples())
+                : INITIAL_CAPACITY;
+        this.timestamps = new long[capacity];
+        this.values = new double[capacity];
+    }
+
+    /**
+     * Adds a sample, keeping the series sorted by timestamp.
+     * In-order samples are appended; a late sample is inserted after any samples with the same timestamp.
+     * If the series is full, the oldest sample is evicted; a late sample older than everything in a full
+     * series is evicted immediately instead.
+     *
+     * @param timestamp The timestamp of the sample.
+     * @param value     The measurement value of the sample.
+     */
+    @Override
+    public void add(long timestamp, double value) {
+        if (size == timestamps.length) {
+            int maxSamples = retentionPolicy.getMaxSamples();
+            if (maxSamples == 0 || timestamps.length < maxSamples) {
+                resize(maxSamples == 0 ? timestamps.length * 2 : Math.min(timestamps.length * 2, maxSamples));
+            } else if (timestamp < timestamps[head]) {
+                evictedCount++;
+                return;
+            } else {
+                evictOldest();
+            }
+        }
+
+        if (size == 0 || getTimestamp(size - 1) <= timestamp) {
+            int slot = physical(size);
+            timestamps[slot] = timestamp;
+            values[slot] = value;
+        } else {
+            int index = upperBound(timestamp);
+            for (int i = size; i > index; i--) {
+                int to = physical(i);
+                int from = physical(i - 1);
+                timestamps[to] = timestamps[from];
+                values[to] = values[from];
+            }
+            int slot = physical(index);
+            timestamps[slot] = timestamp;
+            values[slot] = value;
+        }
+        size++;
+        evictExpired();
+    }
+
+    /**
+     * Returns the index of the first sample with a timestamp greater than or equal to the given time.
+     *
+     * @param timestamp The time to search for.
+     * @return The index of the first matching sample, or {@link #size()} if there is none.
+     */
+    @Override
+    public int lowerBound(long timestamp) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (getTimestamp(mid) < timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the index of the first sample with a timestamp strictly greater than the given time.
+     *
+     * @param timestamp The time to search for.
+     * @return The index of the first matching sample, or {@link #size()} if there is none.
+     */
+    @Override
+    public int upperBound(long timestamp) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (getTimestamp(mid) <= timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Gets the timestamp of the sample at the given index.
+     *
+     * @param index The index of the sample.
+     * @return The timestamp of the sample.
+     */
+    @Override
+    public long getTimestamp(int index) {
+        return timestamps[physical(index)];
+    }
+
+    /**
+     * Gets the measurement value of the sample at the given index.
+     *
+     * @param index The index of the sample.
+     * @return The measurement value of the sample.
+     */
+    @Override
+    public double getValue(int index) {
+        return values[physical(index)];
+    }
+
+    /**
+     * Visits the samples with a timestamp within the given range, in order, without copying them.
+     *
+     * @param startTime The start of the range, inclusive.
+     * @param endTime   The end of the range, inclusive.
+     * @param visitor   Receives the samples and may stop the scan early.
+     * @return true if the scan reached the end of the range, false if the visitor stopped it.
+     */
+    @Override
+    public boolean scan(long startTime, long endTime, SampleVisitor visitor) {
+        int to = upperBound(endTime);
+        for (int i = lowerBound(startTime); i < to; i++) {
+            if (!visitor.visit(getTimestamp(i), getValue(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Copies the timestamps of a range of samples into a new array.
+     *
+     * @param from The index of the first sample, inclusive.
+     * @param to   The index of the last sample, exclusive.
+     * @return The timestamps of the samples in order.
+     */
+    @Override
+    public long[] copyTimestamps(int from, int to) {
+        long[] copy = new long[to - from];
+        for (int i = from; i < to; i++) {
+            copy[i - from] = timestamps[physical(i)];
+        }
+        return copy;
+    }
+
+    /**
+     * Copies the measurement values of a range of samples into a new array.
+     *
+     * @param from The index of the first sample, inclusive.
+     * @param to   The index of the last sample, exclusive.
+     * @return The values of the samples in order.
+     */
+    @Override
+    public double[] copyValues(int from, int to) {
+        double[] copy = new double[to - from];
+        for (int i = from; i < to; i++) {
+            copy[i - from] = values[physical(i)];
+        }
+        return copy;
+    }
+
+    /**
+     * Gets the number of samples in the series.
+     *
+     * @return The number of samples.
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets the number of samples dropped by the retention policy since the series was created.
+     *
+     * @return The number of evicted samples.
+     */
+    @Override
+    public long getEvictedCount() {
+        return evictedCount;
+    }
+
+    /**
+     * Evicts the samples older than the given time and shrinks the arrays if most of their capacity is unused.
+     *
+     * @param cutoff The timestamp of the oldest sample kept.
+     * @return The number of samples evicted.
+     */
+    @Override
+    public long shed(long cutoff) {
+        int count = 0;
+        while (size > 0 && timestamps[head] < cutoff) {
+            evictOldest();
+            count++;
+        }
+        if (timestamps.length > INITIAL_CAPACITY && size < timestamps.length / 4) {
+            resize(Math.max(INITIAL_CAPACITY, size * 2));
+        }
+        return count;
+    }
+
+    /**
+     * Gets the retention policy of the series.
+     *
+     * @return The retention policy.
+     */
+    @Override
+    public RetentionPolicy getRetentionPolicy() {
+        return retentionPolicy;
+    }
+
+    /**
+     * Replaces the retention policy and immediately evicts samples the new policy does not keep.
+     *
+     * @param retentionPolicy The new retention policy.
+     */
+    @Override
+    public void setRetentionPolicy(RetentionPolicy retentionPolicy) {
+        this.retentionPolicy = retentionPolicy;
+        int maxSamples = retentionPolicy.getMaxSamples();
+        if (maxSamples > 0) {
+            while (size > maxSamples) {
+                evictOldest();
+            }
+            if (timestamps.length > maxSamples) {
+                resize(maxSamples);
+            }
+        }
+        evictExpired();
+    }
+
+    /**
+     * Releases the series. A heap series holds nothing outside the heap, so this does nothing.
+     */
+    @Override
+    public void close() {
+    }
+
+    private int physical(int index) {
+        int slot = head + index;
+        return slot >= timestamps.length ? slot - timestamps.length : slot;
+    }
+
+    private void evictOldest() {
+        head = physical(1);
+        size--;
+        evictedCount++;
+    }
+
+    private void evictExpired() {
+        long maxAgeMillis = retentionPolicy.getMaxAgeMillis();
+        if (maxAgeMillis == 0 || size == 0) {
+            return;
+        }
+        long cutoff = getTimestamp(size - 1) - maxAgeMillis;
+        while (size > 0 && timestamps[head] < cutoff) {
+            evictOldest();
+        }
+    }
+
+    private void resize(int capacity) {
+        long[] newTimestamps = new long[capacity];
+        double[] newValues = new double[capacity];
+        int firstPart = Math.min(size, timestamps.length - head);
+        System.arraycopy(timestamps, head, newTimestamps, 0, firstPart);
+        System.arraycopy(values, head, newValues, 0, firstPart);
+        System.arraycopy(timestamps, 0, newTimestamps, firstPart, size - firstPart);
+        System.arraycopy(values, 0, newValues, firstPart, size - firstPart);
+        timestamps = newTimestamps;
+        values = newValues;
+        head = 0;
+    }
+}
@@ -17,6 +17,8 @@ public class WebSocketDataReader implements DataReader {
     private WebSocketClient client;
     private DataStorage dataStorage;
     private Consumer<String> onDataReceivedListener;
+    private final RecordParser parser = new RecordParser();
+    private final SampleBatch batch = new SampleBatch(64);
 
     /**
      * Constructs a WebSocketDataReader with the specified server URI.
@@ -38,6 +40,8 @@ public class WebSocketDataReader implements DataReader {
                     System.out.println("Message received: " + message);
                     if (onDataReceivedListener != null) {
                         onDataReceivedListener.accept(message);
+                    } else if (dataStorage != null) {
+                        parseAndStore(message, dataStorage);
                     }
                 } catch (Exception e) {
                     System.err.println("Error processing message: " + e.getMessage());
@@ -79,6 +83,24 @@ public class WebSocketDataReader implements DataReader {
         client.connect();
     }
 
+    /**
+     * Parses a message of one or more newline-separated samples of the form
+     * {@code patientId,measurementValue,recordType,timestamp} and stores them in the specified data storage
+     * as one batch. The message is parsed by a {@link RecordParser} into a batch this reader reuses, so a message
+     * creates no objects per sample. Messages are parsed this way unless a listener is set.
+     * If a line is malformed, nothing from the message is stored.
+     *
+     * @param message     The message to be parsed.
+     * @param dataStorage The data storage where the parsed data will be stored.
+     * @throws NumberFormatException If a line is malformed.
+     * @throws IllegalArgumentException If a record type is not registered.
+     */
+    public synchronized void parseAndStore(String message, DataStorage dataStorage) {
+        batch.clear();
+        parser.parse(message, batch);
+        dataStorage.addPatientDataBatch(batch);
+    }
+
     /**
      * Stops the WebSocket client connection.
      */
@@ -90,6 +112,7 @@ public class WebSocketDataReader implements DataReader {
 
     /**
      * Sets a listener for when data is received from the WebSocket server.
+     * While a listener is set, messages are passed to it instead of being stored directly.
      *
      * @param onDataReceivedListener The listener to be called when data is received.
      */
@@ -0,0 +1,154 @@
+package com.data_management;
+
+/**
+ * An immutable summary of the samples of one record type within a time window:
+ * count, sum, minimum, maximum, mean, population variance and the newest sample.
+ * Statistics of an empty window have a count of zero and NaN for every value.
+ */
+public final class WindowStatistics {
+    /**
+     * The statistics of a window without samples.
+     */
+    public static final WindowStatistics EMPTY =
+            new WindowStatistics(0, 0, Double.NaN, Double.NaN, Double.NaN, Double.NaN, Long.MIN_VALUE, Double.NaN);
+
+    private final int count;
+    private final double sum;
+    private final double min;
+    private final double max;
+    private final double mean;
+    private final double variance;
+    private final long lastTimestamp;
+    private final double lastValue;
+
+    /**
+     * Constructs WindowStatistics with the specified values.
+     *
+     * @param count         The number of samples in the window.
+     * @param sum           The sum of the sample values.
+     * @param min           The smallest sample value.
+     * @param max           The largest sample value.
+     * @param mean          The mean of the sample values.
+     * @param variance      The population variance of the sample values.
+     * @param lastTimestamp The timestamp of the newest sample.
+     * @param lastValue     The value of the newest sample.
+     */
+    public WindowStatistics(int count, double sum, double min, double max, double mean, double variance,
+                            long lastTimestamp, double lastValue) {
+        this.count = count;
+        this.sum = sum;
+        this.min = min;
+        this.max = max;
+        this.mean = mean;
+        this.variance = variance;
+        this.lastTimestamp = lastTimestamp;
+        this.lastValue = lastValue;
+    }
+
+    /**
+     * Combines the statistics of two disjoint sets of samples, e.g. of two patients, into the statistics of
+     * their union. Mean and variance are combined with the parallel formula of Chan et al., so merging
+     * per-patient statistics gives the same result as computing over all samples at once.
+     *
+     * @param first  The statistics of the first set.
+     * @param second The statistics of the second set.
+     * @return The statistics of both sets together.
+     */
+    public static WindowStatistics merge(WindowStatistics first, WindowStatistics second) {
+        if (first.count == 0) {
+            return second;
+        }
+        if (second.count == 0) {
+            return first;
+        }
+        int count = first.count + second.count;
+        double delta = second.mean - first.mean;
+        double mean = first.mean + delta * second.count / count;
+        double squares = first.variance * first.count + second.variance * second.count
+                + delta * delta * ((double) first.count * second.count / count);
+        WindowStatistics newest = second.lastTimestamp > first.lastTimestamp ? second : first;
+        return new WindowStatistics(count, first.sum + second.sum, Math.min(first.min, second.min),
+                Math.max(first.max, second.max), mean, squares / count, newest.lastTimestamp, newest.lastValue);
+    }
+
+    /**
+     * Gets the number of samples in the window.
+     *
+     * @return The number of samples.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Gets the sum of the sample values.
+     *
+     * @return The sum, or 0 if the window is empty.
+     */
+    public double getSum() {
+        return sum;
+    }
+
+    /**
+     * Gets the smallest sample value.
+     *
+     * @return The minimum, or NaN if the window is empty.
+     */
+    public double getMin() {
+        return min;
+    }
+
+    /**
+     * Gets the largest sample value.
+     *
+     * @return The maximum, or NaN if the window is empty.
+     */
+    public double getMax() {
+        return max;
+    }
+
+    /**
+     * Gets the mean of the sample values.
+     *
+     * @return The mean, or NaN if the window is empty.
+     */
+    public double getMean() {
+        return mean;
+    }
+
+    /**
+     * Gets the population variance of the sample values.
+     *
+     * @return The variance, or NaN if the window is empty.
+     */
+    public double getVariance() {
+        return variance;
+    }
+
+    /**
+     * Gets the population standard deviation of the sample values.
+     *
+     * @return The standard deviation, or NaN if the window is empty.
+     */
+    public double getStandardDeviation() {
+        return Math.sqrt(variance);
+    }
+
+    /**
+     * Gets the timestamp of the newest sample.
+     *
+     * @return The timestamp, or {@link Long#MIN_VALUE} if the window is empty.
+     */
+    public long getLastTimestamp() {
+        return lastTimestamp;
+    }
+
+    /**
+     * Gets the value of the newest sample.
+     *
+     * @return The value, or NaN if the window is empty.
+     */
+    public double getLastValue() {
+        return lastValue;
+    }
+}
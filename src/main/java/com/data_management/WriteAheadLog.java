@@ -0,0 +1,345 @@
+package com.data_management;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only, segmented binary write-ahead log for patient samples.
+ * Every record gets a log sequence number (LSN); segment files are named after the LSN of their
+ * first record and a new segment is started once the current one exceeds the segment size.
+ * Durability uses group commit: the first writer that needs a sync flushes and fsyncs everything
+ * appended so far, and writers that arrive meanwhile are covered by the next single fsync.
+ * Each record carries a CRC32, so a torn record at the tail of the log is detected and ignored on replay.
+ */
+public class WriteAheadLog implements Closeable {
+
+    /**
+     * Receives the records of the log during replay.
+     */
+    public interface RecordConsumer {
+
+        /**
+         * Accepts one replayed record.
+         *
+         * @param patientId        The ID of the patient.
+         * @param measurementValue The measurement value of the record.
+         * @param recordType       The type of the record.
+         * @param timestamp        The timestamp of the record.
+         */
+        void accept(int patientId, double measurementValue, String recordType, long timestamp);
+    }
+
+    private static final String SEGMENT_PREFIX = "wal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final long DEFAULT_SEGMENT_SIZE = 64L * 1024 * 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_RECORD_SIZE = 4 + 8 + 8 + 2 + 4 * 256 + 4;
+
+    private final Path directory;
+    private final long segmentSize;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final CRC32 crc = new CRC32();
+    private final Object syncMonitor = new Object();
+
+    private FileChannel channel;
+    private long segmentBytes;
+    private long nextLsn;
+    private long durableLsn;
+    private boolean syncing;
+
+    /**
+     * Opens the log in the given directory with the default segment size.
+     * Writing starts in a new segment after the last existing record.
+     *
+     * @param directory The directory holding the segment files.
+     * @throws IOException If the directory or a segment cannot be read or created.
+     */
+    public WriteAheadLog(Path directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Opens the log in the given directory.
+     * Writing starts in a new segment after the last existing record.
+     *
+     * @param directory   The directory holding the segment files.
+     * @param segmentSize The size in bytes after which a new segment is started.
+     * @throws IOException If the directory or a segment cannot be read or created.
+     */
+    public WriteAheadLog(Path directory, long segmentSize) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        Files.createDirectories(directory);
+        // Only the last segment is scanned to find where the log ends.
+        this.nextLsn = replay(Long.MAX_VALUE, (patientId, value, type, timestamp) -> { });
+        this.durableLsn = nextLsn - 1;
+        openSegment();
+    }
+
+    /**
+     * Appends a record to the log buffer. The record is not durable until {@link #sync(long)} covers its LSN.
+     *
+     * @param patientId        The ID of the patient.
+     * @param measurementValue The measurement value of the record.
+     * @param recordType       The type of the record.
+     * @param timestamp        The timestamp of the record.
+     * @return The LSN of the appended record.
+     * @throws IOException If the record cannot be written.
+     * @throws IllegalArgumentException If the record type is too long to be logged.
+     */
+    public long append(int patientId, double measurementValue, String recordType, long timestamp) throws IOException {
+        return append(patientId, measurementValue, recordType.getBytes(StandardCharsets.UTF_8), timestamp);
+    }
+
+    /**
+     * Appends a record to the log buffer, reusing the pre-encoded label of the record type.
+     * The record is not durable until {@link #sync(long)} covers its LSN.
+     *
+     * @param patientId        The ID of the patient.
+     * @param measurementValue The measurement value of the record.
+     * @param recordType       The type of the record.
+     * @param timestamp        The timestamp of the record.
+     * @return The LSN of the appended record.
+     * @throws IOException If the record cannot be written.
+     * @throws IllegalArgumentException If the record type is too long to be logged.
+     */
+    public long append(int patientId, double measurementValue, RecordType recordType, long timestamp) throws IOException {
+        return append(patientId, measurementValue, recordType.getLabelBytes(), timestamp);
+    }
+
+    /**
+     * Appends all samples of a batch to the log buffer under one lock acquisition.
+     * The samples get consecutive LSNs in batch order.
+     *
+     * @param batch The samples to append; must not be empty.
+     * @return The LSN of the last appended record.
+     * @throws IOException If a record cannot be written.
+     */
+    public synchronized long append(SampleBatch batch) throws IOException {
+        long lsn = nextLsn - 1;
+        for (int i = 0; i < batch.size(); i++) {
+            lsn = append(batch.getPatientId(i), batch.getValue(i), RecordType.forCode(batch.getTypeCode(i)).getLabelBytes(),
+                    batch.getTimestamp(i));
+        }
+        return lsn;
+    }
+
+    private synchronized long append(int patientId, double measurementValue, byte[] type, long timestamp) throws IOException {
+        if (22 + type.length + 4 > MAX_RECORD_SIZE) {
+            throw new IllegalArgumentException("Record type is too long to be logged: " + new String(type, StandardCharsets.UTF_8));
+        }
+        if (buffer.remaining() < MAX_RECORD_SIZE) {
+            flushBuffer();
+        }
+        int start = buffer.position();
+        buffer.putInt(patientId).putLong(timestamp).putDouble(measurementValue).putShort((short) type.length).put(type);
+        crc.reset();
+        crc.update(buffer.array(), start, buffer.position() - start);
+        buffer.putInt((int) crc.getValue());
+        segmentBytes += buffer.position() - start;
+        long lsn = nextLsn++;
+        if (segmentBytes >= segmentSize) {
+            roll();
+        }
+        return lsn;
+    }
+
+    /**
+     * Blocks until every record up to and including the given LSN has been fsynced.
+     * Concurrent callers share fsyncs: only one thread syncs at a time and covers all records appended before it started.
+     *
+     * @param lsn The LSN that must become durable.
+     * @throws IOException If flushing or syncing fails, or the thread is interrupted while waiting.
+     */
+    public void sync(long lsn) throws IOException {
+        synchronized (syncMonitor) {
+            while (durableLsn < lsn && syncing) {
+                try {
+                    syncMonitor.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for log sync");
+                }
+            }
+            if (durableLsn >= lsn) {
+                return;
+            }
+            syncing = true;
+        }
+        long synced = -1;
+        try {
+            synced = flushAndForce();
+        } finally {
+            synchronized (syncMonitor) {
+                syncing = false;
+                durableLsn = Math.max(durableLsn, synced);
+                syncMonitor.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Flushes and fsyncs every record appended so far.
+     *
+     * @throws IOException If flushing or syncing fails.
+     */
+    public void syncAll() throws IOException {
+        sync(getLastLsn());
+    }
+
+    /**
+     * Closes the current segment and starts a new one, so that the next record begins a fresh segment file.
+     *
+     * @return The LSN of the first record of the new segment.
+     * @throws IOException If a segment cannot be closed or created.
+     */
+    public synchronized long roll() throws IOException {
+        flushBuffer();
+        channel.force(false);
+        channel.close();
+        openSegment();
+        return nextLsn;
+    }
+
+    /**
+     * Replays the log from the given LSN in order.
+     * Replay stops at the first incomplete or corrupted record, which can only be the torn tail of a crash.
+     *
+     * @param fromLsn  The first LSN to hand to the consumer.
+     * @param consumer Receives the replayed records.
+     * @return The LSN following the last valid record in the log.
+     * @throws IOException If a segment cannot be read.
+     */
+    public long replay(long fromLsn, RecordConsumer consumer) throws IOException {
+        List<Long> starts = listSegments();
+        long lsn = starts.isEmpty() ? 0 : starts.get(0);
+        for (int i = 0; i < starts.size(); i++) {
+            boolean last = i == starts.size() - 1;
+            if (!last && starts.get(i + 1) <= fromLsn) {
+                lsn = starts.get(i + 1);
+                continue;
+            }
+            lsn = Math.max(lsn, starts.get(i));
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(segmentPath(starts.get(i))), BUFFER_SIZE))) {
+                lsn = replaySegment(in, lsn, fromLsn, consumer);
+            }
+        }
+        return lsn;
+    }
+
+    /**
+     * Deletes segments whose records all precede the given LSN, e.g. once a snapshot covers them.
+     *
+     * @param lsn The first LSN that must be kept.
+     * @throws IOException If a segment cannot be deleted.
+     */
+    public synchronized void deleteSegmentsBefore(long lsn) throws IOException {
+        List<Long> starts = listSegments();
+        for (int i = 0; i + 1 < starts.size(); i++) {
+            if (starts.get(i + 1) <= lsn) {
+                Files.deleteIfExists(segmentPath(starts.get(i)));
+            }
+        }
+    }
+
+    /**
+     * Gets the LSN of the most recently appended record.
+     *
+     * @return The last LSN, or -1 if the log is empty.
+     */
+    public synchronized long getLastLsn() {
+        return nextLsn - 1;
+    }
+
+    /**
+     * Flushes, fsyncs and closes the log.
+     *
+     * @throws IOException If the log cannot be flushed or closed.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel.isOpen()) {
+            flushBuffer();
+            channel.force(false);
+            channel.close();
+        }
+    }
+
+    private synchronized long flushAndForce() throws IOException {
+        flushBuffer();
+        channel.force(false);
+        return nextLsn - 1;
+    }
+
+    private void flushBuffer() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void openSegment() throws IOException {
+        channel = FileChannel.open(segmentPath(nextLsn), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        segmentBytes = 0;
+    }
+
+    private long replaySegment(DataInputStream in, long lsn, long fromLsn, RecordConsumer consumer) throws IOException {
+        byte[] record = new byte[MAX_RECORD_SIZE];
+        ByteBuffer view = ByteBuffer.wrap(record);
+        CRC32 checksum = new CRC32();
+        while (true) {
+            try {
+                in.readFully(record, 0, 22);
+                int typeLength = view.getShort(20) & 0xFFFF;
+                if (22 + typeLength + 4 > MAX_RECORD_SIZE) {
+                    return lsn;
+                }
+                in.readFully(record, 22, typeLength + 4);
+                checksum.reset();
+                checksum.update(record, 0, 22 + typeLength);
+                if ((int) checksum.getValue() != view.getInt(22 + typeLength)) {
+                    return lsn;
+                }
+                if (lsn >= fromLsn) {
+                    String type = new String(record, 22, typeLength, StandardCharsets.UTF_8);
+                    consumer.accept(view.getInt(0), view.getDouble(12), type, view.getLong(4));
+                }
+                lsn++;
+            } catch (EOFException e) {
+                return lsn;
+            }
+        }
+    }
+
+    private List<Long> listSegments() throws IOException {
+        List<Long> starts = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                starts.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+            }
+        }
+        Collections.sort(starts);
+        return starts;
+    }
+
+    private Path segmentPath(long firstLsn) {
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, firstLsn, SEGMENT_SUFFIX));
+    }
+}
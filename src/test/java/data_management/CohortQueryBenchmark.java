@@ -0,0 +1,119 @@
+package data_management;
+
+import com.data_management.DataStorage;
+import com.data_management.Patient;
+import com.data_management.RecordType;
+import com.data_management.SampleBatch;
+import com.data_management.WindowStatistics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Cohort query benchmark for {@link DataStorage} over 10,000 patients.
+ * Not a unit test: run it with {@code main} to print query throughput for a serial loop over
+ * {@link DataStorage#getAllPatients()} and for the parallel cohort queries at 1 to N threads.
+ * Each patient has one hour of heart rate samples every 10 seconds and blood oxygen saturation every 30 seconds.
+ * The queries are "patients whose SpO2 dropped below 92 in the last 10 minutes" (a scan that stops early),
+ * "ward-wide heart rate statistics of the last hour" (read from the maintained rolling windows) and
+ * "ward-wide heart rate statistics of the last 30 minutes" (computed by scanning every patient).
+ */
+public class CohortQueryBenchmark {
+
+    private static final int PATIENTS = 10_000;
+    private static final long NOW = 1_700_000_000_000L;
+    private static final long HOUR = 3_600_000L;
+    private static final long TEN_MINUTES = 600_000L;
+    private static final long MEASURE_NANOS = 2_000_000_000L;
+
+    /**
+     * Loads the patients and runs every query serially and at thread counts 1, 2, 4, ... up to the number of processors.
+     *
+     * @param args Command line arguments (unused).
+     */
+    public static void main(String[] args) {
+        DataStorage storage = DataStorage.getInstance();
+        storage.clear();
+        storage.setAggregationWindow(RecordType.HEART_RATE, HOUR);
+        load(storage);
+
+        System.out.printf("%-16s %-10s %14s%n", "query", "mode", "queries/sec");
+        report("spo2 < 92", "serial", () -> serialFind(storage));
+        report("mean hr 1h", "serial", () -> serialStatistics(storage, HOUR));
+        report("mean hr 30min", "serial", () -> serialStatistics(storage, HOUR / 2));
+        int maxThreads = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            storage.setCohortParallelism(threads);
+            String mode = threads + " threads";
+            report("spo2 < 92", mode, () -> storage.findPatients(CohortQueryBenchmark::isHypoxic));
+            report("mean hr 1h", mode, () -> storage.getCohortStatistics(RecordType.HEART_RATE, HOUR, NOW));
+            report("mean hr 30min", mode, () -> storage.getCohortStatistics(RecordType.HEART_RATE, HOUR / 2, NOW));
+        }
+        storage.setCohortParallelism(0);
+        storage.setAggregationWindow(RecordType.HEART_RATE, 0);
+        storage.clear();
+    }
+
+    private static void load(DataStorage storage) {
+        Random random = new Random(1);
+        SampleBatch batch = new SampleBatch(4096);
+        for (int patientId = 0; patientId < PATIENTS; patientId++) {
+            boolean hypoxic = random.nextInt(20) == 0;
+            for (long t = NOW - HOUR + 10_000L; t <= NOW; t += 10_000L) {
+                batch.add(patientId, 60 + random.nextInt(40), RecordType.HEART_RATE, t);
+                if (t % 30_000L == 0) {
+                    double saturation = hypoxic && t > NOW - TEN_MINUTES / 2 ? 89 : 95 + random.nextInt(4);
+                    batch.add(patientId, saturation, RecordType.BLOOD_OXYGEN_SATURATION, t);
+                }
+            }
+            storage.addPatientDataBatch(batch);
+            batch.clear();
+        }
+    }
+
+    private static boolean isHypoxic(Patient patient) {
+        return !patient.scan(RecordType.BLOOD_OXYGEN_SATURATION, NOW - TEN_MINUTES, NOW, (timestamp, value) -> value >= 92);
+    }
+
+    private static List<Patient> serialFind(DataStorage storage) {
+        List<Patient> result = new ArrayList<>();
+        for (Patient patient : storage.getAllPatients()) {
+            if (isHypoxic(patient)) {
+                result.add(patient);
+            }
+        }
+        return result;
+    }
+
+    private static WindowStatistics serialStatistics(DataStorage storage, long windowMillis) {
+        WindowStatistics result = WindowStatistics.EMPTY;
+        for (Patient patient : storage.getAllPatients()) {
+            result = WindowStatistics.merge(result, patient.getWindowStatistics(RecordType.HEART_RATE, windowMillis, NOW));
+        }
+        return result;
+    }
+
+    /**
+     * Runs a query repeatedly after a warm-up and prints its throughput.
+     *
+     * @param query The name of the query.
+     * @param mode  The name of the execution mode.
+     * @param run   Runs the query once.
+     */
+    private static void report(String query, String mode, Supplier<?> run) {
+        for (int i = 0; i < 20; i++) {
+            run.get();
+        }
+        long begin = System.nanoTime();
+        long elapsed;
+        int queries = 0;
+        do {
+            run.get();
+            queries++;
+            elapsed = System.nanoTime() - begin;
+        } while (elapsed < MEASURE_NANOS);
+        System.out.printf("%-16s %-10s %,14.1f%n", query, mode, queries / (elapsed / 1e9));
+    }
+}
@@ -0,0 +1,141 @@
+package data_management;
+
+import com.data_management.ColdStore;
+import com.data_management.CompressedTimeSeries;
+import com.data_management.DataStorage;
+import com.data_management.PatientRecord;
+import com.data_management.RetentionPolicy;
+import com.data_management.TimeSeries;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the {@link ColdStore} class and spilling {@link CompressedTimeSeries} history to it.
+ */
+class ColdStoreTest {
+
+    @TempDir
+    Path directory;
+
+    /**
+     * Tests that a series that is repeatedly spilled, including late samples into cold blocks, reads exactly
+     * like an uncompressed series, while its sealed history leaves the heap.
+     */
+    @Test
+    void testSpilledSeriesMatchesUncompressedSeries() {
+        ColdStore coldStore = new ColdStore(directory, 4096);
+        Random random = new Random(5);
+        CompressedTimeSeries series = new CompressedTimeSeries(16, RetentionPolicy.UNBOUNDED);
+        TimeSeries expected = new TimeSeries();
+        long heapBefore = 0;
+        for (int i = 0; i < 3000; i++) {
+            long timestamp = random.nextInt(20) == 0 ? random.nextInt(i * 10 + 1) : i * 10L;
+            series.add(timestamp, i);
+            expected.add(timestamp, i);
+            if (i % 500 == 499) {
+                heapBefore = series.getEncodedBytes();
+                series.spill(coldStore, 1000, 64);
+            }
+        }
+
+        assertTrue(series.getColdBlockCount() > 0);
+        assertTrue(series.getEncodedBytes() < heapBefore);
+        assertTrue(coldStore.getLiveBytes() > 0);
+        assertEquals(expected.size(), series.size());
+        assertArrayEquals(expected.copyTimestamps(0, expected.size()), series.copyTimestamps(0, series.size()));
+        assertArrayEquals(expected.copyValues(0, expected.size()), series.copyValues(0, series.size()));
+        for (int i = 0; i < 50; i++) {
+            long start = random.nextInt(31_000) - 500;
+            assertEquals(expected.lowerBound(start), series.lowerBound(start));
+            assertEquals(expected.upperBound(start), series.upperBound(start));
+            int index = random.nextInt(series.size());
+            assertEquals(expected.getTimestamp(index), series.getTimestamp(index));
+            assertEquals(expected.getValue(index), series.getValue(index));
+        }
+        series.close();
+        assertEquals(0, coldStore.getLiveBytes());
+    }
+
+    /**
+     * Tests that a run of hot blocks is only spilled once it fills a cold block.
+     */
+    @Test
+    void testShortRunsStayHot() {
+        ColdStore coldStore = new ColdStore(directory, 4096);
+        CompressedTimeSeries series = new CompressedTimeSeries(8, RetentionPolicy.UNBOUNDED);
+        for (int i = 0; i < 40; i++) {
+            series.add(i, i);
+        }
+
+        assertEquals(0, series.spill(coldStore, 0, 64));
+        assertEquals(32, series.spill(coldStore, 0, 32));
+        assertEquals(1, series.getColdBlockCount());
+        assertEquals(2, series.getBlockCount());
+    }
+
+    /**
+     * Tests that retention releases spilled blocks and deletes segment files once nothing in them is referenced.
+     *
+     * @throws IOException If the directory cannot be listed.
+     */
+    @Test
+    void testRetentionDeletesColdSegments() throws IOException {
+        ColdStore coldStore = new ColdStore(directory, 256);
+        CompressedTimeSeries series = new CompressedTimeSeries(8, new RetentionPolicy(0, 500));
+        int segments = 0;
+        for (int i = 0; i < 4000; i++) {
+            series.add(i, i % 7);
+            if (i % 40 == 39) {
+                series.spill(coldStore, 50, 16);
+            }
+            if (i == 999) {
+                segments = coldStore.getSegmentCount();
+            }
+        }
+
+        assertEquals(500, series.getTimestamp(series.size() - 1) - series.getTimestamp(0));
+        assertTrue(segments > 0);
+        assertTrue(coldStore.getSegmentCount() <= segments);
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(coldStore.getSegmentCount(), files.count());
+        }
+    }
+
+    /**
+     * Tests that spilled history stays readable through the storage API.
+     *
+     * @throws IOException If the cold storage directory cannot be created.
+     */
+    @Test
+    void testTieringThroughDataStorage() throws IOException {
+        DataStorage storage = DataStorage.getInstance();
+        storage.clear();
+        storage.enableTiering(directory, 60_000, 0);
+        try {
+            for (int i = 0; i < 20_000; i++) {
+                storage.addPatientData(1, 70 + i % 10, "HeartRate", i * 1000L);
+            }
+            List<PatientRecord> before = storage.getRecords(1, 0, Long.MAX_VALUE);
+
+            assertTrue(storage.spillColdHistory() > 0);
+            List<PatientRecord> after = storage.getRecords(1, 0, Long.MAX_VALUE);
+            assertEquals(before.size(), after.size());
+            for (int i = 0; i < before.size(); i++) {
+                assertEquals(before.get(i).getTimestamp(), after.get(i).getTimestamp());
+                assertEquals(before.get(i).getMeasurementValue(), after.get(i).getMeasurementValue());
+            }
+        } finally {
+            storage.disableTiering();
+            storage.clear();
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package data_management;
+
+import com.data_management.CompressedTimeSeries;
+import com.data_management.GorillaBlock;
+import com.data_management.RetentionPolicy;
+import com.data_management.SampleSeries;
+import com.data_management.TimeSeries;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the {@link CompressedTimeSeries} and {@link GorillaBlock} classes.
+ */
+class CompressedTimeSeriesTest {
+
+    /**
+     * Tests that a block round-trips irregular timestamps and arbitrary doubles exactly.
+     */
+    @Test
+    void testBlockRoundTrip() {
+        long[] timestamps = {Long.MIN_VALUE / 2, -5, 0, 0, 1000, 1001, 5000, 5000 + (1L << 40), Long.MAX_VALUE / 2};
+        double[] values = {0.0, -0.0, 98.6, Double.NaN, Double.MAX_VALUE, Double.MIN_VALUE, 72.0, 72.0, -1e-300};
+        GorillaBlock block = GorillaBlock.encode(timestamps, values, 0, timestamps.length);
+
+        long[] decodedTimestamps = new long[timestamps.length];
+        double[] decodedValues = new double[values.length];
+        block.decode(decodedTimestamps, decodedValues);
+
+        assertArrayEquals(timestamps, decodedTimestamps);
+        for (int i = 0; i < values.length; i++) {
+            assertEquals(Double.doubleToRawLongBits(values[i]), Double.doubleToRawLongBits(decodedValues[i]));
+        }
+    }
+
+    /**
+     * Tests that regular vital signs compress to a small fraction of their uncompressed size.
+     */
+    @Test
+    void testRegularSamplesCompress() {
+        CompressedTimeSeries series = new CompressedTimeSeries(128, RetentionPolicy.UNBOUNDED);
+        Random random = new Random(42);
+        double heartRate = 75;
+        for (int i = 0; i < 12_800; i++) {
+            heartRate += random.nextInt(3) - 1;
+            series.add(1_700_000_000_000L + i * 1000L, heartRate);
+        }
+
+        assertEquals(100, series.getBlockCount());
+        assertTrue(series.getEncodedBytes() * 10 < 12_800L * 16,
+                "Expected at least 10x compression, got " + series.getEncodedBytes() + " bytes");
+    }
+
+    /**
+     * Tests that scans running concurrently with a writer, without any lock, always see a consistent
+     * state: sorted samples, never more than the retention limit, and no torn samples.
+     */
+    @Test
+    void testSnapshotScanDuringWrites() throws InterruptedException {
+        CompressedTimeSeries series = new CompressedTimeSeries(16, new RetentionPolicy(500, 0));
+        assertTrue(series.supportsSnapshotScan());
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread writer = new Thread(() -> {
+            try {
+                for (long t = 0; t < 200_000; t++) {
+                    series.add(t, t);
+                    if (t % 7 == 0) {
+                        // A late sample inside a sealed block or the open block.
+                        series.add(t - 10 - t % 200, t - 10 - t % 200);
+                    }
+                }
+            } catch (Throwable e) {
+                failure.set(e);
+            } finally {
+                done.set(true);
+            }
+        });
+        writer.start();
+
+        int scans = 0;
+        while (!done.get() || scans == 0) {
+            long[] previous = {Long.MIN_VALUE};
+            int[] count = {0};
+            series.scan(Long.MIN_VALUE, Long.MAX_VALUE, (timestamp, value) -> {
+                assertTrue(timestamp >= previous[0], "Samples out of order");
+                assertEquals(timestamp, value);
+                previous[0] = timestamp;
+                count[0]++;
+                return true;
+            });
+            assertTrue(count[0] <= 500, "Scan saw " + count[0] + " samples");
+            scans++;
+        }
+        writer.join();
+        assertNull(failure.get());
+    }
+
+    /**
+     * Tests that late samples, duplicates and range scans behave exactly like the uncompressed series.
+     */
+    @Test
+    void testMatchesUncompressedSeries() {
+        Random random = new Random(7);
+        CompressedTimeSeries compressed = new CompressedTimeSeries(16, RetentionPolicy.UNBOUNDED);
+        TimeSeries expected = new TimeSeries();
+        for (int i = 0; i < 2000; i++) {
+            long timestamp = random.nextInt(10) == 0 ? random.nextInt(i * 10 + 1) : i * 10L;
+            double value = random.nextInt(200);
+            compressed.add(timestamp, value);
+            expected.add(timestamp, value);
+        }
+
+        assertSeriesEqual(expected, compressed);
+        for (int i = 0; i < 50; i++) {
+            long start = random.nextInt(21_000) - 500;
+            long end = start + random.nextInt(3000);
+            assertEquals(expected.lowerBound(start), compressed.lowerBound(start));
+            assertEquals(expected.upperBound(end), compressed.upperBound(end));
+            assertEquals(window(expected, start, end), window(compressed, start, end));
+        }
+    }
+
+    /**
+     * Tests that count and age retention evict exactly the same samples as the uncompressed series.
+     */
+    @Test
+    void testRetentionMatchesUncompressedSeries() {
+        RetentionPolicy[] policies = {new RetentionPolicy(50, 0), new RetentionPolicy(0, 300), new RetentionPolicy(40, 250)};
+        for (RetentionPolicy policy : policies) {
+            Random random = new Random(11);
+            CompressedTimeSeries compressed = new CompressedTimeSeries(8, policy);
+            TimeSeries expected = new TimeSeries(policy);
+            for (int i = 0; i < 1000; i++) {
+                long timestamp = random.nextInt(8) == 0 ? i * 10L - random.nextInt(600) : i * 10L;
+                compressed.add(timestamp, i);
+                expected.add(timestamp, i);
+            }
+            assertEquals(expected.getEvictedCount(), compressed.getEvictedCount());
+            assertSeriesEqual(expected, compressed);
+        }
+    }
+
+    /**
+     * Tests that a scan stops decoding as soon as the visitor asks it to.
+     */
+    @Test
+    void testScanStopsEarly() {
+        CompressedTimeSeries series = new CompressedTimeSeries(4, RetentionPolicy.UNBOUNDED);
+        for (int i = 0; i < 20; i++) {
+            series.add(i, i);
+        }
+        List<Long> visited = new ArrayList<>();
+        boolean completed = series.scan(3, 15, (timestamp, value) -> {
+            visited.add(timestamp);
+            return value < 6;
+        });
+
+        assertFalse(completed);
+        assertEquals(List.of(3L, 4L, 5L, 6L), visited);
+    }
+
+    /**
+     * Tests that a frozen series keeps its samples while later samples, late samples and eviction change the series.
+     */
+    @Test
+    void testFreezeIgnoresLaterChanges() {
+        CompressedTimeSeries series = new CompressedTimeSeries(4, new RetentionPolicy(30, 0));
+        for (int i = 0; i < 22; i++) {
+            series.add(i * 10L, i);
+        }
+        SampleSeries.Frozen frozen = series.freeze();
+        List<String> expected = window(series, Long.MIN_VALUE, Long.MAX_VALUE);
+
+        for (int i = 22; i < 40; i++) {
+            series.add(i * 10L, i);
+        }
+        series.add(105, -1.0);
+        series.shed(250);
+
+        List<String> samples = new ArrayList<>();
+        assertTrue(frozen.scan((timestamp, value) -> samples.add(timestamp + "=" + value)));
+        assertEquals(22, frozen.size());
+        assertEquals(expected, samples);
+    }
+
+    private static void assertSeriesEqual(TimeSeries expected, CompressedTimeSeries actual) {
+        assertEquals(expected.size(), actual.size());
+        assertArrayEquals(expected.copyTimestamps(0, expected.size()), actual.copyTimestamps(0, actual.size()));
+        assertArrayEquals(expected.copyValues(0, expected.size()), actual.copyValues(0, actual.size()));
+        for (int i = 0; i < expected.size(); i += 7) {
+            assertEquals(expected.getTimestamp(i), actual.getTimestamp(i));
+            assertEquals(expected.getValue(i), actual.getValue(i));
+        }
+    }
+
+    private static List<String> window(SampleSeries series, long start, long end) {
+        List<String> samples = new ArrayList<>();
+        series.scan(start, end, (timestamp, value) -> samples.add(timestamp + "=" + value));
+        return samples;
+    }
+}
@@ -0,0 +1,58 @@
+package data_management;
+
+import com.alerts.conditions.BasicConditionEvaluator;
+import com.cardio_generator.outputs.OutputStrategy;
+import com.data_management.Patient;
+import com.data_management.RecordType;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for the combined-condition check of {@link BasicConditionEvaluator}.
+ */
+class ConditionEvaluatorTest {
+
+    private static final long HOUR = 3_600_000L;
+    private static final long NOW = 10 * HOUR;
+
+    /**
+     * Tests that an alert is triggered only if a blood pressure measurement below 90 and an oxygen saturation
+     * measurement below 92 were both recorded within the last hour.
+     */
+    @Test
+    void testCombinedConditionsUseHourlyMinima() {
+        assertTrue(check(85, NOW - 1000, 90));
+        assertFalse(check(90, NOW - 1000, 90), "A blood pressure of 90 is not low");
+        assertFalse(check(85, NOW - 1000, 92), "An oxygen saturation of 92 is not low");
+        assertFalse(check(85, NOW - HOUR - 1, 90), "Only the last hour counts");
+    }
+
+    /**
+     * Tests that a patient without blood pressure records never triggers the combined alert.
+     */
+    @Test
+    void testNoBloodPressureRecords() {
+        OutputStrategy output = mock(OutputStrategy.class);
+        Patient patient = new Patient(1);
+        patient.addRecord(80, RecordType.BLOOD_OXYGEN_SATURATION, NOW - 1000);
+
+        assertFalse(new BasicConditionEvaluator(output).checkForCombinedConditions(patient, NOW));
+        verifyNoInteractions(output);
+    }
+
+    private static boolean check(double bloodPressure, long bloodPressureTime, double saturation) {
+        OutputStrategy output = mock(OutputStrategy.class);
+        Patient patient = new Patient(1);
+        patient.addRecord(120, RecordType.BLOOD_PRESSURE, NOW - 2000);
+        patient.addRecord(bloodPressure, RecordType.BLOOD_PRESSURE, bloodPressureTime);
+        patient.addRecord(98, RecordType.BLOOD_OXYGEN_SATURATION, NOW - 2000);
+        patient.addRecord(saturation, RecordType.BLOOD_OXYGEN_SATURATION, NOW - 1000);
+
+        boolean triggered = new BasicConditionEvaluator(output).checkForCombinedConditions(patient, NOW);
+        verify(output, times(triggered ? 1 : 0)).output(eq(1), eq(NOW), eq("Alert"), anyString());
+        return triggered;
+    }
+}
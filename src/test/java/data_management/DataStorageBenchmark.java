@@ -0,0 +1,354 @@
+package data_management;
+
+import com.data_management.DataStorage;
+import com.data_management.RecordType;
+import com.data_management.SampleBatch;
+import com.data_management.SampleVisitor;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+/**
+ * Multi-threaded ingest/query benchmark for {@link DataStorage}.
+ * Not a unit test: run it with {@code main} to print throughput from 1 to N threads.
+ * Each thread owns its own set of patients and mixes inserts with one-hour window queries,
+ * which is the access pattern of the readers and the alert generator.
+ * The "global lock" rows wrap every call in one shared monitor to reproduce the old fully
+ * synchronized storage, so both rows can be compared at the same thread count.
+ * A second section measures pure ingest with the write-ahead log disabled, with a background
+ * fsync, and with group-committed fsync on every write, and a third compares single-sample ingest
+ * with {@link DataStorage#addPatientDataBatch(SampleBatch)} with and without the log.
+ * The last section runs batch ingest and a full alert sweep (a ten-minute heart rate scan of every patient)
+ * alone and at the same time, once on compressed series, which are scanned without locks, and once on
+ * plain series, which are scanned under the patient's read lock.
+ */
+public class DataStorageBenchmark {
+
+    private static final int PATIENTS_PER_THREAD = 50;
+    private static final int OPERATIONS_PER_THREAD = 200_000;
+    private static final int QUERY_EVERY = 100;
+    private static final long ONE_HOUR_MS = 3_600_000L;
+
+    private static final int WAL_SAMPLES_PER_THREAD = 20_000;
+    private static final int INGEST_SAMPLES_PER_THREAD = 1_000_000;
+    private static final int INGEST_BATCH_SIZE = 4096;
+    private static final int INGEST_WARMUP_ROUNDS = 5;
+
+    private static final int SWEEP_PATIENTS = 1_000;
+    private static final long SWEEP_WINDOW_MS = 600_000L;
+    private static final long SWEEP_MEASURE_NANOS = 2_000_000_000L;
+    private static final SampleVisitor UNTIL_ABNORMAL = (timestamp, value) -> value <= 120 && value >= 50;
+
+    private static final Object GLOBAL_LOCK = new Object();
+
+    /**
+     * Runs the benchmark for thread counts 1, 2, 4, ... up to the number of available processors.
+     *
+     * @param args Command line arguments (unused).
+     * @throws Exception If a worker thread fails.
+     */
+    public static void main(String[] args) throws Exception {
+        int maxThreads = Runtime.getRuntime().availableProcessors();
+        System.out.printf("%-12s %8s %16s%n", "mode", "threads", "ops/sec");
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            // Warm-up round, then a measured round per mode.
+            run(threads, false);
+            System.out.printf("%-12s %8d %,16.0f%n", "concurrent", threads, run(threads, false));
+            run(threads, true);
+            System.out.printf("%-12s %8d %,16.0f%n", "global lock", threads, run(threads, true));
+        }
+
+        System.out.println();
+        System.out.printf("%-12s %8s %16s%n", "wal mode", "threads", "samples/sec");
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            System.out.printf("%-12s %8d %,16.0f%n", "disabled", threads, runWal(threads, -1));
+            System.out.printf("%-12s %8d %,16.0f%n", "async 10ms", threads, runWal(threads, 10));
+            System.out.printf("%-12s %8d %,16.0f%n", "sync", threads, runWal(threads, 0));
+        }
+
+        System.out.println();
+        System.out.printf("%-12s %8s %16s%n", "ingest path", "threads", "samples/sec");
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            // Both paths are compiled before either is measured.
+            for (int round = 0; round < INGEST_WARMUP_ROUNDS; round++) {
+                runIngest(threads, 1, -1);
+                runIngest(threads, INGEST_BATCH_SIZE, -1);
+            }
+            System.out.printf("%-12s %8d %,16.0f%n", "single", threads, runIngest(threads, 1, -1));
+            System.out.printf("%-12s %8d %,16.0f%n", "batch", threads, runIngest(threads, INGEST_BATCH_SIZE, -1));
+            System.out.printf("%-12s %8d %,16.0f%n", "single+sync", threads, runIngest(threads, 1, 0));
+            System.out.printf("%-12s %8d %,16.0f%n", "batch+sync", threads, runIngest(threads, INGEST_BATCH_SIZE, 0));
+        }
+
+        System.out.println();
+        System.out.printf("%-12s %-16s %16s %12s%n", "series", "workload", "samples/sec", "sweeps/sec");
+        for (int samplesPerBlock : new int[]{128, 0}) {
+            String name = samplesPerBlock > 0 ? "compressed" : "plain";
+            runSweep(samplesPerBlock, true, true);
+            double[] ingest = runSweep(samplesPerBlock, true, false);
+            double[] sweep = runSweep(samplesPerBlock, false, true);
+            double[] both = runSweep(samplesPerBlock, true, true);
+            System.out.printf("%-12s %-16s %,16.0f %12s%n", name, "ingest", ingest[0], "-");
+            System.out.printf("%-12s %-16s %16s %,12.1f%n", name, "sweep", "-", sweep[1]);
+            System.out.printf("%-12s %-16s %,16.0f %,12.1f%n", name, "ingest + sweep", both[0], both[1]);
+        }
+        DataStorage.getInstance().useHeapStorage();
+    }
+
+    /**
+     * Runs one round of the benchmark.
+     *
+     * @param threads    The number of worker threads.
+     * @param globalLock Whether every storage call is serialized through one shared monitor.
+     * @return The combined throughput in operations per second.
+     * @throws Exception If a worker thread fails.
+     */
+    private static double run(int threads, boolean globalLock) throws Exception {
+        DataStorage storage = DataStorage.getInstance();
+        storage.clear();
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int firstPatient = t * PATIENTS_PER_THREAD;
+            futures.add(pool.submit(() -> {
+                start.await();
+                long now = 1_700_000_000_000L;
+                for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                    int patientId = firstPatient + (i % PATIENTS_PER_THREAD);
+                    now += 10;
+                    if (i % QUERY_EVERY == 0) {
+                        query(storage, patientId, now, globalLock);
+                    } else {
+                        insert(storage, patientId, now, globalLock);
+                    }
+                }
+                return null;
+            }));
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        long elapsed = System.nanoTime() - begin;
+        pool.shutdown();
+        pool.awaitTermination(1, TimeUnit.MINUTES);
+        storage.clear();
+
+        return (double) threads * OPERATIONS_PER_THREAD / (elapsed / 1e9);
+    }
+
+    /**
+     * Runs one round of ingest, optionally through the write-ahead log.
+     *
+     * @param threads             The number of worker threads.
+     * @param flushIntervalMillis -1 to disable the log, 0 for synchronous group commit, or the background fsync interval.
+     * @return The combined throughput in samples per second.
+     * @throws Exception If a worker thread fails.
+     */
+    private static double runWal(int threads, long flushIntervalMillis) throws Exception {
+        DataStorage storage = DataStorage.getInstance();
+        storage.clear();
+        Path directory = Files.createTempDirectory("wal-benchmark");
+        if (flushIntervalMillis >= 0) {
+            storage.enableDurability(directory, flushIntervalMillis, 0);
+        }
+        try {
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int firstPatient = t * PATIENTS_PER_THREAD;
+                futures.add(pool.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < WAL_SAMPLES_PER_THREAD; i++) {
+                        storage.addPatientData(firstPatient + (i % PATIENTS_PER_THREAD), 75.0, "HeartRate", 1_700_000_000_000L + i);
+                    }
+                    return null;
+                }));
+            }
+
+            long begin = System.nanoTime();
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            long elapsed = System.nanoTime() - begin;
+            pool.shutdown();
+            return (double) threads * WAL_SAMPLES_PER_THREAD / (elapsed / 1e9);
+        } finally {
+            storage.disableDurability();
+            storage.clear();
+            deleteRecursively(directory);
+        }
+    }
+
+    /**
+     * Runs one round of ingest through the single-sample or the batch entry point.
+     * Each thread interleaves the samples of its patients, as a reader of a mixed stream would.
+     *
+     * @param threads             The number of worker threads.
+     * @param batchSize           1 to call {@code addPatientData} per sample, otherwise the number of samples per batch.
+     * @param flushIntervalMillis -1 to disable the log, 0 for synchronous group commit, or the background fsync interval.
+     * @return The combined throughput in samples per second.
+     * @throws Exception If a worker thread fails.
+     */
+    private static double runIngest(int threads, int batchSize, long flushIntervalMillis) throws Exception {
+        DataStorage storage = DataStorage.getInstance();
+        storage.clear();
+        Path directory = Files.createTempDirectory("ingest-benchmark");
+        if (flushIntervalMillis >= 0) {
+            storage.enableDurability(directory, flushIntervalMillis, 0);
+        }
+        // The synchronous log is limited by fsync, so fewer samples keep the round short.
+        int samples = flushIntervalMillis == 0 ? INGEST_SAMPLES_PER_THREAD / 10 : INGEST_SAMPLES_PER_THREAD;
+        try {
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int firstPatient = t * PATIENTS_PER_THREAD;
+                futures.add(pool.submit(() -> {
+                    SampleBatch batch = new SampleBatch(batchSize);
+                    start.await();
+                    for (int i = 0; i < samples; i++) {
+                        int patientId = firstPatient + (i % PATIENTS_PER_THREAD);
+                        long timestamp = 1_700_000_000_000L + i;
+                        if (batchSize == 1) {
+                            storage.addPatientData(patientId, 75.0, RecordType.HEART_RATE, timestamp);
+                            continue;
+                        }
+                        batch.add(patientId, 75.0, RecordType.HEART_RATE, timestamp);
+                        if (batch.size() == batchSize) {
+                            storage.addPatientDataBatch(batch);
+                            batch.clear();
+                        }
+                    }
+                    storage.addPatientDataBatch(batch);
+                    return null;
+                }));
+            }
+
+            long begin = System.nanoTime();
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            long elapsed = System.nanoTime() - begin;
+            pool.shutdown();
+            return (double) threads * samples / (elapsed / 1e9);
+        } finally {
+            storage.disableDurability();
+            storage.clear();
+            deleteRecursively(directory);
+        }
+    }
+
+    /**
+     * Runs one round of batch ingest, alert sweeps, or both on separate threads, for a fixed time.
+     * The storage is preloaded with ten minutes of heart rate history per patient, so every sweep scans
+     * the same amount of data.
+     *
+     * @param samplesPerBlock The samples per compressed block, or 0 for plain series.
+     * @param ingest          Whether a thread ingests batches during the round.
+     * @param sweep           Whether a thread sweeps all patients during the round.
+     * @return The ingest throughput in samples per second and the sweep throughput in sweeps per second.
+     * @throws Exception If a worker thread fails.
+     */
+    private static double[] runSweep(int samplesPerBlock, boolean ingest, boolean sweep) throws Exception {
+        DataStorage storage = DataStorage.getInstance();
+        storage.clear();
+        storage.useHeapStorage(samplesPerBlock);
+        long begin = 1_700_000_000_000L;
+        SampleBatch batch = new SampleBatch(INGEST_BATCH_SIZE);
+        long now = begin;
+        for (; now < begin + SWEEP_WINDOW_MS; now += 1_000L) {
+            for (int patientId = 0; patientId < SWEEP_PATIENTS; patientId++) {
+                batch.add(patientId, 75.0, RecordType.HEART_RATE, now);
+                if (batch.size() == INGEST_BATCH_SIZE) {
+                    storage.addPatientDataBatch(batch);
+                    batch.clear();
+                }
+            }
+        }
+        storage.addPatientDataBatch(batch);
+        batch.clear();
+        long loadedUntil = now;
+
+        AtomicBoolean stop = new AtomicBoolean();
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        Future<Long> samples = pool.submit(() -> {
+            long count = 0;
+            for (long t = loadedUntil; ingest && !stop.get(); t += 1_000L) {
+                for (int patientId = 0; patientId < SWEEP_PATIENTS; patientId++) {
+                    batch.add(patientId, 75.0, RecordType.HEART_RATE, t);
+                }
+                storage.addPatientDataBatch(batch);
+                batch.clear();
+                count += SWEEP_PATIENTS;
+            }
+            return count;
+        });
+        Future<Long> sweeps = pool.submit(() -> {
+            long count = 0;
+            while (sweep && !stop.get()) {
+                for (int patientId = 0; patientId < SWEEP_PATIENTS; patientId++) {
+                    storage.scan(patientId, RecordType.HEART_RATE, loadedUntil - SWEEP_WINDOW_MS, loadedUntil, UNTIL_ABNORMAL);
+                }
+                count++;
+            }
+            return count;
+        });
+        long start = System.nanoTime();
+        Thread.sleep(SWEEP_MEASURE_NANOS / 1_000_000L);
+        stop.set(true);
+        long ingested = samples.get();
+        long swept = sweeps.get();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        pool.shutdown();
+        storage.clear();
+        return new double[]{ingested / seconds, swept / seconds};
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    private static void insert(DataStorage storage, int patientId, long timestamp, boolean globalLock) {
+        if (globalLock) {
+            synchronized (GLOBAL_LOCK) {
+                storage.addPatientData(patientId, 75.0, "HeartRate", timestamp);
+            }
+        } else {
+            storage.addPatientData(patientId, 75.0, "HeartRate", timestamp);
+        }
+    }
+
+    private static void query(DataStorage storage, int patientId, long now, boolean globalLock) {
+        if (globalLock) {
+            synchronized (GLOBAL_LOCK) {
+                storage.getRecords(patientId, now - ONE_HOUR_MS, now);
+            }
+        } else {
+            storage.getRecords(patientId, now - ONE_HOUR_MS, now);
+        }
+    }
+}
@@ -4,10 +4,14 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.IntStream;
 import com.data_management.*;
 import static org.junit.jupiter.api.Assertions.*;
@@ -62,6 +66,198 @@ class DataStorageTest {
         assertEquals(120.0, records.get(1).getMeasurementValue(), "Second record should match");
     }
 
+    /**
+     * Tests retrieving records of a single type.
+     */
+    @Test
+    void testGetRecordsByType() {
+        storage.addPatientData(1, 100.0, "HeartRate", 1622542800000L);
+        storage.addPatientData(1, 95.0, "BloodOxygenSaturation", 1622542801000L);
+        storage.addPatientData(1, 110.0, "HeartRate", 1622542802000L);
+
+        List<PatientRecord> records = storage.getRecords(1, "HeartRate", 1622540000000L, 1622550000000L);
+        assertEquals(2, records.size(), "Should only retrieve heart rate records");
+        assertTrue(records.stream().allMatch(r -> "HeartRate".equals(r.getRecordType())));
+        assertTrue(storage.getRecords(1, "BloodPressure", 0, Long.MAX_VALUE).isEmpty(), "Should be empty for a type without data");
+    }
+
+    /**
+     * Tests that records of different types are merged in timestamp order.
+     */
+    @Test
+    void testGetRecordsAcrossTypesIsSorted() {
+        storage.addPatientData(1, 100.0, "HeartRate", 1622542802000L);
+        storage.addPatientData(1, 95.0, "BloodOxygenSaturation", 1622542801000L);
+        storage.addPatientData(1, 120.0, "BloodPressure", 1622542803000L);
+        storage.addPatientData(1, 90.0, "HeartRate", 1622542800000L);
+
+        List<PatientRecord> records = storage.getRecords(1, 1622540000000L, 1622550000000L);
+        assertEquals(4, records.size());
+        for (int i = 1; i < records.size(); i++) {
+            assertTrue(records.get(i - 1).getTimestamp() <= records.get(i).getTimestamp(), "Records should be sorted by timestamp");
+        }
+        assertEquals("BloodOxygenSaturation", records.get(1).getRecordType());
+    }
+
+    /**
+     * Tests that a per-type retention policy bounds history and reports evictions.
+     */
+    @Test
+    void testRetentionPolicy() {
+        storage.setRetentionPolicy("HeartRate", new RetentionPolicy(100, 0));
+        try {
+            IntStream.range(0, 1000).forEach(i -> storage.addPatientData(1, 70.0, "HeartRate", 1622542800000L + i));
+            storage.addPatientData(1, 95.0, "BloodOxygenSaturation", 1622542800000L);
+
+            assertEquals(100, storage.getRecords(1, "HeartRate", 0, Long.MAX_VALUE).size(), "Should keep only the newest 100 records");
+            assertEquals(1, storage.getRecords(1, "BloodOxygenSaturation", 0, Long.MAX_VALUE).size(), "Other types should be unaffected");
+            assertEquals(900, storage.getEvictedSampleCount("HeartRate"));
+            assertEquals(900, storage.getEvictedSampleCount());
+        } finally {
+            storage.setRetentionPolicy("HeartRate", RetentionPolicy.UNBOUNDED);
+        }
+    }
+
+    /**
+     * Tests that a batch is stored per patient in batch order, interleaved patients included.
+     */
+    @Test
+    void testAddPatientDataBatch() {
+        SampleBatch batch = new SampleBatch(2);
+        batch.add(1, 70.0, RecordType.HEART_RATE, 1000L);
+        batch.add(2, 95.0, RecordType.BLOOD_OXYGEN_SATURATION, 1000L);
+        batch.add(1, 72.0, RecordType.HEART_RATE, 2000L);
+        batch.add(2, 120.0, RecordType.SYSTOLIC_PRESSURE, 1500L);
+        batch.add(1, 74.0, RecordType.HEART_RATE, 3000L);
+        storage.addPatientDataBatch(batch);
+
+        List<PatientRecord> heartRate = storage.getRecords(1, RecordType.HEART_RATE, 0, Long.MAX_VALUE);
+        assertEquals(3, heartRate.size());
+        assertEquals(70.0, heartRate.get(0).getMeasurementValue());
+        assertEquals(74.0, heartRate.get(2).getMeasurementValue());
+        List<PatientRecord> patient2 = storage.getRecords(2, 0, Long.MAX_VALUE);
+        assertEquals(2, patient2.size());
+        assertSame(RecordType.SYSTOLIC_PRESSURE, patient2.get(1).getType());
+    }
+
+    /**
+     * Tests that an invalid sample rejects the whole batch before anything is stored.
+     */
+    @Test
+    void testAddPatientDataBatchRejectsInvalidValue() {
+        SampleBatch batch = new SampleBatch(4);
+        batch.add(1, 70.0, RecordType.HEART_RATE, 1000L);
+        batch.add(1, Double.NaN, RecordType.HEART_RATE, 2000L);
+        assertThrows(NumberFormatException.class, () -> storage.addPatientDataBatch(batch));
+        assertTrue(storage.getAllPatients().isEmpty(), "No sample of a rejected batch should be stored");
+    }
+
+    /**
+     * Tests that a scan visits samples in timestamp order and stops when the visitor returns false.
+     */
+    @Test
+    void testScanStopsEarly() {
+        for (int i = 0; i < 10; i++) {
+            storage.addPatientData(1, 60.0 + i, RecordType.HEART_RATE, 1000L + i);
+        }
+        storage.addPatientData(1, 98.0, RecordType.BLOOD_OXYGEN_SATURATION, 1004L);
+
+        List<Double> visited = new ArrayList<>();
+        boolean completed = storage.scan(1, RecordType.HEART_RATE, 1002L, 1008L, (timestamp, value) -> {
+            visited.add(value);
+            return value < 65.0;
+        });
+
+        assertFalse(completed, "The scan should report that the visitor stopped it");
+        assertEquals(List.of(62.0, 63.0, 64.0, 65.0), visited);
+        assertTrue(storage.scan(1, RecordType.HEART_RATE, 2000L, 3000L, (timestamp, value) -> false), "An empty window should complete");
+        assertTrue(storage.scan(2, RecordType.HEART_RATE, 0L, Long.MAX_VALUE, (timestamp, value) -> false), "An unknown patient should complete");
+    }
+
+    /**
+     * Tests a parallel cohort predicate across enough patients to be split into several tasks.
+     */
+    @Test
+    void testFindPatients() {
+        long now = 1_700_000_000_000L;
+        for (int patientId = 1; patientId <= 500; patientId++) {
+            storage.addPatientData(patientId, patientId % 50 == 0 ? 88.0 : 97.0, RecordType.BLOOD_OXYGEN_SATURATION, now - 60_000L);
+            storage.addPatientData(patientId, 85.0, RecordType.BLOOD_OXYGEN_SATURATION, now - 3_600_000L);
+        }
+
+        List<Patient> hypoxic = storage.findPatients(patient ->
+                !patient.scan(RecordType.BLOOD_OXYGEN_SATURATION, now - 600_000L, now, (timestamp, value) -> value >= 92));
+
+        assertEquals(10, hypoxic.size());
+        assertEquals(50, hypoxic.get(0).getPatientId());
+        assertEquals(500, hypoxic.get(9).getPatientId());
+    }
+
+    /**
+     * Tests that cohort queries running while the parallelism changes complete on the pool they started on.
+     *
+     * @throws Exception If a query fails or the test is interrupted.
+     */
+    @Test
+    void testCohortParallelismChangeDuringQueries() throws Exception {
+        for (int patientId = 1; patientId <= 500; patientId++) {
+            storage.addPatientData(patientId, 97.0, RecordType.BLOOD_OXYGEN_SATURATION, 1000L);
+        }
+        AtomicBoolean done = new AtomicBoolean();
+        ExecutorService service = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> queries = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                queries.add(service.submit(() -> {
+                    while (!done.get()) {
+                        assertEquals(500, storage.findPatients(patient -> true).size());
+                    }
+                }));
+            }
+            for (int i = 0; i < 1_000; i++) {
+                storage.setCohortParallelism(1 + i % 3);
+            }
+            done.set(true);
+            for (Future<?> query : queries) {
+                query.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            service.shutdown();
+            storage.setCohortParallelism(0);
+        }
+    }
+
+    /**
+     * Tests that merged cohort statistics equal the statistics over all samples of all patients.
+     */
+    @Test
+    void testCohortStatistics() {
+        long now = 1_700_000_000_000L;
+        double sum = 0;
+        int count = 0;
+        for (int patientId = 1; patientId <= 300; patientId++) {
+            for (int i = 0; i < patientId % 7; i++) {
+                double value = 60 + (patientId * 31 + i * 17) % 60;
+                storage.addPatientData(patientId, value, RecordType.HEART_RATE, now - i * 1000L);
+                sum += value;
+                count++;
+            }
+        }
+        double mean = sum / count;
+        double squares = 0;
+        for (Patient patient : storage.getAllPatients()) {
+            for (PatientRecord record : patient.getRecords(RecordType.HEART_RATE, 0, now)) {
+                squares += Math.pow(record.getMeasurementValue() - mean, 2);
+            }
+        }
+
+        WindowStatistics statistics = storage.getCohortStatistics(RecordType.HEART_RATE, 3_600_000L, now);
+        assertEquals(count, statistics.getCount());
+        assertEquals(mean, statistics.getMean(), 1e-9);
+        assertEquals(squares / count, statistics.getVariance(), 1e-9);
+        assertEquals(60.0, statistics.getMin());
+    }
+
     /**
      * Tests retrieving records for a non-existing patient.
      */
@@ -108,6 +304,110 @@ class DataStorageTest {
         assertEquals(1000, storage.getRecords(1, 0, Long.MAX_VALUE).size(), "Should handle 1000 concurrent updates correctly");
     }
 
+    /**
+     * Tests concurrent writers and readers spread over many patients.
+     * Every patient must end up with exactly the records written for it.
+     *
+     * @throws InterruptedException If the thread is interrupted while waiting.
+     */
+    @Test
+    void testConcurrentAccessAcrossPatients() throws InterruptedException {
+        ExecutorService service = Executors.newFixedThreadPool(8);
+        IntStream.range(0, 8000).forEach(i -> service.submit(() -> {
+            storage.addPatientData(i % 8, 100.0, "HeartRate", 1622542800000L + i);
+            storage.getRecords(i % 8, 1622542800000L, 1622542800000L + i);
+        }));
+        service.shutdown();
+        service.awaitTermination(1, TimeUnit.MINUTES);
+
+        assertEquals(8, storage.getAllPatients().size(), "Should create one patient per id");
+        for (int patientId = 0; patientId < 8; patientId++) {
+            assertEquals(1000, storage.getRecords(patientId, 0, Long.MAX_VALUE).size(), "Each patient should hold its own 1000 records");
+        }
+    }
+
+    /**
+     * Tests that samples within the lateness bound are merged into order, samples beyond it are dropped
+     * and counted, and the rolling window only sees the samples that were kept.
+     */
+    @Test
+    void testLatenessBound() {
+        storage.setLatenessBound(RecordType.HEART_RATE, 10_000L);
+        storage.setAggregationWindow(RecordType.HEART_RATE, 3_600_000L);
+        try {
+            long start = 1_700_000_000_000L;
+            Random random = new Random(3);
+            List<Long> kept = new ArrayList<>();
+            for (int i = 0; i < 2_000; i++) {
+                // Up to 8 seconds of network jitter on a 1 Hz stream.
+                long timestamp = start + i * 1000L - random.nextInt(8_000);
+                storage.addPatientData(1, 70.0, RecordType.HEART_RATE, timestamp);
+                kept.add(timestamp);
+                if (i % 100 == 99) {
+                    // A replayed sample a minute old.
+                    storage.addPatientData(1, 300.0, RecordType.HEART_RATE, timestamp - 60_000L);
+                }
+            }
+
+            List<PatientRecord> records = storage.getRecords(1, RecordType.HEART_RATE, 0, Long.MAX_VALUE);
+            kept.sort(null);
+            assertEquals(kept.size(), records.size());
+            for (int i = 0; i < records.size(); i++) {
+                assertEquals(kept.get(i).longValue(), records.get(i).getTimestamp());
+            }
+            assertEquals(20, storage.getDroppedLateSampleCount(RecordType.HEART_RATE));
+            long now = records.get(records.size() - 1).getTimestamp();
+            WindowStatistics statistics = storage.getWindowStatistics(1, RecordType.HEART_RATE, 3_600_000L, now);
+            assertEquals(kept.size(), statistics.getCount());
+            assertEquals(70.0, statistics.getMax());
+        } finally {
+            storage.setLatenessBound(RecordType.HEART_RATE, 0);
+            storage.setAggregationWindow(RecordType.HEART_RATE, 0);
+        }
+    }
+
+    /**
+     * Tests that re-delivered samples are dropped and counted, whether they repeat the newest sample, arrive
+     * reordered within recent history, or replay history older than the duplicate filter covers.
+     */
+    @Test
+    void testDeduplication() {
+        storage.setDeduplication(RecordType.HEART_RATE, true);
+        storage.setAggregationWindow(RecordType.HEART_RATE, 3_600_000L);
+        try {
+            long start = 1_700_000_000_000L;
+            Random random = new Random(9);
+            for (int i = 0; i < 5_000; i++) {
+                long timestamp = start + i * 1000L;
+                storage.addPatientData(1, 70.0 + i % 5, RecordType.HEART_RATE, timestamp);
+                if (i % 10 == 0) {
+                    storage.addPatientData(1, 70.0 + i % 5, RecordType.HEART_RATE, timestamp);
+                }
+                if (i % 50 == 49) {
+                    storage.addPatientData(1, 0.0, RecordType.HEART_RATE, timestamp - random.nextInt(40) * 1000L);
+                }
+            }
+            // A reconnecting source replays the first minutes, and one new sample falls between replayed ones.
+            for (int i = 0; i < 300; i++) {
+                storage.addPatientData(1, 0.0, RecordType.HEART_RATE, start + i * 1000L);
+            }
+            storage.addPatientData(1, 99.0, RecordType.HEART_RATE, start + 500L);
+
+            List<PatientRecord> records = storage.getRecords(1, RecordType.HEART_RATE, 0, Long.MAX_VALUE);
+            assertEquals(5_001, records.size());
+            assertEquals(500 + 100 + 300, storage.getDuplicateSampleCount(RecordType.HEART_RATE));
+            for (PatientRecord record : records) {
+                assertTrue(record.getMeasurementValue() > 0);
+            }
+            WindowStatistics statistics = storage.getWindowStatistics(1, RecordType.HEART_RATE, 3_600_000L,
+                    start + 4_999_000L);
+            assertEquals(3_601, statistics.getCount());
+        } finally {
+            storage.setDeduplication(RecordType.HEART_RATE, false);
+            storage.setAggregationWindow(RecordType.HEART_RATE, 0);
+        }
+    }
+
     /**
      * Tests boundary conditions for retrieving records.
      */
@@ -0,0 +1,71 @@
+package data_management;
+
+import com.data_management.DataStorage;
+import com.data_management.RecordType;
+
+import java.util.Random;
+
+/**
+ * Ingest benchmark for duplicate suppression in {@link DataStorage}.
+ * Not a unit test: run it with {@code main} to print nanoseconds per sample with deduplication off and on for
+ * three single-threaded streams: strictly in order (the fast path), with network jitter reordering samples
+ * by up to five seconds, and with a tenth of the samples re-delivered a few seconds after the original.
+ */
+public class DeduplicationBenchmark {
+
+    private static final int PATIENTS = 100;
+    private static final int SAMPLES_PER_PATIENT = 20_000;
+    private static final int ROUNDS = 5;
+
+    /**
+     * Runs every stream with deduplication off and on, keeping the fastest of several rounds.
+     *
+     * @param args Command line arguments (unused).
+     */
+    public static void main(String[] args) {
+        DataStorage storage = DataStorage.getInstance();
+        String[] streams = {"in order", "jittered", "10% resent"};
+        System.out.printf("%-12s %14s %14s %12s%n", "stream", "dedup off ns", "dedup on ns", "duplicates");
+        for (int stream = 0; stream < streams.length; stream++) {
+            long[] timestamps = timestamps(stream);
+            double off = Double.MAX_VALUE;
+            double on = Double.MAX_VALUE;
+            long duplicates = 0;
+            for (int round = 0; round < ROUNDS; round++) {
+                off = Math.min(off, run(storage, timestamps, false));
+                on = Math.min(on, run(storage, timestamps, true));
+                duplicates = storage.getDuplicateSampleCount(RecordType.HEART_RATE);
+            }
+            System.out.printf("%-12s %14.1f %14.1f %,12d%n", streams[stream], off, on, duplicates);
+        }
+        storage.setDeduplication(RecordType.HEART_RATE, false);
+        storage.clear();
+    }
+
+    private static double run(DataStorage storage, long[] timestamps, boolean deduplicate) {
+        storage.clear();
+        storage.setDeduplication(RecordType.HEART_RATE, deduplicate);
+        long begin = System.nanoTime();
+        for (int i = 0; i < timestamps.length; i++) {
+            storage.addPatientData(i % PATIENTS + 1, 70.0 + i % 7, RecordType.HEART_RATE, timestamps[i]);
+        }
+        return (System.nanoTime() - begin) / (double) timestamps.length;
+    }
+
+    private static long[] timestamps(int stream) {
+        Random random = new Random(stream);
+        long start = 1_700_000_000_000L;
+        long[] timestamps = new long[PATIENTS * SAMPLES_PER_PATIENT];
+        for (int i = 0; i < timestamps.length; i++) {
+            long timestamp = start + (i / PATIENTS) * 1000L;
+            if (stream == 1) {
+                timestamp -= random.nextInt(5_000);
+            } else if (stream == 2 && i >= 10 * PATIENTS && random.nextInt(10) == 0) {
+                // Re-send a sample of the same patient from a few seconds ago.
+                timestamp = timestamps[i - PATIENTS * (1 + random.nextInt(10))];
+            }
+            timestamps[i] = timestamp;
+        }
+        return timestamps;
+    }
+}
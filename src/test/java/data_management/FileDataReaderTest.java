@@ -1,15 +1,25 @@
 package data_management;
 
+import com.cardio_generator.outputs.FileOutputStrategy;
 import com.data_management.*;
 
 import static org.mockito.Mockito.*;
 
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 /**
  * Unit tests for the {@link FileDataReader} class.
@@ -60,17 +70,228 @@ class FileDataReaderTest {
         }
 
         // Verify that dataStorage.addPatientData was called with the correct parameters
-        verify(dataStorageMock, times(1)).addPatientData(1, 100.0, "HeartRate", 1627836123000L);
-        verify(dataStorageMock, times(1)).addPatientData(2, 200.0, "BloodPressure", 1627836123000L);
-        verify(dataStorageMock, times(1)).addPatientData(3, 90.0, "BloodOxygenSaturation", 1627836123000L);
-        verify(dataStorageMock, times(1)).addPatientData(4, 110.0, "HeartRate", 1627836123000L);
-        verify(dataStorageMock, times(1)).addPatientData(5, 80.0, "BloodPressure", 1627836123000L);
-        verify(dataStorageMock, times(1)).addPatientData(6, 95.0, "BloodOxygenSaturation", 1627836123000L);
-        verify(dataStorageMock, times(1)).addPatientData(7, 72.0, "HeartRate", 1627836123000L);
-        verify(dataStorageMock, times(1)).addPatientData(8, 130.0, "BloodPressure", 1627836123000L);
-        verify(dataStorageMock, times(1)).addPatientData(9, 85.0, "BloodOxygenSaturation", 1627836123000L);
-        verify(dataStorageMock, times(1)).addPatientData(10, 65.0, "HeartRate", 1627836123000L);
-        verify(dataStorageMock, times(1)).addPatientData(11, 140.0, "BloodPressure", 1627836123000L);
-        verify(dataStorageMock, times(1)).addPatientData(12, 92.0, "BloodOxygenSaturation", 1627836123000L);
+        verify(dataStorageMock, times(1)).addPatientData(1, 100.0, RecordType.HEART_RATE, 1627836123000L);
+        verify(dataStorageMock, times(1)).addPatientData(2, 200.0, RecordType.BLOOD_PRESSURE, 1627836123000L);
+        verify(dataStorageMock, times(1)).addPatientData(3, 90.0, RecordType.BLOOD_OXYGEN_SATURATION, 1627836123000L);
+        verify(dataStorageMock, times(1)).addPatientData(4, 110.0, RecordType.HEART_RATE, 1627836123000L);
+        verify(dataStorageMock, times(1)).addPatientData(5, 80.0, RecordType.BLOOD_PRESSURE, 1627836123000L);
+        verify(dataStorageMock, times(1)).addPatientData(6, 95.0, RecordType.BLOOD_OXYGEN_SATURATION, 1627836123000L);
+        verify(dataStorageMock, times(1)).addPatientData(7, 72.0, RecordType.HEART_RATE, 1627836123000L);
+        verify(dataStorageMock, times(1)).addPatientData(8, 130.0, RecordType.BLOOD_PRESSURE, 1627836123000L);
+        verify(dataStorageMock, times(1)).addPatientData(9, 85.0, RecordType.BLOOD_OXYGEN_SATURATION, 1627836123000L);
+        verify(dataStorageMock, times(1)).addPatientData(10, 65.0, RecordType.HEART_RATE, 1627836123000L);
+        verify(dataStorageMock, times(1)).addPatientData(11, 140.0, RecordType.BLOOD_PRESSURE, 1627836123000L);
+        verify(dataStorageMock, times(1)).addPatientData(12, 92.0, RecordType.BLOOD_OXYGEN_SATURATION, 1627836123000L);
+    }
+
+    /**
+     * Tests that the parallel mode stores exactly what a sequential read stores, for a file spanning several
+     * chunks with lines of varying length.
+     *
+     * @param directory A temporary directory for the data file.
+     * @throws IOException If an I/O error occurs during reading data.
+     */
+    @Test
+    void testParallelReadMatchesSequential(@TempDir Path directory) throws IOException {
+        Path file = writeFile(directory, 120_000, -1);
+        DataStorage storage = DataStorage.getInstance();
+        try {
+            storage.clear();
+            new FileDataReader(file.toString()).readData(storage);
+            List<List<PatientRecord>> sequential = recordsOfAllPatients(storage);
+
+            storage.clear();
+            new FileDataReader(file.toString(), 4).readData(storage);
+            List<List<PatientRecord>> parallel = recordsOfAllPatients(storage);
+
+            assertEquals(sequential.size(), parallel.size());
+            int total = 0;
+            for (int p = 0; p < sequential.size(); p++) {
+                List<PatientRecord> expected = sequential.get(p);
+                List<PatientRecord> actual = parallel.get(p);
+                assertEquals(expected.size(), actual.size());
+                for (int i = 0; i < expected.size(); i++) {
+                    assertEquals(expected.get(i).getTimestamp(), actual.get(i).getTimestamp());
+                    assertEquals(expected.get(i).getMeasurementValue(), actual.get(i).getMeasurementValue());
+                    assertEquals(expected.get(i).getRecordType(), actual.get(i).getRecordType());
+                }
+                total += actual.size();
+            }
+            assertEquals(120_000, total);
+        } finally {
+            storage.clear();
+        }
+    }
+
+    /**
+     * Tests that the parallel mode, like a sequential read, stores every line before a malformed line and
+     * nothing after it before rethrowing.
+     *
+     * @param directory A temporary directory for the data file.
+     * @throws IOException If an I/O error occurs during reading data.
+     */
+    @Test
+    void testParallelReadStopsAtMalformedLine(@TempDir Path directory) throws IOException {
+        Path file = writeFile(directory, 120_000, 90_000);
+        DataStorage storage = DataStorage.getInstance();
+        try {
+            storage.clear();
+            assertThrows(NumberFormatException.class, () -> new FileDataReader(file.toString(), 4).readData(storage));
+            int total = 0;
+            for (List<PatientRecord> records : recordsOfAllPatients(storage)) {
+                total += records.size();
+            }
+            assertEquals(90_000, total);
+        } finally {
+            storage.clear();
+        }
+    }
+
+    /**
+     * Tests that a directory written by {@link FileOutputStrategy} is read file by file, with the labels mapped
+     * to record types, percent signs dropped and the alert file skipped, and that a malformed file does not
+     * stop the others.
+     *
+     * @param directory A temporary directory for the output files.
+     * @throws IOException If an I/O error occurs during reading data.
+     */
+    @Test
+    void testReadOutputDirectory(@TempDir Path directory) throws IOException {
+        FileOutputStrategy output = new FileOutputStrategy(directory.toString());
+        for (int i = 0; i < 1_000; i++) {
+            int patientId = i % 10 + 1;
+            long timestamp = 1627836123000L + i * 10L;
+            output.output(patientId, timestamp, "ECG", Double.toString(i / 100.0));
+            output.output(patientId, timestamp, "Saturation", (90 + i % 10) + ".0%");
+            output.output(patientId, timestamp, "SystolicPressure", Double.toString(110 + i % 20));
+            output.output(patientId, timestamp, "Alert", i % 2 == 0 ? "triggered" : "resolved");
+        }
+        DataStorage storage = DataStorage.getInstance();
+        try {
+            storage.clear();
+            new FileDataReader(directory.toString(), 2).readData(storage);
+
+            assertEquals(100, storage.getRecords(1, RecordType.ECG, 0, Long.MAX_VALUE).size());
+            assertEquals(100, storage.getRecords(1, RecordType.SYSTOLIC_PRESSURE, 0, Long.MAX_VALUE).size());
+            List<PatientRecord> saturation =
+                    storage.getRecords(3, RecordType.BLOOD_OXYGEN_SATURATION, 0, Long.MAX_VALUE);
+            assertEquals(100, saturation.size());
+            assertEquals(92.0, saturation.get(0).getMeasurementValue());
+            assertEquals(300, storage.getRecords(10, 0, Long.MAX_VALUE).size());
+
+            storage.clear();
+            Files.write(directory.resolve("ECG.txt"), "Patient ID: 1, Timestamp: x, Label: ECG, Data: 0.5\n".getBytes(),
+                    StandardOpenOption.APPEND);
+            FileDataReader reader = new FileDataReader(directory.toString());
+            assertThrows(NumberFormatException.class, () -> reader.readData(storage));
+            assertEquals(100, storage.getRecords(1, RecordType.BLOOD_OXYGEN_SATURATION, 0, Long.MAX_VALUE).size());
+            assertEquals(100, storage.getRecords(1, RecordType.ECG, 0, Long.MAX_VALUE).size());
+        } finally {
+            storage.clear();
+        }
+    }
+
+    /**
+     * Tests that a checkpointed import that failed resumes from the failing line once the file is fixed,
+     * storing every line exactly once, sequentially and in parallel, and that a complete import is not repeated.
+     *
+     * @param directory A temporary directory for the data and checkpoint files.
+     * @throws IOException If an I/O error occurs during reading data.
+     */
+    @Test
+    void testCheckpointedImportResumes(@TempDir Path directory) throws IOException {
+        Path checkpointFile = directory.resolve("import.checkpoint");
+        DataStorage storage = DataStorage.getInstance();
+        try {
+            for (int parallelism : new int[]{1, 4}) {
+                storage.clear();
+                Files.deleteIfExists(checkpointFile);
+                Path file = writeFile(directory, 120_000, 90_000);
+                FileDataReader reader = new FileDataReader(file.toString(), parallelism);
+                reader.enableCheckpoints(checkpointFile, 256 * 1024);
+
+                assertThrows(NumberFormatException.class, () -> reader.readData(storage));
+                ImportCheckpoint failed = ImportCheckpoint.load(checkpointFile);
+                assertEquals(90_000, failed.getRecordsCommitted());
+                assertEquals(file.toAbsolutePath().toString(), failed.getFile());
+                assertEquals(90_000, count(storage));
+                String text = new String(Files.readAllBytes(file), StandardCharsets.US_ASCII);
+                assertTrue(text.startsWith("1, not a number", Math.toIntExact(failed.getOffset())));
+
+                writeFile(directory, 120_000, -1);
+                reader.readData(storage);
+                ImportCheckpoint complete = ImportCheckpoint.load(checkpointFile);
+                assertEquals(120_000, complete.getRecordsCommitted());
+                assertEquals(Files.size(file), complete.getOffset());
+                assertEquals(120_000, count(storage));
+
+                reader.readData(storage);
+                assertEquals(120_000, count(storage));
+            }
+        } finally {
+            storage.clear();
+        }
+    }
+
+    /**
+     * Tests that a checkpoint of a file that has been replaced since is ignored.
+     *
+     * @param directory A temporary directory for the data and checkpoint files.
+     * @throws IOException If an I/O error occurs during reading data.
+     */
+    @Test
+    void testCheckpointOfReplacedFileIgnored(@TempDir Path directory) throws IOException {
+        Path checkpointFile = directory.resolve("import.checkpoint");
+        DataStorage storage = DataStorage.getInstance();
+        try {
+            storage.clear();
+            Path file = writeFile(directory, 10_000, -1);
+            FileDataReader reader = new FileDataReader(file.toString());
+            reader.enableCheckpoints(checkpointFile, 4096);
+            reader.readData(storage);
+
+            storage.clear();
+            Files.write(file, "1, 70.0, HeartRate, 1000\n".getBytes());
+            reader.readData(storage);
+
+            assertEquals(1, count(storage));
+            assertEquals(1, ImportCheckpoint.load(checkpointFile).getRecordsCommitted());
+            assertThrows(IllegalArgumentException.class, () -> reader.enableCheckpoints(checkpointFile, 0));
+        } finally {
+            storage.clear();
+        }
+    }
+
+    private static int count(DataStorage storage) {
+        int total = 0;
+        for (List<PatientRecord> records : recordsOfAllPatients(storage)) {
+            total += records.size();
+        }
+        return total;
+    }
+
+    private static Path writeFile(Path directory, int lines, int malformedLine) throws IOException {
+        Path file = directory.resolve("data.txt");
+        String[] labels = {"HeartRate", "BloodPressure", "BloodOxygenSaturation"};
+        try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+            for (int i = 0; i < lines; i++) {
+                if (i == malformedLine) {
+                    writer.write("1, not a number, HeartRate, 1627836123000\n");
+                    continue;
+                }
+                int patientId = i % 97 + 1;
+                writer.write(patientId + ", " + (60 + i % 1000 / 7.0) + ", " + labels[i % 3] + ", "
+                        + (1627836123000L + i * 10L) + (i % 5 == 0 ? "\r\n" : "\n"));
+            }
+        }
+        return file;
+    }
+
+    private static List<List<PatientRecord>> recordsOfAllPatients(DataStorage storage) {
+        List<List<PatientRecord>> records = new ArrayList<>();
+        for (int patientId = 1; patientId <= 97; patientId++) {
+            records.add(storage.getRecords(patientId, 0, Long.MAX_VALUE));
+        }
+        return records;
     }
 }
@@ -0,0 +1,180 @@
+package data_management;
+
+import com.cardio_generator.outputs.FileOutputStrategy;
+import com.data_management.DataStorage;
+import com.data_management.FileDataReader;
+import com.data_management.FileFollower;
+import com.data_management.RecordType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for following growing files with {@link FileFollower}.
+ */
+class FileFollowerTest {
+
+    @TempDir
+    Path directory;
+
+    private DataStorage storage;
+
+    /**
+     * Sets up the test environment before each test.
+     */
+    @BeforeEach
+    void setUp() {
+        storage = DataStorage.getInstance();
+        storage.clear();
+    }
+
+    /**
+     * Clears the storage after each test.
+     */
+    @AfterEach
+    void tearDown() {
+        storage.clear();
+    }
+
+    /**
+     * Tests that every poll stores only the lines appended since the last one and leaves an incomplete last line
+     * uncommitted until it is complete.
+     *
+     * @throws IOException If the file cannot be written or read.
+     */
+    @Test
+    void testFollowsAppendedLines() throws IOException {
+        Path file = directory.resolve("data.txt");
+        String first = "1, 70.0, HeartRate, 1000\n1, 71.0, HeartRate, 2000\n";
+        append(file, first + "1, 72.0, Heart");
+
+        try (FileFollower follower = new FileFollower(file, storage)) {
+            assertEquals(2, follower.poll());
+            assertEquals(first.length(), follower.getOffset(file));
+            assertEquals(0, follower.poll());
+
+            append(file, "Rate, 3000\r\n2, 120.0, BloodPressure, 3000\n");
+            assertEquals(2, follower.poll());
+            assertEquals(Files.size(file), follower.getOffset(file));
+        }
+        assertEquals(3, storage.getRecords(1, 0, Long.MAX_VALUE).size());
+        assertEquals(72.0, storage.getRecords(1, 3000, 3000).get(0).getMeasurementValue());
+        assertEquals(1, storage.getRecords(2, 0, Long.MAX_VALUE).size());
+    }
+
+    /**
+     * Tests that the rest of a rotated file is read before the new file at its path, and that a truncated file is
+     * read again from its start.
+     *
+     * @throws IOException If the file cannot be written or read.
+     */
+    @Test
+    void testRotationAndTruncation() throws IOException {
+        Path file = directory.resolve("data.txt");
+        append(file, "1, 70.0, HeartRate, 1000\n");
+
+        try (FileFollower follower = new FileFollower(file, storage)) {
+            assertEquals(1, follower.poll());
+            append(file, "1, 71.0, HeartRate, 2000\n");
+            Files.move(file, directory.resolve("data.txt.1"));
+            append(file, "1, 72.0, HeartRate, 3000\n1, 73.0, HeartRate, 4000\n");
+
+            assertEquals(3, follower.poll());
+            assertEquals(1, follower.getRotationCount());
+            assertEquals(4, storage.getRecords(1, 0, Long.MAX_VALUE).size());
+
+            Files.write(file, "2, 90.0, Saturation, 5000\n".getBytes(StandardCharsets.US_ASCII),
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            assertEquals(1, follower.poll());
+            assertEquals(1, follower.getTruncationCount());
+            assertEquals(1, storage.getRecords(2, 0, Long.MAX_VALUE).size());
+        }
+    }
+
+    /**
+     * Tests that every file of a directory is followed, including files created later,
+     * and that malformed lines are skipped.
+     *
+     * @throws IOException If a file cannot be written or read.
+     */
+    @Test
+    void testDirectoryWithMalformedLines() throws IOException {
+        append(directory.resolve("a.txt"), "1, 70.0, HeartRate, 1000\n");
+        append(directory.resolve("b.txt"), "2, 80.0, HeartRate, 1000\n2, x, HeartRate, 2000\n2, NaN, HeartRate, 3000\n"
+                + "2, 82.0, HeartRate, 4000\n");
+
+        try (FileFollower follower = new FileFollower(directory, storage)) {
+            assertEquals(3, follower.poll());
+            assertEquals(2, follower.getSkippedLineCount());
+
+            append(directory.resolve("c.txt"), "3, 90.0, HeartRate, 1000\n");
+            assertEquals(1, follower.poll());
+        }
+        assertEquals(2, storage.getRecords(2, 0, Long.MAX_VALUE).size());
+        assertEquals(1, storage.getRecords(3, 0, Long.MAX_VALUE).size());
+    }
+
+    /**
+     * Tests that the output directory of {@link FileOutputStrategy} is followed, skipping the alert file.
+     *
+     * @throws IOException If a file cannot be written or read.
+     */
+    @Test
+    void testFollowsOutputDirectory() throws IOException {
+        FileOutputStrategy output = new FileOutputStrategy(directory.toString());
+        output.output(1, 1000, "Saturation", "97.0%");
+        output.output(1, 1000, "Alert", "triggered");
+
+        try (FileFollower follower = new FileFollower(directory, storage)) {
+            assertEquals(1, follower.poll());
+            output.output(1, 2000, "Saturation", "96.0%");
+            output.output(1, 2000, "Alert", "resolved");
+            output.output(1, 2000, "ECG", "0.25");
+            assertEquals(2, follower.poll());
+            assertEquals(0, follower.getSkippedLineCount());
+        }
+        assertEquals(96.0, storage.getRecords(1, RecordType.BLOOD_OXYGEN_SATURATION, 2000, 2000).get(0)
+                .getMeasurementValue());
+        assertEquals(3, storage.getRecords(1, 0, Long.MAX_VALUE).size());
+    }
+
+    /**
+     * Tests that connectAndReadData follows the file on a background thread until the reader is stopped.
+     *
+     * @throws Exception If the file cannot be written or read, or the test is interrupted.
+     */
+    @Test
+    void testConnectAndReadDataFollowsInBackground() throws Exception {
+        Path file = directory.resolve("data.txt");
+        append(file, "1, 70.0, HeartRate, 1000\n");
+        FileDataReader reader = new FileDataReader(file.toString());
+
+        reader.connectAndReadData(storage);
+        try {
+            assertThrows(IllegalStateException.class, () -> reader.connectAndReadData(storage));
+            append(file, "1, 71.0, HeartRate, 2000\n");
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (storage.getRecords(1, 0, Long.MAX_VALUE).size() < 2 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(2, storage.getRecords(1, 0, Long.MAX_VALUE).size());
+        } finally {
+            reader.stop();
+        }
+        assertNull(reader.getFollower());
+    }
+
+    private static void append(Path file, String text) throws IOException {
+        Files.write(file, text.getBytes(StandardCharsets.US_ASCII), StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND);
+    }
+}
@@ -0,0 +1,80 @@
+package data_management;
+
+import com.data_management.DataStorage;
+import com.data_management.FileDataReader;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * File ingest benchmark for {@link FileDataReader}.
+ * Not a unit test: run it with {@code main} to print MB/s for the sequential reader and for the parallel,
+ * memory-mapped reader from 2 threads up to the number of available processors. The file holds heart rate,
+ * blood pressure and saturation lines for a few hundred patients in time order, like a replay of the
+ * simulator's output; the first argument sets its number of lines. Every round reads the whole file into an
+ * empty storage.
+ */
+public class FileIngestBenchmark {
+
+    private static final int DEFAULT_LINES = 3_000_000;
+    private static final int PATIENTS = 500;
+    private static final int ROUNDS = 3;
+
+    /**
+     * Writes the data file and reads it with every configuration, keeping the fastest of several rounds.
+     *
+     * @param args An optional number of lines for the data file.
+     * @throws IOException If the file cannot be written or read.
+     */
+    public static void main(String[] args) throws IOException {
+        int lines = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_LINES;
+        Path file = Files.createTempFile("file-ingest", ".txt");
+        try {
+            writeFile(file, lines);
+            double megabytes = Files.size(file) / (1024.0 * 1024.0);
+            System.out.printf("%,d lines, %.1f MB, %d processors%n", lines, megabytes,
+                    Runtime.getRuntime().availableProcessors());
+            System.out.printf("%-12s %10s %14s%n", "mode", "MB/s", "lines/s");
+            DataStorage storage = DataStorage.getInstance();
+            double seconds = run(storage, new FileDataReader(file.toString()));
+            System.out.printf("%-12s %10.1f %,14.0f%n", "sequential", megabytes / seconds, lines / seconds);
+            int maxThreads = Math.max(2, Runtime.getRuntime().availableProcessors());
+            for (int threads = 2; threads <= maxThreads; threads *= 2) {
+                seconds = run(storage, new FileDataReader(file.toString(), threads));
+                System.out.printf("%-12s %10.1f %,14.0f%n", threads + " threads", megabytes / seconds, lines / seconds);
+            }
+            storage.clear();
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static double run(DataStorage storage, FileDataReader reader) throws IOException {
+        double best = Double.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            storage.clear();
+            long begin = System.nanoTime();
+            reader.readData(storage);
+            best = Math.min(best, (System.nanoTime() - begin) / 1e9);
+        }
+        return best;
+    }
+
+    private static void writeFile(Path file, int lines) throws IOException {
+        String[] labels = {"HeartRate", "BloodPressure", "BloodOxygenSaturation"};
+        double[] baselines = {72.0, 120.0, 97.0};
+        long start = 1_700_000_000_000L;
+        try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+            for (int i = 0; i < lines; i++) {
+                int type = i % labels.length;
+                int patientId = i / labels.length % PATIENTS + 1;
+                long timestamp = start + (i / (labels.length * PATIENTS)) * 1000L;
+                double value = baselines[type] + (i * 7 % 11) - 5;
+                writer.write(patientId + ", " + value + ", " + labels[type] + ", " + timestamp);
+                writer.newLine();
+            }
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package data_management;
+
+import com.data_management.DataStorage;
+import com.data_management.MappedTimeSeries;
+import com.data_management.PatientRecord;
+import com.data_management.RetentionPolicy;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the {@link MappedTimeSeries} class and off-heap {@link DataStorage}.
+ */
+class MappedTimeSeriesTest {
+
+    @TempDir
+    Path directory;
+
+    /**
+     * Tests that samples spanning several segments, including late ones, are stored sorted by timestamp.
+     */
+    @Test
+    void testSamplesSpanSegmentsInOrder() {
+        MappedTimeSeries series = new MappedTimeSeries(directory.resolve("series"), 4, RetentionPolicy.UNBOUNDED);
+        for (int i = 0; i < 10; i++) {
+            series.add(i * 10L, i);
+        }
+        series.add(35, 3.5);
+
+        assertEquals(11, series.size());
+        assertEquals(3, series.getSegmentCount());
+        assertEquals(35, series.getTimestamp(4));
+        assertEquals(3.5, series.getValue(4));
+        assertEquals(40, series.getTimestamp(5));
+        assertEquals(4, series.lowerBound(35));
+        assertEquals(6, series.upperBound(40));
+        assertArrayEquals(new long[]{30, 35, 40}, series.copyTimestamps(3, 6));
+        series.close();
+    }
+
+    /**
+     * Tests that retention releases whole segments and deletes their files.
+     *
+     * @throws IOException If the series directory cannot be listed.
+     */
+    @Test
+    void testRetentionReleasesSegments() throws IOException {
+        Path seriesDirectory = directory.resolve("series");
+        MappedTimeSeries series = new MappedTimeSeries(seriesDirectory, 4, new RetentionPolicy(6, 0));
+        for (int i = 0; i < 20; i++) {
+            series.add(i, i);
+        }
+
+        assertEquals(6, series.size());
+        assertEquals(14, series.getEvictedCount());
+        assertEquals(14, series.getTimestamp(0));
+        assertEquals(19.0, series.getValue(5));
+        assertEquals(2, series.getSegmentCount());
+        assertEquals(2, countFiles(seriesDirectory));
+
+        series.close();
+        assertFalse(Files.exists(seriesDirectory), "Closing the series should delete its files");
+    }
+
+    /**
+     * Tests that the storage keeps new series off-heap and still answers range queries.
+     *
+     * @throws IOException If the storage directory cannot be created or listed.
+     */
+    @Test
+    void testOffHeapStorage() throws IOException {
+        DataStorage storage = DataStorage.getInstance();
+        storage.clear();
+        storage.useOffHeapStorage(directory, 8);
+        try {
+            for (int i = 0; i < 20; i++) {
+                storage.addPatientData(1, 70 + i, "HeartRate", 1000L + 2 * i);
+            }
+            storage.addPatientData(1, 98.0, "BloodOxygenSaturation", 1005L);
+
+            List<PatientRecord> records = storage.getRecords(1, 1004L, 1006L);
+            assertEquals(3, records.size());
+            assertEquals("BloodOxygenSaturation", records.get(1).getRecordType());
+            assertEquals(73.0, records.get(2).getMeasurementValue());
+            assertEquals(2, countFiles(directory));
+
+            storage.clear();
+            assertEquals(0, countFiles(directory), "Clearing the storage should release the mapped files");
+        } finally {
+            storage.useHeapStorage();
+            storage.clear();
+        }
+    }
+
+    private static long countFiles(Path path) throws IOException {
+        try (Stream<Path> files = Files.list(path)) {
+            return files.count();
+        }
+    }
+}
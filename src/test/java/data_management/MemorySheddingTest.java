@@ -0,0 +1,172 @@
+package data_management;
+
+import com.data_management.DataStorage;
+import com.data_management.MemoryPressureMonitor;
+import com.data_management.RecordType;
+import com.data_management.RollupBucket;
+import com.data_management.RollupTier;
+import com.data_management.SheddingReport;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.management.Notification;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for shedding history from {@link DataStorage} under memory pressure.
+ */
+class MemorySheddingTest {
+
+    private static final long START = 1_700_006_400_000L;
+    private static final long HOUR = 3_600_000L;
+    private static final long PROTECTED = HOUR / 2;
+    private static final int SAMPLES = 7_200;
+
+    private DataStorage storage;
+
+    /**
+     * Sets up the test environment before each test.
+     */
+    @BeforeEach
+    void setUp() {
+        storage = DataStorage.getInstance();
+        storage.clear();
+        storage.setAggregationWindow(RecordType.HEART_RATE, HOUR);
+        storage.setRollupTiers(RecordType.HEART_RATE, RollupTier.STANDARD_TIERS);
+    }
+
+    /**
+     * Restores the default tiers and window and stops shedding after each test.
+     */
+    @AfterEach
+    void tearDown() {
+        storage.disableMemoryPressureShedding();
+        storage.setAggregationWindow(RecordType.HEART_RATE, 0);
+        storage.setRollupTiers(RecordType.HEART_RATE, Collections.emptyList());
+        storage.clear();
+    }
+
+    /**
+     * Tests that downsampling drops only raw samples the rollups still hold and keeps the protected window,
+     * the rolling window and every rollup bucket.
+     */
+    @Test
+    void testDownsampleKeepsRollupsAndProtectedWindow() {
+        addTwoHours();
+        long newest = START + (SAMPLES - 1) * 1000L;
+        int windowCount = storage.getWindowStatistics(1, RecordType.HEART_RATE, HOUR, newest).getCount();
+
+        SheddingReport report = storage.shedMemory(SheddingReport.Stage.DOWNSAMPLE, PROTECTED);
+
+        assertEquals(SAMPLES - 1_801, report.getShedSampleCount());
+        assertEquals(0, report.getShedBucketCount());
+        assertEquals(1, report.getAffectedSeriesCount());
+        assertEquals(1_801, storage.getRecords(1, RecordType.HEART_RATE, START, newest).size());
+        assertEquals(newest - PROTECTED, storage.getRecords(1, RecordType.HEART_RATE, START, newest).get(0).getTimestamp());
+        assertEquals(windowCount, storage.getWindowStatistics(1, RecordType.HEART_RATE, HOUR, newest).getCount());
+        assertEquals(SAMPLES, count(storage.getRollup(1, RecordType.HEART_RATE, START, newest, 60_000L)));
+        assertEquals(SAMPLES - 1_801, storage.getEvictedSampleCount(RecordType.HEART_RATE));
+
+        assertEquals(0, storage.shedMemory(SheddingReport.Stage.DOWNSAMPLE, PROTECTED).getAffectedSeriesCount());
+    }
+
+    /**
+     * Tests that series without rollups are only shed once shedding escalates to trimming.
+     */
+    @Test
+    void testSeriesWithoutRollupsOnlyTrimmed() {
+        storage.setRollupTiers(RecordType.HEART_RATE, Collections.emptyList());
+        addTwoHours();
+
+        assertEquals(0, storage.shedMemory(SheddingReport.Stage.DOWNSAMPLE, PROTECTED).getShedSampleCount());
+        SheddingReport report = storage.shedMemory(SheddingReport.Stage.TRIM, PROTECTED);
+
+        assertEquals(SAMPLES - 1_801, report.getShedSampleCount());
+        assertEquals(1_801, storage.getRecords(1, RecordType.HEART_RATE, 0, Long.MAX_VALUE).size());
+    }
+
+    /**
+     * Tests that every trimming pass drops the older half of the rollup buckets before the protected window,
+     * while the buckets overlapping the protected window stay complete.
+     */
+    @Test
+    void testTrimHalvesOldRollups() {
+        addTwoHours();
+        long newest = START + (SAMPLES - 1) * 1000L;
+        long cutoff = newest - PROTECTED;
+
+        SheddingReport first = storage.shedMemory(SheddingReport.Stage.TRIM, PROTECTED);
+        SheddingReport second = storage.shedMemory(SheddingReport.Stage.TRIM, PROTECTED);
+
+        assertEquals(SAMPLES - 1_801, first.getShedSampleCount());
+        // 900 of 1799 one-second, 45 of 89 one-minute and 1 of 1 one-hour buckets end before the cutoff.
+        assertEquals(946, first.getShedBucketCount());
+        assertEquals(0, second.getShedSampleCount());
+        assertEquals(450 + 22, second.getShedBucketCount());
+        List<RollupBucket> recent = storage.getRollup(1, RecordType.HEART_RATE, cutoff, newest, 1_000L);
+        assertEquals(1_801, count(recent));
+        assertEquals(1_801, recent.size());
+    }
+
+    /**
+     * Tests that threshold notifications run a downsampling pass first and escalate to trimming while pressure
+     * persists, and that disabling restores the pool thresholds.
+     *
+     * @throws InterruptedException If the test is interrupted while waiting for a pass.
+     */
+    @Test
+    void testMonitorEscalates() throws InterruptedException {
+        List<Long> thresholds = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            thresholds.add(pool.isCollectionUsageThresholdSupported() ? pool.getCollectionUsageThreshold() : -1);
+        }
+        storage.enableMemoryPressureShedding(0.99, PROTECTED);
+        assertThrows(IllegalStateException.class, () -> storage.enableMemoryPressureShedding(0.99, PROTECTED));
+        addTwoHours();
+        MemoryPressureMonitor monitor = storage.getMemoryPressureMonitor();
+        Notification pressure = new Notification(MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED, this, 1);
+
+        monitor.handleNotification(pressure, null);
+        assertTrue(monitor.awaitIdle(10_000));
+        assertEquals(SheddingReport.Stage.DOWNSAMPLE, monitor.getLastReport().getStage());
+        assertEquals(SAMPLES - 1_801, monitor.getShedSampleCount());
+
+        monitor.handleNotification(pressure, null);
+        assertTrue(monitor.awaitIdle(10_000));
+        assertEquals(SheddingReport.Stage.TRIM, monitor.getLastReport().getStage());
+        assertTrue(monitor.getShedBucketCount() > 0);
+        assertEquals(2, monitor.getNotificationCount());
+        assertEquals(2, monitor.getPassCount());
+
+        storage.disableMemoryPressureShedding();
+        assertNull(storage.getMemoryPressureMonitor());
+        List<MemoryPoolMXBean> pools = ManagementFactory.getMemoryPoolMXBeans();
+        for (int i = 0; i < pools.size(); i++) {
+            if (pools.get(i).isCollectionUsageThresholdSupported()) {
+                assertEquals((long) thresholds.get(i), pools.get(i).getCollectionUsageThreshold());
+            }
+        }
+    }
+
+    private void addTwoHours() {
+        for (int i = 0; i < SAMPLES; i++) {
+            storage.addPatientData(1, 60 + i % 40, RecordType.HEART_RATE, START + i * 1000L);
+        }
+    }
+
+    private static int count(List<RollupBucket> buckets) {
+        int count = 0;
+        for (RollupBucket bucket : buckets) {
+            count += bucket.getCount();
+        }
+        return count;
+    }
+}
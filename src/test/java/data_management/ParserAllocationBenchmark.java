@@ -0,0 +1,101 @@
+package data_management;
+
+import com.data_management.RecordParser;
+import com.data_management.RecordType;
+import com.data_management.SampleBatch;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Allocation benchmark for {@link RecordParser}.
+ * Not a unit test: run it with {@code main} to print the bytes allocated and the time spent per line when parsing
+ * the same lines with the former {@code split}/{@code trim} parsing and with the byte-level parser. Allocations
+ * are measured with the HotSpot per-thread allocation counter, so the numbers need a HotSpot-based JVM.
+ * The first argument sets the number of lines.
+ */
+public class ParserAllocationBenchmark {
+
+    private static final int DEFAULT_LINES = 1_000_000;
+    private static final int PATIENTS = 500;
+    private static final int ROUNDS = 5;
+
+    /**
+     * Parses the lines with both parsers, keeping the fastest of several rounds after a warm-up.
+     *
+     * @param args An optional number of lines.
+     */
+    public static void main(String[] args) {
+        int lines = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_LINES;
+        String text = lines(lines);
+        byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+        String[] split = text.split("\n");
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length).put(bytes);
+        SampleBatch batch = new SampleBatch(lines);
+        RecordParser parser = new RecordParser();
+
+        System.out.printf("%,d lines%n", lines);
+        System.out.printf("%-12s %12s %10s%n", "parser", "bytes/line", "ns/line");
+        long[] best = {Long.MAX_VALUE, Long.MAX_VALUE};
+        for (int round = 0; round < ROUNDS; round++) {
+            measure(best, lines, () -> {
+                batch.clear();
+                for (String line : split) {
+                    parseSplit(line, batch);
+                }
+            });
+        }
+        print("split", best, lines);
+        best = new long[]{Long.MAX_VALUE, Long.MAX_VALUE};
+        for (int round = 0; round < ROUNDS; round++) {
+            measure(best, lines, () -> {
+                batch.clear();
+                parser.parseLines(buffer, 0, bytes.length, batch);
+            });
+        }
+        print("RecordParser", best, lines);
+    }
+
+    private static void measure(long[] best, int lines, Runnable parse) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        long allocatedBefore = threads.getThreadAllocatedBytes(thread);
+        long begin = System.nanoTime();
+        parse.run();
+        long nanos = System.nanoTime() - begin;
+        long allocated = threads.getThreadAllocatedBytes(thread) - allocatedBefore;
+        best[0] = Math.min(best[0], allocated);
+        best[1] = Math.min(best[1], nanos);
+    }
+
+    private static void print(String name, long[] best, int lines) {
+        System.out.printf("%-12s %12.1f %10.1f%n", name, (double) best[0] / lines, (double) best[1] / lines);
+    }
+
+    // The parsing FileDataReader and WebSocketDataReader did before RecordParser.
+    private static void parseSplit(String line, SampleBatch batch) {
+        String[] parts = line.split(",");
+        int patientId = Integer.parseInt(parts[0].trim());
+        double measurementValue = Double.parseDouble(parts[1].trim());
+        RecordType recordType = RecordType.of(parts[2].trim());
+        long timestamp = Long.parseLong(parts[3].trim());
+        batch.add(patientId, measurementValue, recordType, timestamp);
+    }
+
+    private static String lines(int lines) {
+        String[] labels = {"HeartRate", "BloodPressure", "BloodOxygenSaturation"};
+        double[] baselines = {72.0, 120.0, 97.0};
+        long start = 1_700_000_000_000L;
+        StringBuilder text = new StringBuilder(lines * 48);
+        for (int i = 0; i < lines; i++) {
+            int type = i % labels.length;
+            int patientId = i / labels.length % PATIENTS + 1;
+            long timestamp = start + (i / (labels.length * PATIENTS)) * 1000L;
+            double value = baselines[type] + (i * 7 % 11) - 5 + (i % 10) / 10.0;
+            text.append(patientId).append(", ").append(value).append(", ").append(labels[type])
+                    .append(", ").append(timestamp).append('\n');
+        }
+        return text.toString();
+    }
+}
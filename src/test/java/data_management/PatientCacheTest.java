@@ -0,0 +1,314 @@
+package data_management;
+
+import com.data_management.DataStorage;
+import com.data_management.Patient;
+import com.data_management.PatientCache;
+import com.data_management.PatientRecord;
+import com.data_management.RecordType;
+import com.data_management.RetentionPolicy;
+import com.data_management.RollupBucket;
+import com.data_management.RollupTier;
+import com.data_management.StorageSnapshot;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for unloading inactive patients through the {@link PatientCache} of {@link DataStorage}.
+ */
+class PatientCacheTest {
+
+    @TempDir
+    Path directory;
+
+    private DataStorage storage;
+
+    /**
+     * Starts every test with an empty storage.
+     */
+    @BeforeEach
+    void setUp() {
+        storage = DataStorage.getInstance();
+        storage.clear();
+    }
+
+    /**
+     * Turns unloading off again and drops the patients of the test.
+     *
+     * @throws IOException If the write-ahead log cannot be closed.
+     */
+    @AfterEach
+    void tearDown() throws IOException {
+        storage.disablePatientUnloading();
+        storage.disableDurability();
+        storage.setRetentionPolicy(RecordType.HEART_RATE, RetentionPolicy.UNBOUNDED);
+        storage.setRollupTiers(RecordType.HEART_RATE, Collections.emptyList());
+        storage.setDeduplication(RecordType.HEART_RATE, false);
+        storage.useHeapStorage();
+        storage.clear();
+    }
+
+    /**
+     * Tests that idle patients are written to archives and read back unchanged on their next access.
+     *
+     * @throws IOException If an archive cannot be written or the directory cannot be listed.
+     */
+    @Test
+    void testIdlePatientsUnloadAndReload() throws IOException {
+        storage.enablePatientUnloading(directory, 0, 100, 0);
+        for (int patientId = 1; patientId <= 3; patientId++) {
+            for (int i = 0; i < 6_000; i++) {
+                storage.addPatientData(patientId, 60 + i % 40, RecordType.HEART_RATE, i * 1000L);
+                if (i % 10 == 0) {
+                    storage.addPatientData(patientId, 95 + i % 5, RecordType.BLOOD_OXYGEN_SATURATION, i * 1000L + 1);
+                }
+            }
+        }
+        List<PatientRecord> before = storage.getRecords(2, 0, Long.MAX_VALUE);
+
+        assertEquals(3, storage.unloadInactivePatients());
+        assertEquals(0, storage.unloadInactivePatients());
+        for (Patient patient : storage.getAllPatients()) {
+            assertFalse(patient.isLoaded());
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(3, files.count());
+        }
+
+        List<PatientRecord> after = storage.getRecords(2, 0, Long.MAX_VALUE);
+        assertEquals(before.size(), after.size());
+        for (int i = 0; i < before.size(); i++) {
+            assertEquals(before.get(i).getTimestamp(), after.get(i).getTimestamp());
+            assertEquals(before.get(i).getMeasurementValue(), after.get(i).getMeasurementValue());
+            assertEquals(before.get(i).getRecordType(), after.get(i).getRecordType());
+        }
+        PatientCache cache = storage.getPatientCache();
+        assertEquals(1, cache.getMissCount());
+        assertEquals(3, cache.getUnloadCount());
+        assertTrue(cache.getMaxLoadNanos() > 0);
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(2, files.count());
+        }
+    }
+
+    /**
+     * Tests that the least recently used patients are unloaded once more patients are loaded than the bound.
+     *
+     * @throws IOException If an archive cannot be written.
+     */
+    @Test
+    void testLeastRecentlyUsedPatientsUnloaded() throws IOException {
+        storage.enablePatientUnloading(directory, 3_600_000L, 2, 0);
+        for (int patientId = 1; patientId <= 4; patientId++) {
+            storage.addPatientData(patientId, 70, RecordType.HEART_RATE, 1000L);
+        }
+        assertEquals(2, storage.unloadInactivePatients());
+        storage.getRecords(3, 0, Long.MAX_VALUE);
+        storage.getRecords(1, 0, Long.MAX_VALUE);
+
+        storage.unloadInactivePatients();
+        for (Patient patient : storage.getAllPatients()) {
+            int patientId = patient.getPatientId();
+            assertEquals(patientId == 1 || patientId == 3, patient.isLoaded(), "patient " + patientId);
+        }
+        assertEquals(2, storage.getPatientCache().getLoadedPatientCount());
+        assertEquals(1, storage.getRecords(4, 0, Long.MAX_VALUE).size());
+    }
+
+    /**
+     * Tests that no sample is lost while a patient is repeatedly unloaded and loaded during ingest and reads.
+     *
+     * @throws Exception If the writer thread fails.
+     */
+    @Test
+    void testUnloadDuringIngest() throws Exception {
+        storage.enablePatientUnloading(directory, 0, 0, 0);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread writer = new Thread(() -> {
+            try {
+                for (int i = 0; i < 20_000; i++) {
+                    storage.addPatientData(1, i % 100, RecordType.HEART_RATE, i);
+                }
+            } catch (Throwable t) {
+                failure.set(t);
+            }
+        });
+        writer.start();
+        while (writer.isAlive()) {
+            storage.unloadInactivePatients();
+            List<PatientRecord> records = storage.getRecords(1, RecordType.HEART_RATE, 0, Long.MAX_VALUE);
+            for (int i = 0; i < records.size(); i++) {
+                assertEquals(i, records.get(i).getTimestamp());
+            }
+        }
+        writer.join();
+
+        assertNull(failure.get());
+        assertEquals(20_000, storage.getRecords(1, RecordType.HEART_RATE, 0, Long.MAX_VALUE).size());
+    }
+
+    /**
+     * Tests that patients added before unloading was enabled count as accessed when it was enabled.
+     *
+     * @throws IOException If an archive cannot be written.
+     */
+    @Test
+    void testExistingPatientsNotIdleWhenEnabled() throws IOException {
+        for (int patientId = 1; patientId <= 3; patientId++) {
+            storage.addPatientData(patientId, 70, RecordType.HEART_RATE, 1000L);
+        }
+        storage.enablePatientUnloading(directory, 3_600_000L, 100, 0);
+
+        assertEquals(0, storage.unloadInactivePatients());
+        for (Patient patient : storage.getAllPatients()) {
+            assertTrue(patient.isLoaded());
+        }
+    }
+
+    /**
+     * Tests that changing a retention policy leaves unloaded patients unloaded and applies the policy on load.
+     *
+     * @throws IOException If an archive cannot be written.
+     */
+    @Test
+    void testRetentionPolicyAppliedOnLoad() throws IOException {
+        storage.enablePatientUnloading(directory, 0, 100, 0);
+        for (int i = 0; i < 1_000; i++) {
+            storage.addPatientData(1, 70, RecordType.HEART_RATE, i * 1000L);
+        }
+        assertEquals(1, storage.unloadInactivePatients());
+
+        storage.setRetentionPolicy(RecordType.HEART_RATE, new RetentionPolicy(100, 0));
+        Patient patient = storage.getAllPatients().get(0);
+        assertFalse(patient.isLoaded());
+
+        List<PatientRecord> records = storage.getRecords(1, RecordType.HEART_RATE, 0, Long.MAX_VALUE);
+        assertTrue(patient.isLoaded());
+        assertEquals(100, records.size());
+        assertEquals(900_000L, records.get(0).getTimestamp());
+    }
+
+    /**
+     * Tests that a snapshot reads unloaded off-heap patients from their archives without creating segment files.
+     *
+     * @throws IOException If an archive, segment or snapshot cannot be written.
+     */
+    @Test
+    void testSnapshotOfUnloadedOffHeapPatients() throws IOException {
+        Path segments = directory.resolve("segments");
+        Path log = directory.resolve("log");
+        storage.useOffHeapStorage(segments, 256);
+        storage.enableDurability(log, 0, 0);
+        storage.enablePatientUnloading(directory.resolve("archives"), 0, 100, 0);
+        for (int patientId = 1; patientId <= 2; patientId++) {
+            for (int i = 0; i < 1_000; i++) {
+                storage.addPatientData(patientId, i % 90, RecordType.HEART_RATE, i * 1000L);
+            }
+        }
+        assertEquals(2, storage.unloadInactivePatients());
+        try (Stream<Path> files = Files.list(segments)) {
+            assertEquals(0, files.count());
+        }
+
+        storage.snapshot();
+
+        try (Stream<Path> files = Files.list(segments)) {
+            assertEquals(0, files.count(), "A snapshot must not create segment files for unloaded patients");
+        }
+        StorageSnapshot snapshot = StorageSnapshot.loadLatest(log);
+        assertEquals(2, snapshot.getSeries().size());
+        for (StorageSnapshot.SeriesData series : snapshot.getSeries()) {
+            assertEquals(1_000, series.getTimestamps().length);
+            assertEquals(999.0 % 90, series.getValues()[999]);
+        }
+        for (Patient patient : storage.getAllPatients()) {
+            assertFalse(patient.isLoaded());
+        }
+        List<PatientRecord> records = storage.getRecords(2, RecordType.HEART_RATE, 0, Long.MAX_VALUE);
+        assertEquals(1_000, records.size());
+        assertEquals(999_000L, records.get(999).getTimestamp());
+    }
+
+    /**
+     * Tests that rollup buckets older than the raw samples and the counters of dropped samples survive
+     * an unload/load cycle, and that the counters are read without loading the patient.
+     *
+     * @throws IOException If an archive cannot be written.
+     */
+    @Test
+    void testRollupsAndCountersSurviveUnload() throws IOException {
+        storage.setRetentionPolicy(RecordType.HEART_RATE, new RetentionPolicy(10, 0));
+        storage.setRollupTiers(RecordType.HEART_RATE, Collections.singletonList(new RollupTier(60_000L, 100)));
+        storage.setDeduplication(RecordType.HEART_RATE, true);
+        storage.enablePatientUnloading(directory, 0, 100, 0);
+        for (int i = 0; i < 600; i++) {
+            storage.addPatientData(1, 60 + i % 40, RecordType.HEART_RATE, i * 1000L);
+        }
+        storage.addPatientData(1, 60 + 599 % 40, RecordType.HEART_RATE, 599_000L);
+        List<RollupBucket> before = storage.getRollup(1, RecordType.HEART_RATE, 0, Long.MAX_VALUE, 60_000L);
+        assertEquals(10, before.size());
+        assertEquals(590, storage.getEvictedSampleCount(RecordType.HEART_RATE));
+        assertEquals(1, storage.getDuplicateSampleCount(RecordType.HEART_RATE));
+
+        assertEquals(1, storage.unloadInactivePatients());
+        Patient patient = storage.getAllPatients().get(0);
+        assertEquals(590, storage.getEvictedSampleCount(RecordType.HEART_RATE));
+        assertEquals(1, storage.getDuplicateSampleCount(RecordType.HEART_RATE));
+        assertFalse(patient.isLoaded());
+
+        List<RollupBucket> after = storage.getRollup(1, RecordType.HEART_RATE, 0, Long.MAX_VALUE, 60_000L);
+        assertTrue(patient.isLoaded());
+        assertEquals(before.size(), after.size());
+        for (int i = 0; i < before.size(); i++) {
+            assertEquals(before.get(i).getStartTime(), after.get(i).getStartTime());
+            assertEquals(before.get(i).getCount(), after.get(i).getCount());
+            assertEquals(before.get(i).getMin(), after.get(i).getMin());
+            assertEquals(before.get(i).getMax(), after.get(i).getMax());
+            assertEquals(before.get(i).getSum(), after.get(i).getSum());
+        }
+        assertEquals(590, storage.getEvictedSampleCount(RecordType.HEART_RATE));
+        assertEquals(1, storage.getDuplicateSampleCount(RecordType.HEART_RATE));
+
+        storage.addPatientData(1, 70, RecordType.HEART_RATE, 600_000L);
+        assertEquals(591, storage.getEvictedSampleCount());
+        assertEquals(11, storage.getRollup(1, RecordType.HEART_RATE, 0, Long.MAX_VALUE, 60_000L).size());
+    }
+
+    /**
+     * Tests that reading counters keeps patients unloaded and that loads by cohort queries count as misses.
+     *
+     * @throws IOException If an archive cannot be written.
+     */
+    @Test
+    void testQueryLoadsCountAsMisses() throws IOException {
+        storage.enablePatientUnloading(directory, 0, 100, 0);
+        for (int patientId = 1; patientId <= 3; patientId++) {
+            storage.addPatientData(patientId, 70, RecordType.HEART_RATE, 1000L);
+        }
+        assertEquals(3, storage.unloadInactivePatients());
+
+        assertEquals(0, storage.getEvictedSampleCount());
+        for (Patient patient : storage.getAllPatients()) {
+            assertFalse(patient.isLoaded());
+        }
+        PatientCache cache = storage.getPatientCache();
+        assertEquals(0, cache.getMissCount());
+
+        assertEquals(3, storage.getCohortStatistics(RecordType.HEART_RATE, 60_000L, 1000L).getCount());
+        for (Patient patient : storage.getAllPatients()) {
+            assertTrue(patient.isLoaded());
+        }
+        assertEquals(3, cache.getMissCount());
+    }
+}
@@ -0,0 +1,127 @@
+package data_management;
+
+import com.data_management.Patient;
+import com.data_management.PatientIndex;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Lookup and insert benchmark for {@link PatientIndex} against the {@code ConcurrentHashMap<Integer, Patient>}
+ * it replaced in {@link com.data_management.DataStorage}.
+ * Not a unit test: run it with {@code main} to print nanoseconds per operation at 1,000, 100,000 and
+ * 1,000,000 patients, once with the simulator's contiguous IDs 1..N and once with random IDs.
+ * The patients are created up front, so inserts only measure the map.
+ */
+public class PatientIndexBenchmark {
+
+    private static final int[] SIZES = {1_000, 100_000, 1_000_000};
+    private static final int LOOKUPS = 10_000_000;
+    private static final int ROUNDS = 5;
+
+    /**
+     * Runs every combination of map, size and ID layout, keeping the fastest of several rounds.
+     *
+     * @param args Command line arguments (unused).
+     */
+    public static void main(String[] args) {
+        System.out.printf("%-18s %10s %-10s %12s %12s%n", "map", "patients", "ids", "insert ns", "lookup ns");
+        for (int size : SIZES) {
+            for (boolean contiguous : new boolean[]{true, false}) {
+                int[] ids = ids(size, contiguous);
+                Patient[] patients = new Patient[size];
+                for (int i = 0; i < size; i++) {
+                    patients[i] = new Patient(ids[i]);
+                }
+                int[] probes = probes(ids);
+                String layout = contiguous ? "1..N" : "random";
+
+                double[] hashMap = {Double.MAX_VALUE, Double.MAX_VALUE};
+                double[] index = {Double.MAX_VALUE, Double.MAX_VALUE};
+                for (int round = 0; round < ROUNDS; round++) {
+                    min(hashMap, runHashMap(patients, probes));
+                    min(index, runIndex(patients, probes));
+                }
+                System.out.printf("%-18s %,10d %-10s %12.1f %12.1f%n", "ConcurrentHashMap", size, layout, hashMap[0], hashMap[1]);
+                System.out.printf("%-18s %,10d %-10s %12.1f %12.1f%n", "PatientIndex", size, layout, index[0], index[1]);
+            }
+        }
+    }
+
+    private static double[] runHashMap(Patient[] patients, int[] probes) {
+        ConcurrentMap<Integer, Patient> map = new ConcurrentHashMap<>();
+        long begin = System.nanoTime();
+        for (Patient patient : patients) {
+            map.computeIfAbsent(patient.getPatientId(), id -> patient);
+        }
+        double insert = (System.nanoTime() - begin) / (double) patients.length;
+
+        long checksum = 0;
+        begin = System.nanoTime();
+        for (int probe : probes) {
+            checksum += map.get(probe).getPatientId();
+        }
+        double lookup = (System.nanoTime() - begin) / (double) probes.length;
+        consume(checksum);
+        return new double[]{insert, lookup};
+    }
+
+    private static double[] runIndex(Patient[] patients, int[] probes) {
+        PatientIndex index = new PatientIndex();
+        long begin = System.nanoTime();
+        for (Patient patient : patients) {
+            index.computeIfAbsent(patient.getPatientId(), id -> patient);
+        }
+        double insert = (System.nanoTime() - begin) / (double) patients.length;
+
+        long checksum = 0;
+        begin = System.nanoTime();
+        for (int probe : probes) {
+            checksum += index.get(probe).getPatientId();
+        }
+        double lookup = (System.nanoTime() - begin) / (double) probes.length;
+        consume(checksum);
+        return new double[]{insert, lookup};
+    }
+
+    private static int[] ids(int size, boolean contiguous) {
+        int[] ids = new int[size];
+        Random random = new Random(size);
+        Set<Integer> seen = new HashSet<>();
+        for (int i = 0; i < size; i++) {
+            if (contiguous) {
+                ids[i] = i + 1;
+                continue;
+            }
+            int id;
+            do {
+                id = random.nextInt();
+            } while (!seen.add(id));
+            ids[i] = id;
+        }
+        return ids;
+    }
+
+    private static int[] probes(int[] ids) {
+        int[] probes = new int[LOOKUPS];
+        Random random = new Random(42);
+        for (int i = 0; i < LOOKUPS; i++) {
+            probes[i] = ids[random.nextInt(ids.length)];
+        }
+        return probes;
+    }
+
+    private static void min(double[] best, double[] round) {
+        best[0] = Math.min(best[0], round[0]);
+        best[1] = Math.min(best[1], round[1]);
+    }
+
+    private static void consume(long checksum) {
+        if (checksum == 42) {
+            System.out.println();
+        }
+    }
+}
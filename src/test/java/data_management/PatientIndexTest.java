@@ -0,0 +1,107 @@
+package data_management;
+
+import com.data_management.Patient;
+import com.data_management.PatientIndex;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the {@link PatientIndex} class.
+ */
+class PatientIndexTest {
+
+    /**
+     * Tests that contiguous, negative and large IDs are all found again, including IDs that were added
+     * to the table before the dense array grew over them.
+     */
+    @Test
+    void testLookupMatchesHashMap() {
+        PatientIndex index = new PatientIndex();
+        Map<Integer, Patient> expected = new HashMap<>();
+        Random random = new Random(7);
+        List<Integer> ids = new ArrayList<>();
+        for (int id = 1; id <= 5_000; id++) {
+            ids.add(id);
+        }
+        for (int i = 0; i < 5_000; i++) {
+            ids.add(random.nextInt());
+        }
+        ids.add(-1);
+        ids.add(Integer.MIN_VALUE);
+        ids.add(Integer.MAX_VALUE);
+        ids.add(1_500);
+        // IDs just beyond the dense array before it grows.
+        ids.add(0, 1_800);
+        ids.add(0, 3_000);
+
+        for (int id : ids) {
+            Patient patient = index.computeIfAbsent(id, Patient::new);
+            Patient previous = expected.putIfAbsent(id, patient);
+            if (previous != null) {
+                assertSame(previous, patient);
+            }
+        }
+
+        assertEquals(expected.size(), index.size());
+        assertEquals(expected.size(), index.toArray().length);
+        for (Map.Entry<Integer, Patient> entry : expected.entrySet()) {
+            assertSame(entry.getValue(), index.get(entry.getKey()));
+        }
+        assertNull(index.get(0));
+        assertNull(index.get(-2));
+        assertNull(index.get(9_999_999));
+    }
+
+    /**
+     * Tests that concurrent inserts of the same IDs create each patient exactly once.
+     */
+    @Test
+    void testConcurrentInsertCreatesOnce() throws InterruptedException {
+        PatientIndex index = new PatientIndex();
+        AtomicInteger created = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                for (int id = 0; id < 20_000; id++) {
+                    int patientId = id % 2 == 0 ? id : id * 7919;
+                    Patient patient = index.computeIfAbsent(patientId, newId -> {
+                        created.incrementAndGet();
+                        return new Patient(newId);
+                    });
+                    assertEquals(patientId, patient.getPatientId());
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(20_000, created.get());
+        assertEquals(20_000, index.size());
+    }
+
+    /**
+     * Tests that removing all patients returns them and leaves an empty index.
+     */
+    @Test
+    void testRemoveAll() {
+        PatientIndex index = new PatientIndex();
+        index.computeIfAbsent(1, Patient::new);
+        index.computeIfAbsent(-5, Patient::new);
+
+        assertEquals(2, index.removeAll().length);
+        assertEquals(0, index.size());
+        assertNull(index.get(1));
+        assertNull(index.get(-5));
+    }
+}
@@ -0,0 +1,185 @@
+package data_management;
+
+import com.data_management.RecordParser;
+import com.data_management.RecordType;
+import com.data_management.SampleBatch;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the byte-level {@link RecordParser}.
+ */
+class RecordParserTest {
+
+    /**
+     * Tests that whitespace around fields, CRLF endings, blank lines, signs and extra fields are handled,
+     * and that an unterminated line is left to the caller of parseLines.
+     */
+    @Test
+    void testParseLines() {
+        byte[] bytes = ("1, 72.5, HeartRate, 1700000000000\r\n"
+                + "\n"
+                + "  -2 ,+0.25,Saturation,\t1700000001000 ,extra\n"
+                + "3,1e2,BloodPressure,17").getBytes(StandardCharsets.US_ASCII);
+        RecordParser parser = new RecordParser();
+        SampleBatch batch = new SampleBatch(1);
+
+        int rest = parser.parseLines(ByteBuffer.wrap(bytes), 0, bytes.length, batch);
+
+        assertEquals(2, batch.size());
+        assertEquals(bytes.length - "3,1e2,BloodPressure,17".length(), rest);
+        assertEquals(1, batch.getPatientId(0));
+        assertEquals(72.5, batch.getValue(0));
+        assertEquals(RecordType.HEART_RATE.getCode(), batch.getTypeCode(0));
+        assertEquals(1_700_000_000_000L, batch.getTimestamp(0));
+        assertEquals(-2, batch.getPatientId(1));
+        assertEquals(0.25, batch.getValue(1));
+        assertEquals(RecordType.BLOOD_OXYGEN_SATURATION.getCode(), batch.getTypeCode(1));
+        assertEquals(1_700_000_001_000L, batch.getTimestamp(1));
+
+        assertTrue(parser.parseLine(ByteBuffer.wrap(bytes), rest, bytes.length, batch));
+        assertEquals(100.0, batch.getValue(2));
+        assertEquals(17L, batch.getTimestamp(2));
+    }
+
+    /**
+     * Tests that parsed values equal those of Double.parseDouble, including values outside the fast path.
+     */
+    @Test
+    void testValuesMatchDoubleParseDouble() {
+        Random random = new Random(22);
+        String[] texts = new String[2_000];
+        for (int i = 0; i < texts.length; i++) {
+            switch (i % 4) {
+                case 0:
+                    texts[i] = Double.toString(random.nextDouble() * 200);
+                    break;
+                case 1:
+                    texts[i] = String.format(Locale.ROOT, "%.2f", random.nextGaussian() * 1_000);
+                    break;
+                case 2:
+                    texts[i] = Double.toString(random.nextGaussian() * 1e-7);
+                    break;
+                default:
+                    texts[i] = Long.toString(random.nextLong()) + "." + Math.abs(random.nextInt());
+                    break;
+            }
+        }
+        StringBuilder input = new StringBuilder();
+        for (String text : texts) {
+            input.append("7,").append(text).append(",ECG,1\n");
+        }
+        input.append("7,NaN,ECG,1\n7,-Infinity,ECG,1\n7,0.000,ECG,1\n");
+        SampleBatch batch = new SampleBatch(texts.length);
+
+        new RecordParser().parse(input, batch);
+
+        assertEquals(texts.length + 3, batch.size());
+        for (int i = 0; i < texts.length; i++) {
+            assertEquals(Double.doubleToLongBits(Double.parseDouble(texts[i])),
+                    Double.doubleToLongBits(batch.getValue(i)), texts[i]);
+        }
+        assertTrue(Double.isNaN(batch.getValue(texts.length)));
+        assertEquals(Double.NEGATIVE_INFINITY, batch.getValue(texts.length + 1));
+        assertEquals(0.0, batch.getValue(texts.length + 2));
+    }
+
+    /**
+     * Tests that every registered label, alias or not, resolves to its type, also after being cached.
+     */
+    @Test
+    void testRecordTypes() {
+        RecordParser parser = new RecordParser();
+        SampleBatch batch = new SampleBatch(8);
+
+        parser.parse("1,1,Saturation,1\n1,1,OxygenSaturation,1\n1,1,BloodOxygenSaturation,1\n"
+                + "1,1,Cholesterol,1\n1,1,Saturation,1\n1,1,ECG,1", batch);
+
+        assertEquals(6, batch.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(RecordType.BLOOD_OXYGEN_SATURATION.getCode(), batch.getTypeCode(i));
+        }
+        assertEquals(RecordType.CHOLESTEROL.getCode(), batch.getTypeCode(3));
+        assertEquals(RecordType.BLOOD_OXYGEN_SATURATION.getCode(), batch.getTypeCode(4));
+        assertEquals(RecordType.ECG.getCode(), batch.getTypeCode(5));
+        assertThrows(IllegalArgumentException.class, () -> parser.parse("1,1,InvalidType,1", batch));
+    }
+
+    /**
+     * Tests that malformed numbers, overflowing integers and missing fields are rejected,
+     * while the lines before the malformed one are kept.
+     */
+    @Test
+    void testMalformedLines() {
+        RecordParser parser = new RecordParser();
+        SampleBatch batch = new SampleBatch(4);
+
+        assertThrows(NumberFormatException.class, () -> parser.parse("1,72,HeartRate,1\n1,7x,HeartRate,1", batch));
+        assertEquals(1, batch.size());
+        assertThrows(NumberFormatException.class, () -> parser.parse("2147483648,1,HeartRate,1", batch));
+        assertThrows(NumberFormatException.class, () -> parser.parse("1,1,HeartRate,9223372036854775808", batch));
+        assertThrows(NumberFormatException.class, () -> parser.parse("-,1,HeartRate,1", batch));
+        assertThrows(NumberFormatException.class, () -> parser.parse("1,,HeartRate,1", batch));
+        assertThrows(NumberFormatException.class, () -> parser.parse("1,72,HeartRate", batch));
+        assertEquals(1, batch.size());
+
+        parser.parse("-2147483648,1,HeartRate,-9223372036854775808", batch);
+        assertEquals(Integer.MIN_VALUE, batch.getPatientId(1));
+        assertEquals(Long.MIN_VALUE, batch.getTimestamp(1));
+    }
+
+    /**
+     * Tests that the format is told from the first text and that labelled lines are parsed,
+     * including values with a percent sign.
+     */
+    @Test
+    void testLabelledFormat() {
+        assertEquals(RecordParser.Format.LABELLED, detect("\n  Patient ID: 1, Timestamp: 2"));
+        assertEquals(RecordParser.Format.COMMA_SEPARATED, detect("1, 72.0, HeartRate, 1000"));
+        assertNull(detect(" \r\n"));
+        assertNull(detect("Patient"));
+        RecordParser parser = new RecordParser(RecordParser.Format.LABELLED);
+        SampleBatch batch = new SampleBatch(2);
+
+        parser.parse("Patient ID: 12, Timestamp: 1700000000000, Label: Saturation, Data: 97.0%\r\n"
+                + "Patient ID: 13, Timestamp: 1700000001000, Label: ECG, Data: -0.125\n", batch);
+
+        assertEquals(2, batch.size());
+        assertEquals(12, batch.getPatientId(0));
+        assertEquals(1_700_000_000_000L, batch.getTimestamp(0));
+        assertEquals(RecordType.BLOOD_OXYGEN_SATURATION.getCode(), batch.getTypeCode(0));
+        assertEquals(97.0, batch.getValue(0));
+        assertEquals(RecordType.ECG.getCode(), batch.getTypeCode(1));
+        assertEquals(-0.125, batch.getValue(1));
+        assertThrows(NumberFormatException.class,
+                () -> parser.parse("Patient ID 1, Timestamp: 1, Label: ECG, Data: 1", batch));
+        assertThrows(NumberFormatException.class, () -> parser.parse("Patient ID: 1, Timestamp: 1, Label: ECG", batch));
+        assertThrows(NumberFormatException.class, () -> new RecordParser().parse("1, 97.0%, Saturation, 1", batch));
+    }
+
+    /**
+     * Tests that text with non-ASCII characters is parsed through its UTF-8 encoding.
+     */
+    @Test
+    void testNonAsciiText() {
+        RecordType type = RecordType.register("Temp\u00e9rature");
+        SampleBatch batch = new SampleBatch(1);
+
+        new RecordParser().parse("5,37.2,Temp\u00e9rature,1000", batch);
+
+        assertEquals(1, batch.size());
+        assertEquals(type.getCode(), batch.getTypeCode(0));
+        assertEquals(37.2, batch.getValue(0));
+    }
+
+    private static RecordParser.Format detect(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+        return RecordParser.detect(ByteBuffer.wrap(bytes), 0, bytes.length);
+    }
+}
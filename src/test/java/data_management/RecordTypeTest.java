@@ -0,0 +1,54 @@
+package data_management;
+
+import com.data_management.DataStorage;
+import com.data_management.PatientRecord;
+import com.data_management.RecordType;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the {@link RecordType} registry.
+ */
+class RecordTypeTest {
+
+    /**
+     * Tests that the labels emitted by the generators resolve to interned types, including aliases.
+     */
+    @Test
+    void testGeneratorLabelsAreRegistered() {
+        assertSame(RecordType.BLOOD_OXYGEN_SATURATION, RecordType.forLabel("Saturation"));
+        assertSame(RecordType.ECG, RecordType.of("ECG"));
+        assertSame(RecordType.SYSTOLIC_PRESSURE, RecordType.of("SystolicPressure"));
+        assertSame(RecordType.CHOLESTEROL, RecordType.of("Cholesterol"));
+        assertSame(RecordType.HEART_RATE, RecordType.forCode(RecordType.HEART_RATE.getCode()));
+        assertNull(RecordType.forLabel("InvalidType"));
+        assertThrows(IllegalArgumentException.class, () -> RecordType.of("InvalidType"));
+    }
+
+    /**
+     * Tests that a type registered at runtime gets a fresh code and can be stored and queried.
+     */
+    @Test
+    void testRuntimeRegistration() {
+        RecordType glucose = RecordType.register("BloodGlucose");
+        assertSame(glucose, RecordType.register("BloodGlucose"), "Registering twice should return the same type");
+        assertEquals(RecordType.count() - 1, glucose.getCode());
+        assertThrows(IllegalArgumentException.class, () -> RecordType.registerAlias("Saturation", glucose));
+
+        DataStorage storage = DataStorage.getInstance();
+        storage.clear();
+        storage.addPatientData(1, 80.0, RecordType.HEART_RATE, 1000L);
+        storage.addPatientData(1, 5.4, "BloodGlucose", 1001L);
+        storage.addPatientData(1, 97.0, "Saturation", 1002L);
+
+        List<PatientRecord> records = storage.getRecords(1, 0L, 2000L);
+        assertEquals(3, records.size());
+        assertSame(glucose, records.get(1).getType());
+        assertEquals("BloodOxygenSaturation", records.get(2).getRecordType());
+        assertEquals(1, storage.getRecords(1, "Saturation", 0L, 2000L).size());
+        storage.clear();
+    }
+}
@@ -0,0 +1,154 @@
+package data_management;
+
+import com.data_management.DataStorage;
+import com.data_management.PatientRecord;
+import com.data_management.RecordType;
+import com.data_management.RollupBucket;
+import com.data_management.RollupTier;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the rollup tiers maintained by {@link DataStorage}.
+ * Every bucket is compared with the same bucket computed from the raw records.
+ */
+class RollupTest {
+
+    private static final long START = 1_700_006_400_000L;
+    private static final long MINUTE = 60_000L;
+    private static final long HOUR = 3_600_000L;
+    private static final long DAY = 24 * HOUR;
+
+    private DataStorage storage;
+
+    /**
+     * Sets up the test environment before each test.
+     */
+    @BeforeEach
+    void setUp() {
+        storage = DataStorage.getInstance();
+        storage.clear();
+        storage.setRollupTiers(RecordType.HEART_RATE, RollupTier.STANDARD_TIERS);
+    }
+
+    /**
+     * Restores the default of no tiers after each test.
+     */
+    @AfterEach
+    void tearDown() {
+        storage.setRollupTiers(RecordType.HEART_RATE, Collections.emptyList());
+        storage.clear();
+    }
+
+    /**
+     * Tests that a query picks the coarsest tier meeting the requested resolution.
+     */
+    @Test
+    void testPicksCoarsestTier() {
+        Random random = new Random(7);
+        for (long t = START; t < START + DAY; t += 1000 + random.nextInt(3000)) {
+            storage.addPatientData(1, 50 + random.nextInt(100), RecordType.HEART_RATE, t);
+        }
+
+        List<RollupBucket> hourly = storage.getRollup(1, RecordType.HEART_RATE, START, START + DAY - 1, DAY);
+        assertEquals(24, hourly.size());
+        assertBucketsMatch(hourly, HOUR, START, START + DAY - 1);
+
+        List<RollupBucket> minutes = storage.getRollup(1, RecordType.HEART_RATE, START + HOUR, START + 3 * HOUR, 30 * MINUTE);
+        assertEquals(MINUTE, minutes.get(0).getDurationMillis());
+        assertBucketsMatch(minutes, MINUTE, START + HOUR, START + 3 * HOUR);
+    }
+
+    /**
+     * Tests that requests no tier can answer fall back to buckets computed from the raw samples.
+     */
+    @Test
+    void testFallsBackToRawSamples() {
+        for (long t = START; t < START + 2 * HOUR; t += 250) {
+            storage.addPatientData(1, (t / 250) % 17, RecordType.HEART_RATE, t);
+        }
+
+        // Finer than every tier.
+        List<RollupBucket> fine = storage.getRollup(1, RecordType.HEART_RATE, START, START + 10_000, 500);
+        assertEquals(500, fine.get(0).getDurationMillis());
+        assertBucketsMatch(fine, 500, START, START + 10_000);
+
+        // The 1-second tier only keeps the last hour.
+        List<RollupBucket> seconds = storage.getRollup(1, RecordType.HEART_RATE, START, START + 2 * HOUR, 1000);
+        assertEquals(2 * 3600, seconds.size());
+        assertBucketsMatch(seconds, 1000, START, START + 2 * HOUR);
+    }
+
+    /**
+     * Tests that late samples update their bucket and that custom tiers are used.
+     */
+    @Test
+    void testLateSamplesAndCustomTiers() {
+        storage.setRollupTiers(RecordType.HEART_RATE, Arrays.asList(new RollupTier(10 * MINUTE, 100)));
+        for (int i = 0; i < 60; i++) {
+            storage.addPatientData(1, 70.0, RecordType.HEART_RATE, START + i * MINUTE);
+        }
+        storage.addPatientData(1, 30.0, RecordType.HEART_RATE, START + 5 * MINUTE + 1);
+        storage.addPatientData(1, 150.0, RecordType.HEART_RATE, START - 5 * MINUTE);
+
+        List<RollupBucket> buckets = storage.getRollup(1, RecordType.HEART_RATE, START - HOUR, START + HOUR, HOUR);
+        assertEquals(7, buckets.size());
+        assertEquals(10 * MINUTE, buckets.get(0).getDurationMillis());
+        assertEquals(150.0, buckets.get(0).getMax());
+        assertEquals(11, buckets.get(1).getCount());
+        assertEquals(30.0, buckets.get(1).getMin());
+        assertBucketsMatch(buckets, 10 * MINUTE, START - HOUR, START + HOUR);
+    }
+
+    /**
+     * Tests that no tiers are maintained unless configured and that rollups are then computed from the raw samples.
+     */
+    @Test
+    void testNoTiersByDefault() {
+        assertTrue(storage.getRollupTiers(RecordType.BLOOD_PRESSURE).isEmpty());
+        storage.setRollupTiers(RecordType.HEART_RATE, Collections.emptyList());
+        for (long t = START; t < START + HOUR; t += 1000) {
+            storage.addPatientData(1, (t / 1000) % 23, RecordType.HEART_RATE, t);
+        }
+
+        List<RollupBucket> buckets = storage.getRollup(1, RecordType.HEART_RATE, START, START + HOUR - 1, MINUTE);
+        assertEquals(60, buckets.size());
+        assertBucketsMatch(buckets, MINUTE, START, START + HOUR - 1);
+    }
+
+    private void assertBucketsMatch(List<RollupBucket> buckets, long width, long startTime, long endTime) {
+        long first = Math.floorDiv(startTime, width) * width;
+        long last = Math.floorDiv(endTime, width) * width + width - 1;
+        List<PatientRecord> records = storage.getRecords(1, RecordType.HEART_RATE, first, last);
+        List<List<PatientRecord>> groups = new ArrayList<>();
+        long current = Long.MIN_VALUE;
+        for (PatientRecord record : records) {
+            long start = Math.floorDiv(record.getTimestamp(), width) * width;
+            if (start != current) {
+                groups.add(new ArrayList<>());
+                current = start;
+            }
+            groups.get(groups.size() - 1).add(record);
+        }
+
+        assertEquals(groups.size(), buckets.size());
+        for (int i = 0; i < buckets.size(); i++) {
+            RollupBucket bucket = buckets.get(i);
+            List<PatientRecord> group = groups.get(i);
+            assertEquals(Math.floorDiv(group.get(0).getTimestamp(), width) * width, bucket.getStartTime());
+            assertEquals(group.size(), bucket.getCount());
+            assertEquals(group.stream().mapToDouble(PatientRecord::getMeasurementValue).min().getAsDouble(), bucket.getMin());
+            assertEquals(group.stream().mapToDouble(PatientRecord::getMeasurementValue).max().getAsDouble(), bucket.getMax());
+            assertEquals(group.stream().mapToDouble(PatientRecord::getMeasurementValue).sum(), bucket.getSum(), 1e-9);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package data_management;
+
+import com.data_management.CompressedTimeSeries;
+import com.data_management.PatientRecord;
+import com.data_management.RecordType;
+import com.data_management.RetentionPolicy;
+import com.data_management.TimeSeries;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Memory and decode benchmark for {@link CompressedTimeSeries}.
+ * Not a unit test: run it with {@code main} to print, per vital sign, the bytes per sample and the scan
+ * throughput of a compressed series, an uncompressed {@link TimeSeries} and an {@code ArrayList<PatientRecord>},
+ * which is how history used to be stored. The signals mimic the generators: integer random walks sampled
+ * once per second (heart rate, saturation) or once per minute (blood pressure), with some timing jitter.
+ * The list size is measured from the heap, so it is approximate.
+ */
+public class SeriesCompressionBenchmark {
+
+    private static final int SAMPLES = 1_000_000;
+    private static final int ROUNDS = 10;
+
+    private static double sink;
+
+    /**
+     * Runs the benchmark for heart rate, saturation and systolic pressure signals.
+     *
+     * @param args Command line arguments (unused).
+     */
+    public static void main(String[] args) {
+        System.out.printf("%-18s %-12s %14s %16s%n", "signal", "layout", "bytes/sample", "samples/sec");
+        run("HeartRate", RecordType.HEART_RATE, 75, 1, 1_000, 0);
+        run("Saturation", RecordType.BLOOD_OXYGEN_SATURATION, 97, 1, 1_000, 0);
+        run("Saturation jitter", RecordType.BLOOD_OXYGEN_SATURATION, 97, 1, 1_000, 20);
+        run("SystolicPressure", RecordType.SYSTOLIC_PRESSURE, 120, 2, 60_000, 0);
+    }
+
+    private static void run(String name, RecordType type, int baseline, int step, long intervalMillis, int jitterMillis) {
+        Random random = new Random(1);
+        long[] timestamps = new long[SAMPLES];
+        double[] values = new double[SAMPLES];
+        long time = 1_700_000_000_000L;
+        int value = baseline;
+        for (int i = 0; i < SAMPLES; i++) {
+            time += intervalMillis + (jitterMillis == 0 ? 0 : random.nextInt(2 * jitterMillis + 1) - jitterMillis);
+            value += random.nextInt(2 * step + 1) - step;
+            timestamps[i] = time;
+            values[i] = value;
+        }
+
+        CompressedTimeSeries compressed = new CompressedTimeSeries(128, RetentionPolicy.UNBOUNDED);
+        TimeSeries plain = new TimeSeries();
+        for (int i = 0; i < SAMPLES; i++) {
+            compressed.add(timestamps[i], values[i]);
+            plain.add(timestamps[i], values[i]);
+        }
+        long before = usedMemory();
+        List<PatientRecord> list = new ArrayList<>();
+        for (int i = 0; i < SAMPLES; i++) {
+            list.add(new PatientRecord(1, values[i], type, timestamps[i]));
+        }
+        long listBytes = usedMemory() - before;
+
+        long start = timestamps[0];
+        long end = timestamps[SAMPLES - 1];
+        double compressedRate = measure(() -> compressed.scan(start, end, (timestamp, v) -> {
+            sink += v;
+            return true;
+        }));
+        double plainRate = measure(() -> plain.scan(start, end, (timestamp, v) -> {
+            sink += v;
+            return true;
+        }));
+        double listRate = measure(() -> {
+            for (PatientRecord record : list) {
+                sink += record.getMeasurementValue();
+            }
+        });
+
+        System.out.printf("%-18s %-12s %14.2f %,16.0f%n", name, "compressed", perSample(compressed.getEncodedBytes()), compressedRate);
+        System.out.printf("%-18s %-12s %14.2f %,16.0f%n", name, "columns", 16.0, plainRate);
+        System.out.printf("%-18s %-12s %14.2f %,16.0f%n", name, "record list", perSample(listBytes), listRate);
+    }
+
+    private static double perSample(double bytes) {
+        return bytes / SAMPLES;
+    }
+
+    private static double measure(Runnable scan) {
+        for (int i = 0; i < 3; i++) {
+            scan.run();
+        }
+        long begin = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            scan.run();
+        }
+        return (double) ROUNDS * SAMPLES / ((System.nanoTime() - begin) / 1e9);
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,136 @@
+package data_management;
+
+import com.data_management.RetentionPolicy;
+import com.data_management.TimeSeries;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the {@link TimeSeries} class.
+ */
+class TimeSeriesTest {
+
+    private TimeSeries series;
+
+    /**
+     * Sets up an empty series before each test.
+     */
+    @BeforeEach
+    void setUp() {
+        series = new TimeSeries();
+    }
+
+    /**
+     * Tests that samples arriving out of order are stored sorted by timestamp.
+     */
+    @Test
+    void testOutOfOrderSamplesAreSorted() {
+        series.add(300, 3.0);
+        series.add(100, 1.0);
+        series.add(200, 2.0);
+
+        assertEquals(3, series.size());
+        assertEquals(100, series.getTimestamp(0));
+        assertEquals(200, series.getTimestamp(1));
+        assertEquals(300, series.getTimestamp(2));
+        assertEquals(2.0, series.getValue(1));
+    }
+
+    /**
+     * Tests that the binary searches delimit an inclusive time range.
+     */
+    @Test
+    void testRangeBounds() {
+        for (int i = 0; i < 100; i++) {
+            series.add(i * 10L, i);
+        }
+
+        assertEquals(5, series.lowerBound(50));
+        assertEquals(6, series.upperBound(50));
+        assertEquals(5, series.lowerBound(45));
+        assertEquals(0, series.lowerBound(Long.MIN_VALUE));
+        assertEquals(100, series.upperBound(Long.MAX_VALUE));
+    }
+
+    /**
+     * Tests that samples sharing a timestamp keep their arrival order.
+     */
+    @Test
+    void testEqualTimestampsKeepArrivalOrder() {
+        series.add(100, 1.0);
+        series.add(200, 2.0);
+        series.add(100, 3.0);
+
+        assertEquals(1.0, series.getValue(0));
+        assertEquals(3.0, series.getValue(1));
+        assertEquals(2.0, series.getValue(2));
+    }
+
+    /**
+     * Tests that a count-bounded series overwrites its oldest samples and counts the evictions.
+     */
+    @Test
+    void testCountRetentionOverwritesOldest() {
+        series = new TimeSeries(new RetentionPolicy(50, 0));
+        for (int i = 0; i < 120; i++) {
+            series.add(i, i);
+        }
+
+        assertEquals(50, series.size());
+        assertEquals(70, series.getTimestamp(0), "Oldest retained sample should be the 71st");
+        assertEquals(119, series.getTimestamp(49));
+        assertEquals(70, series.getEvictedCount());
+        assertEquals(10, series.lowerBound(80), "Binary search should work across the wrapped buffer");
+    }
+
+    /**
+     * Tests that late samples are placed correctly after the ring buffer has wrapped around.
+     */
+    @Test
+    void testLateSampleAfterWrapAround() {
+        series = new TimeSeries(new RetentionPolicy(4, 0));
+        for (int i = 1; i <= 6; i++) {
+            series.add(i * 10L, i);
+        }
+        series.add(45, 4.5);
+        series.add(5, 0.5);
+
+        assertEquals(4, series.size());
+        assertEquals(40, series.getTimestamp(0));
+        assertEquals(45, series.getTimestamp(1));
+        assertEquals(50, series.getTimestamp(2));
+        assertEquals(60, series.getTimestamp(3));
+        assertEquals(4, series.getEvictedCount(), "The sample older than a full series should be counted as evicted");
+    }
+
+    /**
+     * Tests that samples older than the age limit are evicted.
+     */
+    @Test
+    void testAgeRetention() {
+        series = new TimeSeries(new RetentionPolicy(0, 100));
+        for (int i = 0; i <= 30; i++) {
+            series.add(i * 10L, i);
+        }
+
+        assertEquals(200, series.getTimestamp(0));
+        assertEquals(11, series.size());
+        assertEquals(20, series.getEvictedCount());
+    }
+
+    /**
+     * Tests that tightening the retention policy shrinks an existing series.
+     */
+    @Test
+    void testSetRetentionPolicyShrinks() {
+        for (int i = 0; i < 100; i++) {
+            series.add(i, i);
+        }
+        series.setRetentionPolicy(new RetentionPolicy(10, 0));
+
+        assertEquals(10, series.size());
+        assertEquals(90, series.getTimestamp(0));
+        assertEquals(90, series.getEvictedCount());
+    }
+}
@@ -0,0 +1,152 @@
+package data_management;
+
+import com.data_management.DataStorage;
+import com.data_management.PatientRecord;
+import com.data_management.RecordType;
+import com.data_management.RetentionPolicy;
+import com.data_management.WindowStatistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the rolling window statistics maintained by {@link DataStorage}.
+ * Every result is compared with the statistics recomputed from the records of the same window.
+ */
+class WindowStatisticsTest {
+
+    private static final long HOUR = 3_600_000L;
+    private static final double TOLERANCE = 1e-9;
+
+    private DataStorage storage;
+
+    /**
+     * Sets up the test environment before each test.
+     */
+    @BeforeEach
+    void setUp() {
+        storage = DataStorage.getInstance();
+        storage.clear();
+        storage.setAggregationWindow(RecordType.HEART_RATE, HOUR);
+    }
+
+    /**
+     * Restores the default retention policy and disables the rolling window after each test.
+     */
+    @AfterEach
+    void tearDown() {
+        storage.setRetentionPolicy(RecordType.HEART_RATE, RetentionPolicy.UNBOUNDED);
+        storage.setAggregationWindow(RecordType.HEART_RATE, 0);
+        storage.clear();
+    }
+
+    /**
+     * Tests that the incrementally maintained statistics match a recomputation while the window slides.
+     */
+    @Test
+    void testMatchesRecomputation() {
+        Random random = new Random(42);
+        long timestamp = 1_700_000_000_000L;
+        for (int i = 0; i < 20_000; i++) {
+            timestamp += 1 + random.nextInt(2000);
+            storage.addPatientData(1, 60 + random.nextGaussian() * 15, RecordType.HEART_RATE, timestamp);
+            if (i % 997 == 0) {
+                assertMatches(1, HOUR, timestamp);
+            }
+        }
+        assertMatches(1, HOUR, timestamp);
+        assertMatches(1, HOUR, timestamp + HOUR / 2);
+    }
+
+    /**
+     * Tests late samples, a window length that is not maintained, and an empty window.
+     */
+    @Test
+    void testLateSamplesAndOtherWindows() {
+        long base = 1_700_000_000_000L;
+        for (int i = 0; i < 500; i++) {
+            storage.addPatientData(1, 70 + i % 13, RecordType.HEART_RATE, base + i * 10_000L);
+        }
+        storage.addPatientData(1, 20.0, RecordType.HEART_RATE, base + 4_000_005L);
+        storage.addPatientData(1, 200.0, RecordType.HEART_RATE, base + 4_990_000L);
+        long now = base + 5_000_000L;
+
+        WindowStatistics statistics = assertMatches(1, HOUR, now);
+        assertEquals(20.0, statistics.getMin());
+        assertEquals(200.0, statistics.getMax());
+        assertMatches(1, 60_000L, now);
+        assertEquals(0, storage.getWindowStatistics(1, RecordType.BLOOD_OXYGEN_SATURATION, HOUR, now).getCount());
+        assertTrue(Double.isNaN(storage.getWindowStatistics(2, RecordType.HEART_RATE, HOUR, now).getMean()));
+    }
+
+    /**
+     * Tests that samples evicted by a retention policy also leave the window.
+     */
+    @Test
+    void testRetentionEvictsFromWindow() {
+        storage.setRetentionPolicy(RecordType.HEART_RATE, new RetentionPolicy(100, 0));
+        long base = 1_700_000_000_000L;
+        for (int i = 0; i < 1000; i++) {
+            storage.addPatientData(1, i, RecordType.HEART_RATE, base + i);
+        }
+        WindowStatistics statistics = assertMatches(1, HOUR, base + 1000);
+        assertEquals(100, statistics.getCount());
+        assertEquals(900.0, statistics.getMin());
+        assertEquals(999.0, statistics.getLastValue());
+    }
+
+    /**
+     * Tests that a query for a later window does not expire samples that earlier windows and late samples still need.
+     */
+    @Test
+    void testQueriesDoNotModifyWindow() {
+        long base = 1_700_000_000_000L;
+        for (int i = 0; i < 720; i++) {
+            storage.addPatientData(1, 60 + i % 41, RecordType.HEART_RATE, base + i * 5_000L);
+        }
+        long newest = base + 719 * 5_000L;
+
+        assertMatches(1, HOUR, newest + 3 * HOUR / 4);
+        assertMatches(1, HOUR, newest + HOUR / 4);
+        WindowStatistics statistics = assertMatches(1, HOUR, newest);
+        assertEquals(720, statistics.getCount());
+
+        storage.addPatientData(1, 10.0, RecordType.HEART_RATE, newest - HOUR / 2 - 1);
+        statistics = assertMatches(1, HOUR, newest);
+        assertEquals(721, statistics.getCount());
+        assertEquals(10.0, statistics.getMin());
+        assertMatches(1, HOUR, newest + HOUR / 2);
+    }
+
+    private WindowStatistics assertMatches(int patientId, long windowMillis, long now) {
+        List<PatientRecord> records = storage.getRecords(patientId, RecordType.HEART_RATE, now - windowMillis, now);
+        WindowStatistics statistics = storage.getWindowStatistics(patientId, RecordType.HEART_RATE, windowMillis, now);
+
+        assertEquals(records.size(), statistics.getCount());
+        double sum = 0;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (PatientRecord record : records) {
+            sum += record.getMeasurementValue();
+            min = Math.min(min, record.getMeasurementValue());
+            max = Math.max(max, record.getMeasurementValue());
+        }
+        double mean = sum / records.size();
+        double squares = 0;
+        for (PatientRecord record : records) {
+            squares += Math.pow(record.getMeasurementValue() - mean, 2);
+        }
+        assertEquals(sum, statistics.getSum(), TOLERANCE * Math.max(1, Math.abs(sum)));
+        assertEquals(mean, statistics.getMean(), TOLERANCE * Math.max(1, Math.abs(mean)));
+        assertEquals(squares / records.size(), statistics.getVariance(), TOLERANCE * Math.max(1, squares / records.size()));
+        assertEquals(min, statistics.getMin());
+        assertEquals(max, statistics.getMax());
+        assertEquals(records.get(records.size() - 1).getMeasurementValue(), statistics.getLastValue());
+        return statistics;
+    }
+}
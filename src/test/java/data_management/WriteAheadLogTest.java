@@ -0,0 +1,164 @@
+package data_management;
+
+import com.data_management.DataStorage;
+import com.data_management.RecordType;
+import com.data_management.SampleBatch;
+import com.data_management.WriteAheadLog;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the {@link WriteAheadLog} class and durable {@link DataStorage} recovery.
+ */
+class WriteAheadLogTest {
+
+    @TempDir
+    Path directory;
+
+    /**
+     * Tests that records survive reopening the log and that replay starts at the requested LSN.
+     *
+     * @throws IOException If the log cannot be written or read.
+     */
+    @Test
+    void testReplayFromLsn() throws IOException {
+        try (WriteAheadLog log = new WriteAheadLog(directory)) {
+            for (int i = 0; i < 10; i++) {
+                assertEquals(i, log.append(1, i, "HeartRate", 1000L + i));
+            }
+            log.syncAll();
+        }
+
+        List<Long> timestamps = new ArrayList<>();
+        try (WriteAheadLog log = new WriteAheadLog(directory)) {
+            assertEquals(9, log.getLastLsn(), "Reopened log should continue after the last record");
+            log.replay(7, (patientId, value, type, timestamp) -> timestamps.add(timestamp));
+        }
+        assertEquals(List.of(1007L, 1008L, 1009L), timestamps);
+    }
+
+    /**
+     * Tests that a torn record at the end of the log is ignored.
+     *
+     * @throws IOException If the log cannot be written or read.
+     */
+    @Test
+    void testTornTailIsIgnored() throws IOException {
+        try (WriteAheadLog log = new WriteAheadLog(directory)) {
+            log.append(1, 70.0, "HeartRate", 1000L);
+            log.append(1, 71.0, "HeartRate", 1001L);
+        }
+        Path segment = segments().get(0);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        List<Double> values = new ArrayList<>();
+        try (WriteAheadLog log = new WriteAheadLog(directory)) {
+            assertEquals(0, log.getLastLsn());
+            log.replay(0, (patientId, value, type, timestamp) -> values.add(value));
+        }
+        assertEquals(List.of(70.0), values);
+    }
+
+    /**
+     * Tests that segments covered by a later LSN are deleted while the rest of the log stays readable.
+     *
+     * @throws IOException If the log cannot be written or read.
+     */
+    @Test
+    void testSegmentsAreRolledAndDeleted() throws IOException {
+        try (WriteAheadLog log = new WriteAheadLog(directory, 256)) {
+            for (int i = 0; i < 100; i++) {
+                log.append(1, i, "HeartRate", i);
+            }
+            log.syncAll();
+            assertTrue(segments().size() > 5, "Small segment size should produce several segments");
+
+            log.deleteSegmentsBefore(90);
+            List<Long> lsns = new ArrayList<>();
+            long end = log.replay(0, (patientId, value, type, timestamp) -> lsns.add(timestamp));
+            assertEquals(100, end);
+            assertTrue(lsns.get(0) > 0 && lsns.get(0) <= 90, "Replay should start in the segment holding LSN 90");
+            assertEquals(99L, (long) lsns.get(lsns.size() - 1));
+        }
+    }
+
+    /**
+     * Tests that durable storage recovers from its snapshot and the log written after it.
+     *
+     * @throws IOException If the persisted state cannot be written or read.
+     */
+    @Test
+    void testStorageRecovery() throws IOException {
+        DataStorage storage = DataStorage.getInstance();
+        storage.clear();
+        try {
+            storage.enableDurability(directory, 0, 0);
+            storage.addPatientData(1, 70.0, "HeartRate", 1000L);
+            storage.addPatientData(2, 95.0, "BloodOxygenSaturation", 1000L);
+            storage.snapshot();
+            storage.addPatientData(1, 72.0, "HeartRate", 2000L);
+            storage.disableDurability();
+
+            // Simulate a restart: drop the in-memory state and recover from disk.
+            storage.clear();
+            assertTrue(storage.getAllPatients().isEmpty());
+            storage.enableDurability(directory, 0, 0);
+
+            assertEquals(2, storage.getRecords(1, "HeartRate", 0, Long.MAX_VALUE).size());
+            assertEquals(72.0, storage.getRecords(1, "HeartRate", 0, Long.MAX_VALUE).get(1).getMeasurementValue());
+            assertEquals(1, storage.getRecords(2, 0, Long.MAX_VALUE).size());
+        } finally {
+            storage.disableDurability();
+            storage.clear();
+        }
+    }
+
+    /**
+     * Tests that the samples of a batch are logged and recovered like single samples.
+     *
+     * @throws IOException If the persisted state cannot be written or read.
+     */
+    @Test
+    void testBatchRecovery() throws IOException {
+        DataStorage storage = DataStorage.getInstance();
+        storage.clear();
+        try {
+            storage.enableDurability(directory, 0, 0);
+            SampleBatch batch = new SampleBatch(8);
+            for (int i = 0; i < 10; i++) {
+                batch.add(i % 2 + 1, 70.0 + i, RecordType.HEART_RATE, 1000L * i);
+            }
+            storage.addPatientDataBatch(batch);
+            storage.disableDurability();
+
+            storage.clear();
+            storage.enableDurability(directory, 0, 0);
+
+            assertEquals(5, storage.getRecords(1, "HeartRate", 0, Long.MAX_VALUE).size());
+            assertEquals(79.0, storage.getRecords(2, "HeartRate", 0, Long.MAX_VALUE).get(4).getMeasurementValue());
+        } finally {
+            storage.disableDurability();
+            storage.clear();
+        }
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.getFileName().toString().endsWith(".log")).sorted().collect(Collectors.toList());
+        }
+    }
+}